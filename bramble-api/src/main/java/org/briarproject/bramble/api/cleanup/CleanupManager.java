@@ -34,7 +34,8 @@ public interface CleanupManager {
 
 	/**
 	 * Registers a hook to be called when messages are due for cleanup.
-	 * This method should be called before
+	 * Hooks are not called until all services have started. This method
+	 * should be called before
 	 * {@link LifecycleManager#startServices(SecretKey)}.
 	 */
 	void registerCleanupHook(ClientId c, int majorVersion,
@@ -89,6 +89,16 @@ public interface ClientHelper {
 			Transaction txn, GroupId g, BdfDictionary query) throws DbException,
 			FormatException;
 
+	/**
+	 * Returns the metadata for all delivered messages in the given group,
+	 * including only the entries with the given keys. Messages that have
+	 * metadata but none of the given keys are included with empty
+	 * dictionaries. At least one key must be given.
+	 */
+	Map<MessageId, BdfDictionary> getMessageMetadataAsDictionary(
+			Transaction txn, GroupId g, Collection<String> keys)
+			throws DbException, FormatException;
+
 	void mergeGroupMetadata(GroupId g, BdfDictionary metadata)
 			throws DbException, FormatException;
 
@@ -112,6 +112,12 @@ public interface ConnectionRegistry {
 	 */
 	boolean isConnected(ContactId c);
 
+	/**
+	 * Returns the number of connections that are currently registered for
+	 * the given transport.
+	 */
+	int getConnectionCount(TransportId t);
+
 	/**
 	 * Registers a connection with the given pending contact. Broadcasts
 	 * {@link RendezvousConnectionOpenedEvent} if this is the only connection
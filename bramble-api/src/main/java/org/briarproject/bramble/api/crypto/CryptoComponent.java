@@ -5,6 +5,7 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
+import java.util.List;
 
 import javax.annotation.Nullable;
 
@@ -129,6 +130,35 @@ public interface CryptoComponent {
 	boolean verifySignature(byte[] signature, String label, byte[] signed,
 			PublicKey publicKey) throws GeneralSecurityException;
 
+	/**
+	 * Verifies a batch of signatures. This is equivalent to calling
+	 * {@link #verifySignature(byte[], String, byte[], PublicKey)} for each
+	 * item, but avoids per-signature setup costs.
+	 *
+	 * @return An array containing true at the index of each item whose
+	 * signature was valid, and false at the index of each item whose
+	 * signature was invalid
+	 */
+	boolean[] verifySignatures(List<SignedItem> items)
+			throws GeneralSecurityException;
+
+	/**
+	 * Starts deferring signature verification on the calling thread. Until
+	 * {@link #stopDeferringSignatures()} is called,
+	 * {@link #verifySignature(byte[], String, byte[], PublicKey)} records
+	 * each signature and returns true without checking it. The caller is
+	 * responsible for checking the recorded signatures with
+	 * {@link #verifySignatures(List)}.
+	 */
+	void startDeferringSignatures();
+
+	/**
+	 * Stops deferring signature verification on the calling thread and
+	 * returns the signatures recorded since
+	 * {@link #startDeferringSignatures()} was called.
+	 */
+	List<SignedItem> stopDeferringSignatures();
+
 	/**
 	 * Returns the hash of the given inputs. The inputs are unambiguously
 	 * combined by prefixing each input with its length.
@@ -32,4 +32,9 @@ public interface CryptoConstants {
 	 */
 	int MAC_BYTES = SecretKey.LENGTH;
 
+	/**
+	 * The length of a hash in bytes.
+	 */
+	int HASH_BYTES = 32;
+
 }
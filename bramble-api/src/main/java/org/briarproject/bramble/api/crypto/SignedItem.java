@@ -0,0 +1,42 @@
+package org.briarproject.bramble.api.crypto;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A signature together with the label, signed data and public key needed to
+ * verify it, for use with {@link CryptoComponent#verifySignatures}.
+ */
+@Immutable
+@NotNullByDefault
+public class SignedItem {
+
+	private final byte[] signature, signed;
+	private final String label;
+	private final PublicKey publicKey;
+
+	public SignedItem(byte[] signature, String label, byte[] signed,
+			PublicKey publicKey) {
+		this.signature = signature;
+		this.label = label;
+		this.signed = signed;
+		this.publicKey = publicKey;
+	}
+
+	public byte[] getSignature() {
+		return signature;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public byte[] getSigned() {
+		return signed;
+	}
+
+	public PublicKey getPublicKey() {
+		return publicKey;
+	}
+}
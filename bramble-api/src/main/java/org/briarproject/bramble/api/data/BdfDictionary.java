@@ -3,9 +3,15 @@ package org.briarproject.bramble.api.data;
 import org.briarproject.bramble.api.Bytes;
 import org.briarproject.bramble.api.FormatException;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -30,12 +36,27 @@ import javax.annotation.concurrent.NotThreadSafe;
  * The getX() methods that take a default value return the default value if
  * the specified key is absent or the value is null, or throw
  * {@link FormatException} if the value does not have the requested type.
+ * <p>
+ * Entries are iterated in ascending order of their keys. The keys and values
+ * are stored in parallel arrays in that order, which uses much less memory
+ * than a tree for the small dictionaries used by BDF. Lookups use binary
+ * search. Adding an entry with a greater key than any existing key, as when
+ * a dictionary is read in canonical order, doesn't move any entries.
  */
 @NotThreadSafe
-public final class BdfDictionary extends TreeMap<String, Object> {
+public final class BdfDictionary extends AbstractMap<String, Object> {
 
 	public static final Object NULL_VALUE = new Object();
 
+	private static final String[] EMPTY_KEYS = new String[0];
+	private static final Object[] EMPTY_VALUES = new Object[0];
+
+	private String[] keys = EMPTY_KEYS;
+	private Object[] values = EMPTY_VALUES;
+	private int size = 0;
+	// Incremented whenever an entry is added or removed
+	private int modCount = 0;
+
 	/**
 	 * Factory method for constructing dictionaries inline.
 	 * <pre>
@@ -52,11 +73,108 @@ public final class BdfDictionary extends TreeMap<String, Object> {
 	}
 
 	public BdfDictionary() {
-		super();
+	}
+
+	/**
+	 * Creates an empty dictionary with room for the given number of entries.
+	 */
+	public BdfDictionary(int capacity) {
+		if (capacity < 0) throw new IllegalArgumentException();
+		if (capacity > 0) {
+			keys = new String[capacity];
+			values = new Object[capacity];
+		}
 	}
 
 	public BdfDictionary(Map<String, ?> m) {
-		super(m);
+		this(m.size());
+		putAll(m);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	@Nullable
+	public Object get(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : values[i];
+	}
+
+	@Override
+	@Nullable
+	public Object put(String key, Object value) {
+		if (key == null) throw new NullPointerException();
+		int i;
+		// Check whether the key belongs at the end before searching
+		if (size == 0 || key.compareTo(keys[size - 1]) > 0) i = -(size + 1);
+		else i = Arrays.binarySearch(keys, 0, size, key);
+		if (i >= 0) {
+			Object old = values[i];
+			values[i] = value;
+			return old;
+		}
+		insertAt(-(i + 1), key, value);
+		return null;
+	}
+
+	@Override
+	@Nullable
+	public Object remove(Object key) {
+		int i = indexOf(key);
+		if (i < 0) return null;
+		Object old = values[i];
+		removeAt(i);
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(keys, 0, size, null);
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new EntrySet();
+	}
+
+	private int indexOf(Object key) {
+		// Like a TreeMap, throw an exception if the key isn't a string
+		if (key == null) throw new NullPointerException();
+		return Arrays.binarySearch(keys, 0, size, (String) key);
+	}
+
+	private void insertAt(int i, String key, Object value) {
+		if (size == keys.length) {
+			int capacity = size < 4 ? 4 : size + (size >> 1);
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(values, i, values, i + 1, size - i);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		modCount++;
+	}
+
+	private void removeAt(int i) {
+		System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+		System.arraycopy(values, i + 1, values, i, size - i - 1);
+		size--;
+		keys[size] = null;
+		values[size] = null;
+		modCount++;
 	}
 
 	public Boolean getBoolean(String key) throws FormatException {
@@ -257,4 +375,76 @@ public final class BdfDictionary extends TreeMap<String, Object> {
 		BdfDictionary value = getOptionalDictionary(key);
 		return value == null ? defaultValue : value;
 	}
+
+	private class EntrySet extends AbstractSet<Entry<String, Object>> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<Entry<String, Object>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public void clear() {
+			BdfDictionary.this.clear();
+		}
+	}
+
+	private class EntryIterator implements Iterator<Entry<String, Object>> {
+
+		private int next = 0, last = -1;
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public Entry<String, Object> next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next >= size) throw new NoSuchElementException();
+			last = next++;
+			return new ArrayEntry(last, expectedModCount);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	/**
+	 * An entry returned by the iterator. Its value can be set until an entry
+	 * is added to or removed from the dictionary.
+	 */
+	private class ArrayEntry extends SimpleEntry<String, Object> {
+
+		private final int index, expectedModCount;
+
+		private ArrayEntry(int index, int expectedModCount) {
+			super(keys[index], values[index]);
+			this.index = index;
+			this.expectedModCount = expectedModCount;
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			values[index] = value;
+			return super.setValue(value);
+		}
+	}
 }
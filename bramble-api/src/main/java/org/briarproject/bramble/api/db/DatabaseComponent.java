@@ -1,5 +1,6 @@
 package org.briarproject.bramble.api.db;
 
+import org.briarproject.bramble.api.UniqueId;
 import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.PendingContact;
@@ -18,6 +19,7 @@ import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageCounts;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
 import org.briarproject.bramble.api.sync.Offer;
@@ -28,6 +30,7 @@ import org.briarproject.bramble.api.transport.TransportKeySet;
 import org.briarproject.bramble.api.transport.TransportKeys;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -76,6 +79,14 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	void close() throws DbException;
 
+	/**
+	 * Reclaims unused space in the database's files without closing the
+	 * database, if the database supports this, and returns the number of
+	 * bytes reclaimed. Compaction stops early if another transaction is
+	 * waiting to start.
+	 */
+	long compactIncrementally(Transaction txn) throws DbException;
+
 	/**
 	 * Stores a contact associated with the given local and remote pseudonyms,
 	 * and returns an ID for the contact.
@@ -217,6 +228,25 @@ public interface DatabaseComponent extends TransactionManager {
 	Collection<Message> generateBatch(Transaction txn, ContactId c,
 			long capacity, long maxLatency) throws DbException;
 
+	/**
+	 * Returns the messages with the given IDs for transmission to the given
+	 * contact over a transport with the given maximum latency. Messages that
+	 * are no longer visible to the contact are skipped.
+	 * <p/>
+	 * Unlike {@link #generateBatch(Transaction, ContactId, long, long)} this
+	 * method may return messages that have already been sent and are not yet
+	 * due for retransmission.
+	 * <p/>
+	 * Read-only if {@code markAsSent} is false.
+	 *
+	 * @param markAsSent True if the messages should be marked as sent.
+	 * If false they can be marked as sent by calling
+	 * {@link #setMessagesSent(Transaction, ContactId, Collection, long)}.
+	 */
+	Collection<Message> generateBatch(Transaction txn, ContactId c,
+			Collection<MessageId> ids, long maxLatency, boolean markAsSent)
+			throws DbException;
+
 	/**
 	 * Returns an offer for the given contact for transmission over a
 	 * transport with the given maximum latency, or null if there are no
@@ -297,6 +327,13 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	Metadata getGroupMetadata(Transaction txn, GroupId g) throws DbException;
 
+	/**
+	 * Returns all groups.
+	 * <p/>
+	 * Read-only.
+	 */
+	Collection<Group> getGroups(Transaction txn) throws DbException;
+
 	/**
 	 * Returns all groups belonging to the given client.
 	 * <p/>
@@ -337,6 +374,29 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	Message getMessage(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the stored message counts for the given groups. Groups for
+	 * which no counts have been stored are omitted from the returned map.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, MessageCounts> getMessageCounts(Transaction txn,
+			Collection<GroupId> groups) throws DbException;
+
+	/**
+	 * Returns a stream over the body of the given message, starting at the
+	 * given offset within the body. The body is read from the database as
+	 * the stream is read, so the stream must be read and closed before the
+	 * transaction ends.
+	 * <p/>
+	 * Read-only.
+	 *
+	 * @throws MessageDeletedException if the message has been deleted
+	 * @throws DbException if the offset is outside the body
+	 */
+	InputStream getMessageBody(Transaction txn, MessageId m, int offset)
+			throws DbException;
+
 	/**
 	 * Returns the IDs of all delivered messages in the given group.
 	 * <p/>
@@ -432,6 +492,17 @@ public interface DatabaseComponent extends TransactionManager {
 	Map<MessageId, Metadata> getMessageMetadata(Transaction txn, GroupId g,
 			Metadata query) throws DbException;
 
+	/**
+	 * Returns the metadata for all delivered messages in the given group,
+	 * including only the entries with the given keys. Messages that have
+	 * metadata but none of the given keys are included with empty metadata.
+	 * At least one key must be given.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<MessageId, Metadata> getMessageMetadata(Transaction txn, GroupId g,
+			Collection<String> keys) throws DbException;
+
 	/**
 	 * Returns the metadata for the given delivered message.
 	 * <p/>
@@ -579,6 +650,17 @@ public interface DatabaseComponent extends TransactionManager {
 	Collection<PendingContact> getPendingContacts(Transaction txn)
 			throws DbException;
 
+	/**
+	 * Returns the ID of the message in the given group that stores the
+	 * client session with the given ID, or null if no message has been
+	 * recorded for the session.
+	 * <p/>
+	 * Read-only.
+	 */
+	@Nullable
+	MessageId getSessionStorageId(Transaction txn, GroupId g,
+			UniqueId sessionId) throws DbException;
+
 	/**
 	 * Returns all settings in the given namespace.
 	 * <p/>
@@ -775,6 +857,13 @@ public interface DatabaseComponent extends TransactionManager {
 	void setHandshakeKeyPair(Transaction txn, AuthorId local,
 			PublicKey publicKey, PrivateKey privateKey) throws DbException;
 
+	/**
+	 * Stores the message counts for the given group, replacing any existing
+	 * counts.
+	 */
+	void setMessageCounts(Transaction txn, GroupId g, MessageCounts counts)
+			throws DbException;
+
 	/**
 	 * Sets the reordering window for the given transport keys in the given
 	 * time period.
@@ -782,6 +871,14 @@ public interface DatabaseComponent extends TransactionManager {
 	void setReorderingWindow(Transaction txn, KeySetId k, TransportId t,
 			long timePeriod, long base, byte[] bitmap) throws DbException;
 
+	/**
+	 * Records that the client session with the given ID is stored in the
+	 * given message, which must belong to the given group. The record is
+	 * removed when the message or the group is removed.
+	 */
+	void setSessionStorageId(Transaction txn, GroupId g, UniqueId sessionId,
+			MessageId m) throws DbException;
+
 	/**
 	 * Sets the versions of the sync protocol supported by the given contact.
 	 */
@@ -810,6 +907,15 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	void stopCleanupTimer(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Adds the given deltas to the stored message counts for the given group,
+	 * and updates the latest message time if the given timestamp is later.
+	 *
+	 * @return False if no counts have been stored for the group
+	 */
+	boolean updateMessageCounts(Transaction txn, GroupId g, int msgCountDelta,
+			int unreadCountDelta, long timestamp) throws DbException;
+
 	/**
 	 * Stores the given transport keys, deleting any keys they have replaced.
 	 */
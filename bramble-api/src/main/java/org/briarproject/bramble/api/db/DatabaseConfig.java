@@ -26,4 +26,12 @@ public interface DatabaseConfig {
 	 */
 	@Nullable
 	KeyStrengthener getKeyStrengthener();
+
+	/**
+	 * Returns the file where the calls made to the database should be
+	 * recorded, or null if the calls shouldn't be recorded. The content of
+	 * the database isn't recorded.
+	 */
+	@Nullable
+	File getWorkloadTraceFile();
 }
@@ -12,4 +12,15 @@ public interface MigrationListener {
 	 * This is called when compaction is started while opening the database.
 	 */
 	void onDatabaseCompaction();
+
+	/**
+	 * This is called when compaction has finished while opening the
+	 * database.
+	 *
+	 * @param duration the time taken to compact the database, in
+	 * milliseconds
+	 * @param bytesReclaimed the number of bytes by which compaction reduced
+	 * the size of the database's files
+	 */
+	void onDatabaseCompacted(long duration, long bytesReclaimed);
 }
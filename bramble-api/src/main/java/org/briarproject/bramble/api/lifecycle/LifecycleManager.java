@@ -8,6 +8,8 @@ import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.api.system.Wakeful;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -59,11 +61,21 @@ public interface LifecycleManager {
 	void registerOpenDatabaseHook(OpenDatabaseHook hook);
 
 	/**
-	 * Registers a {@link Service} to be started and stopped. This method
-	 * should be called before {@link #startServices(SecretKey)}.
+	 * Registers a {@link Service} to be started and stopped. The service may
+	 * be started concurrently with any other services, so it must not rely
+	 * on any other service having started. This method should be called
+	 * before {@link #startServices(SecretKey)}.
 	 */
 	void registerService(Service s);
 
+	/**
+	 * Registers a {@link Service} to be started and stopped. The service will
+	 * be started after the given services, which must already be registered,
+	 * and may be started concurrently with any other services. This method
+	 * should be called before {@link #startServices(SecretKey)}.
+	 */
+	void registerService(Service s, Collection<Service> dependencies);
+
 	/**
 	 * Registers an {@link ExecutorService} to be shut down. This method
 	 * should be called before {@link #startServices(SecretKey)}.
@@ -112,6 +124,13 @@ public interface LifecycleManager {
 	 */
 	LifecycleState getLifecycleState();
 
+	/**
+	 * Returns the time in milliseconds taken to start each
+	 * {@link Service}, indexed by the service's class name. Services that
+	 * haven't started yet are not included.
+	 */
+	Map<String, Long> getServiceStartDurations();
+
 	interface OpenDatabaseHook {
 		/**
 		 * Called when the database is being opened, before
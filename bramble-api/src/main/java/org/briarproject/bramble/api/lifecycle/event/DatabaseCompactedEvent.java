@@ -0,0 +1,36 @@
+package org.briarproject.bramble.api.lifecycle.event;
+
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An event that is broadcast when the database has been compacted, either
+ * while opening the database or while it's online.
+ */
+@Immutable
+@NotNullByDefault
+public class DatabaseCompactedEvent extends Event {
+
+	private final long duration, bytesReclaimed;
+
+	public DatabaseCompactedEvent(long duration, long bytesReclaimed) {
+		this.duration = duration;
+		this.bytesReclaimed = bytesReclaimed;
+	}
+
+	/**
+	 * Returns the time taken to compact the database, in milliseconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Returns the number of bytes of space that compaction reclaimed.
+	 */
+	public long getBytesReclaimed() {
+		return bytesReclaimed;
+	}
+}
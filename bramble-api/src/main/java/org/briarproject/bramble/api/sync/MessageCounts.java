@@ -0,0 +1,44 @@
+package org.briarproject.bramble.api.sync;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Counts of the messages in a group, as maintained by the client that owns
+ * the group, and the timestamp of the latest message.
+ */
+@Immutable
+@NotNullByDefault
+public class MessageCounts {
+
+	private final int msgCount, unreadCount;
+	private final long latestMsgTime;
+
+	public MessageCounts(int msgCount, int unreadCount, long latestMsgTime) {
+		this.msgCount = msgCount;
+		this.unreadCount = unreadCount;
+		this.latestMsgTime = latestMsgTime;
+	}
+
+	/**
+	 * Returns the number of messages in the group.
+	 */
+	public int getMsgCount() {
+		return msgCount;
+	}
+
+	/**
+	 * Returns the number of unread messages in the group.
+	 */
+	public int getUnreadCount() {
+		return unreadCount;
+	}
+
+	/**
+	 * Returns the timestamp of the latest message in the group.
+	 */
+	public long getLatestMsgTime() {
+		return latestMsgTime;
+	}
+}
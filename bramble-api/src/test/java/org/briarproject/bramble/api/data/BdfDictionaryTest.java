@@ -5,15 +5,19 @@ import org.briarproject.bramble.api.FormatException;
 import org.briarproject.bramble.test.BrambleTestCase;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import static java.lang.Boolean.TRUE;
 import static java.util.Collections.singletonMap;
 import static org.briarproject.bramble.api.data.BdfDictionary.NULL_VALUE;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -162,6 +166,66 @@ public class BdfDictionaryTest extends BrambleTestCase {
 		assertEquals(4, e.getValue());
 	}
 
+	@Test
+	public void testPutReplacesExistingValue() {
+		BdfDictionary d = new BdfDictionary();
+		assertNull(d.put("b", 1));
+		assertNull(d.put("a", 2));
+		assertEquals(1, d.put("b", 3));
+		assertEquals(2, d.size());
+		assertEquals(2, d.get("a"));
+		assertEquals(3, d.get("b"));
+	}
+
+	@Test
+	public void testRemove() {
+		BdfDictionary d = new BdfDictionary();
+		d.put("a", 1);
+		d.put("b", 2);
+		d.put("c", 3);
+		assertEquals(2, d.remove("b"));
+		assertNull(d.remove("b"));
+		assertFalse(d.containsKey("b"));
+		assertEquals(2, d.size());
+		assertEquals(1, d.get("a"));
+		assertEquals(3, d.get("c"));
+	}
+
+	@Test
+	public void testEntrySetIteratorRemovesEntries() {
+		BdfDictionary d = new BdfDictionary();
+		for (int i = 0; i < 10; i++) d.put("key" + i, i);
+		Iterator<Entry<String, Object>> it = d.entrySet().iterator();
+		while (it.hasNext()) {
+			if ((Integer) it.next().getValue() % 2 == 0) it.remove();
+		}
+		assertEquals(5, d.size());
+		for (int i = 0; i < 10; i++)
+			assertEquals(i % 2 == 1, d.containsKey("key" + i));
+	}
+
+	@Test
+	public void testEntrySetValueWritesThrough() {
+		BdfDictionary d = BdfDictionary.of(new BdfEntry("foo", 1));
+		Entry<String, Object> e = d.entrySet().iterator().next();
+		assertEquals(1, e.setValue(2));
+		assertEquals(2, d.get("foo"));
+	}
+
+	@Test
+	public void testEqualsAndHashCodeMatchOtherMaps() {
+		BdfDictionary d = new BdfDictionary();
+		Map<String, Object> m = new TreeMap<>();
+		for (int i = 9; i >= 0; i--) {
+			d.put("key" + i, i);
+			m.put("key" + i, i);
+		}
+		assertEquals(m, d);
+		assertEquals(d, m);
+		assertEquals(m.hashCode(), d.hashCode());
+		assertEquals(new ArrayList<>(m.keySet()), new ArrayList<>(d.keySet()));
+	}
+
 	@Test(expected = FormatException.class)
 	public void testMissingValueForBooleanThrowsFormatException()
 			throws Exception {
@@ -9,7 +9,7 @@ import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.event.Event;
 import org.briarproject.bramble.api.event.EventListener;
-import org.briarproject.bramble.api.lifecycle.Service;
+import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
 import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.GroupId;
@@ -38,11 +38,12 @@ import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.db.DatabaseComponent.NO_CLEANUP_DEADLINE;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.RUNNING;
 import static org.briarproject.bramble.util.LogUtils.logException;
 
 @ThreadSafe
 @NotNullByDefault
-class CleanupManagerImpl implements CleanupManager, Service, EventListener {
+class CleanupManagerImpl implements CleanupManager, EventListener {
 
 	private static final Logger LOG =
 			getLogger(CleanupManagerImpl.class.getName());
@@ -58,6 +59,14 @@ class CleanupManagerImpl implements CleanupManager, Service, EventListener {
 	@GuardedBy("lock")
 	private final Set<CleanupTask> pending = new HashSet<>();
 
+	/**
+	 * True once all services have started. Cleanup hooks call into clients,
+	 * so no tasks are scheduled before then. Any deadlines that pass in the
+	 * meantime are handled by the first task.
+	 */
+	@GuardedBy("lock")
+	private boolean running = false;
+
 	@Inject
 	CleanupManagerImpl(@DatabaseExecutor Executor dbExecutor,
 			DatabaseComponent db, TaskScheduler taskScheduler, Clock clock) {
@@ -73,25 +82,25 @@ class CleanupManagerImpl implements CleanupManager, Service, EventListener {
 		hooks.put(new ClientMajorVersion(c, majorVersion), hook);
 	}
 
-	@Override
-	public void startService() {
-		maybeScheduleTask(clock.currentTimeMillis());
-	}
-
-	@Override
-	public void stopService() {
-	}
-
 	@Override
 	public void eventOccurred(Event e) {
 		if (e instanceof CleanupTimerStartedEvent) {
 			CleanupTimerStartedEvent a = (CleanupTimerStartedEvent) e;
 			maybeScheduleTask(a.getCleanupDeadline());
+		} else if (e instanceof LifecycleEvent) {
+			LifecycleEvent l = (LifecycleEvent) e;
+			if (l.getLifecycleState() == RUNNING) {
+				synchronized (lock) {
+					running = true;
+				}
+				maybeScheduleTask(clock.currentTimeMillis());
+			}
 		}
 	}
 
 	private void maybeScheduleTask(long deadline) {
 		synchronized (lock) {
+			if (!running) return;
 			for (CleanupTask task : pending) {
 				if (task.deadline <= deadline) return;
 			}
@@ -2,7 +2,6 @@ package org.briarproject.bramble.cleanup;
 
 import org.briarproject.bramble.api.cleanup.CleanupManager;
 import org.briarproject.bramble.api.event.EventBus;
-import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -20,9 +19,8 @@ public class CleanupModule {
 
 	@Provides
 	@Singleton
-	CleanupManager provideCleanupManager(LifecycleManager lifecycleManager,
-			EventBus eventBus, CleanupManagerImpl cleanupManager) {
-		lifecycleManager.registerService(cleanupManager);
+	CleanupManager provideCleanupManager(EventBus eventBus,
+			CleanupManagerImpl cleanupManager) {
 		eventBus.addListener(cleanupManager);
 		return cleanupManager;
 	}
@@ -208,11 +208,7 @@ class ClientHelperImpl implements ClientHelper {
 	@Override
 	public Map<MessageId, BdfDictionary> getMessageMetadataAsDictionary(
 			Transaction txn, GroupId g) throws DbException, FormatException {
-		Map<MessageId, Metadata> raw = db.getMessageMetadata(txn, g);
-		Map<MessageId, BdfDictionary> parsed = new HashMap<>(raw.size());
-		for (Entry<MessageId, Metadata> e : raw.entrySet())
-			parsed.put(e.getKey(), metadataParser.parse(e.getValue()));
-		return parsed;
+		return parse(db.getMessageMetadata(txn, g));
 	}
 
 	@Override
@@ -229,6 +225,18 @@ class ClientHelperImpl implements ClientHelper {
 			FormatException {
 		Metadata metadata = metadataEncoder.encode(query);
 		Map<MessageId, Metadata> raw = db.getMessageMetadata(txn, g, metadata);
+		return parse(raw);
+	}
+
+	@Override
+	public Map<MessageId, BdfDictionary> getMessageMetadataAsDictionary(
+			Transaction txn, GroupId g, Collection<String> keys)
+			throws DbException, FormatException {
+		return parse(db.getMessageMetadata(txn, g, keys));
+	}
+
+	private Map<MessageId, BdfDictionary> parse(Map<MessageId, Metadata> raw)
+			throws FormatException {
 		Map<MessageId, BdfDictionary> parsed = new HashMap<>(raw.size());
 		for (Entry<MessageId, Metadata> e : raw.entrySet())
 			parsed.put(e.getKey(), metadataParser.parse(e.getValue()));
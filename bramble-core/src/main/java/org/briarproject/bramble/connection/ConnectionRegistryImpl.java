@@ -21,10 +21,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
@@ -52,12 +53,24 @@ class ConnectionRegistryImpl implements ConnectionRegistry {
 	@GuardedBy("lock")
 	private final Set<PendingContactId> connectedPendingContacts;
 
+	/**
+	 * Connection counts by contact, by transport and contact, and by
+	 * transport. These are only modified while holding the lock, so lookups
+	 * can read them without locking.
+	 */
+	private final Map<ContactId, Integer> contactCounts;
+	private final Map<TransportId, Map<ContactId, Integer>> transportContacts;
+	private final Map<TransportId, Integer> transportCounts;
+
 	@Inject
 	ConnectionRegistryImpl(EventBus eventBus, PluginConfig pluginConfig) {
 		this.eventBus = eventBus;
 		transportPrefs = pluginConfig.getTransportPreferences();
 		contactConnections = new HashMap<>();
 		connectedPendingContacts = new HashSet<>();
+		contactCounts = new ConcurrentHashMap<>();
+		transportContacts = new ConcurrentHashMap<>();
+		transportCounts = new ConcurrentHashMap<>();
 	}
 
 	@Override
@@ -88,6 +101,9 @@ class ConnectionRegistryImpl implements ConnectionRegistry {
 			}
 			firstConnection = recs.isEmpty();
 			recs.add(new ConnectionRecord(t, conn));
+			increment(contactCounts, c);
+			increment(getContactCounts(t), c);
+			increment(transportCounts, t);
 		}
 		eventBus.broadcast(new ConnectionOpenedEvent(c, t, incoming));
 		if (firstConnection) {
@@ -159,6 +175,9 @@ class ConnectionRegistryImpl implements ConnectionRegistry {
 			if (recs == null || !recs.remove(new ConnectionRecord(t, conn)))
 				throw new IllegalArgumentException();
 			lastConnection = recs.isEmpty();
+			decrement(contactCounts, c);
+			decrement(getContactCounts(t), c);
+			decrement(transportCounts, t);
 		}
 		eventBus.broadcast(
 				new ConnectionClosedEvent(c, t, incoming, exception));
@@ -170,65 +189,67 @@ class ConnectionRegistryImpl implements ConnectionRegistry {
 
 	@Override
 	public Collection<ContactId> getConnectedContacts(TransportId t) {
-		synchronized (lock) {
-			List<ContactId> contactIds = new ArrayList<>();
-			for (Entry<ContactId, List<ConnectionRecord>> e :
-					contactConnections.entrySet()) {
-				for (ConnectionRecord rec : e.getValue()) {
-					if (rec.transportId.equals(t)) {
-						contactIds.add(e.getKey());
-						break;
-					}
-				}
-			}
-			if (LOG.isLoggable(INFO)) {
-				LOG.info(contactIds.size() + " contacts connected: " + t);
-			}
-			return contactIds;
+		List<ContactId> contactIds = new ArrayList<>(
+				getContactCounts(t).keySet());
+		if (LOG.isLoggable(INFO)) {
+			LOG.info(contactIds.size() + " contacts connected: " + t);
 		}
+		return contactIds;
 	}
 
 	@Override
 	public Collection<ContactId> getConnectedOrBetterContacts(TransportId t) {
-		synchronized (lock) {
-			List<TransportId> better = getBetterTransports(t);
-			List<ContactId> contactIds = new ArrayList<>();
-			for (Entry<ContactId, List<ConnectionRecord>> e :
-					contactConnections.entrySet()) {
-				for (ConnectionRecord rec : e.getValue()) {
-					if (rec.transportId.equals(t) ||
-							better.contains(rec.transportId)) {
-						contactIds.add(e.getKey());
-						break;
-					}
-				}
-			}
-			if (LOG.isLoggable(INFO)) {
-				LOG.info(contactIds.size()
-						+ " contacts connected or better: " + t);
-			}
-			return contactIds;
+		Set<ContactId> contactIds =
+				new LinkedHashSet<>(getContactCounts(t).keySet());
+		for (TransportId better : getBetterTransports(t)) {
+			contactIds.addAll(getContactCounts(better).keySet());
 		}
+		if (LOG.isLoggable(INFO)) {
+			LOG.info(contactIds.size()
+					+ " contacts connected or better: " + t);
+		}
+		return new ArrayList<>(contactIds);
 	}
 
 	@Override
 	public boolean isConnected(ContactId c, TransportId t) {
-		synchronized (lock) {
-			List<ConnectionRecord> recs = contactConnections.get(c);
-			if (recs == null) return false;
-			for (ConnectionRecord rec : recs) {
-				if (rec.transportId.equals(t)) return true;
-			}
-			return false;
-		}
+		return getContactCounts(t).containsKey(c);
 	}
 
 	@Override
 	public boolean isConnected(ContactId c) {
-		synchronized (lock) {
-			List<ConnectionRecord> recs = contactConnections.get(c);
-			return recs != null && !recs.isEmpty();
+		return contactCounts.containsKey(c);
+	}
+
+	@Override
+	public int getConnectionCount(TransportId t) {
+		Integer count = transportCounts.get(t);
+		return count == null ? 0 : count;
+	}
+
+	private Map<ContactId, Integer> getContactCounts(TransportId t) {
+		Map<ContactId, Integer> counts = transportContacts.get(t);
+		if (counts == null) {
+			counts = new ConcurrentHashMap<>();
+			Map<ContactId, Integer> old =
+					transportContacts.putIfAbsent(t, counts);
+			if (old != null) counts = old;
 		}
+		return counts;
+	}
+
+	@GuardedBy("lock")
+	private <K> void increment(Map<K, Integer> counts, K key) {
+		Integer count = counts.get(key);
+		counts.put(key, count == null ? 1 : count + 1);
+	}
+
+	@GuardedBy("lock")
+	private <K> void decrement(Map<K, Integer> counts, K key) {
+		Integer count = counts.get(key);
+		if (count == null) throw new IllegalStateException();
+		if (count == 1) counts.remove(key);
+		else counts.put(key, count - 1);
 	}
 
 	@Override
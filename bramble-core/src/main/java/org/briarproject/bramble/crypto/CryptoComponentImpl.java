@@ -21,6 +21,7 @@ import org.briarproject.bramble.api.crypto.PublicKey;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.crypto.SignaturePrivateKey;
 import org.briarproject.bramble.api.crypto.SignaturePublicKey;
+import org.briarproject.bramble.api.crypto.SignedItem;
 import org.briarproject.bramble.api.system.SecureRandomProvider;
 import org.briarproject.bramble.util.Base32;
 import org.briarproject.bramble.util.ByteUtils;
@@ -34,17 +35,24 @@ import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import static java.lang.System.arraycopy;
+import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.crypto.CryptoConstants.HASH_BYTES;
 import static org.briarproject.bramble.api.crypto.CryptoConstants.KEY_TYPE_AGREEMENT;
 import static org.briarproject.bramble.api.crypto.CryptoConstants.KEY_TYPE_SIGNATURE;
+import static org.briarproject.bramble.api.crypto.CryptoConstants.MAC_BYTES;
 import static org.briarproject.bramble.api.crypto.DecryptionResult.INVALID_CIPHERTEXT;
 import static org.briarproject.bramble.api.crypto.DecryptionResult.INVALID_PASSWORD;
 import static org.briarproject.bramble.api.crypto.DecryptionResult.KEY_STRENGTHENER_ERROR;
@@ -66,6 +74,7 @@ class CryptoComponentImpl implements CryptoComponent {
 	private static final byte PBKDF_FORMAT_SCRYPT_STRENGTHENED = 1;
 	private static final byte ONION_HS_PROTOCOL_VERSION = 3;
 	private static final int ONION_CHECKSUM_BYTES = 2;
+	private static final int MAX_LABEL_PREFIXES = 1000;
 
 	private final SecureRandom secureRandom;
 	private final PasswordBasedKdf passwordBasedKdf;
@@ -74,6 +83,48 @@ class CryptoComponentImpl implements CryptoComponent {
 	private final KeyParser agreementKeyParser, signatureKeyParser;
 	private final MessageEncrypter messageEncrypter;
 
+	/**
+	 * Hash and MAC labels are constants, so their encodings are cached.
+	 */
+	private final ConcurrentMap<String, byte[]> labelPrefixes =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Per-thread digest and scratch buffer for hashing.
+	 */
+	private final ThreadLocal<HashState> hashStates =
+			new ThreadLocal<HashState>() {
+				@Override
+				protected HashState initialValue() {
+					return new HashState();
+				}
+			};
+
+	/**
+	 * Keyed digests for MACs are reused by each thread while the key stays
+	 * the same.
+	 */
+	private final KeyedDigestCache macs = new KeyedDigestCache(MAC_BYTES);
+
+	/**
+	 * Signature engines are reused by each thread to avoid repeating their
+	 * setup for every signature.
+	 */
+	private final ThreadLocal<Signature> signatures =
+			new ThreadLocal<Signature>() {
+				@Override
+				protected Signature initialValue() {
+					return new EdSignature();
+				}
+			};
+
+	/**
+	 * Signatures recorded by each thread while verification is deferred, or
+	 * null if verification isn't deferred.
+	 */
+	private final ThreadLocal<List<SignedItem>> deferredSignatures =
+			new ThreadLocal<>();
+
 	@Inject
 	CryptoComponentImpl(SecureRandomProvider secureRandomProvider,
 			PasswordBasedKdf passwordBasedKdf) {
@@ -284,7 +335,7 @@ class CryptoComponentImpl implements CryptoComponent {
 	@Override
 	public byte[] sign(String label, byte[] toSign, PrivateKey privateKey)
 			throws GeneralSecurityException {
-		Signature sig = new EdSignature();
+		Signature sig = signatures.get();
 		sig.initSign(privateKey);
 		updateSignature(sig, label, toSign);
 		return sig.sign();
@@ -294,9 +345,55 @@ class CryptoComponentImpl implements CryptoComponent {
 	public boolean verifySignature(byte[] signature, String label,
 			byte[] signed, PublicKey publicKey)
 			throws GeneralSecurityException {
+		List<SignedItem> deferred = deferredSignatures.get();
+		if (deferred == null) {
+			return verifySignature(signatures.get(), signature, label, signed,
+					publicKey);
+		}
+		if (!publicKey.getKeyType().equals(KEY_TYPE_SIGNATURE))
+			throw new IllegalArgumentException();
+		deferred.add(new SignedItem(signature, label, signed, publicKey));
+		return true;
+	}
+
+	@Override
+	public void startDeferringSignatures() {
+		if (deferredSignatures.get() != null)
+			throw new IllegalStateException();
+		deferredSignatures.set(new ArrayList<>());
+	}
+
+	@Override
+	public List<SignedItem> stopDeferringSignatures() {
+		List<SignedItem> deferred = deferredSignatures.get();
+		if (deferred == null) throw new IllegalStateException();
+		deferredSignatures.remove();
+		return deferred;
+	}
+
+	@Override
+	public boolean[] verifySignatures(List<SignedItem> items)
+			throws GeneralSecurityException {
+		long start = now();
+		Signature sig = signatures.get();
+		boolean[] valid = new boolean[items.size()];
+		int i = 0;
+		for (SignedItem item : items) {
+			valid[i++] = verifySignature(sig, item.getSignature(),
+					item.getLabel(), item.getSigned(), item.getPublicKey());
+		}
+		if (LOG.isLoggable(FINE)) {
+			logDuration(LOG, "Verifying " + items.size() + " signatures",
+					start);
+		}
+		return valid;
+	}
+
+	private boolean verifySignature(Signature sig, byte[] signature,
+			String label, byte[] signed, PublicKey publicKey)
+			throws GeneralSecurityException {
 		if (!publicKey.getKeyType().equals(KEY_TYPE_SIGNATURE))
 			throw new IllegalArgumentException();
-		Signature sig = new EdSignature();
 		sig.initVerify(publicKey);
 		updateSignature(sig, label, signed);
 		return sig.verify(signature);
@@ -316,38 +413,51 @@ class CryptoComponentImpl implements CryptoComponent {
 
 	@Override
 	public byte[] hash(String label, byte[]... inputs) {
-		byte[] labelBytes = StringUtils.toUtf8(label);
-		Digest digest = new Blake2bDigest(256);
-		byte[] length = new byte[INT_32_BYTES];
-		ByteUtils.writeUint32(labelBytes.length, length, 0);
-		digest.update(length, 0, length.length);
-		digest.update(labelBytes, 0, labelBytes.length);
-		for (byte[] input : inputs) {
-			ByteUtils.writeUint32(input.length, length, 0);
-			digest.update(length, 0, length.length);
-			digest.update(input, 0, input.length);
-		}
-		byte[] output = new byte[digest.getDigestSize()];
+		HashState state = hashStates.get();
+		Digest digest = state.digest;
+		// Discard any state left behind by an earlier call that failed
+		digest.reset();
+		updateDigest(digest, state.length, label, inputs);
+		byte[] output = new byte[HASH_BYTES];
 		digest.doFinal(output, 0);
 		return output;
 	}
 
 	@Override
 	public byte[] mac(String label, SecretKey macKey, byte[]... inputs) {
-		byte[] labelBytes = StringUtils.toUtf8(label);
-		Digest mac = new Blake2bDigest(macKey.getBytes(), 32, null, null);
-		byte[] length = new byte[INT_32_BYTES];
-		ByteUtils.writeUint32(labelBytes.length, length, 0);
-		mac.update(length, 0, length.length);
-		mac.update(labelBytes, 0, labelBytes.length);
+		Digest mac = macs.getDigest(macKey.getBytes());
+		updateDigest(mac, hashStates.get().length, label, inputs);
+		byte[] output = new byte[MAC_BYTES];
+		mac.doFinal(output, 0);
+		return output;
+	}
+
+	private void updateDigest(Digest digest, byte[] length, String label,
+			byte[]... inputs) {
+		byte[] labelPrefix = getLabelPrefix(label);
+		digest.update(labelPrefix, 0, labelPrefix.length);
 		for (byte[] input : inputs) {
 			ByteUtils.writeUint32(input.length, length, 0);
-			mac.update(length, 0, length.length);
-			mac.update(input, 0, input.length);
+			digest.update(length, 0, length.length);
+			digest.update(input, 0, input.length);
 		}
-		byte[] output = new byte[mac.getDigestSize()];
-		mac.doFinal(output, 0);
-		return output;
+	}
+
+	/**
+	 * Returns the label encoded as UTF-8 and prefixed with its length, as
+	 * it's included in hashes and MACs.
+	 */
+	private byte[] getLabelPrefix(String label) {
+		byte[] prefix = labelPrefixes.get(label);
+		if (prefix == null) {
+			byte[] labelBytes = StringUtils.toUtf8(label);
+			prefix = new byte[INT_32_BYTES + labelBytes.length];
+			ByteUtils.writeUint32(labelBytes.length, prefix, 0);
+			arraycopy(labelBytes, 0, prefix, INT_32_BYTES, labelBytes.length);
+			if (labelPrefixes.size() < MAX_LABEL_PREFIXES)
+				labelPrefixes.putIfAbsent(label, prefix);
+		}
+		return prefix;
 	}
 
 	@Override
@@ -504,4 +614,9 @@ class CryptoComponentImpl implements CryptoComponent {
 		return Base32.encode(address).toLowerCase(Locale.US);
 	}
 
+	private static class HashState {
+
+		private final Digest digest = new Blake2bDigest(HASH_BYTES * 8);
+		private final byte[] length = new byte[INT_32_BYTES];
+	}
 }
@@ -0,0 +1,53 @@
+package org.briarproject.bramble.crypto;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps a keyed BLAKE2b digest for each thread, so that consecutive MACs
+ * with the same key can reset the digest rather than creating a new one.
+ */
+@ThreadSafe
+@NotNullByDefault
+class KeyedDigestCache {
+
+	private final int digestBytes;
+	private final ThreadLocal<KeyedDigest> digests = new ThreadLocal<>();
+
+	KeyedDigestCache(int digestBytes) {
+		this.digestBytes = digestBytes;
+	}
+
+	/**
+	 * Returns the calling thread's digest, initialised with the given key.
+	 * The digest must not be used after the thread's next call to this
+	 * method.
+	 */
+	Digest getDigest(byte[] key) {
+		KeyedDigest cached = digests.get();
+		if (cached != null && Arrays.equals(cached.key, key)) {
+			// Discard any input left over from an unfinished MAC
+			cached.digest.reset();
+			return cached.digest;
+		}
+		Digest digest = new Blake2bDigest(key, digestBytes, null, null);
+		digests.set(new KeyedDigest(key.clone(), digest));
+		return digest;
+	}
+
+	private static class KeyedDigest {
+
+		private final byte[] key;
+		private final Digest digest;
+
+		private KeyedDigest(byte[] key, Digest digest) {
+			this.key = key;
+			this.digest = digest;
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package org.briarproject.bramble.crypto;
 
 import org.bouncycastle.crypto.Digest;
-import org.bouncycastle.crypto.digests.Blake2bDigest;
 import org.briarproject.bramble.api.crypto.CryptoComponent;
 import org.briarproject.bramble.api.crypto.KeyPair;
 import org.briarproject.bramble.api.crypto.PublicKey;
@@ -17,6 +16,7 @@ import java.security.GeneralSecurityException;
 import javax.inject.Inject;
 
 import static java.lang.System.arraycopy;
+import static java.util.Arrays.fill;
 import static org.briarproject.bramble.api.Bytes.compare;
 import static org.briarproject.bramble.api.transport.TransportConstants.ALICE_HANDSHAKE_HEADER_LABEL;
 import static org.briarproject.bramble.api.transport.TransportConstants.ALICE_HANDSHAKE_TAG_LABEL;
@@ -41,8 +41,29 @@ import static org.briarproject.bramble.util.StringUtils.toUtf8;
 
 class TransportCryptoImpl implements TransportCrypto {
 
+	private static final int TAG_INPUT_BYTES = INT_16_BYTES + INT_64_BYTES;
+	private static final int TAG_MAC_BYTES = 32;
+
 	private final CryptoComponent crypto;
 
+	/**
+	 * Per-thread scratch buffer for the input and output of the tag PRF.
+	 * The buffer is cleared after each use.
+	 */
+	private final ThreadLocal<byte[]> tagBuffers = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[TAG_MAC_BYTES];
+		}
+	};
+
+	/**
+	 * Tags for a range of stream numbers are usually encoded with the same
+	 * key, so each thread reuses its keyed PRF until the key changes.
+	 */
+	private final KeyedDigestCache tagPrfs =
+			new KeyedDigestCache(TAG_MAC_BYTES);
+
 	@Inject
 	TransportCryptoImpl(CryptoComponent crypto) {
 		this.crypto = crypto;
@@ -259,21 +280,20 @@ class TransportCryptoImpl implements TransportCrypto {
 		if (streamNumber < 0 || streamNumber > MAX_32_BIT_UNSIGNED)
 			throw new IllegalArgumentException();
 		// Initialise the PRF
-		Digest prf = new Blake2bDigest(tagKey.getBytes(), 32, null, null);
+		Digest prf = tagPrfs.getDigest(tagKey.getBytes());
 		// The output of the PRF must be long enough to use as a tag
-		int macLength = prf.getDigestSize();
-		if (macLength < TAG_LENGTH) throw new IllegalStateException();
+		if (prf.getDigestSize() < TAG_LENGTH)
+			throw new IllegalStateException();
 		// The input is the protocol version as a 16-bit integer, followed by
 		// the stream number as a 64-bit integer
-		byte[] protocolVersionBytes = new byte[INT_16_BYTES];
-		writeUint16(protocolVersion, protocolVersionBytes, 0);
-		prf.update(protocolVersionBytes, 0, protocolVersionBytes.length);
-		byte[] streamNumberBytes = new byte[INT_64_BYTES];
-		writeUint64(streamNumber, streamNumberBytes, 0);
-		prf.update(streamNumberBytes, 0, streamNumberBytes.length);
-		byte[] mac = new byte[macLength];
-		prf.doFinal(mac, 0);
+		byte[] buf = tagBuffers.get();
+		writeUint16(protocolVersion, buf, 0);
+		writeUint64(streamNumber, buf, INT_16_BYTES);
+		prf.update(buf, 0, TAG_INPUT_BYTES);
+		prf.doFinal(buf, 0);
 		// The output is the first TAG_LENGTH bytes of the MAC
-		arraycopy(mac, 0, tag, 0, TAG_LENGTH);
+		arraycopy(buf, 0, tag, 0, TAG_LENGTH);
+		// Don't leave the output of the PRF in the buffer
+		fill(buf, (byte) 0);
 	}
 }
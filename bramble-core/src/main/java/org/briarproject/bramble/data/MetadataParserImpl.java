@@ -31,12 +31,15 @@ class MetadataParserImpl implements MetadataParser {
 
 	@Override
 	public BdfDictionary parse(Metadata m) throws FormatException {
-		BdfDictionary d = new BdfDictionary();
+		BdfDictionary d = new BdfDictionary(m.size());
 		try {
 			for (Entry<String, byte[]> e : m.entrySet()) {
+				// Clients use a few keys for all their messages, so share
+				// one copy of each key between all the dictionaries
+				String key = e.getKey().intern();
 				// Special case: if key is being removed, value is null
-				if (e.getValue() == REMOVE) d.put(e.getKey(), NULL_VALUE);
-				else d.put(e.getKey(), parseValue(e.getValue()));
+				if (e.getValue() == REMOVE) d.put(key, NULL_VALUE);
+				else d.put(key, parseValue(e.getValue()));
 			}
 		} catch (FormatException e) {
 			throw e;
@@ -1,5 +1,6 @@
 package org.briarproject.bramble.db;
 
+import org.briarproject.bramble.api.UniqueId;
 import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.PendingContact;
@@ -24,6 +25,7 @@ import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageCounts;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
 import org.briarproject.bramble.api.sync.validation.MessageState;
@@ -32,6 +34,7 @@ import org.briarproject.bramble.api.transport.TransportKeySet;
 import org.briarproject.bramble.api.transport.TransportKeys;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -92,6 +95,20 @@ interface Database<T> {
 	 */
 	void commitTransaction(T txn) throws DbException;
 
+	/**
+	 * Reclaims some of the unused space in the database's files without
+	 * closing the database, if the database supports this, and returns the
+	 * number of bytes reclaimed. Each call does a bounded amount of work, so
+	 * it may need to be repeated to reclaim all the unused space.
+	 */
+	long compactIncrementally(T txn) throws DbException;
+
+	/**
+	 * Returns true if {@link #compactIncrementally(Object)} can reclaim
+	 * space while the database is open.
+	 */
+	boolean supportsOnlineCompaction();
+
 	/**
 	 * Stores a contact associated with the given local and remote pseudonyms,
 	 * and returns an ID for the contact.
@@ -137,6 +154,12 @@ interface Database<T> {
 	 */
 	void addOfferedMessage(T txn, ContactId c, MessageId m) throws DbException;
 
+	/**
+	 * Records that the given messages have been offered by the given contact.
+	 */
+	void addOfferedMessages(T txn, ContactId c, Collection<MessageId> offered)
+			throws DbException;
+
 	/**
 	 * Stores a pending contact.
 	 */
@@ -334,6 +357,13 @@ interface Database<T> {
 	 */
 	Metadata getGroupMetadata(T txn, GroupId g) throws DbException;
 
+	/**
+	 * Returns all groups.
+	 * <p/>
+	 * Read-only.
+	 */
+	Collection<Group> getGroups(T txn) throws DbException;
+
 	/**
 	 * Returns all groups belonging to the given client.
 	 * <p/>
@@ -363,6 +393,16 @@ interface Database<T> {
 	Map<ContactId, Boolean> getGroupVisibility(T txn, GroupId g)
 			throws DbException;
 
+	/**
+	 * Returns the visibility of every group that's visible to at least one
+	 * contact, in the form returned by
+	 * {@link #getGroupVisibility(Object, GroupId)}.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, Map<ContactId, Boolean>> getGroupVisibilities(T txn)
+			throws DbException;
+
 	/**
 	 * Returns the identity for local pseudonym with the given ID.
 	 * <p/>
@@ -386,6 +426,29 @@ interface Database<T> {
 	 */
 	Message getMessage(T txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the stored message counts for the given groups. Groups for
+	 * which no counts have been stored are omitted from the returned map.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, MessageCounts> getMessageCounts(T txn,
+			Collection<GroupId> groups) throws DbException;
+
+	/**
+	 * Returns a stream over the body of the given message, starting at the
+	 * given offset within the body. The body is read from the database as
+	 * the stream is read, so the stream must be read and closed before the
+	 * transaction ends.
+	 * <p/>
+	 * Read-only.
+	 *
+	 * @throws MessageDeletedException if the message has been deleted
+	 * @throws DbException if the offset is outside the body
+	 */
+	InputStream getMessageBody(T txn, MessageId m, int offset)
+			throws DbException;
+
 	/**
 	 * Returns the IDs and states of all dependencies of the given message.
 	 * For missing dependencies and dependencies in other groups, the state
@@ -447,6 +510,17 @@ interface Database<T> {
 	Map<MessageId, Metadata> getMessageMetadata(T txn, GroupId g,
 			Metadata query) throws DbException;
 
+	/**
+	 * Returns the metadata for all delivered messages in the given group,
+	 * including only the entries with the given keys. Messages that have
+	 * metadata but none of the given keys are included with empty metadata.
+	 * At least one key must be given.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<MessageId, Metadata> getMessageMetadata(T txn, GroupId g,
+			Collection<String> keys) throws DbException;
+
 	/**
 	 * Returns the metadata for the given delivered or pending message.
 	 * This is only meant to be used by the ValidationManager.
@@ -544,6 +618,16 @@ interface Database<T> {
 	Collection<MessageId> getUnackedMessagesToSend(T txn, ContactId c)
 			throws DbException;
 
+	/**
+	 * Returns the IDs of those messages among the given messages that are
+	 * visible to the given contact, as defined by
+	 * {@link #containsVisibleMessage(Object, ContactId, MessageId)}.
+	 * <p/>
+	 * Read-only.
+	 */
+	Collection<MessageId> getVisibleMessages(T txn, ContactId c,
+			Collection<MessageId> ids) throws DbException;
+
 	/**
 	 * Returns the total length, including headers, of all messages that are
 	 * eligible to be sent to the given contact. This may include messages
@@ -634,6 +718,17 @@ interface Database<T> {
 	Collection<MessageId> getRequestedMessagesToSend(T txn, ContactId c,
 			long capacity, long maxLatency) throws DbException;
 
+	/**
+	 * Returns the ID of the message in the given group that stores the
+	 * client session with the given ID, or null if no message has been
+	 * recorded for the session.
+	 * <p/>
+	 * Read-only.
+	 */
+	@Nullable
+	MessageId getSessionStorageId(T txn, GroupId g, UniqueId sessionId)
+			throws DbException;
+
 	/**
 	 * Returns all settings in the given namespace.
 	 * <p/>
@@ -723,6 +818,13 @@ interface Database<T> {
 	 */
 	boolean raiseSeenFlag(T txn, ContactId c, MessageId m) throws DbException;
 
+	/**
+	 * Marks the given messages as having been seen by the given contact and
+	 * as needing to be acknowledged to the contact.
+	 */
+	void raiseSeenAndAckFlags(T txn, ContactId c, Collection<MessageId> ids)
+			throws DbException;
+
 	/**
 	 * Removes a contact from the database.
 	 */
@@ -841,6 +943,13 @@ interface Database<T> {
 	void setMessageState(T txn, MessageId m, MessageState state)
 			throws DbException;
 
+	/**
+	 * Stores the message counts for the given group, replacing any existing
+	 * counts.
+	 */
+	void setMessageCounts(T txn, GroupId g, MessageCounts counts)
+			throws DbException;
+
 	/**
 	 * Sets the reordering window for the given transport keys in the given
 	 * time period.
@@ -848,6 +957,13 @@ interface Database<T> {
 	void setReorderingWindow(T txn, KeySetId k, TransportId t,
 			long timePeriod, long base, byte[] bitmap) throws DbException;
 
+	/**
+	 * Records that the client session with the given ID is stored in the
+	 * given message, replacing any existing record for the session.
+	 */
+	void setSessionStorageId(T txn, GroupId g, UniqueId sessionId,
+			MessageId m) throws DbException;
+
 	/**
 	 * Sets the versions of the sync protocol supported by the given contact.
 	 */
@@ -886,6 +1002,25 @@ interface Database<T> {
 	void updateRetransmissionData(T txn, ContactId c, MessageId m,
 			long maxLatency) throws DbException;
 
+	/**
+	 * Updates the transmission count, expiry time and max latency of the given
+	 * messages with respect to the given contact.
+	 *
+	 * @param maxLatency latency of the transport over which the messages were
+	 * sent.
+	 */
+	void updateRetransmissionData(T txn, ContactId c,
+			Collection<MessageId> ids, long maxLatency) throws DbException;
+
+	/**
+	 * Adds the given deltas to the stored message counts for the given group,
+	 * and updates the latest message time if the given timestamp is later.
+	 *
+	 * @return False if no counts have been stored for the group
+	 */
+	boolean updateMessageCounts(T txn, GroupId g, int msgCountDelta,
+			int unreadCountDelta, long timestamp) throws DbException;
+
 	/**
 	 * Stores the given transport keys, deleting any keys they have replaced.
 	 */
@@ -0,0 +1,153 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.Group.Visibility;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static org.briarproject.bramble.api.sync.Group.Visibility.INVISIBLE;
+import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.api.sync.Group.Visibility.VISIBLE;
+
+/**
+ * An in-memory copy of the contacts, groups and group visibilities in the
+ * database, which are small and rarely change.
+ * <p/>
+ * The cache is guarded by the {@link DatabaseComponentImpl}'s transaction
+ * lock: it may be read by any transaction, and is only modified by a
+ * read-write transaction, which excludes all other transactions. Changes
+ * are written through to the cache as they're made, and are undone if the
+ * transaction doesn't commit.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class DatabaseCache {
+
+	private final Set<ContactId> contacts = new HashSet<>();
+	private final Map<GroupId, Group> groups = new HashMap<>();
+	private final Map<GroupId, Map<ContactId, Boolean>> visibilities =
+			new HashMap<>();
+
+	/**
+	 * Actions that undo the changes made by the current transaction, most
+	 * recent first.
+	 */
+	private final LinkedList<Runnable> undo = new LinkedList<>();
+
+	DatabaseCache(Collection<ContactId> contacts, Collection<Group> groups,
+			Map<GroupId, Map<ContactId, Boolean>> visibilities) {
+		this.contacts.addAll(contacts);
+		for (Group g : groups) this.groups.put(g.getId(), g);
+		for (Entry<GroupId, Map<ContactId, Boolean>> e :
+				visibilities.entrySet()) {
+			this.visibilities.put(e.getKey(), new HashMap<>(e.getValue()));
+		}
+	}
+
+	boolean containsContact(ContactId c) {
+		return contacts.contains(c);
+	}
+
+	boolean containsGroup(GroupId g) {
+		return groups.containsKey(g);
+	}
+
+	@Nullable
+	Group getGroup(GroupId g) {
+		return groups.get(g);
+	}
+
+	Visibility getGroupVisibility(ContactId c, GroupId g) {
+		Map<ContactId, Boolean> visible = visibilities.get(g);
+		if (visible == null) return INVISIBLE;
+		Boolean shared = visible.get(c);
+		if (shared == null) return INVISIBLE;
+		return shared ? SHARED : VISIBLE;
+	}
+
+	Map<ContactId, Boolean> getGroupVisibility(GroupId g) {
+		Map<ContactId, Boolean> visible = visibilities.get(g);
+		if (visible == null) return new HashMap<>();
+		return new HashMap<>(visible);
+	}
+
+	void addContact(ContactId c) {
+		if (contacts.add(c)) undo.addFirst(() -> contacts.remove(c));
+	}
+
+	void removeContact(ContactId c) {
+		if (!contacts.remove(c)) return;
+		undo.addFirst(() -> contacts.add(c));
+		List<GroupId> visible = new ArrayList<>();
+		for (Entry<GroupId, Map<ContactId, Boolean>> e :
+				visibilities.entrySet()) {
+			if (e.getValue().containsKey(c)) visible.add(e.getKey());
+		}
+		for (GroupId g : visible) setGroupVisibility(c, g, INVISIBLE);
+	}
+
+	void addGroup(Group g) {
+		GroupId id = g.getId();
+		if (groups.put(id, g) == null) undo.addFirst(() -> groups.remove(id));
+	}
+
+	void removeGroup(GroupId g) {
+		Group removed = groups.remove(g);
+		if (removed == null) return;
+		undo.addFirst(() -> groups.put(g, removed));
+		for (ContactId c : getGroupVisibility(g).keySet())
+			setGroupVisibility(c, g, INVISIBLE);
+	}
+
+	void setGroupVisibility(ContactId c, GroupId g, Visibility v) {
+		Visibility old = getGroupVisibility(c, g);
+		if (old == v) return;
+		putGroupVisibility(c, g, v);
+		undo.addFirst(() -> putGroupVisibility(c, g, old));
+	}
+
+	private void putGroupVisibility(ContactId c, GroupId g, Visibility v) {
+		Map<ContactId, Boolean> visible = visibilities.get(g);
+		if (v == INVISIBLE) {
+			if (visible == null) return;
+			visible.remove(c);
+			if (visible.isEmpty()) visibilities.remove(g);
+		} else {
+			if (visible == null) {
+				visible = new HashMap<>();
+				visibilities.put(g, visible);
+			}
+			visible.put(c, v == SHARED);
+		}
+	}
+
+	/**
+	 * Keeps the changes made by the current transaction.
+	 */
+	void commit() {
+		undo.clear();
+	}
+
+	/**
+	 * Undoes the changes made by the current transaction, if it hasn't
+	 * committed.
+	 */
+	void rollback() {
+		for (Runnable r : undo) r.run();
+		undo.clear();
+	}
+}
@@ -0,0 +1,95 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.Cancellable;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseExecutor;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.lifecycle.Service;
+import org.briarproject.bramble.api.lifecycle.event.DatabaseCompactedEvent;
+import org.briarproject.bramble.api.system.TaskScheduler;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
+
+/**
+ * Periodically reclaims unused space in the database while it's open, so
+ * the database doesn't need to be compacted every time it's closed.
+ */
+@ThreadSafe
+@NotNullByDefault
+class DatabaseCompactor implements Service {
+
+	private static final Logger LOG =
+			getLogger(DatabaseCompactor.class.getName());
+
+	/**
+	 * How often to compact the database, in milliseconds.
+	 */
+	static final long COMPACTION_INTERVAL = 10 * 60 * 1000; // 10 minutes
+
+	private final DatabaseComponent db;
+	private final Executor dbExecutor;
+	private final TaskScheduler scheduler;
+	private final EventBus eventBus;
+	private final AtomicBoolean used = new AtomicBoolean(false);
+
+	@Nullable
+	private volatile Cancellable compactionTask = null;
+
+	@Inject
+	DatabaseCompactor(DatabaseComponent db,
+			@DatabaseExecutor Executor dbExecutor, TaskScheduler scheduler,
+			EventBus eventBus) {
+		this.db = db;
+		this.dbExecutor = dbExecutor;
+		this.scheduler = scheduler;
+		this.eventBus = eventBus;
+	}
+
+	@Override
+	public void startService() {
+		if (used.getAndSet(true)) throw new IllegalStateException();
+		compactionTask = scheduler.scheduleWithFixedDelay(this::compact,
+				dbExecutor, COMPACTION_INTERVAL, COMPACTION_INTERVAL,
+				MILLISECONDS);
+	}
+
+	@Override
+	public void stopService() {
+		Cancellable compactionTask = this.compactionTask;
+		if (compactionTask != null) compactionTask.cancel();
+	}
+
+	@DatabaseExecutor
+	void compact() {
+		try {
+			long start = now();
+			long reclaimed = db.transactionWithResult(false,
+					db::compactIncrementally);
+			if (reclaimed == 0) return;
+			long duration = now() - start;
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Reclaimed " + reclaimed + " bytes in "
+						+ duration + " ms");
+			}
+			eventBus.broadcast(new DatabaseCompactedEvent(duration,
+					reclaimed));
+		} catch (DbException e) {
+			logException(LOG, WARNING, e);
+		}
+	}
+}
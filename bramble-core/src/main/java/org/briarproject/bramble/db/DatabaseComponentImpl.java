@@ -1,6 +1,7 @@
 package org.briarproject.bramble.db;
 
 import org.briarproject.bramble.api.cleanup.event.CleanupTimerStartedEvent;
+import org.briarproject.bramble.api.UniqueId;
 import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.PendingContact;
@@ -51,6 +52,7 @@ import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageCounts;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
 import org.briarproject.bramble.api.sync.Offer;
@@ -73,10 +75,14 @@ import org.briarproject.bramble.api.transport.TransportKeySet;
 import org.briarproject.bramble.api.transport.TransportKeys;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -94,6 +100,7 @@ import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
 import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERED;
 import static org.briarproject.bramble.api.sync.validation.MessageState.UNKNOWN;
 import static org.briarproject.bramble.db.DatabaseConstants.MAX_OFFERED_MESSAGES;
+import static org.briarproject.bramble.db.DatabaseConstants.MAX_ONLINE_COMPACTION_TIME;
 import static org.briarproject.bramble.util.LogUtils.logDuration;
 import static org.briarproject.bramble.util.LogUtils.logException;
 import static org.briarproject.bramble.util.LogUtils.now;
@@ -115,6 +122,10 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			new ReentrantReadWriteLock(true);
 	private final Visitor visitor = new CommitActionVisitor();
 
+	// Null until the database has been opened
+	@Nullable
+	private volatile DatabaseCache cache = null;
+
 	@Inject
 	DatabaseComponentImpl(Database<T> db, Class<T> txnClass, EventBus eventBus,
 			@EventExecutor Executor eventExecutor,
@@ -130,6 +141,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public boolean open(SecretKey key, @Nullable MigrationListener listener)
 			throws DbException {
 		boolean reopened = db.open(key, listener);
+		cache = loadCache();
 		shutdownManager.addShutdownHook(() -> {
 			try {
 				close();
@@ -174,12 +186,17 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		if (transaction.isCommitted()) throw new IllegalStateException();
 		transaction.setCommitted();
 		db.commitTransaction(txn);
+		DatabaseCache cache = this.cache;
+		if (cache != null && !transaction.isReadOnly()) cache.commit();
 	}
 
 	@Override
 	public void endTransaction(Transaction transaction) {
 		try {
 			T txn = txnClass.cast(transaction.unbox());
+			// Undo any changes to the cache if the transaction didn't commit
+			DatabaseCache cache = this.cache;
+			if (cache != null && !transaction.isReadOnly()) cache.rollback();
 			if (transaction.isCommitted()) {
 				for (CommitAction a : transaction.getActions())
 					a.accept(visitor);
@@ -236,6 +253,57 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return txnClass.cast(transaction.unbox());
 	}
 
+	private DatabaseCache loadCache() throws DbException {
+		long start = now();
+		T txn = db.startTransaction();
+		try {
+			Collection<ContactId> contacts = new ArrayList<>();
+			for (Contact c : db.getContacts(txn)) contacts.add(c.getId());
+			DatabaseCache cache = new DatabaseCache(contacts,
+					db.getGroups(txn), db.getGroupVisibilities(txn));
+			db.commitTransaction(txn);
+			logDuration(LOG, "Loading cache", start);
+			return cache;
+		} catch (DbException | RuntimeException e) {
+			db.abortTransaction(txn);
+			throw e;
+		}
+	}
+
+	private boolean contactExists(T txn, ContactId c) throws DbException {
+		DatabaseCache cache = this.cache;
+		if (cache == null) return db.containsContact(txn, c);
+		return cache.containsContact(c);
+	}
+
+	private boolean groupExists(T txn, GroupId g) throws DbException {
+		DatabaseCache cache = this.cache;
+		if (cache == null) return db.containsGroup(txn, g);
+		return cache.containsGroup(g);
+	}
+
+	private Group loadGroup(T txn, GroupId g) throws DbException {
+		DatabaseCache cache = this.cache;
+		if (cache == null) return db.getGroup(txn, g);
+		Group group = cache.getGroup(g);
+		if (group == null) throw new DbException(new DbStateException());
+		return group;
+	}
+
+	private Visibility loadGroupVisibility(T txn, ContactId c, GroupId g)
+			throws DbException {
+		DatabaseCache cache = this.cache;
+		if (cache == null) return db.getGroupVisibility(txn, c, g);
+		return cache.getGroupVisibility(c, g);
+	}
+
+	private Map<ContactId, Boolean> loadGroupVisibility(T txn, GroupId g)
+			throws DbException {
+		DatabaseCache cache = this.cache;
+		if (cache == null) return db.getGroupVisibility(txn, g);
+		return cache.getGroupVisibility(g);
+	}
+
 	@Override
 	public ContactId addContact(Transaction transaction, Author remote,
 			AuthorId local, @Nullable PublicKey handshake, boolean verified)
@@ -249,6 +317,8 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		if (db.containsContact(txn, remote.getId(), local))
 			throw new ContactExistsException(local, remote);
 		ContactId c = db.addContact(txn, remote, local, handshake, verified);
+		DatabaseCache cache = this.cache;
+		if (cache != null) cache.addContact(c);
 		transaction.attach(new ContactAddedEvent(c, verified));
 		return c;
 	}
@@ -257,8 +327,10 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public void addGroup(Transaction transaction, Group g) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsGroup(txn, g.getId())) {
+		if (!groupExists(txn, g.getId())) {
 			db.addGroup(txn, g);
+			DatabaseCache cache = this.cache;
+			if (cache != null) cache.addGroup(g);
 			transaction.attach(new GroupAddedEvent(g));
 		}
 	}
@@ -280,7 +352,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsGroup(txn, m.getGroupId()))
+		if (!groupExists(txn, m.getGroupId()))
 			throw new NoSuchGroupException();
 		if (!db.containsMessage(txn, m.getId())) {
 			db.addMessage(txn, m, DELIVERED, shared, temporary, null);
@@ -289,7 +361,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 					DELIVERED));
 			if (shared) {
 				Map<ContactId, Boolean> visibility =
-						db.getGroupVisibility(txn, m.getGroupId());
+						loadGroupVisibility(txn, m.getGroupId());
 				transaction.attach(new MessageSharedEvent(m.getId(),
 						m.getGroupId(), visibility));
 			}
@@ -327,7 +399,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			TransportKeys k) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		if (!db.containsTransport(txn, k.getTransportId()))
 			throw new NoSuchTransportException();
@@ -350,11 +422,28 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public boolean containsAcksToSend(Transaction transaction, ContactId c)
 			throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		return db.containsAcksToSend(txn, c);
 	}
 
+	@Override
+	public long compactIncrementally(Transaction transaction)
+			throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		long start = now(), total = 0;
+		while (true) {
+			long reclaimed = db.compactIncrementally(txn);
+			if (reclaimed == 0) break;
+			total += reclaimed;
+			// Give way to any transactions that are waiting to start
+			if (lock.hasQueuedThreads()) break;
+			if (now() - start >= MAX_ONLINE_COMPACTION_TIME) break;
+		}
+		return total;
+	}
+
 	@Override
 	public boolean containsContact(Transaction transaction, AuthorId remote,
 			AuthorId local) throws DbException {
@@ -368,7 +457,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public boolean containsGroup(Transaction transaction, GroupId g)
 			throws DbException {
 		T txn = unbox(transaction);
-		return db.containsGroup(txn, g);
+		return groupExists(txn, g);
 	}
 
 	@Override
@@ -382,7 +471,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public boolean containsMessagesToSend(Transaction transaction, ContactId c,
 			long maxLatency, boolean eager) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		return db.containsMessagesToSend(txn, c, maxLatency, eager);
 	}
@@ -427,7 +516,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			int maxMessages) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		Collection<MessageId> ids = db.getMessagesToAck(txn, c, maxMessages);
 		if (ids.isEmpty()) return null;
@@ -441,7 +530,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			ContactId c, long capacity, long maxLatency) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		Collection<MessageId> ids =
 				db.getMessagesToSend(txn, c, capacity, maxLatency);
@@ -459,13 +548,41 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return messages;
 	}
 
+	@Override
+	public Collection<Message> generateBatch(Transaction transaction,
+			ContactId c, Collection<MessageId> ids, long maxLatency,
+			boolean markAsSent) throws DbException {
+		if (markAsSent && transaction.isReadOnly()) {
+			throw new IllegalArgumentException();
+		}
+		T txn = unbox(transaction);
+		if (!contactExists(txn, c))
+			throw new NoSuchContactException();
+		long totalLength = 0;
+		List<MessageId> visible = new ArrayList<>(ids.size());
+		List<Message> messages = new ArrayList<>(ids.size());
+		for (MessageId m : ids) {
+			if (db.containsVisibleMessage(txn, c, m)) {
+				Message message = db.getMessage(txn, m);
+				totalLength += message.getRawLength();
+				visible.add(m);
+				messages.add(message);
+			}
+		}
+		if (!markAsSent || visible.isEmpty()) return messages;
+		db.updateRetransmissionData(txn, c, visible, maxLatency);
+		db.lowerRequestedFlag(txn, c, visible);
+		transaction.attach(new MessagesSentEvent(c, visible, totalLength));
+		return messages;
+	}
+
 	@Nullable
 	@Override
 	public Offer generateOffer(Transaction transaction, ContactId c,
 			int maxMessages, long maxLatency) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		Collection<MessageId> ids =
 				db.getMessagesToOffer(txn, c, maxMessages, maxLatency);
@@ -481,7 +598,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			int maxMessages) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		Collection<MessageId> ids = db.getMessagesToRequest(txn, c,
 				maxMessages);
@@ -496,7 +613,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			ContactId c, long capacity, long maxLatency) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		Collection<MessageId> ids =
 				db.getRequestedMessagesToSend(txn, c, capacity, maxLatency);
@@ -518,7 +635,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Contact getContact(Transaction transaction, ContactId c)
 			throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		return db.getContact(txn, c);
 	}
@@ -550,9 +667,9 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Group getGroup(Transaction transaction, GroupId g)
 			throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsGroup(txn, g))
+		if (!groupExists(txn, g))
 			throw new NoSuchGroupException();
-		return db.getGroup(txn, g);
+		return loadGroup(txn, g);
 	}
 
 	@Override
@@ -568,11 +685,18 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Metadata getGroupMetadata(Transaction transaction, GroupId g)
 			throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsGroup(txn, g))
+		if (!groupExists(txn, g))
 			throw new NoSuchGroupException();
 		return db.getGroupMetadata(txn, g);
 	}
 
+	@Override
+	public Collection<Group> getGroups(Transaction transaction)
+			throws DbException {
+		T txn = unbox(transaction);
+		return db.getGroups(txn);
+	}
+
 	@Override
 	public Collection<Group> getGroups(Transaction transaction, ClientId c,
 			int majorVersion) throws DbException {
@@ -584,9 +708,9 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Visibility getGroupVisibility(Transaction transaction, ContactId c,
 			GroupId g) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
-		return db.getGroupVisibility(txn, c, g);
+		return loadGroupVisibility(txn, c, g);
 	}
 
 	@Override
@@ -614,11 +738,28 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getMessage(txn, m);
 	}
 
+	@Override
+	public Map<GroupId, MessageCounts> getMessageCounts(
+			Transaction transaction, Collection<GroupId> groups)
+			throws DbException {
+		T txn = unbox(transaction);
+		return db.getMessageCounts(txn, groups);
+	}
+
+	@Override
+	public InputStream getMessageBody(Transaction transaction, MessageId m,
+			int offset) throws DbException {
+		T txn = unbox(transaction);
+		if (!db.containsMessage(txn, m))
+			throw new NoSuchMessageException();
+		return db.getMessageBody(txn, m, offset);
+	}
+
 	@Override
 	public Collection<MessageId> getMessageIds(Transaction transaction,
 			GroupId g) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsGroup(txn, g))
+		if (!groupExists(txn, g))
 			throw new NoSuchGroupException();
 		return db.getMessageIds(txn, g);
 	}
@@ -627,7 +768,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Collection<MessageId> getMessageIds(Transaction transaction,
 			GroupId g, Metadata query) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsGroup(txn, g))
+		if (!groupExists(txn, g))
 			throw new NoSuchGroupException();
 		return db.getMessageIds(txn, g, query);
 	}
@@ -636,7 +777,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Collection<MessageId> getMessagesToAck(Transaction transaction,
 			ContactId c) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		return db.getMessagesToAck(txn, c, Integer.MAX_VALUE);
 	}
@@ -645,7 +786,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Collection<MessageId> getMessagesToSend(Transaction transaction,
 			ContactId c, long capacity, long maxLatency) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		return db.getMessagesToSend(txn, c, capacity, maxLatency);
 	}
@@ -682,7 +823,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Map<MessageId, Metadata> getMessageMetadata(Transaction transaction,
 			GroupId g) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsGroup(txn, g))
+		if (!groupExists(txn, g))
 			throw new NoSuchGroupException();
 		return db.getMessageMetadata(txn, g);
 	}
@@ -691,11 +832,20 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Map<MessageId, Metadata> getMessageMetadata(Transaction transaction,
 			GroupId g, Metadata query) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsGroup(txn, g))
+		if (!groupExists(txn, g))
 			throw new NoSuchGroupException();
 		return db.getMessageMetadata(txn, g, query);
 	}
 
+	@Override
+	public Map<MessageId, Metadata> getMessageMetadata(Transaction transaction,
+			GroupId g, Collection<String> keys) throws DbException {
+		T txn = unbox(transaction);
+		if (!groupExists(txn, g))
+			throw new NoSuchGroupException();
+		return db.getMessageMetadata(txn, g, keys);
+	}
+
 	@Override
 	public Metadata getMessageMetadata(Transaction transaction, MessageId m)
 			throws DbException {
@@ -728,11 +878,11 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Collection<MessageStatus> getMessageStatus(Transaction transaction,
 			ContactId c, GroupId g) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
-		if (!db.containsGroup(txn, g))
+		if (!groupExists(txn, g))
 			throw new NoSuchGroupException();
-		if (db.getGroupVisibility(txn, c, g) == INVISIBLE) {
+		if (loadGroupVisibility(txn, c, g) == INVISIBLE) {
 			// No status rows exist - return default statuses
 			Collection<MessageStatus> statuses = new ArrayList<>();
 			for (MessageId m : db.getMessageIds(txn, g))
@@ -746,7 +896,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public MessageStatus getMessageStatus(Transaction transaction, ContactId c,
 			MessageId m) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		if (!db.containsMessage(txn, m))
 			throw new NoSuchMessageException();
@@ -764,7 +914,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throw new IllegalArgumentException();
 		}
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		if (!db.containsVisibleMessage(txn, c, m)) return null;
 		Message message = db.getMessage(txn, m);
@@ -781,7 +931,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public Collection<MessageId> getUnackedMessagesToSend(
 			Transaction transaction, ContactId c) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		return db.getUnackedMessagesToSend(txn, c);
 	}
@@ -790,7 +940,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public void resetUnackedMessagesToSend(Transaction transaction, ContactId c)
 			throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		db.resetUnackedMessagesToSend(txn, c);
 	}
@@ -799,7 +949,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public long getUnackedMessageBytesToSend(Transaction transaction,
 			ContactId c) throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		return db.getUnackedMessageBytesToSend(txn, c);
 	}
@@ -852,6 +1002,16 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getPendingContacts(txn);
 	}
 
+	@Nullable
+	@Override
+	public MessageId getSessionStorageId(Transaction transaction, GroupId g,
+			UniqueId sessionId) throws DbException {
+		T txn = unbox(transaction);
+		if (!groupExists(txn, g))
+			throw new NoSuchGroupException();
+		return db.getSessionStorageId(txn, g, sessionId);
+	}
+
 	@Override
 	public Settings getSettings(Transaction transaction, String namespace)
 			throws DbException {
@@ -863,7 +1023,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 	public List<Byte> getSyncVersions(Transaction transaction, ContactId c)
 			throws DbException {
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		return db.getSyncVersions(txn, c);
 	}
@@ -899,7 +1059,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			Metadata meta) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsGroup(txn, g))
+		if (!groupExists(txn, g))
 			throw new NoSuchGroupException();
 		db.mergeGroupMetadata(txn, g, meta);
 	}
@@ -934,7 +1094,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		Collection<MessageId> acked = new ArrayList<>();
 		for (MessageId m : a.getMessageIds()) {
@@ -962,9 +1122,9 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
-		if (db.getGroupVisibility(txn, c, m.getGroupId()) != INVISIBLE) {
+		if (loadGroupVisibility(txn, c, m.getGroupId()) != INVISIBLE) {
 			if (db.containsMessage(txn, m.getId())) {
 				db.raiseSeenFlag(txn, c, m.getId());
 				db.raiseAckFlag(txn, c, m.getId());
@@ -981,23 +1141,25 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
-		boolean ack = false, request = false;
 		int count = db.countOfferedMessages(txn, c);
+		// Look up all the offered messages at once
+		Set<MessageId> visible =
+				new HashSet<>(db.getVisibleMessages(txn, c, o.getMessageIds()));
+		Set<MessageId> requested = new LinkedHashSet<>();
 		for (MessageId m : o.getMessageIds()) {
-			if (db.containsVisibleMessage(txn, c, m)) {
-				db.raiseSeenFlag(txn, c, m);
-				db.raiseAckFlag(txn, c, m);
-				ack = true;
-			} else if (count < MAX_OFFERED_MESSAGES) {
-				db.addOfferedMessage(txn, c, m);
-				request = true;
-				count++;
-			}
+			if (count >= MAX_OFFERED_MESSAGES) break;
+			if (!visible.contains(m) && requested.add(m)) count++;
+		}
+		if (!visible.isEmpty()) {
+			db.raiseSeenAndAckFlags(txn, c, visible);
+			transaction.attach(new MessageToAckEvent(c));
+		}
+		if (!requested.isEmpty()) {
+			db.addOfferedMessages(txn, c, requested);
+			transaction.attach(new MessageToRequestEvent(c));
 		}
-		if (ack) transaction.attach(new MessageToAckEvent(c));
-		if (request) transaction.attach(new MessageToRequestEvent(c));
 	}
 
 	@Override
@@ -1005,7 +1167,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		boolean requested = false;
 		for (MessageId m : r.getMessageIds()) {
@@ -1023,9 +1185,11 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		db.removeContact(txn, c);
+		DatabaseCache cache = this.cache;
+		if (cache != null) cache.removeContact(c);
 		transaction.attach(new ContactRemovedEvent(c));
 	}
 
@@ -1035,11 +1199,13 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
 		GroupId id = g.getId();
-		if (!db.containsGroup(txn, id))
+		if (!groupExists(txn, id))
 			throw new NoSuchGroupException();
 		Collection<ContactId> affected =
-				db.getGroupVisibility(txn, id).keySet();
+				loadGroupVisibility(txn, id).keySet();
 		db.removeGroup(txn, id);
+		DatabaseCache cache = this.cache;
+		if (cache != null) cache.removeGroup(id);
 		transaction.attach(new GroupRemovedEvent(g));
 		transaction.attach(new GroupVisibilityUpdatedEvent(INVISIBLE,
 				affected));
@@ -1052,6 +1218,11 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		T txn = unbox(transaction);
 		if (!db.containsIdentity(txn, a))
 			throw new NoSuchIdentityException();
+		DatabaseCache cache = this.cache;
+		if (cache != null) {
+			// The identity's contacts will be removed along with it
+			for (ContactId c : db.getContacts(txn, a)) cache.removeContact(c);
+		}
 		db.removeIdentity(txn, a);
 		transaction.attach(new IdentityRemovedEvent(a));
 	}
@@ -1111,7 +1282,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			Collection<MessageId> acked) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		db.lowerAckFlag(txn, c, acked);
 	}
@@ -1131,7 +1302,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		db.setContactVerified(txn, c);
 		transaction.attach(new ContactVerifiedEvent(c));
@@ -1142,7 +1313,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			@Nullable String alias) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		transaction.attach(new ContactAliasChangedEvent(c, alias));
 		db.setContactAlias(txn, c, alias);
@@ -1153,15 +1324,17 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			GroupId g, Visibility v) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
-		if (!db.containsGroup(txn, g))
+		if (!groupExists(txn, g))
 			throw new NoSuchGroupException();
-		Visibility old = db.getGroupVisibility(txn, c, g);
+		Visibility old = loadGroupVisibility(txn, c, g);
 		if (old == v) return;
 		if (old == INVISIBLE) db.addGroupVisibility(txn, c, g, v == SHARED);
 		else if (v == INVISIBLE) db.removeGroupVisibility(txn, c, g);
 		else db.setGroupVisibility(txn, c, g, v == SHARED);
+		DatabaseCache cache = this.cache;
+		if (cache != null) cache.setGroupVisibility(c, g, v);
 		List<ContactId> affected = singletonList(c);
 		transaction.attach(new GroupVisibilityUpdatedEvent(v, affected));
 	}
@@ -1197,7 +1370,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throw new IllegalArgumentException("Shared undelivered message");
 		db.setMessageShared(txn, m, true);
 		GroupId g = db.getGroupId(txn, m);
-		Map<ContactId, Boolean> visibility = db.getGroupVisibility(txn, g);
+		Map<ContactId, Boolean> visibility = loadGroupVisibility(txn, g);
 		transaction.attach(new MessageSharedEvent(m, g, visibility));
 	}
 
@@ -1217,7 +1390,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			Collection<MessageId> sent, long maxLatency) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		long totalLength = 0;
 		List<MessageId> visible = new ArrayList<>(sent.size());
@@ -1225,9 +1398,9 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			if (db.containsVisibleMessage(txn, c, m)) {
 				visible.add(m);
 				totalLength += db.getMessageLength(txn, m);
-				db.updateRetransmissionData(txn, c, m, maxLatency);
 			}
 		}
+		db.updateRetransmissionData(txn, c, visible, maxLatency);
 		db.lowerRequestedFlag(txn, c, visible);
 		if (!visible.isEmpty()) {
 			transaction.attach(new MessagesSentEvent(c, visible, totalLength));
@@ -1259,6 +1432,16 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		db.setHandshakeKeyPair(txn, local, publicKey, privateKey);
 	}
 
+	@Override
+	public void setMessageCounts(Transaction transaction, GroupId g,
+			MessageCounts counts) throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		if (!groupExists(txn, g))
+			throw new NoSuchGroupException();
+		db.setMessageCounts(txn, g, counts);
+	}
+
 	@Override
 	public void setReorderingWindow(Transaction transaction, KeySetId k,
 			TransportId t, long timePeriod, long base, byte[] bitmap)
@@ -1270,12 +1453,26 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		db.setReorderingWindow(txn, k, t, timePeriod, base, bitmap);
 	}
 
+	@Override
+	public void setSessionStorageId(Transaction transaction, GroupId g,
+			UniqueId sessionId, MessageId m) throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		if (!groupExists(txn, g))
+			throw new NoSuchGroupException();
+		if (!db.containsMessage(txn, m))
+			throw new NoSuchMessageException();
+		if (!db.getGroupId(txn, m).equals(g))
+			throw new IllegalArgumentException();
+		db.setSessionStorageId(txn, g, sessionId, m);
+	}
+
 	@Override
 	public void setSyncVersions(Transaction transaction, ContactId c,
 			List<Byte> supported) throws DbException {
 		if (transaction.isReadOnly()) throw new IllegalArgumentException();
 		T txn = unbox(transaction);
-		if (!db.containsContact(txn, c))
+		if (!contactExists(txn, c))
 			throw new NoSuchContactException();
 		db.setSyncVersions(txn, c, supported);
 		transaction.attach(new SyncVersionsUpdatedEvent(c, supported));
@@ -1315,6 +1512,18 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		db.stopCleanupTimer(txn, m);
 	}
 
+	@Override
+	public boolean updateMessageCounts(Transaction transaction, GroupId g,
+			int msgCountDelta, int unreadCountDelta, long timestamp)
+			throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		if (!groupExists(txn, g))
+			throw new NoSuchGroupException();
+		return db.updateMessageCounts(txn, g, msgCountDelta, unreadCountDelta,
+				timestamp);
+	}
+
 	@Override
 	public void updateTransportKeys(Transaction transaction,
 			Collection<TransportKeySet> keys) throws DbException {
@@ -28,4 +28,18 @@ interface DatabaseConstants {
 	 * whether the database is marked as dirty.
 	 */
 	String DIRTY_KEY = "dirty";
+
+	/**
+	 * The minimum percentage of the database's file space that should hold
+	 * live data. The database is only compacted when it's closed or opened
+	 * if its fill rate is lower than this, or if its fill rate can't be
+	 * measured.
+	 */
+	int MIN_FILL_RATE = 50;
+
+	/**
+	 * The maximum time in milliseconds that online compaction will hold the
+	 * database's write lock.
+	 */
+	long MAX_ONLINE_COMPACTION_TIME = 1000;
 }
@@ -2,24 +2,36 @@ package org.briarproject.bramble.db;
 
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.db.TransactionManager;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.event.EventExecutor;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.bramble.api.lifecycle.ShutdownManager;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.api.system.TaskScheduler;
 
+import java.io.File;
 import java.sql.Connection;
 import java.util.concurrent.Executor;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
 
+import static org.briarproject.bramble.db.WorkloadTracer.createTracingDatabaseComponent;
+
 @Module
 public class DatabaseModule {
 
+	public static class EagerSingletons {
+		@Inject
+		DatabaseCompactor databaseCompactor;
+	}
+
 	@Provides
 	@Singleton
 	Database<Connection> provideDatabase(DatabaseConfig config,
@@ -29,11 +41,30 @@ public class DatabaseModule {
 
 	@Provides
 	@Singleton
-	DatabaseComponent provideDatabaseComponent(Database<Connection> db,
-			EventBus eventBus, @EventExecutor Executor eventExecutor,
-			ShutdownManager shutdownManager) {
-		return new DatabaseComponentImpl<>(db, Connection.class, eventBus,
-				eventExecutor, shutdownManager);
+	DatabaseComponent provideDatabaseComponent(DatabaseConfig config,
+			Database<Connection> db, EventBus eventBus,
+			@EventExecutor Executor eventExecutor,
+			ShutdownManager shutdownManager, Clock clock) {
+		DatabaseComponent dbc = new DatabaseComponentImpl<>(db,
+				Connection.class, eventBus, eventExecutor, shutdownManager);
+		File traceFile = config.getWorkloadTraceFile();
+		if (traceFile == null) return dbc;
+		return createTracingDatabaseComponent(dbc, clock, traceFile);
+	}
+
+	@Provides
+	@Singleton
+	DatabaseCompactor provideDatabaseCompactor(
+			LifecycleManager lifecycleManager, Database<Connection> database,
+			DatabaseComponent db, @DatabaseExecutor Executor dbExecutor,
+			TaskScheduler scheduler, EventBus eventBus) {
+		DatabaseCompactor databaseCompactor =
+				new DatabaseCompactor(db, dbExecutor, scheduler, eventBus);
+		// Compacting a database that can't reclaim space while it's open
+		// would only hold the write lock for nothing
+		if (database.supportsOnlineCompaction())
+			lifecycleManager.registerService(databaseCompactor);
+		return databaseCompactor;
 	}
 
 	@Provides
@@ -117,6 +117,19 @@ class H2Database extends JdbcDatabase {
 		return url;
 	}
 
+	@Override
+	protected int getFillRate(Connection txn) {
+		// H2 1.4.192 doesn't report its fill rate, and the MVStore doesn't
+		// count space freed by deletions until its retention time has
+		// passed, so always compact when closing
+		return -1;
+	}
+
+	@Override
+	protected File getDatabaseDirectory() {
+		return config.getDatabaseDirectory();
+	}
+
 	@Override
 	protected void compactAndClose() throws DbException {
 		Connection c = null;
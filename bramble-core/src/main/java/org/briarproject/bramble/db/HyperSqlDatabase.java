@@ -101,6 +101,17 @@ class HyperSqlDatabase extends JdbcDatabase {
 		return DriverManager.getConnection(url + ";crypt_key=" + hex);
 	}
 
+	@Override
+	protected int getFillRate(Connection txn) {
+		// HSQLDB doesn't report its fill rate, so always compact when closing
+		return -1;
+	}
+
+	@Override
+	protected File getDatabaseDirectory() {
+		return config.getDatabaseDirectory();
+	}
+
 	@Override
 	protected void compactAndClose() throws DbException {
 		Connection c = null;
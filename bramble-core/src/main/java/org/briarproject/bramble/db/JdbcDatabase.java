@@ -1,5 +1,6 @@
 package org.briarproject.bramble.db;
 
+import org.briarproject.bramble.api.UniqueId;
 import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.PendingContact;
@@ -29,6 +30,7 @@ import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageCounts;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
@@ -41,6 +43,10 @@ import org.briarproject.bramble.api.transport.TransportKeySet;
 import org.briarproject.bramble.api.transport.TransportKeys;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -51,6 +57,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -64,6 +71,7 @@ import java.util.logging.Logger;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
+import static java.lang.Math.max;
 import static java.sql.Types.BINARY;
 import static java.sql.Types.BOOLEAN;
 import static java.sql.Types.INTEGER;
@@ -86,8 +94,10 @@ import static org.briarproject.bramble.api.sync.validation.MessageState.PENDING;
 import static org.briarproject.bramble.api.sync.validation.MessageState.UNKNOWN;
 import static org.briarproject.bramble.db.DatabaseConstants.DB_SETTINGS_NAMESPACE;
 import static org.briarproject.bramble.db.DatabaseConstants.DIRTY_KEY;
+import static org.briarproject.bramble.db.DatabaseConstants.MIN_FILL_RATE;
 import static org.briarproject.bramble.db.DatabaseConstants.SCHEMA_VERSION_KEY;
 import static org.briarproject.bramble.db.ExponentialBackoff.calculateExpiry;
+import static org.briarproject.bramble.db.JdbcUtils.getPlaceholders;
 import static org.briarproject.bramble.db.JdbcUtils.tryToClose;
 import static org.briarproject.bramble.util.LogUtils.logDuration;
 import static org.briarproject.bramble.util.LogUtils.logException;
@@ -101,7 +111,7 @@ import static org.briarproject.bramble.util.LogUtils.now;
 abstract class JdbcDatabase implements Database<Connection> {
 
 	// Package access for testing
-	static final int CODE_SCHEMA_VERSION = 50;
+	static final int CODE_SCHEMA_VERSION = 52;
 
 	/**
 	 * The maximum number of idle connections to keep open.
@@ -143,7 +153,7 @@ abstract class JdbcDatabase implements Database<Connection> {
 					+ " handshakePublicKey _BINARY," // Null if key is unknown
 					+ " localAuthorId _HASH NOT NULL,"
 					+ " verified BOOLEAN NOT NULL,"
-					+ " syncVersions _BINARY DEFAULT '00' NOT NULL,"
+					+ " syncVersions _BINARY DEFAULT X'00' NOT NULL,"
 					+ " PRIMARY KEY (contactId),"
 					+ " FOREIGN KEY (localAuthorId)"
 					+ " REFERENCES localAuthors (authorId)"
@@ -180,6 +190,18 @@ abstract class JdbcDatabase implements Database<Connection> {
 					+ " REFERENCES groups (groupId)"
 					+ " ON DELETE CASCADE)";
 
+	private static final String CREATE_GROUP_COUNTS =
+			"CREATE TABLE groupCounts"
+					+ " (groupId _HASH NOT NULL,"
+					+ " msgCount INT NOT NULL,"
+					+ " unreadCount INT NOT NULL,"
+					+ " latestMsgTime BIGINT NOT NULL,"
+					+ " PRIMARY KEY (groupId),"
+					+ " FOREIGN KEY (groupId)"
+					+ " REFERENCES groups (groupId)"
+					+ " ON DELETE CASCADE,"
+					+ " CHECK (unreadCount >= 0))";
+
 	private static final String CREATE_MESSAGES =
 			"CREATE TABLE messages"
 					+ " (messageId _HASH NOT NULL,"
@@ -231,6 +253,19 @@ abstract class JdbcDatabase implements Database<Connection> {
 					+ " REFERENCES messages (messageId)"
 					+ " ON DELETE CASCADE)";
 
+	private static final String CREATE_CLIENT_SESSIONS =
+			"CREATE TABLE clientSessions"
+					+ " (groupId _HASH NOT NULL,"
+					+ " sessionId _HASH NOT NULL,"
+					+ " messageId _HASH NOT NULL,"
+					+ " PRIMARY KEY (groupId, sessionId),"
+					+ " FOREIGN KEY (groupId)"
+					+ " REFERENCES groups (groupId)"
+					+ " ON DELETE CASCADE,"
+					+ " FOREIGN KEY (messageId)"
+					+ " REFERENCES messages (messageId)"
+					+ " ON DELETE CASCADE)";
+
 	private static final String CREATE_OFFERS =
 			"CREATE TABLE offers"
 					+ " (messageId _HASH NOT NULL," // Not a foreign key
@@ -333,9 +368,21 @@ abstract class JdbcDatabase implements Database<Connection> {
 			"CREATE INDEX IF NOT EXISTS groupsByClientIdMajorVersion"
 					+ " ON groups (clientId, majorVersion)";
 
-	private static final String INDEX_MESSAGE_METADATA_BY_GROUP_ID_STATE =
-			"CREATE INDEX IF NOT EXISTS messageMetadataByGroupIdState"
-					+ " ON messageMetadata (groupId, state)";
+	/**
+	 * Superseded by {@link #INDEX_MESSAGE_METADATA_BY_QUERY_TERM}, which has
+	 * the same leading columns.
+	 */
+	private static final String DROP_INDEX_MESSAGE_METADATA_BY_GROUP_ID =
+			"DROP INDEX IF EXISTS messageMetadataByGroupIdState";
+
+	/**
+	 * Each key in a metadata query is a range of this index, so clients'
+	 * queries don't need to scan all the metadata in the group. The values
+	 * are left out of the index because their size is unbounded.
+	 */
+	private static final String INDEX_MESSAGE_METADATA_BY_QUERY_TERM =
+			"CREATE INDEX IF NOT EXISTS messageMetadataByGroupIdStateKey"
+					+ " ON messageMetadata (groupId, state, metaKey)";
 
 	private static final String INDEX_MESSAGE_DEPENDENCIES_BY_DEPENDENCY_ID =
 			"CREATE INDEX IF NOT EXISTS messageDependenciesByDependencyId"
@@ -354,6 +401,27 @@ abstract class JdbcDatabase implements Database<Connection> {
 			"CREATE INDEX IF NOT EXISTS statusesByContactIdTxCountTimestamp"
 					+ " ON statuses (contactId, txCount, timestamp)";
 
+	/**
+	 * The leading columns of this index match the equality predicates shared
+	 * by all the queries that select messages to send or offer, so the
+	 * sendable messages for a contact form a contiguous range of the index,
+	 * ordered by timestamp. The index is maintained by the database whenever
+	 * visibility, sharing, validation state, deletion or the seen flag
+	 * changes.
+	 */
+	private static final String INDEX_STATUSES_BY_SEND_QUEUE =
+			"CREATE INDEX IF NOT EXISTS statusesBySendQueue"
+					+ " ON statuses (contactId, state, groupShared,"
+					+ " messageShared, deleted, seen, timestamp)";
+
+	private static final String INDEX_STATUSES_BY_CONTACT_ID_ACK =
+			"CREATE INDEX IF NOT EXISTS statusesByContactIdAck"
+					+ " ON statuses (contactId, ack)";
+
+	private static final String INDEX_OFFERS_BY_CONTACT_ID =
+			"CREATE INDEX IF NOT EXISTS offersByContactId"
+					+ " ON offers (contactId)";
+
 	private static final String INDEX_MESSAGES_BY_CLEANUP_DEADLINE =
 			"CREATE INDEX IF NOT EXISTS messagesByCleanupDeadline"
 					+ " ON messages (cleanupDeadline)";
@@ -378,6 +446,12 @@ abstract class JdbcDatabase implements Database<Connection> {
 
 	private volatile boolean wasDirtyOnInitialisation = false;
 
+	private final Lock messageIdFilterLock = new ReentrantLock();
+
+	// Null until the filter is first needed after opening the database
+	@Nullable
+	private volatile MessageIdFilter messageIdFilter = null;
+
 	protected abstract Connection createConnection()
 			throws DbException, SQLException;
 
@@ -385,6 +459,17 @@ abstract class JdbcDatabase implements Database<Connection> {
 	// migrations or if the database was not shut down cleanly
 	protected abstract void compactAndClose() throws DbException;
 
+	/**
+	 * Returns the percentage of the database's file space that holds live
+	 * data, or -1 if this can't be measured.
+	 */
+	protected abstract int getFillRate(Connection txn) throws DbException;
+
+	/**
+	 * Returns the directory containing the database's files.
+	 */
+	protected abstract File getDatabaseDirectory();
+
 	JdbcDatabase(DatabaseTypes databaseTypes, MessageFactory messageFactory,
 			Clock clock) {
 		this.dbTypes = databaseTypes;
@@ -401,6 +486,8 @@ abstract class JdbcDatabase implements Database<Connection> {
 		} catch (ClassNotFoundException e) {
 			throw new DbException(e);
 		}
+		// The message ID filter will be built when it's first needed
+		messageIdFilter = null;
 		// Open the database and create the tables and indexes if necessary
 		boolean compact;
 		Connection txn = startTransaction();
@@ -409,7 +496,8 @@ abstract class JdbcDatabase implements Database<Connection> {
 				Settings s = getSettings(txn, DB_SETTINGS_NAMESPACE);
 				wasDirtyOnInitialisation = isDirty(s);
 				boolean migrated = migrateSchema(txn, s, listener);
-				compact = wasDirtyOnInitialisation || migrated;
+				compact = (wasDirtyOnInitialisation || migrated)
+						&& shouldCompact(txn);
 			} else {
 				wasDirtyOnInitialisation = false;
 				createTables(txn);
@@ -430,8 +518,16 @@ abstract class JdbcDatabase implements Database<Connection> {
 		if (compact) {
 			if (listener != null) listener.onDatabaseCompaction();
 			long start = now();
+			long sizeBefore = getDatabaseSize();
 			compactAndClose();
-			logDuration(LOG, "Compacting database", start);
+			long duration = now() - start;
+			long reclaimed = max(0, sizeBefore - getDatabaseSize());
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Compacting database took " + duration
+						+ " ms and reclaimed " + reclaimed + " bytes");
+			}
+			if (listener != null)
+				listener.onDatabaseCompacted(duration, reclaimed);
 			// Allow the next transaction to reopen the DB
 			connectionsLock.lock();
 			try {
@@ -447,6 +543,90 @@ abstract class JdbcDatabase implements Database<Connection> {
 		return wasDirtyOnInitialisation;
 	}
 
+	/**
+	 * Returns the {@link MessageIdFilter}, building it from the messages
+	 * visible to the given transaction if it hasn't been built since the
+	 * database was opened. Building the filter on first use rather than
+	 * when opening the database keeps a full scan of the messages table off
+	 * the startup path.
+	 * <p/>
+	 * The caller must ensure that no other transaction can add messages
+	 * concurrently, otherwise they may be missing from the filter.
+	 */
+	private MessageIdFilter getMessageIdFilter(Connection txn)
+			throws DbException {
+		MessageIdFilter filter = messageIdFilter;
+		if (filter != null) return filter;
+		messageIdFilterLock.lock();
+		try {
+			filter = messageIdFilter;
+			if (filter == null) filter = rebuildMessageIdFilter(txn);
+			return filter;
+		} finally {
+			messageIdFilterLock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the {@link MessageIdFilter} with a new filter containing the
+	 * IDs of all messages visible to the given transaction, and returns the
+	 * new filter.
+	 * <p/>
+	 * The caller must ensure that no other transaction can add messages
+	 * concurrently, otherwise they may be missing from the filter.
+	 */
+	private MessageIdFilter rebuildMessageIdFilter(Connection txn)
+			throws DbException {
+		long start = now();
+		MessageIdFilter old = messageIdFilter;
+		if (old != null && LOG.isLoggable(INFO)) {
+			LOG.info("Rebuilding message ID filter: " + old.getStats());
+		}
+		Statement s = null;
+		ResultSet rs = null;
+		try {
+			s = txn.createStatement();
+			rs = s.executeQuery("SELECT COUNT (messageId) FROM messages");
+			if (!rs.next()) throw new DbStateException();
+			int count = rs.getInt(1);
+			if (rs.next()) throw new DbStateException();
+			rs.close();
+			MessageIdFilter filter = new MessageIdFilter(count);
+			rs = s.executeQuery("SELECT messageId FROM messages");
+			while (rs.next()) filter.add(new MessageId(rs.getBytes(1)));
+			rs.close();
+			s.close();
+			messageIdFilter = filter;
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Built message ID filter: " + filter.getStats());
+			}
+			logDuration(LOG, "Building message ID filter", start);
+			return filter;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(s, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Returns false if the given message is definitely not stored in the
+	 * database, so the caller can skip looking it up.
+	 */
+	private boolean mightContainMessage(Connection txn, MessageId m)
+			throws DbException {
+		return getMessageIdFilter(txn).mightContain(m);
+	}
+
+	/**
+	 * Records the given number of messages that the filter reported as
+	 * possibly stored but that weren't found in the database.
+	 */
+	private void recordFalsePositives(int count) {
+		MessageIdFilter filter = messageIdFilter;
+		if (count > 0 && filter != null) filter.recordFalsePositives(count);
+	}
+
 	/**
 	 * Compares the schema version stored in the database with the schema
 	 * version used by the current code and applies any suitable migrations to
@@ -499,7 +679,9 @@ abstract class JdbcDatabase implements Database<Connection> {
 				new Migration46_47(dbTypes),
 				new Migration47_48(),
 				new Migration48_49(),
-				new Migration49_50()
+				new Migration49_50(),
+				new Migration50_51(dbTypes),
+				new Migration51_52(dbTypes)
 		);
 	}
 
@@ -510,6 +692,31 @@ abstract class JdbcDatabase implements Database<Connection> {
 		mergeSettings(txn, s, DB_SETTINGS_NAMESPACE);
 	}
 
+	/**
+	 * Returns true if the database's fill rate is low enough that it should
+	 * be compacted, or if the fill rate can't be measured.
+	 */
+	boolean shouldCompact(Connection txn) throws DbException {
+		int fillRate = getFillRate(txn);
+		if (LOG.isLoggable(INFO)) LOG.info("Fill rate " + fillRate + "%");
+		return fillRate < MIN_FILL_RATE;
+	}
+
+	/**
+	 * Returns the total size of the database's files in bytes.
+	 */
+	long getDatabaseSize() {
+		return getSize(getDatabaseDirectory());
+	}
+
+	private long getSize(File f) {
+		File[] children = f.listFiles();
+		if (children == null) return f.length();
+		long size = 0;
+		for (File child : children) size += getSize(child);
+		return size;
+	}
+
 	private boolean isDirty(Settings s) {
 		return s.getBoolean(DIRTY_KEY, false);
 	}
@@ -536,9 +743,11 @@ abstract class JdbcDatabase implements Database<Connection> {
 			s.executeUpdate(dbTypes.replaceTypes(CREATE_GROUPS));
 			s.executeUpdate(dbTypes.replaceTypes(CREATE_GROUP_METADATA));
 			s.executeUpdate(dbTypes.replaceTypes(CREATE_GROUP_VISIBILITIES));
+			s.executeUpdate(dbTypes.replaceTypes(CREATE_GROUP_COUNTS));
 			s.executeUpdate(dbTypes.replaceTypes(CREATE_MESSAGES));
 			s.executeUpdate(dbTypes.replaceTypes(CREATE_MESSAGE_METADATA));
 			s.executeUpdate(dbTypes.replaceTypes(CREATE_MESSAGE_DEPENDENCIES));
+			s.executeUpdate(dbTypes.replaceTypes(CREATE_CLIENT_SESSIONS));
 			s.executeUpdate(dbTypes.replaceTypes(CREATE_OFFERS));
 			s.executeUpdate(dbTypes.replaceTypes(CREATE_STATUSES));
 			s.executeUpdate(dbTypes.replaceTypes(CREATE_TRANSPORTS));
@@ -558,11 +767,15 @@ abstract class JdbcDatabase implements Database<Connection> {
 			s = txn.createStatement();
 			s.executeUpdate(INDEX_CONTACTS_BY_AUTHOR_ID);
 			s.executeUpdate(INDEX_GROUPS_BY_CLIENT_ID_MAJOR_VERSION);
-			s.executeUpdate(INDEX_MESSAGE_METADATA_BY_GROUP_ID_STATE);
+			s.executeUpdate(DROP_INDEX_MESSAGE_METADATA_BY_GROUP_ID);
+			s.executeUpdate(INDEX_MESSAGE_METADATA_BY_QUERY_TERM);
 			s.executeUpdate(INDEX_MESSAGE_DEPENDENCIES_BY_DEPENDENCY_ID);
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_GROUP_ID);
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_TIMESTAMP);
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_TX_COUNT_TIMESTAMP);
+			s.executeUpdate(INDEX_STATUSES_BY_SEND_QUEUE);
+			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_ACK);
+			s.executeUpdate(INDEX_OFFERS_BY_CONTACT_ID);
 			s.executeUpdate(INDEX_MESSAGES_BY_CLEANUP_DEADLINE);
 			s.close();
 		} catch (SQLException e) {
@@ -653,6 +866,17 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public long compactIncrementally(Connection txn) throws DbException {
+		// Online compaction isn't supported by default
+		return 0;
+	}
+
+	@Override
+	public boolean supportsOnlineCompaction() {
+		return false;
+	}
+
 	private void returnConnectionToPool(Connection txn) {
 		boolean shouldClose;
 		connectionsLock.lock();
@@ -669,6 +893,10 @@ abstract class JdbcDatabase implements Database<Connection> {
 	}
 
 	void closeAllConnections() {
+		MessageIdFilter filter = messageIdFilter;
+		if (filter != null && LOG.isLoggable(INFO)) {
+			LOG.info("Message ID filter: " + filter.getStats());
+		}
 		boolean interrupted = false;
 		connectionsLock.lock();
 		try {
@@ -868,6 +1096,14 @@ abstract class JdbcDatabase implements Database<Connection> {
 			int affected = ps.executeUpdate();
 			if (affected != 1) throw new DbStateException();
 			ps.close();
+			// If the filter hasn't been built yet, the message will be added
+			// when it is. If the transaction is aborted, the filter will
+			// contain a false positive, which is harmless
+			MessageIdFilter filter = messageIdFilter;
+			if (filter != null) {
+				filter.add(m.getId());
+				if (filter.isFull()) rebuildMessageIdFilter(txn);
+			}
 			// Create a status row for each contact that can see the group
 			Map<ContactId, Boolean> visibility =
 					getGroupVisibility(txn, m.getGroupId());
@@ -959,6 +1195,49 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public void addOfferedMessages(Connection txn, ContactId c,
+			Collection<MessageId> offered) throws DbException {
+		if (offered.isEmpty()) return;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			// Find out which of the messages have already been offered
+			String sql = "SELECT messageId FROM offers"
+					+ " WHERE contactId = ?"
+					+ " AND messageId IN (" + getPlaceholders(offered.size())
+					+ ")";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, c.getInt());
+			int index = 2;
+			for (MessageId m : offered) ps.setBytes(index++, m.getBytes());
+			rs = ps.executeQuery();
+			Set<MessageId> added = new LinkedHashSet<>(offered);
+			while (rs.next()) added.remove(new MessageId(rs.getBytes(1)));
+			rs.close();
+			ps.close();
+			if (added.isEmpty()) return;
+			// Insert the rest with a single batch
+			sql = "INSERT INTO offers (messageId, contactId) VALUES (?, ?)";
+			ps = txn.prepareStatement(sql);
+			for (MessageId m : added) {
+				ps.setBytes(1, m.getBytes());
+				ps.setInt(2, c.getInt());
+				ps.addBatch();
+			}
+			int[] batchAffected = ps.executeBatch();
+			if (batchAffected.length != added.size())
+				throw new DbStateException();
+			for (int rows : batchAffected)
+				if (rows != 1) throw new DbStateException();
+			ps.close();
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public void addMessageDependency(Connection txn, Message dependent,
 			MessageId dependency, MessageState dependentState)
@@ -1261,6 +1540,7 @@ abstract class JdbcDatabase implements Database<Connection> {
 	@Override
 	public boolean containsMessage(Connection txn, MessageId m)
 			throws DbException {
+		if (!mightContainMessage(txn, m)) return false;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		try {
@@ -1272,6 +1552,7 @@ abstract class JdbcDatabase implements Database<Connection> {
 			if (rs.next()) throw new DbStateException();
 			rs.close();
 			ps.close();
+			if (!found) recordFalsePositives(1);
 			return found;
 		} catch (SQLException e) {
 			tryToClose(rs, LOG, WARNING);
@@ -1391,21 +1672,28 @@ abstract class JdbcDatabase implements Database<Connection> {
 	@Override
 	public boolean containsVisibleMessage(Connection txn, ContactId c,
 			MessageId m) throws DbException {
+		if (!mightContainMessage(txn, m)) return false;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		try {
-			String sql = "SELECT NULL FROM statuses"
-					+ " WHERE messageId = ? AND contactId = ?"
-					+ " AND messageShared = TRUE";
+			// Join with the messages table so a message that isn't stored
+			// can be told apart from one that isn't visible
+			String sql = "SELECT s.messageShared FROM messages AS m"
+					+ " LEFT OUTER JOIN statuses AS s"
+					+ " ON m.messageId = s.messageId AND s.contactId = ?"
+					+ " WHERE m.messageId = ?";
 			ps = txn.prepareStatement(sql);
-			ps.setBytes(1, m.getBytes());
-			ps.setInt(2, c.getInt());
+			ps.setInt(1, c.getInt());
+			ps.setBytes(2, m.getBytes());
 			rs = ps.executeQuery();
 			boolean found = rs.next();
+			// A null value means there's no status row for the contact
+			boolean visible = found && rs.getBoolean(1);
 			if (rs.next()) throw new DbStateException();
 			rs.close();
 			ps.close();
-			return found;
+			if (!found) recordFalsePositives(1);
+			return visible;
 		} catch (SQLException e) {
 			tryToClose(rs, LOG, WARNING);
 			tryToClose(ps, LOG, WARNING);
@@ -1704,6 +1992,33 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Collection<Group> getGroups(Connection txn) throws DbException {
+		Statement s = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT groupId, clientId, majorVersion, descriptor"
+					+ " FROM groups";
+			s = txn.createStatement();
+			rs = s.executeQuery(sql);
+			List<Group> groups = new ArrayList<>();
+			while (rs.next()) {
+				GroupId id = new GroupId(rs.getBytes(1));
+				ClientId clientId = new ClientId(rs.getString(2));
+				int majorVersion = rs.getInt(3);
+				byte[] descriptor = rs.getBytes(4);
+				groups.add(new Group(id, clientId, majorVersion, descriptor));
+			}
+			rs.close();
+			s.close();
+			return groups;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(s, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Collection<Group> getGroups(Connection txn, ClientId c,
 			int majorVersion) throws DbException {
@@ -1782,6 +2097,37 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Map<GroupId, Map<ContactId, Boolean>> getGroupVisibilities(
+			Connection txn) throws DbException {
+		Statement s = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT groupId, contactId, shared"
+					+ " FROM groupVisibilities";
+			s = txn.createStatement();
+			rs = s.executeQuery(sql);
+			Map<GroupId, Map<ContactId, Boolean>> visibilities =
+					new HashMap<>();
+			while (rs.next()) {
+				GroupId g = new GroupId(rs.getBytes(1));
+				Map<ContactId, Boolean> visible = visibilities.get(g);
+				if (visible == null) {
+					visible = new HashMap<>();
+					visibilities.put(g, visible);
+				}
+				visible.put(new ContactId(rs.getInt(2)), rs.getBoolean(3));
+			}
+			rs.close();
+			s.close();
+			return visibilities;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(s, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Identity getIdentity(Connection txn, AuthorId a) throws DbException {
 		PreparedStatement ps = null;
@@ -1890,6 +2236,79 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Map<GroupId, MessageCounts> getMessageCounts(Connection txn,
+			Collection<GroupId> groups) throws DbException {
+		if (groups.isEmpty()) return Collections.emptyMap();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT groupId, msgCount, unreadCount, latestMsgTime"
+					+ " FROM groupCounts"
+					+ " WHERE groupId IN (" + getPlaceholders(groups.size())
+					+ ")";
+			ps = txn.prepareStatement(sql);
+			int index = 1;
+			for (GroupId g : groups) ps.setBytes(index++, g.getBytes());
+			rs = ps.executeQuery();
+			Map<GroupId, MessageCounts> counts = new HashMap<>();
+			while (rs.next()) {
+				GroupId g = new GroupId(rs.getBytes(1));
+				counts.put(g, new MessageCounts(rs.getInt(2), rs.getInt(3),
+						rs.getLong(4)));
+			}
+			rs.close();
+			ps.close();
+			return counts;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public InputStream getMessageBody(Connection txn, MessageId m, int offset)
+			throws DbException {
+		if (offset < 0) throw new DbException();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT length, raw FROM messages"
+					+ " WHERE messageId = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, m.getBytes());
+			rs = ps.executeQuery();
+			if (!rs.next()) throw new DbStateException();
+			int length = rs.getInt(1);
+			// The stream is closed along with the result set
+			InputStream in = rs.getBinaryStream(2);
+			if (in == null) {
+				rs.close();
+				ps.close();
+				throw new MessageDeletedException();
+			}
+			long toSkip = MESSAGE_HEADER_LENGTH + offset;
+			if (toSkip > length) {
+				rs.close();
+				ps.close();
+				throw new DbException();
+			}
+			// Skip the header and the part of the body before the offset
+			while (toSkip > 0) {
+				long skipped = in.skip(toSkip);
+				if (skipped <= 0) throw new EOFException();
+				toSkip -= skipped;
+			}
+			// The result set and statement are closed with the stream
+			return new ResultSetInputStream(in, rs, ps);
+		} catch (SQLException | IOException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Collection<MessageId> getMessageIds(Connection txn, GroupId g)
 			throws DbException {
@@ -1922,27 +2341,30 @@ abstract class JdbcDatabase implements Database<Connection> {
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		try {
-			// Retrieve the message IDs for each query term and intersect
+			// Retrieve the message IDs for each query term and intersect.
+			// Each term is a range of the index on (groupId, state, metaKey)
 			Set<MessageId> intersection = null;
 			String sql = "SELECT messageId FROM messageMetadata"
 					+ " WHERE groupId = ? AND state = ?"
 					+ " AND metaKey = ? AND value = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			ps.setInt(2, DELIVERED.getValue());
 			for (Entry<String, byte[]> e : query.entrySet()) {
-				ps = txn.prepareStatement(sql);
-				ps.setBytes(1, g.getBytes());
-				ps.setInt(2, DELIVERED.getValue());
 				ps.setString(3, e.getKey());
 				ps.setBytes(4, e.getValue());
 				rs = ps.executeQuery();
 				Set<MessageId> ids = new HashSet<>();
 				while (rs.next()) ids.add(new MessageId(rs.getBytes(1)));
 				rs.close();
-				ps.close();
 				if (intersection == null) intersection = ids;
 				else intersection.retainAll(ids);
 				// Return early if there are no matches
-				if (intersection.isEmpty()) return Collections.emptySet();
+				if (intersection.isEmpty()) break;
 			}
+			ps.close();
+			if (intersection == null || intersection.isEmpty())
+				return Collections.emptySet();
 			return intersection;
 		} catch (SQLException e) {
 			tryToClose(rs, LOG, WARNING);
@@ -2021,6 +2443,58 @@ abstract class JdbcDatabase implements Database<Connection> {
 		return all;
 	}
 
+	@Override
+	public Map<MessageId, Metadata> getMessageMetadata(Connection txn,
+			GroupId g, Collection<String> keys) throws DbException {
+		if (keys.isEmpty()) throw new IllegalArgumentException();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			// Retrieve the values of the requested keys
+			String sql = "SELECT messageId, metaKey, value"
+					+ " FROM messageMetadata"
+					+ " WHERE groupId = ? AND state = ?"
+					+ " AND metaKey IN (" + getPlaceholders(keys.size()) + ")";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			ps.setInt(2, DELIVERED.getValue());
+			int i = 3;
+			for (String key : keys) ps.setString(i++, key);
+			rs = ps.executeQuery();
+			Map<MessageId, Metadata> all = new HashMap<>();
+			while (rs.next()) {
+				MessageId messageId = new MessageId(rs.getBytes(1));
+				Metadata metadata = all.get(messageId);
+				if (metadata == null) {
+					metadata = new Metadata();
+					all.put(messageId, metadata);
+				}
+				metadata.put(rs.getString(2), rs.getBytes(3));
+			}
+			rs.close();
+			ps.close();
+			// Include any messages that have metadata but none of the keys
+			sql = "SELECT DISTINCT messageId FROM messageMetadata"
+					+ " WHERE groupId = ? AND state = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			ps.setInt(2, DELIVERED.getValue());
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				MessageId messageId = new MessageId(rs.getBytes(1));
+				if (!all.containsKey(messageId))
+					all.put(messageId, new Metadata());
+			}
+			rs.close();
+			ps.close();
+			return all;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Metadata getGroupMetadata(Connection txn, GroupId g)
 			throws DbException {
@@ -2388,6 +2862,49 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Collection<MessageId> getVisibleMessages(Connection txn,
+			ContactId c, Collection<MessageId> ids) throws DbException {
+		// Skip the messages that are definitely not stored
+		MessageIdFilter filter = getMessageIdFilter(txn);
+		List<MessageId> candidates = new ArrayList<>(ids.size());
+		for (MessageId m : ids) if (filter.mightContain(m)) candidates.add(m);
+		if (candidates.isEmpty()) return Collections.emptyList();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			// Join with the messages table so messages that aren't stored
+			// can be told apart from messages that aren't visible
+			String sql = "SELECT m.messageId, s.messageShared"
+					+ " FROM messages AS m"
+					+ " LEFT OUTER JOIN statuses AS s"
+					+ " ON m.messageId = s.messageId AND s.contactId = ?"
+					+ " WHERE m.messageId IN ("
+					+ getPlaceholders(candidates.size()) + ")";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, c.getInt());
+			int index = 2;
+			for (MessageId m : candidates) ps.setBytes(index++, m.getBytes());
+			rs = ps.executeQuery();
+			int found = 0;
+			List<MessageId> visible = new ArrayList<>();
+			while (rs.next()) {
+				found++;
+				// A null value means there's no status row for the contact
+				if (rs.getBoolean(2))
+					visible.add(new MessageId(rs.getBytes(1)));
+			}
+			rs.close();
+			ps.close();
+			recordFalsePositives(candidates.size() - found);
+			return visible;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public long getUnackedMessageBytesToSend(Connection txn, ContactId c)
 			throws DbException {
@@ -2672,6 +3189,32 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Nullable
+	@Override
+	public MessageId getSessionStorageId(Connection txn, GroupId g,
+			UniqueId sessionId) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT messageId FROM clientSessions"
+					+ " WHERE groupId = ? AND sessionId = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			ps.setBytes(2, sessionId.getBytes());
+			rs = ps.executeQuery();
+			MessageId m = null;
+			if (rs.next()) m = new MessageId(rs.getBytes(1));
+			if (rs.next()) throw new DbStateException();
+			rs.close();
+			ps.close();
+			return m;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Settings getSettings(Connection txn, String namespace)
 			throws DbException {
@@ -2854,50 +3397,35 @@ abstract class JdbcDatabase implements Database<Connection> {
 	@Override
 	public void lowerAckFlag(Connection txn, ContactId c,
 			Collection<MessageId> acked) throws DbException {
-		PreparedStatement ps = null;
-		try {
-			String sql = "UPDATE statuses SET ack = FALSE"
-					+ " WHERE messageId = ? AND contactId = ?";
-			ps = txn.prepareStatement(sql);
-			ps.setInt(2, c.getInt());
-			for (MessageId m : acked) {
-				ps.setBytes(1, m.getBytes());
-				ps.addBatch();
-			}
-			int[] batchAffected = ps.executeBatch();
-			if (batchAffected.length != acked.size())
-				throw new DbStateException();
-			for (int rows : batchAffected) {
-				if (rows < 0) throw new DbStateException();
-				if (rows > 1) throw new DbStateException();
-			}
-			ps.close();
-		} catch (SQLException e) {
-			tryToClose(ps, LOG, WARNING);
-			throw new DbException(e);
-		}
+		lowerStatusFlag(txn, c, "ack", acked);
 	}
 
 	@Override
 	public void lowerRequestedFlag(Connection txn, ContactId c,
 			Collection<MessageId> requested) throws DbException {
+		lowerStatusFlag(txn, c, "requested", requested);
+	}
+
+	/**
+	 * Lowers the given boolean flag for all the given messages with a single
+	 * statement, rather than one statement per message.
+	 */
+	private void lowerStatusFlag(Connection txn, ContactId c, String column,
+			Collection<MessageId> ids) throws DbException {
+		if (ids.isEmpty()) return;
 		PreparedStatement ps = null;
 		try {
-			String sql = "UPDATE statuses SET requested = FALSE"
-					+ " WHERE messageId = ? AND contactId = ?";
+			String sql = "UPDATE statuses SET " + column + " = FALSE"
+					+ " WHERE contactId = ?"
+					+ " AND messageId IN (" + getPlaceholders(ids.size())
+					+ ")";
 			ps = txn.prepareStatement(sql);
-			ps.setInt(2, c.getInt());
-			for (MessageId m : requested) {
-				ps.setBytes(1, m.getBytes());
-				ps.addBatch();
-			}
-			int[] batchAffected = ps.executeBatch();
-			if (batchAffected.length != requested.size())
+			ps.setInt(1, c.getInt());
+			int index = 2;
+			for (MessageId m : ids) ps.setBytes(index++, m.getBytes());
+			int affected = ps.executeUpdate();
+			if (affected < 0 || affected > ids.size())
 				throw new DbStateException();
-			for (int rows : batchAffected) {
-				if (rows < 0) throw new DbStateException();
-				if (rows > 1) throw new DbStateException();
-			}
 			ps.close();
 		} catch (SQLException e) {
 			tryToClose(ps, LOG, WARNING);
@@ -3152,6 +3680,30 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public void raiseSeenAndAckFlags(Connection txn, ContactId c,
+			Collection<MessageId> ids) throws DbException {
+		if (ids.isEmpty()) return;
+		PreparedStatement ps = null;
+		try {
+			String sql = "UPDATE statuses SET seen = TRUE, ack = TRUE"
+					+ " WHERE contactId = ?"
+					+ " AND messageId IN (" + getPlaceholders(ids.size())
+					+ ")";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, c.getInt());
+			int index = 2;
+			for (MessageId m : ids) ps.setBytes(index++, m.getBytes());
+			int affected = ps.executeUpdate();
+			if (affected < 0 || affected > ids.size())
+				throw new DbStateException();
+			ps.close();
+		} catch (SQLException e) {
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public void removeContact(Connection txn, ContactId c)
 			throws DbException {
@@ -3267,21 +3819,19 @@ abstract class JdbcDatabase implements Database<Connection> {
 	@Override
 	public void removeOfferedMessages(Connection txn, ContactId c,
 			Collection<MessageId> requested) throws DbException {
+		if (requested.isEmpty()) return;
 		PreparedStatement ps = null;
 		try {
 			String sql = "DELETE FROM offers"
-					+ " WHERE contactId = ? AND messageId = ?";
+					+ " WHERE contactId = ?"
+					+ " AND messageId IN (" + getPlaceholders(requested.size())
+					+ ")";
 			ps = txn.prepareStatement(sql);
 			ps.setInt(1, c.getInt());
-			for (MessageId m : requested) {
-				ps.setBytes(2, m.getBytes());
-				ps.addBatch();
-			}
-			int[] batchAffected = ps.executeBatch();
-			if (batchAffected.length != requested.size())
-				throw new DbStateException();
-			for (int rows : batchAffected)
-				if (rows != 1) throw new DbStateException();
+			int index = 2;
+			for (MessageId m : requested) ps.setBytes(index++, m.getBytes());
+			int affected = ps.executeUpdate();
+			if (affected != requested.size()) throw new DbStateException();
 			ps.close();
 		} catch (SQLException e) {
 			tryToClose(ps, LOG, WARNING);
@@ -3609,6 +4159,42 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public void setMessageCounts(Connection txn, GroupId g,
+			MessageCounts counts) throws DbException {
+		PreparedStatement ps = null;
+		try {
+			// Update the counts if they already exist
+			String sql = "UPDATE groupCounts SET msgCount = ?,"
+					+ " unreadCount = ?, latestMsgTime = ?"
+					+ " WHERE groupId = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, counts.getMsgCount());
+			ps.setInt(2, counts.getUnreadCount());
+			ps.setLong(3, counts.getLatestMsgTime());
+			ps.setBytes(4, g.getBytes());
+			int affected = ps.executeUpdate();
+			if (affected < 0 || affected > 1) throw new DbStateException();
+			ps.close();
+			if (affected == 1) return;
+			// Insert the counts if they don't already exist
+			sql = "INSERT INTO groupCounts"
+					+ " (groupId, msgCount, unreadCount, latestMsgTime)"
+					+ " VALUES (?, ?, ?, ?)";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			ps.setInt(2, counts.getMsgCount());
+			ps.setInt(3, counts.getUnreadCount());
+			ps.setLong(4, counts.getLatestMsgTime());
+			affected = ps.executeUpdate();
+			if (affected != 1) throw new DbStateException();
+			ps.close();
+		} catch (SQLException e) {
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public void setReorderingWindow(Connection txn, KeySetId k,
 			TransportId t, long timePeriod, long base, byte[] bitmap)
@@ -3633,6 +4219,38 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public void setSessionStorageId(Connection txn, GroupId g,
+			UniqueId sessionId, MessageId m) throws DbException {
+		PreparedStatement ps = null;
+		try {
+			// Update the record if it already exists
+			String sql = "UPDATE clientSessions SET messageId = ?"
+					+ " WHERE groupId = ? AND sessionId = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, m.getBytes());
+			ps.setBytes(2, g.getBytes());
+			ps.setBytes(3, sessionId.getBytes());
+			int affected = ps.executeUpdate();
+			if (affected < 0 || affected > 1) throw new DbStateException();
+			ps.close();
+			if (affected == 1) return;
+			// Insert the record if it doesn't already exist
+			sql = "INSERT INTO clientSessions (groupId, sessionId, messageId)"
+					+ " VALUES (?, ?, ?)";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			ps.setBytes(2, sessionId.getBytes());
+			ps.setBytes(3, m.getBytes());
+			affected = ps.executeUpdate();
+			if (affected != 1) throw new DbStateException();
+			ps.close();
+		} catch (SQLException e) {
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public void setSyncVersions(Connection txn, ContactId c,
 			List<Byte> supported) throws DbException {
@@ -3765,6 +4383,86 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public void updateRetransmissionData(Connection txn, ContactId c,
+			Collection<MessageId> ids, long maxLatency) throws DbException {
+		if (ids.isEmpty()) return;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			// Load the transmission counts of all the messages at once
+			String sql = "SELECT messageId, txCount FROM statuses"
+					+ " WHERE contactId = ?"
+					+ " AND messageId IN (" + getPlaceholders(ids.size())
+					+ ")";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, c.getInt());
+			int index = 2;
+			for (MessageId m : ids) ps.setBytes(index++, m.getBytes());
+			rs = ps.executeQuery();
+			Map<MessageId, Integer> txCounts = new HashMap<>();
+			while (rs.next()) {
+				MessageId m = new MessageId(rs.getBytes(1));
+				txCounts.put(m, rs.getInt(2));
+			}
+			rs.close();
+			ps.close();
+			if (txCounts.size() != ids.size()) throw new DbStateException();
+			// Update the retransmission data with a single batch
+			sql = "UPDATE statuses"
+					+ " SET expiry = ?, txCount = txCount + 1, maxLatency = ?"
+					+ " WHERE messageId = ? AND contactId = ?";
+			ps = txn.prepareStatement(sql);
+			long now = clock.currentTimeMillis();
+			for (Entry<MessageId, Integer> e : txCounts.entrySet()) {
+				ps.setLong(1, calculateExpiry(now, maxLatency, e.getValue()));
+				ps.setLong(2, maxLatency);
+				ps.setBytes(3, e.getKey().getBytes());
+				ps.setInt(4, c.getInt());
+				ps.addBatch();
+			}
+			int[] batchAffected = ps.executeBatch();
+			if (batchAffected.length != txCounts.size())
+				throw new DbStateException();
+			for (int rows : batchAffected)
+				if (rows != 1) throw new DbStateException();
+			ps.close();
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public boolean updateMessageCounts(Connection txn, GroupId g,
+			int msgCountDelta, int unreadCountDelta, long timestamp)
+			throws DbException {
+		PreparedStatement ps = null;
+		try {
+			// The counts are updated in place, without reading them first
+			String sql = "UPDATE groupCounts"
+					+ " SET msgCount = msgCount + ?,"
+					+ " unreadCount = unreadCount + ?,"
+					+ " latestMsgTime = CASE WHEN latestMsgTime < ?"
+					+ " THEN ? ELSE latestMsgTime END"
+					+ " WHERE groupId = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, msgCountDelta);
+			ps.setInt(2, unreadCountDelta);
+			ps.setLong(3, timestamp);
+			ps.setLong(4, timestamp);
+			ps.setBytes(5, g.getBytes());
+			int affected = ps.executeUpdate();
+			if (affected < 0 || affected > 1) throw new DbStateException();
+			ps.close();
+			return affected == 1;
+		} catch (SQLException e) {
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public void updateTransportKeys(Connection txn, TransportKeySet ks)
 			throws DbException {
@@ -16,6 +16,20 @@ import static org.briarproject.bramble.util.LogUtils.logException;
 @NotNullByDefault
 class JdbcUtils {
 
+	/**
+	 * Returns a comma-separated list of the given number of parameter
+	 * placeholders, for use in an IN clause.
+	 */
+	static String getPlaceholders(int count) {
+		if (count < 1) throw new IllegalArgumentException();
+		StringBuilder sb = new StringBuilder(count * 3);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append('?');
+		}
+		return sb.toString();
+	}
+
 	static void tryToClose(@Nullable ResultSet rs, Logger logger, Level level) {
 		try {
 			if (rs != null) rs.close();
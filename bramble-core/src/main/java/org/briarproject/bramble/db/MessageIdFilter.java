@@ -0,0 +1,148 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.max;
+import static java.lang.Math.pow;
+import static org.briarproject.bramble.util.ByteUtils.INT_32_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.readUint32;
+
+/**
+ * A Bloom filter of the IDs of the messages stored in the database. The
+ * filter may report that it contains a message that isn't stored (a false
+ * positive) but never the reverse, so a negative answer can be used to skip
+ * a database lookup.
+ * <p>
+ * Message IDs are hashes, so the filter's bit indices are taken directly from
+ * the bytes of the ID rather than hashing it again.
+ * <p>
+ * Messages can't be removed from a Bloom filter. Messages that are removed
+ * from the database remain in the filter as false positives until the filter
+ * is rebuilt.
+ */
+@ThreadSafe
+@NotNullByDefault
+class MessageIdFilter {
+
+	/**
+	 * The number of bits per message the filter is sized for. Together with
+	 * {@link #NUM_HASHES} this gives a false positive rate of about 0.8% when
+	 * the filter is full.
+	 */
+	static final int BITS_PER_MESSAGE = 10;
+
+	/**
+	 * The number of bit indices taken from each message ID.
+	 */
+	static final int NUM_HASHES = 7;
+
+	/**
+	 * The minimum number of messages the filter is sized for.
+	 */
+	static final int MIN_CAPACITY = 1024;
+
+	private final int capacity, numBits;
+
+	@GuardedBy("this")
+	private final long[] bits;
+
+	@GuardedBy("this")
+	private int added = 0;
+	@GuardedBy("this")
+	private long lookups = 0, negatives = 0, falsePositives = 0;
+
+	/**
+	 * Creates an empty filter with room for twice the given number of
+	 * messages.
+	 */
+	MessageIdFilter(int messages) {
+		capacity = max(MIN_CAPACITY, messages * 2);
+		numBits = capacity * BITS_PER_MESSAGE;
+		bits = new long[(numBits + 63) / 64];
+	}
+
+	synchronized void add(MessageId m) {
+		byte[] id = m.getBytes();
+		for (int i = 0; i < NUM_HASHES; i++) {
+			int index = getIndex(id, i);
+			bits[index >>> 6] |= 1L << (index & 63);
+		}
+		added++;
+	}
+
+	/**
+	 * Returns false if the given message is definitely not stored in the
+	 * database, or true if it may be stored.
+	 */
+	synchronized boolean mightContain(MessageId m) {
+		lookups++;
+		byte[] id = m.getBytes();
+		for (int i = 0; i < NUM_HASHES; i++) {
+			int index = getIndex(id, i);
+			if ((bits[index >>> 6] & (1L << (index & 63))) == 0) {
+				negatives++;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records that the filter reported the given number of messages that
+	 * weren't found in the database.
+	 */
+	synchronized void recordFalsePositives(int count) {
+		falsePositives += count;
+	}
+
+	/**
+	 * Returns true if more messages have been added than the filter was
+	 * sized for, in which case it should be rebuilt.
+	 */
+	synchronized boolean isFull() {
+		return added > capacity;
+	}
+
+	/**
+	 * Returns the number of bytes used by the filter's bits.
+	 */
+	int getMemoryBytes() {
+		return bits.length * 8;
+	}
+
+	/**
+	 * Returns the expected false positive rate given the number of messages
+	 * that have been added.
+	 */
+	synchronized double getExpectedFalsePositiveRate() {
+		double k = NUM_HASHES;
+		return pow(1 - exp(-k * added / numBits), k);
+	}
+
+	/**
+	 * Returns the fraction of positive answers that turned out to be false.
+	 */
+	synchronized double getObservedFalsePositiveRate() {
+		long positives = lookups - negatives;
+		return positives == 0 ? 0 : (double) falsePositives / positives;
+	}
+
+	/**
+	 * Returns a summary of the filter's size and accuracy for logging.
+	 */
+	synchronized String getStats() {
+		return added + " messages, " + getMemoryBytes() + " bytes, "
+				+ lookups + " lookups, " + negatives + " skipped, "
+				+ "false positive rate " + getObservedFalsePositiveRate()
+				+ " (expected " + getExpectedFalsePositiveRate() + ")";
+	}
+
+	private int getIndex(byte[] id, int i) {
+		return (int) (readUint32(id, i * INT_32_BYTES) % numBits);
+	}
+}
@@ -0,0 +1,48 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A stream over a column of a result set, which keeps the result set and
+ * its statement open until the stream is closed.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class ResultSetInputStream extends FilterInputStream {
+
+	private final ResultSet rs;
+	private final Statement s;
+
+	private boolean closed = false;
+
+	ResultSetInputStream(InputStream in, ResultSet rs, Statement s) {
+		super(in);
+		this.rs = rs;
+		this.s = s;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			super.close();
+		} finally {
+			try {
+				rs.close();
+				s.close();
+			} catch (SQLException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DbClosedException;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.MigrationListener;
+import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.util.StringUtils;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.db.JdbcUtils.tryToClose;
+import static org.briarproject.bramble.util.IoUtils.isNonEmptyDirectory;
+
+/**
+ * Contains all the SQLite-specific code for the database.
+ * <p/>
+ * The database uses write-ahead logging, so readers don't block the writer
+ * or each other, and is encrypted by a SQLite build with a page codec, such
+ * as SQLite3 Multiple Ciphers. A plain SQLite build ignores the key, so the
+ * database refuses to open if the driver has no page codec.
+ * <p/>
+ * Databases are created with incremental auto-vacuum, so the space freed
+ * by deleting data can be reclaimed a few pages at a time while the
+ * database is online.
+ * <p/>
+ * SQLite databases are always created with the current schema, so the
+ * existing migrations never need to run against them, but any future
+ * migrations must avoid SQL that SQLite doesn't support, such as
+ * ALTER COLUMN.
+ */
+@NotNullByDefault
+class SqliteDatabase extends JdbcDatabase {
+
+	private static final Logger LOG = getLogger(SqliteDatabase.class.getName());
+
+	private static final String HASH_TYPE = "BLOB";
+	private static final String SECRET_TYPE = "BLOB";
+	private static final String BINARY_TYPE = "BLOB";
+	private static final String COUNTER_TYPE =
+			"INTEGER PRIMARY KEY AUTOINCREMENT";
+	private static final String STRING_TYPE = "TEXT";
+	private static final DatabaseTypes dbTypes = new DatabaseTypes(HASH_TYPE,
+			SECRET_TYPE, BINARY_TYPE, COUNTER_TYPE, STRING_TYPE) {
+
+		@Override
+		String replaceTypes(String s) {
+			// A counter must be declared as the table's primary key, so any
+			// other primary key becomes a unique constraint
+			if (s.contains("_COUNTER"))
+				s = s.replace("PRIMARY KEY (", "UNIQUE (");
+			return super.replaceTypes(s);
+		}
+	};
+
+	/**
+	 * How long a connection waits for a lock held by another connection
+	 * before failing, in milliseconds. Writers are serialised by the
+	 * {@link org.briarproject.bramble.api.db.DatabaseComponent}, so this
+	 * only comes into play when a checkpoint overlaps a write.
+	 */
+	private static final int BUSY_TIMEOUT_MS = 10_000;
+
+	/**
+	 * The maximum number of free pages to reclaim in each step of online
+	 * compaction.
+	 */
+	private static final int MAX_PAGES_PER_COMPACTION_STEP = 256;
+
+	private final DatabaseConfig config;
+	private final String url;
+	private final boolean requirePageCodec;
+
+	@Nullable
+	private volatile SecretKey key = null;
+
+	@Inject
+	SqliteDatabase(DatabaseConfig config, MessageFactory messageFactory,
+			Clock clock) {
+		this(config, messageFactory, clock, true);
+	}
+
+	/**
+	 * @param requirePageCodec False if the database may be stored without
+	 * encryption when the driver has no page codec. This is only for tests,
+	 * which use a plain SQLite build.
+	 */
+	SqliteDatabase(DatabaseConfig config, MessageFactory messageFactory,
+			Clock clock, boolean requirePageCodec) {
+		super(dbTypes, messageFactory, clock);
+		this.config = config;
+		this.requirePageCodec = requirePageCodec;
+		File dir = config.getDatabaseDirectory();
+		String path = new File(dir, "db").getAbsolutePath();
+		url = "jdbc:sqlite:file:" + path;
+	}
+
+	@Override
+	public boolean open(SecretKey key, @Nullable MigrationListener listener)
+			throws DbException {
+		this.key = key;
+		File dir = config.getDatabaseDirectory();
+		boolean reopen = isNonEmptyDirectory(dir);
+		if (LOG.isLoggable(INFO)) LOG.info("Reopening DB: " + reopen);
+		if (!reopen && dir.mkdirs()) LOG.info("Created database directory");
+		super.open("org.sqlite.JDBC", reopen, key, listener);
+		return reopen;
+	}
+
+	@Override
+	public void close() throws DbException {
+		Connection c = null;
+		Statement s = null;
+		try {
+			closeAllConnections();
+			c = createConnection();
+			setDirty(c, false);
+			// Copy the write-ahead log into the database and empty it
+			s = c.createStatement();
+			s.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+			s.close();
+			c.close();
+		} catch (SQLException e) {
+			tryToClose(s, LOG, WARNING);
+			tryToClose(c, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	protected Connection createConnection() throws DbException, SQLException {
+		SecretKey key = this.key;
+		if (key == null) throw new DbClosedException();
+		Properties props = new Properties();
+		// The key is random, so it doesn't need to be stretched
+		props.setProperty("cipher", "chacha20");
+		props.setProperty("kdf_iter", "1");
+		props.setProperty("hexkey", StringUtils.toHexString(key.getBytes()));
+		// Sync the log on every commit, so a commit survives a power loss
+		props.setProperty("synchronous", "FULL");
+		props.setProperty("foreign_keys", "true");
+		props.setProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MS));
+		Connection c = DriverManager.getConnection(url, props);
+		Statement s = null;
+		try {
+			// Check for the codec before anything is written to the database
+			if (requirePageCodec && !hasPageCodec(c)) {
+				LOG.warning("SQLite driver has no page codec");
+				tryToClose(c, LOG, WARNING);
+				throw new DbException();
+			}
+			s = c.createStatement();
+			// Only takes effect when the database is created, and must be set
+			// before the journal mode, which writes the database header
+			s.executeUpdate("PRAGMA auto_vacuum = INCREMENTAL");
+			s.execute("PRAGMA journal_mode = WAL");
+			s.close();
+			return c;
+		} catch (SQLException e) {
+			tryToClose(s, LOG, WARNING);
+			tryToClose(c, LOG, WARNING);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns true if the given connection has a page codec. A plain SQLite
+	 * build ignores the cipher pragma, whereas SQLite3 Multiple Ciphers
+	 * returns the name of the cipher.
+	 */
+	static boolean hasPageCodec(Connection c) throws SQLException {
+		Statement s = null;
+		ResultSet rs = null;
+		try {
+			s = c.createStatement();
+			boolean hasCodec = false;
+			if (s.execute("PRAGMA cipher")) {
+				rs = s.getResultSet();
+				hasCodec = rs.next();
+				rs.close();
+			}
+			s.close();
+			return hasCodec;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(s, LOG, WARNING);
+			throw e;
+		}
+	}
+
+	@Override
+	protected int getFillRate(Connection txn) throws DbException {
+		long pages = getPragma(txn, "page_count");
+		if (pages == 0) return 100;
+		long free = getPragma(txn, "freelist_count");
+		return (int) (100 - free * 100 / pages);
+	}
+
+	@Override
+	protected File getDatabaseDirectory() {
+		return config.getDatabaseDirectory();
+	}
+
+	@Override
+	public boolean supportsOnlineCompaction() {
+		return true;
+	}
+
+	@Override
+	public long compactIncrementally(Connection txn) throws DbException {
+		long free = getPragma(txn, "freelist_count");
+		if (free == 0) return 0;
+		Statement s = null;
+		try {
+			s = txn.createStatement();
+			// Each step of the statement frees a page, so executeUpdate()
+			// is needed to run it to completion
+			s.executeUpdate("PRAGMA incremental_vacuum("
+					+ MAX_PAGES_PER_COMPACTION_STEP + ")");
+			s.close();
+		} catch (SQLException e) {
+			tryToClose(s, LOG, WARNING);
+			throw new DbException(e);
+		}
+		long reclaimed = free - getPragma(txn, "freelist_count");
+		return reclaimed * getPragma(txn, "page_size");
+	}
+
+	private long getPragma(Connection txn, String name) throws DbException {
+		Statement s = null;
+		ResultSet rs = null;
+		try {
+			s = txn.createStatement();
+			rs = s.executeQuery("PRAGMA " + name);
+			if (!rs.next()) throw new DbStateException();
+			long value = rs.getLong(1);
+			rs.close();
+			s.close();
+			return value;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(s, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	protected void compactAndClose() throws DbException {
+		Connection c = null;
+		Statement s = null;
+		try {
+			closeAllConnections();
+			c = createConnection();
+			s = c.createStatement();
+			s.execute("VACUUM");
+			s.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+			s.close();
+			c.close();
+		} catch (SQLException e) {
+			tryToClose(s, LOG, WARNING);
+			tryToClose(c, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+}
@@ -0,0 +1,456 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.Bytes;
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.contact.Contact;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.PendingContact;
+import org.briarproject.bramble.api.crypto.PrivateKey;
+import org.briarproject.bramble.api.crypto.PublicKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbCallable;
+import org.briarproject.bramble.api.db.DbRunnable;
+import org.briarproject.bramble.api.db.NullableDbCallable;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.identity.Author;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageCounts;
+import org.briarproject.bramble.api.sync.MessageStatus;
+import org.briarproject.bramble.api.sync.Offer;
+import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.api.transport.KeySetId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.system.Clock.MAX_REASONABLE_TIME_MS;
+import static org.briarproject.bramble.api.system.Clock.MIN_REASONABLE_TIME_MS;
+import static org.briarproject.bramble.util.IoUtils.tryToClose;
+import static org.briarproject.bramble.util.LogUtils.logException;
+
+/**
+ * Records the calls made to a {@link DatabaseComponent} in a trace file,
+ * so the workload can be replayed against another database.
+ * <p/>
+ * The trace records the shape of each call's arguments and result, but not
+ * their content. Identifiers, strings and short byte arrays are replaced
+ * with pseudonyms that are consistent within the trace, so equal values
+ * can be recognised without being revealed. Message bodies, group
+ * descriptors, keys and longer byte arrays are replaced with their lengths.
+ * Timestamps, which are message timestamps, the latest message times of
+ * message counts and any other numbers that fall within the range of
+ * reasonable times, are recorded relative to the start of the trace, so the
+ * trace doesn't reveal when it was recorded or when messages were sent.
+ * Other numbers, booleans, enum constants and contact and key set IDs are
+ * recorded as they are. The tracer keeps a table of pseudonyms, so its
+ * memory use grows with the number of distinct values it has seen.
+ * <p/>
+ * The file starts with the line {@link #HEADER}, followed by one
+ * tab-separated line for each call: a sequence number, a thread number,
+ * the start time and duration of the call in microseconds, the method's
+ * name and parameter types, the arguments and the result. A result starts
+ * with '=' if the call returned and '!' followed by the exception's class
+ * name if it threw. Each value is one of:
+ * <ul>
+ * <li>'-' for null</li>
+ * <li>a literal number, boolean or enum constant</li>
+ * <li>'@' and a timestamp in milliseconds, relative to the start of the
+ * trace</li>
+ * <li>'#' and a pseudonym, optionally followed by '/' and a length</li>
+ * <li>'/' and the length of a value that isn't recorded</li>
+ * <li>'[' and a comma-separated list of values, followed by ']'</li>
+ * <li>'{' and a comma-separated list of key=value pairs, followed by
+ * '}'</li>
+ * <li>'(' and a comma-separated list of an object's fields, followed by
+ * ')'</li>
+ * <li>'?' for a value of a type that isn't recorded</li>
+ * </ul>
+ * Calls are numbered in an order that can be replayed one call at a time
+ * without blocking: {@link DatabaseComponent#startTransaction(boolean)} is
+ * numbered when it returns, after any wait for the transaction lock, and
+ * other calls are numbered when they're made. Lines may be written slightly
+ * out of order.
+ */
+@ThreadSafe
+@NotNullByDefault
+class WorkloadTracer implements InvocationHandler {
+
+	private static final Logger LOG =
+			getLogger(WorkloadTracer.class.getName());
+
+	static final String HEADER = "# briar-db-workload 2";
+
+	/**
+	 * Byte arrays up to this length are replaced with pseudonyms, longer
+	 * byte arrays with their lengths.
+	 */
+	static final int MAX_PSEUDONYMOUS_BYTES = 64;
+
+	/**
+	 * Returns a {@link DatabaseComponent} that records the calls made to
+	 * the given component in the given file, or the given component if the
+	 * file can't be opened.
+	 */
+	static DatabaseComponent createTracingDatabaseComponent(
+			DatabaseComponent db, Clock clock, File traceFile) {
+		try {
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(traceFile), "UTF-8"));
+			out.write(HEADER + "\n");
+			if (LOG.isLoggable(INFO))
+				LOG.info("Tracing database workload to " + traceFile);
+			WorkloadTracer tracer = new WorkloadTracer(db, clock, out);
+			return (DatabaseComponent) Proxy.newProxyInstance(
+					DatabaseComponent.class.getClassLoader(),
+					new Class<?>[] {DatabaseComponent.class}, tracer);
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+			return db;
+		}
+	}
+
+	private final DatabaseComponent delegate;
+	private final long startTime = System.nanoTime();
+	/**
+	 * The wall clock time when the trace started, which timestamps are
+	 * recorded relative to.
+	 */
+	private final long startTimeMs;
+	private final AtomicLong nextCall = new AtomicLong(0);
+	private final AtomicInteger nextThread = new AtomicInteger(0);
+	private final ThreadLocal<Integer> thread = new ThreadLocal<Integer>() {
+		@Override
+		protected Integer initialValue() {
+			return nextThread.getAndIncrement();
+		}
+	};
+
+	private final Object lock = new Object();
+	@GuardedBy("lock")
+	@Nullable
+	private Writer out;
+	@GuardedBy("lock")
+	private final Map<Class<?>, Map<Object, Integer>> pseudonyms =
+			new HashMap<>();
+	@GuardedBy("lock")
+	private final Map<Transaction, Integer> transactions =
+			new IdentityHashMap<>();
+	@GuardedBy("lock")
+	private int nextTransaction = 0;
+
+	WorkloadTracer(DatabaseComponent delegate, Clock clock, Writer out) {
+		this.delegate = delegate;
+		this.out = out;
+		startTimeMs = clock.currentTimeMillis();
+	}
+
+	@Nullable
+	@Override
+	public Object invoke(Object proxy, Method method, @Nullable Object[] args)
+			throws Throwable {
+		if (method.getDeclaringClass() == Object.class)
+			return invokeObjectMethod(proxy, method, args);
+		String name = method.getName();
+		// Make transactions through the proxy so their calls are recorded
+		if (name.equals("transaction")
+				|| name.equals("transactionWithResult")
+				|| name.equals("transactionWithNullableResult")) {
+			return runTransaction((DatabaseComponent) proxy, name, args);
+		}
+		boolean startTransaction = name.equals("startTransaction");
+		long call = startTransaction ? -1 : nextCall.getAndIncrement();
+		long start = System.nanoTime();
+		Object result = null;
+		Throwable thrown = null;
+		try {
+			result = method.invoke(delegate, args);
+		} catch (InvocationTargetException e) {
+			thrown = e.getCause();
+		}
+		long duration = System.nanoTime() - start;
+		if (startTransaction) call = nextCall.getAndIncrement();
+		record(call, start, duration, method, args, result, thrown);
+		if (name.equals("close")) closeTrace();
+		if (thrown != null) throw thrown;
+		return result;
+	}
+
+	@Nullable
+	private Object runTransaction(DatabaseComponent proxy, String name,
+			Object[] args) throws Exception {
+		Transaction txn = proxy.startTransaction((Boolean) args[0]);
+		try {
+			Object result;
+			if (name.equals("transaction")) {
+				((DbRunnable<?>) args[1]).run(txn);
+				result = null;
+			} else if (name.equals("transactionWithResult")) {
+				result = ((DbCallable<?, ?>) args[1]).call(txn);
+			} else {
+				result = ((NullableDbCallable<?, ?>) args[1]).call(txn);
+			}
+			proxy.commitTransaction(txn);
+			return result;
+		} finally {
+			proxy.endTransaction(txn);
+		}
+	}
+
+	@Nullable
+	private Object invokeObjectMethod(Object proxy, Method method,
+			@Nullable Object[] args) {
+		String name = method.getName();
+		if (name.equals("equals") && args != null) return proxy == args[0];
+		if (name.equals("hashCode")) return System.identityHashCode(proxy);
+		return "WorkloadTracer(" + delegate + ")";
+	}
+
+	private void record(long call, long start, long duration, Method method,
+			@Nullable Object[] args, @Nullable Object result,
+			@Nullable Throwable thrown) {
+		int thread = this.thread.get();
+		synchronized (lock) {
+			if (out == null) return;
+			StringBuilder s = new StringBuilder();
+			s.append(call).append('\t').append(thread).append('\t');
+			s.append((start - startTime) / 1000).append('\t');
+			s.append(duration / 1000).append('\t');
+			appendSignature(s, method);
+			if (args != null) {
+				for (Object arg : args) {
+					s.append('\t');
+					encode(s, arg);
+				}
+			}
+			s.append('\t');
+			if (thrown == null) {
+				s.append('=');
+				if (method.getReturnType() != void.class) encode(s, result);
+			} else {
+				s.append('!').append(thrown.getClass().getSimpleName());
+			}
+			s.append('\n');
+			// The transaction's number won't be used again
+			if (method.getName().equals("endTransaction") && args != null)
+				transactions.remove(args[0]);
+			try {
+				out.write(s.toString());
+			} catch (IOException e) {
+				logException(LOG, WARNING, e);
+				tryToClose(out, LOG, WARNING);
+				out = null;
+			}
+		}
+	}
+
+	private void closeTrace() {
+		synchronized (lock) {
+			if (out == null) return;
+			try {
+				out.close();
+			} catch (IOException e) {
+				logException(LOG, WARNING, e);
+			}
+			out = null;
+			pseudonyms.clear();
+			transactions.clear();
+		}
+	}
+
+	static void appendSignature(StringBuilder s, Method method) {
+		s.append(method.getName()).append('(');
+		Class<?>[] types = method.getParameterTypes();
+		for (int i = 0; i < types.length; i++) {
+			if (i > 0) s.append(',');
+			s.append(types[i].getSimpleName());
+		}
+		s.append(')');
+	}
+
+	@GuardedBy("lock")
+	private void encode(StringBuilder s, @Nullable Object o) {
+		if (o == null) {
+			s.append('-');
+		} else if (o instanceof Timestamp) {
+			appendTimestamp(s, ((Timestamp) o).time);
+		} else if (o instanceof Long && isTimestamp((Long) o)) {
+			appendTimestamp(s, (Long) o);
+		} else if (o instanceof Boolean || o instanceof Number) {
+			s.append(o);
+		} else if (o instanceof Enum) {
+			s.append(((Enum<?>) o).name());
+		} else if (o instanceof Transaction) {
+			Integer txn = transactions.get(o);
+			if (txn == null) {
+				txn = nextTransaction++;
+				transactions.put((Transaction) o, txn);
+			}
+			s.append(txn);
+		} else if (o instanceof ContactId) {
+			s.append(((ContactId) o).getInt());
+		} else if (o instanceof KeySetId) {
+			s.append(((KeySetId) o).getInt());
+		} else if (o instanceof UniqueId || o instanceof ClientId
+				|| o instanceof TransportId) {
+			appendPseudonym(s, o.getClass(), o);
+		} else if (o instanceof String) {
+			appendPseudonym(s, String.class, o);
+			s.append('/').append(((String) o).length());
+		} else if (o instanceof byte[]) {
+			byte[] b = (byte[]) o;
+			if (b.length <= MAX_PSEUDONYMOUS_BYTES)
+				appendPseudonym(s, byte[].class, new Bytes(b));
+			s.append('/').append(b.length);
+		} else if (o instanceof Length) {
+			s.append('/').append(((Length) o).length);
+		} else if (o instanceof PublicKey) {
+			s.append('/').append(((PublicKey) o).getEncoded().length);
+		} else if (o instanceof PrivateKey) {
+			s.append('/').append(((PrivateKey) o).getEncoded().length);
+		} else if (o instanceof Message) {
+			Message m = (Message) o;
+			encodeFields(s, m.getId(), m.getGroupId(),
+					new Timestamp(m.getTimestamp()),
+					new Length(m.getBody().length));
+		} else if (o instanceof Group) {
+			Group g = (Group) o;
+			encodeFields(s, g.getId(), g.getClientId(), g.getMajorVersion(),
+					new Length(g.getDescriptor().length));
+		} else if (o instanceof Identity) {
+			encodeFields(s, ((Identity) o).getId());
+		} else if (o instanceof Author) {
+			encodeFields(s, ((Author) o).getId());
+		} else if (o instanceof Contact) {
+			Contact c = (Contact) o;
+			encodeFields(s, c.getId(), c.getAuthor().getId(),
+					c.getLocalAuthorId());
+		} else if (o instanceof PendingContact) {
+			encodeFields(s, ((PendingContact) o).getId());
+		} else if (o instanceof MessageCounts) {
+			MessageCounts c = (MessageCounts) o;
+			encodeFields(s, c.getMsgCount(), c.getUnreadCount(),
+					new Timestamp(c.getLatestMsgTime()));
+		} else if (o instanceof MessageStatus) {
+			MessageStatus m = (MessageStatus) o;
+			encodeFields(s, m.getMessageId(), m.getContactId(), m.isSent(),
+					m.isSeen());
+		} else if (o instanceof Ack) {
+			encode(s, ((Ack) o).getMessageIds());
+		} else if (o instanceof Offer) {
+			encode(s, ((Offer) o).getMessageIds());
+		} else if (o instanceof Request) {
+			encode(s, ((Request) o).getMessageIds());
+		} else if (o instanceof Collection) {
+			s.append('[');
+			Iterator<?> it = ((Collection<?>) o).iterator();
+			while (it.hasNext()) {
+				encode(s, it.next());
+				if (it.hasNext()) s.append(',');
+			}
+			s.append(']');
+		} else if (o instanceof Map) {
+			s.append('{');
+			Iterator<? extends Entry<?, ?>> it =
+					((Map<?, ?>) o).entrySet().iterator();
+			while (it.hasNext()) {
+				Entry<?, ?> e = it.next();
+				encode(s, e.getKey());
+				s.append('=');
+				encode(s, e.getValue());
+				if (it.hasNext()) s.append(',');
+			}
+			s.append('}');
+		} else {
+			s.append('?');
+		}
+	}
+
+	@GuardedBy("lock")
+	private void encodeFields(StringBuilder s, Object... fields) {
+		s.append('(');
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) s.append(',');
+			encode(s, fields[i]);
+		}
+		s.append(')');
+	}
+
+	private boolean isTimestamp(long l) {
+		return l >= MIN_REASONABLE_TIME_MS && l <= MAX_REASONABLE_TIME_MS;
+	}
+
+	private void appendTimestamp(StringBuilder s, long time) {
+		s.append('@').append(time - startTimeMs);
+	}
+
+	@GuardedBy("lock")
+	private void appendPseudonym(StringBuilder s, Class<?> type,
+			Object value) {
+		Map<Object, Integer> table = pseudonyms.get(type);
+		if (table == null) {
+			table = new HashMap<>();
+			pseudonyms.put(type, table);
+		}
+		Integer pseudonym = table.get(value);
+		if (pseudonym == null) {
+			pseudonym = table.size();
+			table.put(value, pseudonym);
+		}
+		s.append('#').append(pseudonym);
+	}
+
+	/**
+	 * A field that's recorded relative to the start of the trace.
+	 */
+	private static class Timestamp {
+
+		private final long time;
+
+		private Timestamp(long time) {
+			this.time = time;
+		}
+	}
+
+	/**
+	 * The length of a field whose content isn't recorded.
+	 */
+	private static class Length {
+
+		private final int length;
+
+		private Length(int length) {
+			this.length = length;
+		}
+	}
+}
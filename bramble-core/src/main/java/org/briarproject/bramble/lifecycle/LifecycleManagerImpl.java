@@ -10,20 +10,33 @@ import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.bramble.api.lifecycle.Service;
 import org.briarproject.bramble.api.lifecycle.ServiceException;
+import org.briarproject.bramble.api.lifecycle.event.DatabaseCompactedEvent;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
@@ -56,10 +69,14 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 	private static final Logger LOG =
 			getLogger(LifecycleManagerImpl.class.getName());
 
+	private static final int MAX_STARTUP_THREADS = 4;
+
 	private final DatabaseComponent db;
 	private final EventBus eventBus;
 	private final Clock clock;
 	private final List<Service> services;
+	private final Map<Service, List<Service>> serviceDependencies;
+	private final Map<String, Long> serviceStartDurations;
 	private final List<OpenDatabaseHook> openDatabaseHooks;
 	private final List<ExecutorService> executors;
 	private final CountDownLatch dbLatch = new CountDownLatch(1);
@@ -75,14 +92,26 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		this.eventBus = eventBus;
 		this.clock = clock;
 		services = new CopyOnWriteArrayList<>();
+		serviceDependencies = new ConcurrentHashMap<>();
+		serviceStartDurations = new ConcurrentHashMap<>();
 		openDatabaseHooks = new CopyOnWriteArrayList<>();
 		executors = new CopyOnWriteArrayList<>();
 	}
 
 	@Override
 	public void registerService(Service s) {
+		registerService(s, emptyList());
+	}
+
+	@Override
+	public void registerService(Service s, Collection<Service> dependencies) {
 		if (LOG.isLoggable(INFO))
 			LOG.info("Registering service " + s.getClass().getSimpleName());
+		for (Service dependency : dependencies) {
+			if (!serviceDependencies.containsKey(dependency))
+				throw new IllegalArgumentException();
+		}
+		serviceDependencies.put(s, new ArrayList<>(dependencies));
 		services.add(s);
 	}
 
@@ -140,14 +169,9 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 			dbLatch.countDown();
 			eventBus.broadcast(new LifecycleEvent(STARTING_SERVICES));
 
-			for (Service s : services) {
-				start = now();
-				s.startService();
-				if (LOG.isLoggable(FINE)) {
-					logDuration(LOG, "Starting service "
-							+ s.getClass().getSimpleName(), start);
-				}
-			}
+			start = now();
+			startServicesConcurrently();
+			logDuration(LOG, "Starting services", start);
 
 			state.set(RUNNING);
 			startupLatch.countDown();
@@ -168,6 +192,92 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		}
 	}
 
+	/**
+	 * Starts the registered services on a bounded executor. Each service is
+	 * started when all of its dependencies have started. If any service
+	 * fails to start, no further services are started.
+	 */
+	private void startServicesConcurrently() throws ServiceException {
+		// Count the unstarted dependencies of each service
+		Map<Service, Integer> waiting = new HashMap<>();
+		Map<Service, List<Service>> dependents = new HashMap<>();
+		for (Service s : services) {
+			List<Service> dependencies = serviceDependencies.get(s);
+			waiting.put(s, dependencies.size());
+			for (Service dependency : dependencies) {
+				List<Service> list = dependents.get(dependency);
+				if (list == null) {
+					list = new ArrayList<>();
+					dependents.put(dependency, list);
+				}
+				list.add(s);
+			}
+		}
+		ExecutorService executor = newFixedThreadPool(MAX_STARTUP_THREADS);
+		BlockingQueue<ServiceStartOutcome> outcomes =
+				new LinkedBlockingQueue<>();
+		try {
+			int running = 0;
+			for (Service s : services) {
+				if (waiting.get(s) == 0) {
+					startServiceAsync(executor, s, outcomes);
+					running++;
+				}
+			}
+			Throwable failure = null;
+			while (running > 0) {
+				ServiceStartOutcome outcome = outcomes.take();
+				running--;
+				if (outcome.exception != null) {
+					if (failure == null) failure = outcome.exception;
+				} else if (failure == null) {
+					List<Service> ready = dependents.get(outcome.service);
+					if (ready == null) continue;
+					for (Service s : ready) {
+						int remaining = waiting.get(s) - 1;
+						waiting.put(s, remaining);
+						if (remaining == 0) {
+							startServiceAsync(executor, s, outcomes);
+							running++;
+						}
+					}
+				}
+			}
+			if (failure instanceof ServiceException)
+				throw (ServiceException) failure;
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof Error) throw (Error) failure;
+		} catch (InterruptedException e) {
+			LOG.warning("Interrupted while starting services");
+			Thread.currentThread().interrupt();
+			throw new ServiceException(e);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void startServiceAsync(Executor executor, Service s,
+			BlockingQueue<ServiceStartOutcome> outcomes) {
+		executor.execute(() -> {
+			String name = s.getClass().getSimpleName();
+			long start = now();
+			try {
+				s.startService();
+			} catch (ServiceException | RuntimeException | Error e) {
+				outcomes.add(new ServiceStartOutcome(s, e));
+				return;
+			}
+			long duration = now() - start;
+			serviceStartDurations.put(name, duration);
+			if (LOG.isLoggable(FINE)) {
+				LOG.fine("Starting service " + name + " took " + duration
+						+ " ms");
+			}
+			outcomes.add(new ServiceStartOutcome(s, null));
+		});
+	}
+
 	@Override
 	public void onDatabaseMigration() {
 		state.set(MIGRATING_DATABASE);
@@ -180,6 +290,12 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		eventBus.broadcast(new LifecycleEvent(COMPACTING_DATABASE));
 	}
 
+	@Override
+	public void onDatabaseCompacted(long duration, long bytesReclaimed) {
+		eventBus.broadcast(new DatabaseCompactedEvent(duration,
+				bytesReclaimed));
+	}
+
 	@Override
 	public void stopServices() {
 		if (!state.compareAndSet(RUNNING, STOPPING)) {
@@ -238,4 +354,22 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 	public LifecycleState getLifecycleState() {
 		return state.get();
 	}
+
+	@Override
+	public Map<String, Long> getServiceStartDurations() {
+		return unmodifiableMap(new HashMap<>(serviceStartDurations));
+	}
+
+	private static class ServiceStartOutcome {
+
+		private final Service service;
+		@Nullable
+		private final Throwable exception;
+
+		private ServiceStartOutcome(Service service,
+				@Nullable Throwable exception) {
+			this.service = service;
+			this.exception = exception;
+		}
+	}
 }
@@ -59,7 +59,7 @@ class ContactMailboxDownloadWorker extends MailboxDownloadWorker {
 			for (MailboxFile file : files) {
 				queue.add(new FolderFile(folderId, file.name));
 			}
-			downloadNextFile(queue);
+			downloadFiles(queue);
 		}
 	}
 }
@@ -1,6 +1,8 @@
 package org.briarproject.bramble.mailbox;
 
 import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -23,9 +25,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.logging.Logger;
 
+import javax.annotation.Nonnull;
 import javax.inject.Inject;
 
+import okhttp3.ConnectionPool;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -33,21 +38,50 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 
+import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_STRING;
 import static com.fasterxml.jackson.databind.MapperFeature.BLOCK_UNSAFE_POLYMORPHIC_BASE_TYPES;
 import static java.util.Collections.sort;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.logging.Logger.getLogger;
 import static okhttp3.internal.Util.EMPTY_REQUEST;
 import static org.briarproject.bramble.util.IoUtils.copyAndClose;
+import static org.briarproject.bramble.util.LogUtils.logDuration;
+import static org.briarproject.bramble.util.LogUtils.now;
 
 @NotNullByDefault
 class MailboxApiImpl implements MailboxApi {
 
+	private static final Logger LOG =
+			getLogger(MailboxApiImpl.class.getName());
+
+	/**
+	 * The maximum number of idle connections to keep open for reuse. Each
+	 * connection to a mailbox is a Tor circuit to an onion service, which is
+	 * expensive to build, so we keep idle connections for longer than
+	 * OkHttp's default.
+	 */
+	private static final int MAX_IDLE_CONNECTIONS = 10;
+	private static final long KEEP_ALIVE_MINUTES = 10;
+
 	private static final MediaType JSON =
 			requireNonNull(MediaType.parse("application/json; charset=utf-8"));
 	private static final MediaType FILE =
 			requireNonNull(MediaType.parse("application/octet-stream"));
 
 	private final WeakSingletonProvider<OkHttpClient> httpClientProvider;
+	/**
+	 * The connection pool is held strongly so that idle connections to
+	 * mailboxes survive the shared HTTP client being garbage-collected
+	 * between requests.
+	 */
+	private final ConnectionPool connectionPool = new ConnectionPool(
+			MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, MINUTES);
+	private final WeakSingletonProvider<OkHttpClient> mailboxClientProvider;
 	private final JsonMapper mapper = JsonMapper.builder()
 			.enable(BLOCK_UNSAFE_POLYMORPHIC_BASE_TYPES)
 			.build();
@@ -58,6 +92,15 @@ class MailboxApiImpl implements MailboxApi {
 			UrlConverter urlConverter) {
 		this.httpClientProvider = httpClientProvider;
 		this.urlConverter = urlConverter;
+		mailboxClientProvider = new WeakSingletonProvider<OkHttpClient>() {
+			@Override
+			@Nonnull
+			public OkHttpClient createInstance() {
+				return httpClientProvider.get().newBuilder()
+						.connectionPool(connectionPool)
+						.build();
+			}
+		};
 	}
 
 	@Override
@@ -65,15 +108,16 @@ class MailboxApiImpl implements MailboxApi {
 			throws IOException, ApiException {
 		if (!properties.isOwner()) throw new IllegalArgumentException();
 		Response response = sendGetRequest(properties, "/versions");
-		if (response.code() != 200) throw new ApiException();
-
-		ResponseBody body = response.body();
-		if (body == null) throw new ApiException();
 		try {
-			JsonNode node = mapper.readTree(body.string());
+			if (response.code() != 200) throw new ApiException();
+			ResponseBody body = response.body();
+			if (body == null) throw new ApiException();
+			JsonNode node = mapper.readTree(body.charStream());
 			return parseServerSupports(node);
 		} catch (JacksonException e) {
 			throw new ApiException();
+		} finally {
+			response.close();
 		}
 	}
 
@@ -85,14 +129,15 @@ class MailboxApiImpl implements MailboxApi {
 				.url(getBaseUrl(properties) + "/setup")
 				.put(EMPTY_REQUEST)
 				.build();
-		OkHttpClient client = httpClientProvider.get();
-		Response response = client.newCall(request).execute();
-		if (response.code() == 401) throw new MailboxAlreadyPairedException();
-		if (!response.isSuccessful()) throw new ApiException();
-		ResponseBody body = response.body();
-		if (body == null) throw new ApiException();
+		Response response = execute(request, "PUT /setup");
 		try {
-			JsonNode node = mapper.readTree(body.string());
+			if (response.code() == 401) {
+				throw new MailboxAlreadyPairedException();
+			}
+			if (!response.isSuccessful()) throw new ApiException();
+			ResponseBody body = response.body();
+			if (body == null) throw new ApiException();
+			JsonNode node = mapper.readTree(body.charStream());
 			JsonNode tokenNode = node.get("token");
 			if (tokenNode == null) {
 				throw new ApiException();
@@ -102,6 +147,8 @@ class MailboxApiImpl implements MailboxApi {
 					parseServerSupports(node));
 		} catch (JacksonException | InvalidMailboxIdException e) {
 			throw new ApiException();
+		} finally {
+			response.close();
 		}
 	}
 
@@ -134,8 +181,12 @@ class MailboxApiImpl implements MailboxApi {
 	public boolean checkStatus(MailboxProperties properties)
 			throws IOException, ApiException {
 		Response response = sendGetRequest(properties, "/status");
-		if (response.code() == 401) throw new ApiException();
-		return response.isSuccessful();
+		try {
+			if (response.code() == 401) throw new ApiException();
+			return response.isSuccessful();
+		} finally {
+			response.close();
+		}
 	}
 
 	@Override
@@ -146,9 +197,12 @@ class MailboxApiImpl implements MailboxApi {
 				.url(getBaseUrl(properties) + "/")
 				.delete()
 				.build();
-		OkHttpClient client = httpClientProvider.get();
-		Response response = client.newCall(request).execute();
-		if (response.code() != 204) throw new ApiException();
+		Response response = execute(request, "DELETE /");
+		try {
+			if (response.code() != 204) throw new ApiException();
+		} finally {
+			response.close();
+		}
 	}
 
 	/* Contact Management API (owner only) */
@@ -159,9 +213,14 @@ class MailboxApiImpl implements MailboxApi {
 		if (!properties.isOwner()) throw new IllegalArgumentException();
 		byte[] bodyBytes = mapper.writeValueAsBytes(contact);
 		RequestBody body = RequestBody.create(JSON, bodyBytes);
-		Response response = sendPostRequest(properties, "/contacts", body);
-		if (response.code() == 409) throw new TolerableFailureException();
-		if (!response.isSuccessful()) throw new ApiException();
+		Response response = sendPostRequest(properties, "/contacts", body,
+				"POST /contacts");
+		try {
+			if (response.code() == 409) throw new TolerableFailureException();
+			if (!response.isSuccessful()) throw new ApiException();
+		} finally {
+			response.close();
+		}
 	}
 
 	@Override
@@ -174,10 +233,13 @@ class MailboxApiImpl implements MailboxApi {
 				.delete()
 				.url(url)
 				.build();
-		OkHttpClient client = httpClientProvider.get();
-		Response response = client.newCall(request).execute();
-		if (response.code() == 404) throw new TolerableFailureException();
-		if (response.code() != 200) throw new ApiException();
+		Response response = execute(request, "DELETE /contacts");
+		try {
+			if (response.code() == 404) throw new TolerableFailureException();
+			if (response.code() != 200) throw new ApiException();
+		} finally {
+			response.close();
+		}
 	}
 
 	@Override
@@ -185,23 +247,20 @@ class MailboxApiImpl implements MailboxApi {
 			throws IOException, ApiException {
 		if (!properties.isOwner()) throw new IllegalArgumentException();
 		Response response = sendGetRequest(properties, "/contacts");
-		if (response.code() != 200) throw new ApiException();
-
-		ResponseBody body = response.body();
-		if (body == null) throw new ApiException();
 		try {
-			JsonNode node = mapper.readTree(body.string());
-			ArrayNode contactsNode = getArray(node, "contacts");
+			if (response.code() != 200) throw new ApiException();
 			List<ContactId> list = new ArrayList<>();
-			for (JsonNode contactNode : contactsNode) {
-				if (!contactNode.isNumber()) throw new ApiException();
-				int id = contactNode.intValue();
+			parseArray(response, "contacts", parser -> {
+				if (!parser.currentToken().isNumeric()) {
+					throw new ApiException();
+				}
+				int id = parser.getValueAsInt();
 				if (id < 1) throw new ApiException();
 				list.add(new ContactId(id));
-			}
+			});
 			return list;
-		} catch (JacksonException e) {
-			throw new ApiException();
+		} finally {
+			response.close();
 		}
 	}
 
@@ -212,8 +271,13 @@ class MailboxApiImpl implements MailboxApi {
 			File file) throws IOException, ApiException {
 		String path = "/files/" + folderId;
 		RequestBody body = RequestBody.create(FILE, file);
-		Response response = sendPostRequest(properties, path, body);
-		if (response.code() != 200) throw new ApiException();
+		Response response =
+				sendPostRequest(properties, path, body, "POST /files");
+		try {
+			if (response.code() != 200) throw new ApiException();
+		} finally {
+			response.close();
+		}
 	}
 
 	@Override
@@ -221,36 +285,43 @@ class MailboxApiImpl implements MailboxApi {
 			MailboxFolderId folderId)
 			throws IOException, ApiException, TolerableFailureException {
 		String path = "/files/" + folderId;
-		Response response = sendGetRequest(properties, path);
-		if (response.code() == 404) throw new TolerableFailureException();
-		if (response.code() != 200) throw new ApiException();
-
-		ResponseBody body = response.body();
-		if (body == null) throw new ApiException();
+		Response response = sendGetRequest(properties, path, "GET /files");
 		try {
-			JsonNode node = mapper.readTree(body.string());
-			ArrayNode filesNode = getArray(node, "files");
+			if (response.code() == 404) throw new TolerableFailureException();
+			if (response.code() != 200) throw new ApiException();
 			List<MailboxFile> list = new ArrayList<>();
-			for (JsonNode fileNode : filesNode) {
-				if (!fileNode.isObject()) throw new ApiException();
-				ObjectNode objectNode = (ObjectNode) fileNode;
-				JsonNode nameNode = objectNode.get("name");
-				JsonNode timeNode = objectNode.get("time");
-				if (nameNode == null || !nameNode.isTextual()) {
+			parseArray(response, "files", parser -> {
+				if (parser.currentToken() != START_OBJECT) {
 					throw new ApiException();
 				}
-				if (timeNode == null || !timeNode.isNumber()) {
-					throw new ApiException();
+				String name = null;
+				Long time = null;
+				while (parser.nextToken() == FIELD_NAME) {
+					String field = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if ("name".equals(field)) {
+						if (value != VALUE_STRING) throw new ApiException();
+						name = parser.getText();
+					} else if ("time".equals(field)) {
+						if (!value.isNumeric()) throw new ApiException();
+						time = parser.getValueAsLong();
+					} else {
+						parser.skipChildren();
+					}
 				}
-				String name = nameNode.asText();
-				long time = timeNode.asLong();
+				if (name == null || time == null) throw new ApiException();
 				if (time < 1) throw new ApiException();
-				list.add(new MailboxFile(MailboxFileId.fromString(name), time));
-			}
+				try {
+					list.add(new MailboxFile(MailboxFileId.fromString(name),
+							time));
+				} catch (InvalidMailboxIdException e) {
+					throw new ApiException();
+				}
+			});
 			sort(list);
 			return list;
-		} catch (JacksonException | InvalidMailboxIdException e) {
-			throw new ApiException();
+		} finally {
+			response.close();
 		}
 	}
 
@@ -259,14 +330,17 @@ class MailboxApiImpl implements MailboxApi {
 			MailboxFileId fileId, File file)
 			throws IOException, ApiException, TolerableFailureException {
 		String path = "/files/" + folderId + "/" + fileId;
-		Response response = sendGetRequest(properties, path);
-		if (response.code() == 404) throw new TolerableFailureException();
-		if (response.code() != 200) throw new ApiException();
-
-		ResponseBody body = response.body();
-		if (body == null) throw new ApiException();
-		FileOutputStream outputStream = new FileOutputStream(file);
-		copyAndClose(body.byteStream(), outputStream);
+		Response response = sendGetRequest(properties, path, "GET /file");
+		try {
+			if (response.code() == 404) throw new TolerableFailureException();
+			if (response.code() != 200) throw new ApiException();
+			ResponseBody body = response.body();
+			if (body == null) throw new ApiException();
+			FileOutputStream outputStream = new FileOutputStream(file);
+			copyAndClose(body.byteStream(), outputStream);
+		} finally {
+			response.close();
+		}
 	}
 
 	@Override
@@ -278,10 +352,13 @@ class MailboxApiImpl implements MailboxApi {
 				.delete()
 				.url(getBaseUrl(properties) + path)
 				.build();
-		OkHttpClient client = httpClientProvider.get();
-		Response response = client.newCall(request).execute();
-		if (response.code() == 404) throw new TolerableFailureException();
-		if (response.code() != 200) throw new ApiException();
+		Response response = execute(request, "DELETE /file");
+		try {
+			if (response.code() == 404) throw new TolerableFailureException();
+			if (response.code() != 200) throw new ApiException();
+		} finally {
+			response.close();
+		}
 	}
 
 	@Override
@@ -289,27 +366,34 @@ class MailboxApiImpl implements MailboxApi {
 			throws IOException, ApiException {
 		if (!properties.isOwner()) throw new IllegalArgumentException();
 		Response response = sendGetRequest(properties, "/folders");
-		if (response.code() != 200) throw new ApiException();
-
-		ResponseBody body = response.body();
-		if (body == null) throw new ApiException();
 		try {
-			JsonNode node = mapper.readTree(body.string());
-			ArrayNode filesNode = getArray(node, "folders");
+			if (response.code() != 200) throw new ApiException();
 			List<MailboxFolderId> list = new ArrayList<>();
-			for (JsonNode fileNode : filesNode) {
-				if (!fileNode.isObject()) throw new ApiException();
-				ObjectNode objectNode = (ObjectNode) fileNode;
-				JsonNode idNode = objectNode.get("id");
-				if (idNode == null || !idNode.isTextual()) {
+			parseArray(response, "folders", parser -> {
+				if (parser.currentToken() != START_OBJECT) {
 					throw new ApiException();
 				}
-				String id = idNode.asText();
-				list.add(MailboxFolderId.fromString(id));
-			}
+				String id = null;
+				while (parser.nextToken() == FIELD_NAME) {
+					String field = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if ("id".equals(field)) {
+						if (value != VALUE_STRING) throw new ApiException();
+						id = parser.getText();
+					} else {
+						parser.skipChildren();
+					}
+				}
+				if (id == null) throw new ApiException();
+				try {
+					list.add(MailboxFolderId.fromString(id));
+				} catch (InvalidMailboxIdException e) {
+					throw new ApiException();
+				}
+			});
 			return list;
-		} catch (JacksonException | InvalidMailboxIdException e) {
-			throw new ApiException();
+		} finally {
+			response.close();
 		}
 	}
 
@@ -317,21 +401,41 @@ class MailboxApiImpl implements MailboxApi {
 
 	private Response sendGetRequest(MailboxProperties properties, String path)
 			throws IOException {
+		return sendGetRequest(properties, path, "GET " + path);
+	}
+
+	private Response sendGetRequest(MailboxProperties properties, String path,
+			String endpoint) throws IOException {
 		Request request = getRequestBuilder(properties.getAuthToken())
 				.url(getBaseUrl(properties) + path)
 				.build();
-		OkHttpClient client = httpClientProvider.get();
-		return client.newCall(request).execute();
+		return execute(request, endpoint);
 	}
 
 	private Response sendPostRequest(MailboxProperties properties, String path,
-			RequestBody body) throws IOException {
+			RequestBody body, String endpoint) throws IOException {
 		Request request = getRequestBuilder(properties.getAuthToken())
 				.url(getBaseUrl(properties) + path)
 				.post(body)
 				.build();
-		OkHttpClient client = httpClientProvider.get();
-		return client.newCall(request).execute();
+		return execute(request, endpoint);
+	}
+
+	/**
+	 * Executes the given request and logs how long it took to receive the
+	 * response headers. The caller is responsible for closing the response
+	 * so that the connection can be returned to the pool.
+	 *
+	 * @param endpoint a description of the endpoint for logging, without
+	 * any IDs
+	 */
+	private Response execute(Request request, String endpoint)
+			throws IOException {
+		long start = now();
+		OkHttpClient client = mailboxClientProvider.get();
+		Response response = client.newCall(request).execute();
+		logDuration(LOG, endpoint, start);
+		return response;
 	}
 
 	private Request.Builder getRequestBuilder(MailboxId token) {
@@ -341,6 +445,54 @@ class MailboxApiImpl implements MailboxApi {
 
 	/* JSON helpers */
 
+	private interface ElementParser {
+
+		/**
+		 * Parses an array element, starting at the current token, which is
+		 * the first token of the element. Must consume the whole element.
+		 */
+		void parseElement(JsonParser parser)
+				throws IOException, ApiException;
+	}
+
+	/**
+	 * Parses a JSON object from the body of the given response with the
+	 * streaming API, passing each element of the array with the given name
+	 * to the given parser. Other fields are skipped without being parsed.
+	 */
+	private void parseArray(Response response, String name,
+			ElementParser elementParser) throws IOException, ApiException {
+		ResponseBody body = response.body();
+		if (body == null) throw new ApiException();
+		JsonParser parser = null;
+		try {
+			parser = mapper.getFactory().createParser(body.byteStream());
+			if (parser.nextToken() != START_OBJECT) throw new ApiException();
+			boolean found = false;
+			while (parser.nextToken() == FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (name.equals(field)) {
+					if (value != START_ARRAY) throw new ApiException();
+					while (parser.nextToken() != END_ARRAY) {
+						if (parser.currentToken() == null) {
+							throw new ApiException();
+						}
+						elementParser.parseElement(parser);
+					}
+					found = true;
+				} else {
+					parser.skipChildren();
+				}
+			}
+			if (!found) throw new ApiException();
+		} catch (JacksonException e) {
+			throw new ApiException();
+		} finally {
+			if (parser != null) parser.close();
+		}
+	}
+
 	private ArrayNode getArray(JsonNode node, String name) throws ApiException {
 		JsonNode arrayNode = node.get(name);
 		if (arrayNode == null || !arrayNode.isArray()) {
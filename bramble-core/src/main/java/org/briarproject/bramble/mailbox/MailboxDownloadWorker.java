@@ -12,6 +12,10 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.logging.Logger;
 
@@ -19,7 +23,10 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.lang.Math.min;
+import static java.util.logging.Level.INFO;
 import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.util.LogUtils.now;
 
 @ThreadSafe
 @NotNullByDefault
@@ -51,6 +58,17 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 	protected static final Logger LOG =
 			getLogger(MailboxDownloadWorker.class.getName());
 
+	/**
+	 * The maximum number of files to download concurrently. Each concurrent
+	 * download is a chain of API calls that takes the next file from the
+	 * shared queue, downloads and deletes it, and repeats until the queue is
+	 * empty. This keeps the high-latency Tor link busy while individual
+	 * requests are waiting for responses.
+	 * <p>
+	 * Package access for testing.
+	 */
+	static final int MAX_CONCURRENT_DOWNLOADS = 3;
+
 	private final ConnectivityChecker connectivityChecker;
 	private final TorReachabilityMonitor torReachabilityMonitor;
 	protected final MailboxApiCaller mailboxApiCaller;
@@ -66,6 +84,18 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 	@Nullable
 	protected Cancellable apiCall = null;
 
+	/**
+	 * The current API call of each concurrent download, indexed by download.
+	 */
+	@GuardedBy("lock")
+	private final Map<Integer, Cancellable> downloads = new HashMap<>();
+
+	@GuardedBy("lock")
+	private long downloadStart = 0, bytesDownloaded = 0;
+
+	@GuardedBy("lock")
+	private int filesDownloaded = 0;
+
 	/**
 	 * Creates the API call that starts the worker's download cycle.
 	 */
@@ -107,13 +137,15 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 	@Override
 	public void destroy() {
 		LOG.info("Destroyed");
-		Cancellable apiCall;
+		List<Cancellable> apiCalls;
 		synchronized (lock) {
 			state = State.DESTROYED;
-			apiCall = this.apiCall;
-			this.apiCall = null;
+			apiCalls = new ArrayList<>(downloads.values());
+			downloads.clear();
+			if (apiCall != null) apiCalls.add(apiCall);
+			apiCall = null;
 		}
-		if (apiCall != null) apiCall.cancel();
+		for (Cancellable c : apiCalls) c.cancel();
 		connectivityChecker.removeObserver(this);
 		torReachabilityMonitor.removeObserver(this);
 	}
@@ -156,25 +188,55 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 		}
 	}
 
-	void downloadNextFile(Queue<FolderFile> queue) {
+	/**
+	 * Starts up to {@link #MAX_CONCURRENT_DOWNLOADS} concurrent downloads
+	 * that share the given queue. When the queue is empty and all downloads
+	 * have finished, the worker checks for files again.
+	 */
+	void downloadFiles(Queue<FolderFile> queue) {
 		synchronized (lock) {
 			if (state == State.DESTROYED) return;
-			if (queue.isEmpty()) {
-				// Check for files again, as new files may have arrived while
-				// we were downloading
-				apiCall = mailboxApiCaller.retryWithBackoff(
-						createApiCallForDownloadCycle());
-			} else {
-				FolderFile file = queue.remove();
-				apiCall = mailboxApiCaller.retryWithBackoff(
-						new SimpleApiCall(() ->
-								apiCallDownloadFile(file, queue)));
+			apiCall = null;
+			downloadStart = now();
+			bytesDownloaded = 0;
+			filesDownloaded = 0;
+			int concurrent = min(MAX_CONCURRENT_DOWNLOADS, queue.size());
+			if (concurrent == 0) checkForFilesAgain();
+			for (int i = 0; i < concurrent; i++) downloadNextFile(i, queue);
+		}
+	}
+
+	@GuardedBy("lock")
+	private void downloadNextFile(int download, Queue<FolderFile> queue) {
+		FolderFile file = queue.poll();
+		if (file == null) {
+			downloads.remove(download);
+			if (downloads.isEmpty()) {
+				if (LOG.isLoggable(INFO)) {
+					long duration = now() - downloadStart;
+					LOG.info("Downloaded " + filesDownloaded + " files, "
+							+ bytesDownloaded + " bytes in " + duration
+							+ " ms");
+				}
+				checkForFilesAgain();
 			}
+		} else {
+			downloads.put(download, mailboxApiCaller.retryWithBackoff(
+					new SimpleApiCall(() ->
+							apiCallDownloadFile(download, file, queue))));
 		}
 	}
 
-	private void apiCallDownloadFile(FolderFile file, Queue<FolderFile> queue)
-			throws IOException, ApiException {
+	@GuardedBy("lock")
+	private void checkForFilesAgain() {
+		// Check for files again, as new files may have arrived while
+		// we were downloading
+		apiCall = mailboxApiCaller.retryWithBackoff(
+				createApiCallForDownloadCycle());
+	}
+
+	private void apiCallDownloadFile(int download, FolderFile file,
+			Queue<FolderFile> queue) throws IOException, ApiException {
 		synchronized (lock) {
 			if (state == State.DESTROYED) return;
 		}
@@ -194,23 +256,33 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 			if (!tempFile.delete()) {
 				LOG.warning("Failed to delete temporary file");
 			}
-			downloadNextFile(queue);
+			synchronized (lock) {
+				if (state == State.DESTROYED) return;
+				downloadNextFile(download, queue);
+			}
 			return;
 		}
+		long length = tempFile.length();
+		synchronized (lock) {
+			bytesDownloaded += length;
+			filesDownloaded++;
+		}
 		mailboxFileManager.handleDownloadedFile(tempFile);
-		deleteFile(file, queue);
+		deleteFile(download, file, queue);
 	}
 
-	private void deleteFile(FolderFile file, Queue<FolderFile> queue) {
+	private void deleteFile(int download, FolderFile file,
+			Queue<FolderFile> queue) {
 		synchronized (lock) {
 			if (state == State.DESTROYED) return;
-			apiCall = mailboxApiCaller.retryWithBackoff(
-					new SimpleApiCall(() -> apiCallDeleteFile(file, queue)));
+			downloads.put(download, mailboxApiCaller.retryWithBackoff(
+					new SimpleApiCall(() ->
+							apiCallDeleteFile(download, file, queue))));
 		}
 	}
 
-	private void apiCallDeleteFile(FolderFile file, Queue<FolderFile> queue)
-			throws IOException, ApiException {
+	private void apiCallDeleteFile(int download, FolderFile file,
+			Queue<FolderFile> queue) throws IOException, ApiException {
 		synchronized (lock) {
 			if (state == State.DESTROYED) return;
 		}
@@ -221,7 +293,10 @@ abstract class MailboxDownloadWorker implements MailboxWorker,
 			// File not found - continue to the next file
 			LOG.warning("File does not exist");
 		}
-		downloadNextFile(queue);
+		synchronized (lock) {
+			if (state == State.DESTROYED) return;
+			downloadNextFile(download, queue);
+		}
 	}
 
 	@Override
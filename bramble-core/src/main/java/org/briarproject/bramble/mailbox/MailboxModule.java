@@ -65,6 +65,7 @@ public class MailboxModule {
 	}
 
 	@Provides
+	@Singleton
 	MailboxApi provideMailboxApi(MailboxApiImpl mailboxApi) {
 		return mailboxApi;
 	}
@@ -120,7 +120,7 @@ class OwnMailboxDownloadWorker extends MailboxDownloadWorker {
 		if (LOG.isLoggable(INFO)) {
 			LOG.info("Downloading " + queue.size() + " files");
 		}
-		downloadNextFile(queue);
+		downloadFiles(queue);
 	}
 
 	// Package access for testing
@@ -6,6 +6,7 @@ import org.briarproject.bramble.api.connection.ConnectionManager;
 import org.briarproject.bramble.api.connection.ConnectionRegistry;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.event.ContactAddedEvent;
+import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.event.Event;
 import org.briarproject.bramble.api.event.EventListener;
@@ -35,8 +36,8 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -46,6 +47,8 @@ import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
+import static java.lang.Math.min;
+import static java.util.Collections.sort;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
@@ -58,6 +61,20 @@ class PollerImpl implements Poller, EventListener {
 
 	private static final Logger LOG = getLogger(PollerImpl.class.getName());
 
+	/**
+	 * The maximum number of contacts that are passed to a transport's
+	 * plugin in each poll. Contacts that don't fit are polled first next
+	 * time. The cap is per transport so that a transport with slow
+	 * connection attempts can't hold up the others.
+	 */
+	static final int MAX_ATTEMPTS_PER_POLL = 64;
+
+	/**
+	 * The maximum exponent for per-contact backoff. After this many
+	 * consecutive failures a contact is skipped for up to 2^n - 1 polls.
+	 */
+	private static final int MAX_BACKOFF_EXPONENT = 5;
+
 	private final Executor ioExecutor, wakefulIoExecutor;
 	private final TaskScheduler scheduler;
 	private final ConnectionManager connectionManager;
@@ -69,6 +86,10 @@ class PollerImpl implements Poller, EventListener {
 	private final Lock lock;
 	@GuardedBy("lock")
 	private final Map<TransportId, ScheduledPollTask> tasks;
+	@GuardedBy("lock")
+	private final Map<TransportId, TransportPollState> pollStates;
+	@GuardedBy("lock")
+	private long activityCounter = 0;
 
 	@Inject
 	PollerImpl(@IoExecutor Executor ioExecutor,
@@ -91,6 +112,7 @@ class PollerImpl implements Poller, EventListener {
 		this.clock = clock;
 		lock = new ReentrantLock();
 		tasks = new HashMap<>();
+		pollStates = new HashMap<>();
 	}
 
 	@Override
@@ -99,16 +121,23 @@ class PollerImpl implements Poller, EventListener {
 			ContactAddedEvent c = (ContactAddedEvent) e;
 			// Connect to the newly added contact
 			connectToContact(c.getContactId());
+		} else if (e instanceof ContactRemovedEvent) {
+			ContactRemovedEvent c = (ContactRemovedEvent) e;
+			forgetContact(c.getContactId());
 		} else if (e instanceof ConnectionClosedEvent) {
 			ConnectionClosedEvent c = (ConnectionClosedEvent) e;
 			// Reschedule polling, the polling interval may have decreased
 			reschedule(c.getTransportId());
 			// If an outgoing connection failed, try to reconnect
 			if (!c.isIncoming() && c.isException()) {
+				// Back off before polling the contact again
+				recordFailure(c.getContactId(), c.getTransportId());
 				connectToContact(c.getContactId(), c.getTransportId());
 			}
 		} else if (e instanceof ConnectionOpenedEvent) {
 			ConnectionOpenedEvent c = (ConnectionOpenedEvent) e;
+			// The contact is reachable, so stop backing off
+			recordActivity(c.getContactId(), c.getTransportId());
 			// Reschedule polling, the polling interval may have decreased
 			reschedule(c.getTransportId());
 		} else if (e instanceof TransportActiveEvent) {
@@ -122,6 +151,54 @@ class PollerImpl implements Poller, EventListener {
 		}
 	}
 
+	private void forgetContact(ContactId c) {
+		lock.lock();
+		try {
+			for (TransportPollState state : pollStates.values()) {
+				state.contacts.remove(c);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void recordActivity(ContactId c, TransportId t) {
+		lock.lock();
+		try {
+			ContactPollState contactState =
+					getPollState(t).getContactState(c);
+			contactState.failures = 0;
+			contactState.skipUntilRound = 0;
+			contactState.lastActivity = ++activityCounter;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void recordFailure(ContactId c, TransportId t) {
+		lock.lock();
+		try {
+			TransportPollState state = getPollState(t);
+			ContactPollState contactState = state.getContactState(c);
+			contactState.failures++;
+			int exponent = min(contactState.failures, MAX_BACKOFF_EXPONENT);
+			int skip = random.nextInt(1 << exponent);
+			contactState.skipUntilRound = state.round + 1 + skip;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@GuardedBy("lock")
+	private TransportPollState getPollState(TransportId t) {
+		TransportPollState state = pollStates.get(t);
+		if (state == null) {
+			state = new TransportPollState();
+			pollStates.put(t, state);
+		}
+		return state;
+	}
+
 	private void connectToContact(ContactId c) {
 		for (SimplexPlugin s : pluginManager.getSimplexPlugins())
 			if (s.shouldPoll()) connectToContact(c, s);
@@ -221,12 +298,16 @@ class PollerImpl implements Poller, EventListener {
 					transportPropertyManager.getRemoteProperties(t);
 			Collection<ContactId> connected =
 					connectionRegistry.getConnectedOrBetterContacts(t);
+			Collection<ContactId> selected =
+					selectContactsToPoll(t, remote.keySet(), connected);
 			Collection<Pair<TransportProperties, ConnectionHandler>>
 					properties = new ArrayList<>();
-			for (Entry<ContactId, TransportProperties> e : remote.entrySet()) {
-				ContactId c = e.getKey();
-				if (!connected.contains(c))
-					properties.add(new Pair<>(e.getValue(), new Handler(c, t)));
+			for (ContactId c : selected) {
+				properties.add(new Pair<>(remote.get(c), new Handler(c, t)));
+			}
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Polling " + properties.size() + " of "
+						+ remote.size() + " contacts");
 			}
 			if (!properties.isEmpty()) p.poll(properties);
 		} catch (DbException e) {
@@ -234,6 +315,88 @@ class PollerImpl implements Poller, EventListener {
 		}
 	}
 
+	/**
+	 * Chooses which contacts to pass to the plugin in this poll. Contacts
+	 * whose outgoing connections have failed repeatedly are skipped for a
+	 * random number of polls that grows exponentially with the number of
+	 * failures. The remaining contacts are ordered so that contacts left
+	 * out of earlier polls come first, followed by recently active
+	 * contacts, and at most {@link #MAX_ATTEMPTS_PER_POLL} are chosen.
+	 */
+	private Collection<ContactId> selectContactsToPoll(TransportId t,
+			Collection<ContactId> remote, Collection<ContactId> connected) {
+		lock.lock();
+		try {
+			TransportPollState state = getPollState(t);
+			long round = ++state.round;
+			List<ContactPollState> candidates = new ArrayList<>();
+			for (ContactId c : remote) {
+				if (connected.contains(c)) continue;
+				ContactPollState contactState = state.getContactState(c);
+				if (contactState.skipUntilRound <= round)
+					candidates.add(contactState);
+			}
+			// Least recently polled contacts first, then most recently
+			// active contacts first
+			sort(candidates, (a, b) -> {
+				if (a.lastPolledRound != b.lastPolledRound)
+					return Long.compare(a.lastPolledRound, b.lastPolledRound);
+				return Long.compare(b.lastActivity, a.lastActivity);
+			});
+			List<ContactId> selected = new ArrayList<>();
+			for (ContactPollState contactState : candidates) {
+				if (selected.size() == MAX_ATTEMPTS_PER_POLL) break;
+				contactState.lastPolledRound = round;
+				selected.add(contactState.contactId);
+			}
+			return selected;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static class TransportPollState {
+
+		private final Map<ContactId, ContactPollState> contacts =
+				new HashMap<>();
+
+		/**
+		 * The number of polls of this transport, used for backing off.
+		 */
+		private long round = 0;
+
+		private ContactPollState getContactState(ContactId c) {
+			ContactPollState state = contacts.get(c);
+			if (state == null) {
+				state = new ContactPollState(c);
+				contacts.put(c, state);
+			}
+			return state;
+		}
+	}
+
+	private static class ContactPollState {
+
+		private final ContactId contactId;
+
+		private int failures = 0;
+		private long skipUntilRound = 0;
+		/**
+		 * The last poll of the transport in which this contact was passed
+		 * to the plugin, used for rotating contacts under the cap.
+		 */
+		private long lastPolledRound = 0;
+		/**
+		 * A counter value that increases with each successful connection,
+		 * used for ordering contacts by recent activity.
+		 */
+		private long lastActivity = 0;
+
+		private ContactPollState(ContactId contactId) {
+			this.contactId = contactId;
+		}
+	}
+
 	private class ScheduledPollTask {
 
 		private final PollTask task;
@@ -0,0 +1,82 @@
+package org.briarproject.bramble.plugin.tor;
+
+import org.briarproject.bramble.PoliteExecutor;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * Schedules outgoing connection attempts to hidden services.
+ * <p>
+ * At most a fixed number of attempts run at once, in the order in which
+ * they're scheduled. Deciding which hidden services to attempt, and in
+ * what order, is left to the poller, which backs off from contacts that
+ * can't be reached and puts recently reached contacts first.
+ */
+@ThreadSafe
+@NotNullByDefault
+class TorConnectionScheduler {
+
+	private static final Logger LOG =
+			getLogger(TorConnectionScheduler.class.getName());
+
+	private final Executor connectionExecutor;
+
+	private final Object lock = new Object();
+	// Hidden services with attempts that are queued or running
+	@GuardedBy("lock")
+	private final Set<String> pending = new HashSet<>();
+
+	/**
+	 * @param executor the executor on which connection attempts will run
+	 * @param maxConcurrentAttempts the maximum number of connection attempts
+	 * that will run concurrently
+	 */
+	TorConnectionScheduler(Executor executor, int maxConcurrentAttempts) {
+		connectionExecutor = new PoliteExecutor("TorConnectionScheduler",
+				executor, maxConcurrentAttempts);
+	}
+
+	/**
+	 * Schedules connection attempts to the given hidden services, which are
+	 * mapped to the tasks that make the attempts. The attempts are started
+	 * in the map's iteration order. Hidden services that already have
+	 * attempts queued or running are skipped.
+	 */
+	void schedule(Map<String, Runnable> attempts) {
+		List<String> due = new ArrayList<>();
+		synchronized (lock) {
+			for (String onion : attempts.keySet()) {
+				if (pending.add(onion)) due.add(onion);
+			}
+		}
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Scheduling " + due.size() + " of " + attempts.size()
+					+ " connection attempts");
+		}
+		for (String onion : due) {
+			Runnable attempt = attempts.get(onion);
+			connectionExecutor.execute(() -> {
+				try {
+					attempt.run();
+				} finally {
+					synchronized (lock) {
+						pending.remove(onion);
+					}
+				}
+			});
+		}
+	}
+}
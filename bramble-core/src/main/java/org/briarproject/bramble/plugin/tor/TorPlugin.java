@@ -40,7 +40,9 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
@@ -92,7 +94,6 @@ class TorPlugin implements DuplexPlugin, EventListener {
 	private static final Pattern ONION_V3 = Pattern.compile("[a-z2-7]{56}");
 
 	protected final Executor ioExecutor;
-	private final Executor wakefulIoExecutor;
 	private final Executor connectionStatusExecutor;
 	private final NetworkManager networkManager;
 	private final LocationUtils locationUtils;
@@ -100,6 +101,7 @@ class TorPlugin implements DuplexPlugin, EventListener {
 	private final CircumventionProvider circumventionProvider;
 	private final BatteryManager batteryManager;
 	private final Backoff backoff;
+	private final TorConnectionScheduler connectionScheduler;
 	private final TorRendezvousCrypto torRendezvousCrypto;
 	private final TorWrapper tor;
 	private final PluginCallback callback;
@@ -113,26 +115,26 @@ class TorPlugin implements DuplexPlugin, EventListener {
 	private volatile Settings settings = null;
 
 	TorPlugin(Executor ioExecutor,
-			Executor wakefulIoExecutor,
 			NetworkManager networkManager,
 			LocationUtils locationUtils,
 			SocketFactory torSocketFactory,
 			CircumventionProvider circumventionProvider,
 			BatteryManager batteryManager,
 			Backoff backoff,
+			TorConnectionScheduler connectionScheduler,
 			TorRendezvousCrypto torRendezvousCrypto,
 			TorWrapper tor,
 			PluginCallback callback,
 			long maxLatency,
 			int maxIdleTime) {
 		this.ioExecutor = ioExecutor;
-		this.wakefulIoExecutor = wakefulIoExecutor;
 		this.networkManager = networkManager;
 		this.locationUtils = locationUtils;
 		this.torSocketFactory = torSocketFactory;
 		this.circumventionProvider = circumventionProvider;
 		this.batteryManager = batteryManager;
 		this.backoff = backoff;
+		this.connectionScheduler = connectionScheduler;
 		this.torRendezvousCrypto = torRendezvousCrypto;
 		this.tor = tor;
 		this.callback = callback;
@@ -338,24 +340,28 @@ class TorPlugin implements DuplexPlugin, EventListener {
 			properties) {
 		if (getState() != ACTIVE) return;
 		backoff.increment();
+		// Keep the poller's order, which puts recently reached contacts first
+		Map<String, Runnable> attempts = new LinkedHashMap<>();
 		for (Pair<TransportProperties, ConnectionHandler> p : properties) {
-			connect(p.getFirst(), p.getSecond());
+			String onion3 = getOnion(p.getFirst());
+			if (onion3 != null) {
+				attempts.put(onion3, () -> connect(p.getFirst(),
+						p.getSecond()));
+			}
 		}
+		connectionScheduler.schedule(attempts);
 	}
 
 	private void connect(TransportProperties p, ConnectionHandler h) {
-		wakefulIoExecutor.execute(() -> {
-			DuplexTransportConnection d = createConnection(p);
-			if (d != null) {
-				backoff.reset();
-				h.handleConnection(d);
-			}
-		});
+		DuplexTransportConnection d = createConnection(p);
+		if (d != null) {
+			backoff.reset();
+			h.handleConnection(d);
+		}
 	}
 
-	@Override
-	public DuplexTransportConnection createConnection(TransportProperties p) {
-		if (getState() != ACTIVE) return null;
+	@Nullable
+	private String getOnion(TransportProperties p) {
 		String onion3 = p.get(PROP_ONION_V3);
 		if (onion3 != null && !ONION_V3.matcher(onion3).matches()) {
 			// Don't scrub the address so we can find the problem
@@ -364,6 +370,13 @@ class TorPlugin implements DuplexPlugin, EventListener {
 			}
 			onion3 = null;
 		}
+		return onion3;
+	}
+
+	@Override
+	public DuplexTransportConnection createConnection(TransportProperties p) {
+		if (getState() != ACTIVE) return null;
+		String onion3 = getOnion(p);
 		if (onion3 == null) return null;
 		Socket s = null;
 		try {
@@ -45,6 +45,7 @@ abstract class TorPluginFactory implements DuplexPluginFactory {
 	private static final int MIN_POLLING_INTERVAL = 60 * 1000; // 1 minute
 	private static final int MAX_POLLING_INTERVAL = 10 * 60 * 1000; // 10 mins
 	private static final double BACKOFF_BASE = 1.2;
+	static final int MAX_CONCURRENT_CONNECTION_ATTEMPTS = 8;
 
 	protected final Executor ioExecutor, eventExecutor, wakefulIoExecutor;
 	protected final NetworkManager networkManager;
@@ -96,6 +97,7 @@ abstract class TorPluginFactory implements DuplexPluginFactory {
 	abstract String getArchitectureForTorBinary();
 
 	abstract TorPlugin createPluginInstance(Backoff backoff,
+			TorConnectionScheduler connectionScheduler,
 			TorRendezvousCrypto torRendezvousCrypto, PluginCallback callback,
 			String architecture);
 
@@ -124,10 +126,13 @@ abstract class TorPluginFactory implements DuplexPluginFactory {
 
 		Backoff backoff = backoffFactory.createBackoff(MIN_POLLING_INTERVAL,
 				MAX_POLLING_INTERVAL, BACKOFF_BASE);
+		TorConnectionScheduler connectionScheduler =
+				new TorConnectionScheduler(wakefulIoExecutor,
+						MAX_CONCURRENT_CONNECTION_ATTEMPTS);
 		TorRendezvousCrypto torRendezvousCrypto =
 				new TorRendezvousCryptoImpl(crypto);
-		TorPlugin plugin = createPluginInstance(backoff, torRendezvousCrypto,
-				callback, architecture);
+		TorPlugin plugin = createPluginInstance(backoff, connectionScheduler,
+				torRendezvousCrypto, callback, architecture);
 		eventBus.addListener(plugin);
 		return plugin;
 	}
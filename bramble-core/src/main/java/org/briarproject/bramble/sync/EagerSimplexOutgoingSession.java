@@ -2,6 +2,7 @@ package org.briarproject.bramble.sync;
 
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.plugin.TransportId;
@@ -12,17 +13,32 @@ import org.briarproject.bramble.api.transport.StreamWriter;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.lang.Math.min;
+import static java.util.Collections.emptyList;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Logger.getLogger;
 
 /**
  * A {@link SimplexOutgoingSession} that sends messages eagerly, ie
  * regardless of whether they're due for retransmission.
+ * <p>
+ * Messages are loaded from the DB in chunks. While one chunk is being
+ * written, the next chunk is loaded on the {@link DatabaseExecutor}, so the
+ * session pays for two DB transactions per chunk rather than one per
+ * message: one to load the chunk and one to mark it as sent once it's been
+ * written.
  */
 @ThreadSafe
 @NotNullByDefault
@@ -31,7 +47,25 @@ class EagerSimplexOutgoingSession extends SimplexOutgoingSession {
 	private static final Logger LOG =
 			getLogger(EagerSimplexOutgoingSession.class.getName());
 
+	/**
+	 * The maximum number of messages to load in each chunk. At most two
+	 * chunks are held in memory at once: the one being written and the one
+	 * being loaded.
+	 */
+	static final int MAX_MESSAGES_PER_CHUNK = 64;
+
+	/**
+	 * A placeholder that's added to the queue when the session is
+	 * interrupted, to wake the writer if it's waiting for a chunk.
+	 */
+	private static final Chunk INTERRUPTED = new Chunk(emptyList(), null);
+
+	private final Executor dbExecutor;
+	private final BlockingQueue<Chunk> loadedChunks =
+			new LinkedBlockingQueue<>();
+
 	EagerSimplexOutgoingSession(DatabaseComponent db,
+			Executor dbExecutor,
 			EventBus eventBus,
 			ContactId contactId,
 			TransportId transportId,
@@ -40,17 +74,52 @@ class EagerSimplexOutgoingSession extends SimplexOutgoingSession {
 			SyncRecordWriter recordWriter) {
 		super(db, eventBus, contactId, transportId, maxLatency, streamWriter,
 				recordWriter);
+		this.dbExecutor = dbExecutor;
+	}
+
+	@Override
+	public void interrupt() {
+		super.interrupt();
+		loadedChunks.add(INTERRUPTED);
 	}
 
 	@Override
 	void sendMessages() throws DbException, IOException {
-		for (MessageId m : loadUnackedMessageIdsToSend()) {
-			if (isInterrupted()) break;
-			Message message = db.transactionWithNullableResult(false, txn ->
-					db.getMessageToSend(txn, contactId, m, maxLatency, true));
-			if (message == null) continue; // No longer shared
-			recordWriter.writeMessage(message);
-			LOG.info("Sent message");
+		List<MessageId> ids = new ArrayList<>(loadUnackedMessageIdsToSend());
+		if (ids.isEmpty()) return;
+		loadChunk(ids, 0);
+		try {
+			for (int start = 0; start < ids.size();
+					start += MAX_MESSAGES_PER_CHUNK) {
+				Chunk chunk = loadedChunks.take();
+				if (chunk == INTERRUPTED || isInterrupted()) break;
+				if (chunk.exception instanceof DbException)
+					throw (DbException) chunk.exception;
+				if (chunk.exception instanceof RuntimeException)
+					throw (RuntimeException) chunk.exception;
+				if (chunk.exception instanceof Error)
+					throw (Error) chunk.exception;
+				// Start loading the next chunk before writing this one
+				int next = start + MAX_MESSAGES_PER_CHUNK;
+				if (next < ids.size()) loadChunk(ids, next);
+				List<MessageId> sent = new ArrayList<>(chunk.messages.size());
+				for (Message m : chunk.messages) {
+					if (isInterrupted()) break;
+					recordWriter.writeMessage(m);
+					sent.add(m.getId());
+				}
+				// Only mark the messages as sent once they've been written
+				if (!sent.isEmpty()) {
+					db.transaction(false, txn -> db.setMessagesSent(txn,
+							contactId, sent, maxLatency));
+				}
+				if (LOG.isLoggable(INFO)) {
+					LOG.info("Sent " + sent.size() + " messages");
+				}
+			}
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted while waiting for messages to send");
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -63,4 +132,43 @@ class EagerSimplexOutgoingSession extends SimplexOutgoingSession {
 		}
 		return ids;
 	}
+
+	/**
+	 * Loads the chunk of messages starting at the given index on the
+	 * {@link DatabaseExecutor}, without marking them as sent, and adds it to
+	 * the queue of loaded chunks. If loading fails, a chunk holding the
+	 * exception is added instead, so the writer doesn't wait forever.
+	 */
+	private void loadChunk(List<MessageId> ids, int start) {
+		int end = min(start + MAX_MESSAGES_PER_CHUNK, ids.size());
+		List<MessageId> chunkIds = new ArrayList<>(ids.subList(start, end));
+		dbExecutor.execute(() -> {
+			if (isInterrupted()) return;
+			try {
+				Collection<Message> messages =
+						db.transactionWithResult(true, txn ->
+								db.generateBatch(txn, contactId, chunkIds,
+										maxLatency, false));
+				loadedChunks.add(new Chunk(messages, null));
+			} catch (DbException | RuntimeException | Error e) {
+				// The exception will be rethrown by the writer
+				loadedChunks.add(new Chunk(emptyList(), e));
+			}
+		});
+	}
+
+	@Immutable
+	@NotNullByDefault
+	private static class Chunk {
+
+		private final Collection<Message> messages;
+		@Nullable
+		private final Throwable exception;
+
+		private Chunk(Collection<Message> messages,
+				@Nullable Throwable exception) {
+			this.messages = messages;
+			this.exception = exception;
+		}
+	}
 }
@@ -1,6 +1,8 @@
 package org.briarproject.bramble.sync.validation;
 
 import org.briarproject.bramble.api.Pair;
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.SignedItem;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.db.DbException;
@@ -26,8 +28,11 @@ import org.briarproject.bramble.api.sync.validation.ValidationManager;
 import org.briarproject.bramble.api.versioning.ClientMajorVersion;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
@@ -36,6 +41,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
@@ -58,17 +64,25 @@ class ValidationManagerImpl implements ValidationManager, Service,
 	private static final Logger LOG =
 			Logger.getLogger(ValidationManagerImpl.class.getName());
 
+	/**
+	 * The maximum number of outstanding messages to validate in a single
+	 * task, with their signatures verified together.
+	 */
+	private static final int MAX_BATCH_SIZE = 50;
+
 	private final DatabaseComponent db;
+	private final CryptoComponent crypto;
 	private final Executor dbExecutor, validationExecutor;
 	private final Map<ClientMajorVersion, MessageValidator> validators;
 	private final Map<ClientMajorVersion, IncomingMessageHook> hooks;
 	private final AtomicBoolean used = new AtomicBoolean(false);
 
 	@Inject
-	ValidationManagerImpl(DatabaseComponent db,
+	ValidationManagerImpl(DatabaseComponent db, CryptoComponent crypto,
 			@DatabaseExecutor Executor dbExecutor,
 			@ValidationExecutor Executor validationExecutor) {
 		this.db = db;
+		this.crypto = crypto;
 		this.dbExecutor = dbExecutor;
 		this.validationExecutor = validationExecutor;
 		validators = new ConcurrentHashMap<>();
@@ -108,19 +122,33 @@ class ValidationManagerImpl implements ValidationManager, Service,
 		try {
 			Queue<MessageId> unvalidated = new LinkedList<>(
 					db.transactionWithResult(true, db::getMessagesToValidate));
-			validateNextMessageAsync(unvalidated);
+			validateNextMessageAsync(unvalidated, new ArrayList<>());
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
 		}
 	}
 
-	private void validateNextMessageAsync(Queue<MessageId> unvalidated) {
+	/**
+	 * Loads the next message from the unvalidated queue asynchronously,
+	 * adding it to the given batch of loaded messages. The batch is handed
+	 * to the validation executor when it's full or the queue is empty.
+	 */
+	private void validateNextMessageAsync(Queue<MessageId> unvalidated,
+			List<Pair<Message, Group>> loaded) {
+		List<Pair<Message, Group>> batch;
+		if (loaded.size() == MAX_BATCH_SIZE || unvalidated.isEmpty()) {
+			if (!loaded.isEmpty()) validateMessagesAsync(loaded);
+			batch = new ArrayList<>();
+		} else {
+			batch = loaded;
+		}
 		if (unvalidated.isEmpty()) return;
-		dbExecutor.execute(() -> validateNextMessage(unvalidated));
+		dbExecutor.execute(() -> validateNextMessage(unvalidated, batch));
 	}
 
 	@DatabaseExecutor
-	private void validateNextMessage(Queue<MessageId> unvalidated) {
+	private void validateNextMessage(Queue<MessageId> unvalidated,
+			List<Pair<Message, Group>> batch) {
 		try {
 			Pair<Message, Group> mg = db.transactionWithResult(true, txn -> {
 				MessageId id = unvalidated.poll();
@@ -129,16 +157,18 @@ class ValidationManagerImpl implements ValidationManager, Service,
 				Group g = db.getGroup(txn, m.getGroupId());
 				return new Pair<>(m, g);
 			});
-			validateMessageAsync(mg.getFirst(), mg.getSecond());
-			validateNextMessageAsync(unvalidated);
+			batch.add(mg);
+			validateNextMessageAsync(unvalidated, batch);
 		} catch (NoSuchMessageException e) {
 			LOG.info("Message removed before validation");
-			validateNextMessageAsync(unvalidated);
+			validateNextMessageAsync(unvalidated, batch);
 		} catch (NoSuchGroupException e) {
 			LOG.info("Group removed before validation");
-			validateNextMessageAsync(unvalidated);
+			validateNextMessageAsync(unvalidated, batch);
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
+			// Validate the messages that have already been loaded
+			if (!batch.isEmpty()) validateMessagesAsync(batch);
 		}
 	}
 
@@ -227,26 +257,103 @@ class ValidationManagerImpl implements ValidationManager, Service,
 
 	@ValidationExecutor
 	private void validateMessage(Message m, Group g) {
+		MessageValidator v = getValidator(g);
+		if (v == null) return;
+		try {
+			MessageContext context = v.validateMessage(m, g);
+			storeMessageContextAsync(m, g.getClientId(),
+					g.getMajorVersion(), context);
+		} catch (InvalidMessageException e) {
+			logException(LOG, INFO, e);
+			invalidateMessageAsync(m);
+		}
+	}
+
+	private void validateMessagesAsync(List<Pair<Message, Group>> batch) {
+		validationExecutor.execute(() -> validateMessages(batch));
+	}
+
+	/**
+	 * Validates a batch of messages. The validators' signature checks are
+	 * deferred and verified together once all the messages have been
+	 * validated. Any message with a bad signature is validated again with
+	 * its signatures checked individually, so the validator can decide what
+	 * to do with it.
+	 */
+	@ValidationExecutor
+	private void validateMessages(List<Pair<Message, Group>> batch) {
+		List<ValidatedMessage> validated = new ArrayList<>(batch.size());
+		List<SignedItem> signatures = new ArrayList<>();
+		for (Pair<Message, Group> mg : batch) {
+			Message m = mg.getFirst();
+			Group g = mg.getSecond();
+			MessageValidator v = getValidator(g);
+			if (v == null) continue;
+			MessageContext context = null;
+			List<SignedItem> deferred;
+			crypto.startDeferringSignatures();
+			try {
+				context = v.validateMessage(m, g);
+			} catch (InvalidMessageException e) {
+				// The message is invalid even if its signatures are good
+				logException(LOG, INFO, e);
+			} finally {
+				deferred = crypto.stopDeferringSignatures();
+			}
+			if (context == null) {
+				validated.add(new ValidatedMessage(m, g, null, 0, 0));
+			} else {
+				validated.add(new ValidatedMessage(m, g, context,
+						signatures.size(), deferred.size()));
+				signatures.addAll(deferred);
+			}
+		}
+		boolean[] valid = verifySignatures(signatures);
+		for (ValidatedMessage vm : validated) {
+			if (vm.context == null) {
+				invalidateMessageAsync(vm.message);
+			} else if (valid != null && vm.hasValidSignatures(valid)) {
+				storeMessageContextAsync(vm.message, vm.group.getClientId(),
+						vm.group.getMajorVersion(), vm.context);
+			} else {
+				validateMessage(vm.message, vm.group);
+			}
+		}
+	}
+
+	/**
+	 * Verifies the given signatures, returning null if they couldn't be
+	 * verified.
+	 */
+	@Nullable
+	@ValidationExecutor
+	private boolean[] verifySignatures(List<SignedItem> signatures) {
+		if (signatures.isEmpty()) return new boolean[0];
+		try {
+			return crypto.verifySignatures(signatures);
+		} catch (GeneralSecurityException e) {
+			logException(LOG, INFO, e);
+			return null;
+		}
+	}
+
+	@Nullable
+	private MessageValidator getValidator(Group g) {
 		ClientMajorVersion cv =
 				new ClientMajorVersion(g.getClientId(), g.getMajorVersion());
 		MessageValidator v = validators.get(cv);
 		if (v == null) {
 			if (LOG.isLoggable(WARNING)) LOG.warning("No validator for " + cv);
-		} else {
-			if (LOG.isLoggable(INFO)) {
-				LOG.info("Validating message for " + cv.getClientId());
-			}
-			try {
-				MessageContext context = v.validateMessage(m, g);
-				storeMessageContextAsync(m, g.getClientId(),
-						g.getMajorVersion(), context);
-			} catch (InvalidMessageException e) {
-				logException(LOG, INFO, e);
-				Queue<MessageId> invalidate = new LinkedList<>();
-				invalidate.add(m.getId());
-				invalidateNextMessageAsync(invalidate);
-			}
+		} else if (LOG.isLoggable(INFO)) {
+			LOG.info("Validating message for " + cv.getClientId());
 		}
+		return v;
+	}
+
+	private void invalidateMessageAsync(Message m) {
+		Queue<MessageId> invalidate = new LinkedList<>();
+		invalidate.add(m.getId());
+		invalidateNextMessageAsync(invalidate);
 	}
 
 	private void storeMessageContextAsync(Message m, ClientId c,
@@ -464,4 +571,35 @@ class ValidationManagerImpl implements ValidationManager, Service,
 			logException(LOG, WARNING, e);
 		}
 	}
+
+	/**
+	 * The result of validating a message with its signatures deferred: the
+	 * message context, or null if the message is invalid, and the range of
+	 * the deferred signatures within the batch.
+	 */
+	private static class ValidatedMessage {
+
+		private final Message message;
+		private final Group group;
+		@Nullable
+		private final MessageContext context;
+		private final int firstSignature, signatureCount;
+
+		private ValidatedMessage(Message message, Group group,
+				@Nullable MessageContext context, int firstSignature,
+				int signatureCount) {
+			this.message = message;
+			this.group = group;
+			this.context = context;
+			this.firstSignature = firstSignature;
+			this.signatureCount = signatureCount;
+		}
+
+		private boolean hasValidSignatures(boolean[] valid) {
+			for (int i = 0; i < signatureCount; i++) {
+				if (!valid[firstSignature + i]) return false;
+			}
+			return true;
+		}
+	}
 }
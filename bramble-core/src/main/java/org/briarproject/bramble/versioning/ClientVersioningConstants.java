@@ -1,8 +1,25 @@
 package org.briarproject.bramble.versioning;
 
+import static java.util.concurrent.TimeUnit.MINUTES;
+
 interface ClientVersioningConstants {
 
-	// Metadata keys
+	/**
+	 * The maximum number of contacts to bring up to date with the local
+	 * client versions in each transaction.
+	 */
+	int MAX_CONTACTS_PER_BATCH = 50;
+
+	/**
+	 * How long to wait before retrying a batch of contacts if updating them
+	 * fails.
+	 */
+	long RETRY_DELAY_MS = MINUTES.toMillis(1);
+
+	// Group metadata keys
+	String GROUP_KEY_LAST_UPDATED_CONTACT = "lastUpdatedContact";
+
+	// Message metadata keys
 	String MSG_KEY_UPDATE_VERSION = "version";
 	String MSG_KEY_LOCAL = "local";
 }
@@ -7,8 +7,10 @@ import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.ContactManager.ContactHook;
 import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.Transaction;
@@ -24,6 +26,7 @@ import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.validation.IncomingMessageHook;
 import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.api.system.TaskScheduler;
 import org.briarproject.bramble.api.versioning.ClientMajorVersion;
 import org.briarproject.bramble.api.versioning.ClientVersion;
 import org.briarproject.bramble.api.versioning.ClientVersioningManager;
@@ -42,26 +45,42 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.data.BdfDictionary.NULL_VALUE;
 import static org.briarproject.bramble.api.sync.Group.Visibility.INVISIBLE;
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
 import static org.briarproject.bramble.api.sync.Group.Visibility.VISIBLE;
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_DO_NOT_SHARE;
+import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.versioning.ClientVersioningConstants.GROUP_KEY_LAST_UPDATED_CONTACT;
+import static org.briarproject.bramble.versioning.ClientVersioningConstants.MAX_CONTACTS_PER_BATCH;
 import static org.briarproject.bramble.versioning.ClientVersioningConstants.MSG_KEY_LOCAL;
 import static org.briarproject.bramble.versioning.ClientVersioningConstants.MSG_KEY_UPDATE_VERSION;
+import static org.briarproject.bramble.versioning.ClientVersioningConstants.RETRY_DELAY_MS;
 
 @NotNullByDefault
 class ClientVersioningManagerImpl implements ClientVersioningManager,
 		Service, OpenDatabaseHook, ContactHook, IncomingMessageHook {
 
+	private static final Logger LOG =
+			getLogger(ClientVersioningManagerImpl.class.getName());
+
 	private final DatabaseComponent db;
+	private final Executor dbExecutor;
 	private final ClientHelper clientHelper;
 	private final ContactGroupFactory contactGroupFactory;
 	private final Clock clock;
+	private final TaskScheduler taskScheduler;
 	private final Group localGroup;
 
 	private final List<ClientVersion> clients = new CopyOnWriteArrayList<>();
@@ -69,12 +88,16 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 			new ConcurrentHashMap<>();
 
 	@Inject
-	ClientVersioningManagerImpl(DatabaseComponent db, ClientHelper clientHelper,
-			ContactGroupFactory contactGroupFactory, Clock clock) {
+	ClientVersioningManagerImpl(DatabaseComponent db,
+			@DatabaseExecutor Executor dbExecutor, ClientHelper clientHelper,
+			ContactGroupFactory contactGroupFactory, Clock clock,
+			TaskScheduler taskScheduler) {
 		this.db = db;
+		this.dbExecutor = dbExecutor;
 		this.clientHelper = clientHelper;
 		this.contactGroupFactory = contactGroupFactory;
 		this.clock = clock;
+		this.taskScheduler = taskScheduler;
 		localGroup = contactGroupFactory.createLocalGroup(CLIENT_ID,
 				MAJOR_VERSION);
 	}
@@ -130,21 +153,23 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 	public void onDatabaseOpened(Transaction txn) throws DbException {
 		if (db.containsGroup(txn, localGroup.getId())) return;
 		db.addGroup(txn, localGroup);
-		// Set things up for any pre-existing contacts
-		for (Contact c : db.getContacts(txn)) addingContact(txn, c);
+		// Set things up for any pre-existing contacts after startup
+		startUpdatingContacts(txn);
 	}
 
 	@Override
 	public void startService() throws ServiceException {
-		List<ClientVersion> versions = new ArrayList<>(clients);
-		Collections.sort(versions);
+		List<ClientVersion> versions = getClientVersions();
 		try {
-			db.transaction(false, txn -> {
-				if (updateClientVersions(txn, versions)) {
-					for (Contact c : db.getContacts(txn))
-						clientVersionsUpdated(txn, c, versions);
-				}
+			boolean updateContacts = db.transactionWithResult(false, txn -> {
+				if (updateClientVersions(txn, versions))
+					startUpdatingContacts(txn);
+				// An earlier update may not have finished
+				return getLastUpdatedContact(txn) != null;
 			});
+			// Update the contacts in the background, so we can sync with
+			// them in the meantime
+			if (updateContacts) dbExecutor.execute(this::updateContacts);
 		} catch (DbException e) {
 			throw new ServiceException(e);
 		}
@@ -156,21 +181,15 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 
 	@Override
 	public void addingContact(Transaction txn, Contact c) throws DbException {
-		// Create a group and share it with the contact
-		Group g = getContactGroup(c);
-		db.addGroup(txn, g);
-		db.setGroupVisibility(txn, c.getId(), g.getId(), SHARED);
-		// Attach the contact ID to the group
-		clientHelper.setContactId(txn, g.getId(), c.getId());
-		// Create and store the first local update
-		List<ClientVersion> versions = new ArrayList<>(clients);
-		Collections.sort(versions);
-		storeFirstUpdate(txn, g.getId(), versions);
+		addContactGroup(txn, c, getContactGroup(c), getClientVersions());
 	}
 
 	@Override
 	public void removingContact(Transaction txn, Contact c) throws DbException {
-		db.removeGroup(txn, getContactGroup(c));
+		Group g = getContactGroup(c);
+		// The contact group doesn't exist if the contact was added before
+		// the versioning client and hasn't been updated yet
+		if (db.containsGroup(txn, g.getId())) db.removeGroup(txn, g);
 	}
 
 	@Override
@@ -241,6 +260,123 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 		return ACCEPT_DO_NOT_SHARE;
 	}
 
+	private List<ClientVersion> getClientVersions() {
+		List<ClientVersion> versions = new ArrayList<>(clients);
+		Collections.sort(versions);
+		return versions;
+	}
+
+	private void addContactGroup(Transaction txn, Contact c, Group g,
+			List<ClientVersion> versions) throws DbException {
+		// Create a group and share it with the contact
+		db.addGroup(txn, g);
+		db.setGroupVisibility(txn, c.getId(), g.getId(), SHARED);
+		// Attach the contact ID to the group
+		clientHelper.setContactId(txn, g.getId(), c.getId());
+		// Create and store the first local update
+		storeFirstUpdate(txn, g.getId(), versions);
+	}
+
+	/**
+	 * Records that all contacts need to be brought up to date with the
+	 * local client versions. The contacts are updated in batches by
+	 * {@link #updateContacts()}.
+	 */
+	private void startUpdatingContacts(Transaction txn) throws DbException {
+		setLastUpdatedContact(txn, 0L);
+	}
+
+	/**
+	 * Returns the ID of the last contact that has been brought up to date
+	 * with the local client versions, or null if all contacts are up to
+	 * date. Contacts are updated in order of their IDs, and the first
+	 * contact has ID 1, so 0 means no contacts have been updated yet.
+	 */
+	@Nullable
+	private Long getLastUpdatedContact(Transaction txn) throws DbException {
+		try {
+			BdfDictionary meta = clientHelper.getGroupMetadataAsDictionary(
+					txn, localGroup.getId());
+			return meta.getOptionalLong(GROUP_KEY_LAST_UPDATED_CONTACT);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private void setLastUpdatedContact(Transaction txn, @Nullable Long last)
+			throws DbException {
+		Object value = last == null ? NULL_VALUE : last;
+		BdfDictionary meta = BdfDictionary.of(
+				new BdfEntry(GROUP_KEY_LAST_UPDATED_CONTACT, value));
+		try {
+			clientHelper.mergeGroupMetadata(txn, localGroup.getId(), meta);
+		} catch (FormatException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Brings the next batch of contacts up to date with the local client
+	 * versions, and schedules the following batch if there are any contacts
+	 * left. Each batch has its own transaction, and progress is stored in
+	 * the database, so other tasks can use the database between batches
+	 * and the update resumes where it left off if we're restarted. If a
+	 * batch fails it's retried after a delay.
+	 */
+	@DatabaseExecutor
+	private void updateContacts() {
+		try {
+			boolean done = db.transactionWithResult(false,
+					this::updateNextContacts);
+			if (done) LOG.info("All contacts are up to date");
+			else dbExecutor.execute(this::updateContacts);
+		} catch (DbException e) {
+			logException(LOG, WARNING, e);
+			taskScheduler.schedule(this::updateContacts, dbExecutor,
+					RETRY_DELAY_MS, MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Brings the next batch of contacts up to date with the local client
+	 * versions and returns true if all contacts are now up to date.
+	 */
+	private boolean updateNextContacts(Transaction txn) throws DbException {
+		Long last = getLastUpdatedContact(txn);
+		if (last == null) return true;
+		List<Contact> remaining = new ArrayList<>();
+		for (Contact c : db.getContacts(txn)) {
+			if (c.getId().getInt() > last) remaining.add(c);
+		}
+		Collections.sort(remaining, (a, b) ->
+				Integer.compare(a.getId().getInt(), b.getId().getInt()));
+		List<ClientVersion> versions = getClientVersions();
+		int batch = Math.min(remaining.size(), MAX_CONTACTS_PER_BATCH);
+		for (int i = 0; i < batch; i++)
+			updateContact(txn, remaining.get(i), versions);
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Updated " + batch + " contacts, "
+					+ (remaining.size() - batch) + " remaining");
+		}
+		if (batch == remaining.size()) {
+			setLastUpdatedContact(txn, null);
+			return true;
+		}
+		setLastUpdatedContact(txn,
+				(long) remaining.get(batch - 1).getId().getInt());
+		return false;
+	}
+
+	private void updateContact(Transaction txn, Contact c,
+			List<ClientVersion> versions) throws DbException {
+		Group g = getContactGroup(c);
+		// The contact group doesn't exist if the contact was added before
+		// the versioning client
+		if (db.containsGroup(txn, g.getId()))
+			clientVersionsUpdated(txn, c, g, versions);
+		else addContactGroup(txn, c, g, versions);
+	}
+
 	private void storeClientVersions(Transaction txn,
 			List<ClientVersion> versions) throws DbException {
 		long now = clock.currentTimeMillis();
@@ -308,11 +444,10 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 		return parsed;
 	}
 
-	private void clientVersionsUpdated(Transaction txn, Contact c,
+	private void clientVersionsUpdated(Transaction txn, Contact c, Group g,
 			List<ClientVersion> versions) throws DbException {
 		try {
 			// Find the latest local and remote updates
-			Group g = getContactGroup(c);
 			LatestUpdates latest = findLatestUpdates(txn, g.getId());
 			// Load and parse the latest local update
 			if (latest.local == null) throw new DbException();
@@ -0,0 +1,106 @@
+package org.briarproject.bramble.cleanup;
+
+import org.briarproject.bramble.api.cleanup.CleanupHook;
+import org.briarproject.bramble.api.cleanup.event.CleanupTimerStartedEvent;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
+import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.api.system.TaskScheduler;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.CaptureArgumentAction;
+import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.api.cleanup.CleanupManager.BATCH_DELAY_MS;
+import static org.briarproject.bramble.api.db.DatabaseComponent.NO_CLEANUP_DEADLINE;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.RUNNING;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STARTING_SERVICES;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+
+public class CleanupManagerImplTest extends BrambleMockTestCase {
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final TaskScheduler taskScheduler =
+			context.mock(TaskScheduler.class);
+	private final Clock clock = context.mock(Clock.class);
+	private final CleanupHook hook = context.mock(CleanupHook.class);
+
+	private final Executor dbExecutor = new ImmediateExecutor();
+	private final ClientId clientId = getClientId();
+	private final int majorVersion = 123;
+	private final Group group = getGroup(clientId, majorVersion);
+	private final GroupId groupId = group.getId();
+	private final MessageId messageId = new MessageId(getRandomId());
+	private final long now = System.currentTimeMillis();
+
+	private final CleanupManagerImpl cleanupManager =
+			new CleanupManagerImpl(dbExecutor, db, taskScheduler, clock);
+
+	public CleanupManagerImplTest() {
+		cleanupManager.registerCleanupHook(clientId, majorVersion, hook);
+	}
+
+	@Test
+	public void testNoCleanupIsScheduledBeforeServicesHaveStarted() {
+		// No task should be scheduled for timers started before all the
+		// services have started
+		cleanupManager.eventOccurred(
+				new CleanupTimerStartedEvent(messageId, now));
+		cleanupManager.eventOccurred(new LifecycleEvent(STARTING_SERVICES));
+	}
+
+	@Test
+	public void testCleanupRunsOnceServicesHaveStarted() throws Exception {
+		Transaction txn = new Transaction(null, false);
+		Collection<MessageId> messageIds = singletonList(messageId);
+		AtomicReference<Runnable> task = new AtomicReference<>();
+
+		// A timer is started before all the services have started
+		cleanupManager.eventOccurred(
+				new CleanupTimerStartedEvent(messageId, now));
+		context.assertIsSatisfied();
+
+		context.checking(new DbExpectations() {{
+			// Schedule a task when the services have started
+			exactly(2).of(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(taskScheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(BATCH_DELAY_MS), with(MILLISECONDS));
+			will(new CaptureArgumentAction<>(task, Runnable.class, 0));
+		}});
+
+		cleanupManager.eventOccurred(new LifecycleEvent(RUNNING));
+		context.assertIsSatisfied();
+
+		context.checking(new DbExpectations() {{
+			// Delete the message whose deadline has passed
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			oneOf(db).getMessagesToDelete(txn);
+			will(returnValue(singletonMap(groupId, messageIds)));
+			oneOf(db).stopCleanupTimer(txn, messageId);
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(hook).deleteMessages(txn, groupId, messageIds);
+			oneOf(db).getNextCleanupDeadline(txn);
+			will(returnValue(NO_CLEANUP_DEADLINE));
+		}});
+
+		task.get().run();
+	}
+}
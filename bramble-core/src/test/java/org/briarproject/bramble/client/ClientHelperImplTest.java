@@ -37,6 +37,7 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.security.GeneralSecurityException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -239,6 +240,24 @@ public class ClientHelperImplTest extends BrambleMockTestCase {
 				clientHelper.getMessageMetadataAsDictionary(groupId, query));
 	}
 
+	@Test
+	public void testGetMessageMetadataAsDictionaryKeys() throws Exception {
+		Map<MessageId, BdfDictionary> map = new HashMap<>();
+		map.put(messageId, dictionary);
+		Collection<String> keys = singletonList("key");
+		Transaction txn = new Transaction(null, true);
+
+		context.checking(new Expectations() {{
+			oneOf(db).getMessageMetadata(txn, groupId, keys);
+			will(returnValue(Collections.singletonMap(messageId, metadata)));
+			oneOf(metadataParser).parse(metadata);
+			will(returnValue(dictionary));
+		}});
+
+		assertEquals(map, clientHelper.getMessageMetadataAsDictionary(txn,
+				groupId, keys));
+	}
+
 	@Test
 	public void testMergeGroupMetadata() throws Exception {
 		Transaction txn = new Transaction(null, false);
@@ -83,6 +83,7 @@ public class ConnectionRegistryImplTest extends BrambleMockTestCase {
 		assertFalse(c.isConnected(contactId1, transportId1));
 		assertFalse(c.isConnected(contactId1, transportId2));
 		assertFalse(c.isConnected(contactId1, transportId3));
+		assertEquals(0, c.getConnectionCount(transportId1));
 
 		// Check that a registered connection shows up - this should
 		// broadcast a ConnectionOpenedEvent and a ContactConnectedEvent
@@ -108,6 +109,7 @@ public class ConnectionRegistryImplTest extends BrambleMockTestCase {
 		}});
 		c.registerIncomingConnection(contactId1, transportId1, conn2);
 		context.assertIsSatisfied();
+		assertEquals(2, c.getConnectionCount(transportId1));
 
 		assertEquals(singletonList(contactId1),
 				c.getConnectedContacts(transportId1));
@@ -123,6 +125,7 @@ public class ConnectionRegistryImplTest extends BrambleMockTestCase {
 		}});
 		c.unregisterConnection(contactId1, transportId1, conn1, true, false);
 		context.assertIsSatisfied();
+		assertEquals(1, c.getConnectionCount(transportId1));
 
 		assertEquals(singletonList(contactId1),
 				c.getConnectedContacts(transportId1));
@@ -140,6 +143,7 @@ public class ConnectionRegistryImplTest extends BrambleMockTestCase {
 		}});
 		c.unregisterConnection(contactId1, transportId1, conn2, true, false);
 		context.assertIsSatisfied();
+		assertEquals(0, c.getConnectionCount(transportId1));
 
 		assertEquals(emptyList(), c.getConnectedContacts(transportId1));
 		assertEquals(emptyList(), c.getConnectedOrBetterContacts(transportId1));
@@ -189,6 +193,10 @@ public class ConnectionRegistryImplTest extends BrambleMockTestCase {
 		assertTrue(c.isConnected(contactId2, transportId1));
 		assertTrue(c.isConnected(contactId2, transportId2));
 
+		assertEquals(2, c.getConnectionCount(transportId1));
+		assertEquals(1, c.getConnectionCount(transportId2));
+		assertEquals(0, c.getConnectionCount(transportId3));
+
 		Collection<ContactId> connected = c.getConnectedContacts(transportId1);
 		assertEquals(2, connected.size());
 		assertTrue(connected.contains(contactId1));
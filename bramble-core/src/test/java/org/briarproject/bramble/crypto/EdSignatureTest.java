@@ -5,12 +5,19 @@ import org.briarproject.bramble.api.crypto.PrivateKey;
 import org.briarproject.bramble.api.crypto.PublicKey;
 import org.briarproject.bramble.api.crypto.SignaturePrivateKey;
 import org.briarproject.bramble.api.crypto.SignaturePublicKey;
+import org.briarproject.bramble.api.crypto.SignedItem;
 import org.junit.Test;
 
 import java.security.GeneralSecurityException;
+import java.util.List;
 
+import static java.util.Arrays.asList;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.util.StringUtils.fromHexString;
+import static org.briarproject.bramble.util.StringUtils.getRandomString;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class EdSignatureTest extends SignatureTest {
@@ -152,6 +159,45 @@ public class EdSignatureTest extends SignatureTest {
 		return crypto.verifySignature(signature, label, signed, publicKey);
 	}
 
+	@Test
+	public void testBatchVerification() throws Exception {
+		KeyPair k1 = generateKeyPair(), k2 = generateKeyPair();
+		String label = getRandomString(42);
+		byte[] signed1 = getRandomBytes(123), signed2 = getRandomBytes(123);
+		byte[] sig1 = sign(label, signed1, k1.getPrivate());
+		byte[] sig2 = sign(label, signed2, k2.getPrivate());
+		List<SignedItem> items = asList(
+				new SignedItem(sig1, label, signed1, k1.getPublic()),
+				// Wrong key
+				new SignedItem(sig1, label, signed1, k2.getPublic()),
+				new SignedItem(sig2, label, signed2, k2.getPublic()),
+				// Wrong data
+				new SignedItem(sig2, label, signed1, k2.getPublic()));
+		boolean[] valid = crypto.verifySignatures(items);
+		assertArrayEquals(new boolean[] {true, false, true, false}, valid);
+	}
+
+	@Test
+	public void testDeferredVerification() throws Exception {
+		KeyPair k = generateKeyPair();
+		String label = getRandomString(42);
+		byte[] signed = getRandomBytes(123);
+		byte[] sig = sign(label, signed, k.getPrivate());
+		byte[] badSig = sign(label, getRandomBytes(123), k.getPrivate());
+		crypto.startDeferringSignatures();
+		// Both signatures are accepted while verification is deferred
+		assertTrue(crypto.verifySignature(sig, label, signed, k.getPublic()));
+		assertTrue(crypto.verifySignature(badSig, label, signed,
+				k.getPublic()));
+		List<SignedItem> deferred = crypto.stopDeferringSignatures();
+		assertEquals(2, deferred.size());
+		assertArrayEquals(new boolean[] {true, false},
+				crypto.verifySignatures(deferred));
+		// Signatures are checked again once deferral has stopped
+		assertFalse(crypto.verifySignature(badSig, label, signed,
+				k.getPublic()));
+	}
+
 	@Test
 	public void testRfc8032TestVectors() throws Exception {
 		for (String[] vector : TEST_VECTORS) {
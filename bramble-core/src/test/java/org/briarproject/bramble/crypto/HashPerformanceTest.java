@@ -0,0 +1,83 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.crypto.TransportCrypto;
+import org.briarproject.bramble.test.TestSecureRandomProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.briarproject.bramble.api.sync.MessageId.BLOCK_LABEL;
+import static org.briarproject.bramble.api.sync.MessageId.ID_LABEL;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL_VERSION;
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.util.ByteUtils.INT_64_BYTES;
+
+// Not a JUnit test
+public class HashPerformanceTest {
+
+	private static final int SAMPLES = 50;
+	private static final int ITERATIONS = 10_000;
+	private static final int[] BODY_LENGTHS = {100, 1000, 10_000,
+			MAX_MESSAGE_BODY_LENGTH};
+
+	public static void main(String[] args) {
+		CryptoComponent crypto =
+				new CryptoComponentImpl(new TestSecureRandomProvider(), null);
+		TransportCrypto transportCrypto = new TransportCryptoImpl(crypto);
+		for (int bodyLength : BODY_LENGTHS) {
+			runMessageIdTest(crypto, bodyLength);
+		}
+		runTagTest(transportCrypto);
+	}
+
+	// Computes message IDs in the same way as MessageFactoryImpl
+	private static void runMessageIdTest(CryptoComponent crypto,
+			int bodyLength) {
+		byte[] formatVersion = new byte[] {1};
+		byte[] groupId = getRandomBytes(UniqueId.LENGTH);
+		byte[] timestamp = getRandomBytes(INT_64_BYTES);
+		byte[] body = getRandomBytes(bodyLength);
+		List<Long> samples = new ArrayList<>();
+		for (int i = 0; i < SAMPLES; i++) {
+			long start = System.nanoTime();
+			for (int j = 0; j < ITERATIONS; j++) {
+				byte[] rootHash =
+						crypto.hash(BLOCK_LABEL, formatVersion, body);
+				crypto.hash(ID_LABEL, formatVersion, groupId, timestamp,
+						rootHash);
+			}
+			samples.add((System.nanoTime() - start) / ITERATIONS);
+		}
+		System.out.println(String.format("Message ID, %,d byte body: %,d ns",
+				bodyLength, median(samples)));
+	}
+
+	private static void runTagTest(TransportCrypto transportCrypto) {
+		SecretKey tagKey = getSecretKey();
+		byte[] tag = new byte[TAG_LENGTH];
+		List<Long> samples = new ArrayList<>();
+		for (int i = 0; i < SAMPLES; i++) {
+			long start = System.nanoTime();
+			for (int j = 0; j < ITERATIONS; j++) {
+				transportCrypto.encodeTag(tag, tagKey, PROTOCOL_VERSION, j);
+			}
+			samples.add((System.nanoTime() - start) / ITERATIONS);
+		}
+		System.out.println(String.format("Tag: %,d ns", median(samples)));
+	}
+
+	private static long median(List<Long> list) {
+		int size = list.size();
+		if (size == 0) throw new IllegalArgumentException();
+		Collections.sort(list);
+		if (size % 2 == 1) return list.get(size / 2);
+		return (list.get(size / 2 - 1) + list.get(size / 2)) / 2;
+	}
+}
@@ -0,0 +1,56 @@
+package org.briarproject.bramble.crypto;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class KeyedDigestCacheTest extends BrambleTestCase {
+
+	private static final int DIGEST_BYTES = 32;
+
+	private final KeyedDigestCache cache = new KeyedDigestCache(DIGEST_BYTES);
+	private final byte[] key = getRandomBytes(32), key1 = getRandomBytes(32);
+	private final byte[] input = getRandomBytes(123);
+
+	@Test
+	public void testDigestIsReusedWhileKeyStaysTheSame() {
+		Digest digest = cache.getDigest(key);
+		assertSame(digest, cache.getDigest(key.clone()));
+		// A different key needs a different digest
+		Digest digest1 = cache.getDigest(key1);
+		assertNotSame(digest, digest1);
+		assertSame(digest1, cache.getDigest(key1));
+	}
+
+	@Test
+	public void testReusedDigestMatchesNewDigest() {
+		byte[] expected = mac(new Blake2bDigest(key, DIGEST_BYTES, null, null));
+		assertArrayEquals(expected, mac(cache.getDigest(key)));
+		assertArrayEquals(expected, mac(cache.getDigest(key)));
+		// Changing the key and changing it back gives the same result
+		mac(cache.getDigest(key1));
+		assertArrayEquals(expected, mac(cache.getDigest(key)));
+	}
+
+	@Test
+	public void testUnfinishedInputIsDiscarded() {
+		byte[] expected = mac(new Blake2bDigest(key, DIGEST_BYTES, null, null));
+		// Leave some input in the digest without finishing the MAC
+		Digest digest = cache.getDigest(key);
+		digest.update(input, 0, input.length);
+		assertArrayEquals(expected, mac(cache.getDigest(key)));
+	}
+
+	private byte[] mac(Digest digest) {
+		digest.update(input, 0, input.length);
+		byte[] output = new byte[DIGEST_BYTES];
+		digest.doFinal(output, 0);
+		return output;
+	}
+}
@@ -0,0 +1,69 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.test.TestUtils;
+import org.briarproject.bramble.util.StringUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.briarproject.bramble.db.SqliteDatabase.hasPageCodec;
+import static org.junit.Assume.assumeTrue;
+
+public class BasicSqliteTest extends BasicDatabaseTest {
+
+	private final SecretKey key = TestUtils.getSecretKey();
+
+	@Override
+	protected String getBinaryType() {
+		return "BLOB";
+	}
+
+	@Override
+	protected String getDriverName() {
+		return "org.sqlite.JDBC";
+	}
+
+	@Override
+	protected Connection openConnection(File db, boolean encrypt)
+			throws SQLException {
+		String url = "jdbc:sqlite:file:" + db.getAbsolutePath();
+		return DriverManager.getConnection(url, getProperties(encrypt));
+	}
+
+	private Properties getProperties(boolean encrypt) {
+		Properties props = new Properties();
+		if (encrypt) {
+			props.setProperty("cipher", "chacha20");
+			props.setProperty("kdf_iter", "1");
+			String hex = StringUtils.toHexString(key.getBytes());
+			props.setProperty("hexkey", hex);
+		}
+		return props;
+	}
+
+	@Override
+	protected void shutdownDatabase(File db, boolean encrypt)
+			throws SQLException {
+		// The DB is closed automatically when the connection is closed
+	}
+
+	@Override
+	@Test
+	public void testDataIsNotFoundWithEncryption() throws Exception {
+		// The test driver is a plain SQLite build without a page codec, so
+		// this only runs against a driver that has one
+		Connection c = DriverManager.getConnection("jdbc:sqlite::memory:",
+				getProperties(true));
+		try {
+			assumeTrue(hasPageCodec(c));
+		} finally {
+			c.close();
+		}
+		super.testDataIsNotFoundWithEncryption();
+	}
+}
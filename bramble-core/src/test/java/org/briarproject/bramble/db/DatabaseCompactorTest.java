@@ -0,0 +1,71 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.Cancellable;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.lifecycle.event.DatabaseCompactedEvent;
+import org.briarproject.bramble.api.system.TaskScheduler;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.DbExpectations;
+import org.jmock.Expectations;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.db.DatabaseCompactor.COMPACTION_INTERVAL;
+
+public class DatabaseCompactorTest extends BrambleMockTestCase {
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final Executor dbExecutor = context.mock(Executor.class);
+	private final TaskScheduler scheduler = context.mock(TaskScheduler.class);
+	private final EventBus eventBus = context.mock(EventBus.class);
+	private final Cancellable cancellable = context.mock(Cancellable.class);
+
+	private final DatabaseCompactor compactor =
+			new DatabaseCompactor(db, dbExecutor, scheduler, eventBus);
+
+	@Test
+	public void testCompactionIsScheduledAndCancelled() {
+		context.checking(new Expectations() {{
+			oneOf(scheduler).scheduleWithFixedDelay(with(any(Runnable.class)),
+					with(dbExecutor), with(COMPACTION_INTERVAL),
+					with(COMPACTION_INTERVAL), with(MILLISECONDS));
+			will(returnValue(cancellable));
+			oneOf(cancellable).cancel();
+		}});
+
+		compactor.startService();
+		compactor.stopService();
+	}
+
+	@Test
+	public void testEventIsBroadcastWhenSpaceIsReclaimed() throws Exception {
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(false), withDbCallable(txn));
+			oneOf(db).compactIncrementally(txn);
+			will(returnValue(1234L));
+			oneOf(eventBus).broadcast(with(any(DatabaseCompactedEvent.class)));
+		}});
+
+		compactor.compact();
+	}
+
+	@Test
+	public void testNoEventIsBroadcastWhenNoSpaceIsReclaimed()
+			throws Exception {
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(false), withDbCallable(txn));
+			oneOf(db).compactIncrementally(txn);
+			will(returnValue(0L));
+		}});
+
+		compactor.compact();
+	}
+}
@@ -62,6 +62,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Random;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
@@ -69,6 +70,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static java.util.concurrent.TimeUnit.HOURS;
@@ -174,6 +176,16 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 			will(returnValue(false));
 			oneOf(shutdownManager).addShutdownHook(with(any(Runnable.class)));
 			will(returnValue(shutdownHandle));
+			// open() loads the cache
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).getContacts(txn);
+			will(returnValue(emptyList()));
+			oneOf(database).getGroups(txn);
+			will(returnValue(emptyList()));
+			oneOf(database).getGroupVisibilities(txn);
+			will(returnValue(emptyMap()));
+			oneOf(database).commitTransaction(txn);
 			// startTransaction()
 			oneOf(database).startTransaction();
 			will(returnValue(txn));
@@ -197,34 +209,26 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 			// getContacts()
 			oneOf(database).getContacts(txn);
 			will(returnValue(singletonList(contact)));
-			// addGroup()
-			oneOf(database).containsGroup(txn, groupId);
-			will(returnValue(false));
+			// addGroup() - the group isn't in the cache
 			oneOf(database).addGroup(txn, group);
 			oneOf(eventBus).broadcast(with(any(GroupAddedEvent.class)));
-			// addGroup() again
-			oneOf(database).containsGroup(txn, groupId);
-			will(returnValue(true));
+			// addGroup() again - the group is in the cache
 			// getGroups()
 			oneOf(database).getGroups(txn, clientId, majorVersion);
 			will(returnValue(singletonList(group)));
-			// removeGroup()
-			oneOf(database).containsGroup(txn, groupId);
-			will(returnValue(true));
-			oneOf(database).getGroupVisibility(txn, groupId);
-			will(returnValue(emptyMap()));
+			// removeGroup() - the group and its visibility are in the cache
 			oneOf(database).removeGroup(txn, groupId);
 			oneOf(eventBus).broadcast(with(any(GroupRemovedEvent.class)));
 			oneOf(eventBus).broadcast(with(any(
 					GroupVisibilityUpdatedEvent.class)));
-			// removeContact()
-			oneOf(database).containsContact(txn, contactId);
-			will(returnValue(true));
+			// removeContact() - the contact is in the cache
 			oneOf(database).removeContact(txn, contactId);
 			oneOf(eventBus).broadcast(with(any(ContactRemovedEvent.class)));
 			// removeIdentity()
 			oneOf(database).containsIdentity(txn, localAuthor.getId());
 			will(returnValue(true));
+			oneOf(database).getContacts(txn, localAuthor.getId());
+			will(returnValue(emptyList()));
 			oneOf(database).removeIdentity(txn, localAuthor.getId());
 			oneOf(eventBus).broadcast(with(any(IdentityRemovedEvent.class)));
 			// endTransaction()
@@ -1028,6 +1032,66 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 						BATCH_CAPACITY, maxLatency)));
 	}
 
+	@Test
+	public void testGenerateBatchWithIds() throws Exception {
+		Collection<MessageId> ids = asList(messageId, messageId1);
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			// First message is no longer visible
+			oneOf(database).containsVisibleMessage(txn, contactId, messageId);
+			will(returnValue(false));
+			// Second message is still visible
+			oneOf(database).containsVisibleMessage(txn, contactId, messageId1);
+			will(returnValue(true));
+			oneOf(database).getMessage(txn, messageId1);
+			will(returnValue(message1));
+			// Retransmission data is updated for the visible message only
+			oneOf(database).updateRetransmissionData(txn, contactId,
+					singletonList(messageId1), maxLatency);
+			oneOf(database).lowerRequestedFlag(txn, contactId,
+					singletonList(messageId1));
+			oneOf(database).commitTransaction(txn);
+			oneOf(eventBus).broadcast(with(any(MessagesSentEvent.class)));
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction ->
+				assertEquals(singletonList(message1), db.generateBatch(
+						transaction, contactId, ids, maxLatency, true)));
+	}
+
+	@Test
+	public void testGenerateBatchWithIdsWithoutMarkingAsSent()
+			throws Exception {
+		Collection<MessageId> ids = asList(messageId, messageId1);
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).containsVisibleMessage(txn, contactId, messageId);
+			will(returnValue(true));
+			oneOf(database).getMessage(txn, messageId);
+			will(returnValue(message));
+			oneOf(database).containsVisibleMessage(txn, contactId, messageId1);
+			will(returnValue(true));
+			oneOf(database).getMessage(txn, messageId1);
+			will(returnValue(message1));
+			// The messages aren't marked as sent
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(true, transaction ->
+				assertEquals(asList(message, message1), db.generateBatch(
+						transaction, contactId, ids, maxLatency, false)));
+	}
+
 	@Test
 	public void testGenerateOffer() throws Exception {
 		MessageId messageId1 = new MessageId(getRandomId());
@@ -1350,22 +1414,18 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 			// There's room for two more offered messages
 			oneOf(database).countOfferedMessages(txn, contactId);
 			will(returnValue(MAX_OFFERED_MESSAGES - 2));
-			// The first message isn't visible - request it
-			oneOf(database).containsVisibleMessage(txn, contactId, messageId);
-			will(returnValue(false));
-			oneOf(database).addOfferedMessage(txn, contactId, messageId);
+			// Only the second message is visible
+			oneOf(database).getVisibleMessages(txn, contactId,
+					asList(messageId, messageId1, messageId2, messageId3));
+			will(returnValue(singletonList(messageId1)));
 			// The second message is visible - ack it
-			oneOf(database).containsVisibleMessage(txn, contactId, messageId1);
-			will(returnValue(true));
-			oneOf(database).raiseSeenFlag(txn, contactId, messageId1);
-			oneOf(database).raiseAckFlag(txn, contactId, messageId1);
-			// The third message isn't visible - request it
-			oneOf(database).containsVisibleMessage(txn, contactId, messageId2);
-			will(returnValue(false));
-			oneOf(database).addOfferedMessage(txn, contactId, messageId2);
-			// The fourth message isn't visible, but there's no room to store it
-			oneOf(database).containsVisibleMessage(txn, contactId, messageId3);
-			will(returnValue(false));
+			oneOf(database).raiseSeenAndAckFlags(txn, contactId,
+					singleton(messageId1));
+			// The first and third messages aren't visible - request them.
+			// The fourth message isn't visible, but there's no room to
+			// store it
+			oneOf(database).addOfferedMessages(txn, contactId,
+					new LinkedHashSet<>(asList(messageId, messageId2)));
 			oneOf(database).commitTransaction(txn);
 			oneOf(eventBus).broadcast(with(any(MessageToAckEvent.class)));
 			oneOf(eventBus).broadcast(with(any(MessageToRequestEvent.class)));
@@ -1433,11 +1493,11 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 			will(returnValue(true));
 			oneOf(database).getMessageLength(txn, messageId);
 			will(returnValue(message.getRawLength()));
-			oneOf(database).updateRetransmissionData(txn, contactId, messageId,
-					maxLatency);
 			// Second message is no longer visible - don't mark as sent
 			oneOf(database).containsVisibleMessage(txn, contactId, messageId1);
 			will(returnValue(false));
+			oneOf(database).updateRetransmissionData(txn, contactId,
+					singletonList(messageId), maxLatency);
 			oneOf(database).lowerRequestedFlag(txn, contactId,
 					singletonList(messageId));
 			oneOf(database).commitTransaction(txn);
@@ -1858,12 +1918,21 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 			will(returnValue(false));
 			oneOf(shutdownManager).addShutdownHook(with(any(Runnable.class)));
 			will(returnValue(shutdownHandle));
+			// open() loads the cache
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).getContacts(txn);
+			will(returnValue(singletonList(contact)));
+			oneOf(database).getGroups(txn);
+			will(returnValue(singletonList(group)));
+			oneOf(database).getGroupVisibilities(txn);
+			will(returnValue(singletonMap(groupId,
+					singletonMap(contactId, true))));
+			oneOf(database).commitTransaction(txn);
 			// startTransaction()
 			oneOf(database).startTransaction();
 			will(returnValue(txn));
-			// addLocalMessage()
-			oneOf(database).containsGroup(txn, groupId);
-			will(returnValue(true));
+			// addLocalMessage() - the group is in the cache
 			oneOf(database).containsMessage(txn, messageId);
 			will(returnValue(false));
 			oneOf(database).addMessage(txn, message, DELIVERED, shared,
@@ -1890,10 +1959,9 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 			oneOf(eventBus).broadcast(with(any(MessageAddedEvent.class)));
 			oneOf(eventBus).broadcast(with(any(
 					MessageStateChangedEvent.class)));
-			// If message is shared, get group visibility and broadcast event
+			// If message is shared, get group visibility from the cache and
+			// broadcast event
 			if (shared) {
-				oneOf(database).getGroupVisibility(txn, groupId);
-				will(returnValue(singletonMap(contactId, true)));
 				oneOf(eventBus).broadcast(with(any(MessageSharedEvent.class)));
 			}
 			// endTransaction()
@@ -1918,6 +1986,39 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testCompactIncrementallyStopsWhenNothingIsReclaimed()
+			throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			exactly(3).of(database).compactIncrementally(txn);
+			will(onConsecutiveCalls(returnValue(1000L), returnValue(500L),
+					returnValue(0L)));
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		long reclaimed = db.transactionWithResult(false,
+				db::compactIncrementally);
+		assertEquals(1500, reclaimed);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCannotCompactIncrementallyInReadOnlyTransaction()
+			throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).abortTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transactionWithResult(true, db::compactIncrementally);
+	}
+
 	@Test
 	public void testCommitActionsOccurInOrder() throws Exception {
 		TestEvent action1 = new TestEvent();
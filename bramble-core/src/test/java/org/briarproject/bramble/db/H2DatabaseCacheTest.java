@@ -0,0 +1,210 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.NoSuchContactException;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.identity.Author;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.lifecycle.ShutdownManager;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.briarproject.bramble.test.TestMessageFactory;
+import org.jmock.Expectations;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+
+import static org.briarproject.bramble.api.sync.Group.Visibility.INVISIBLE;
+import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getAuthor;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getIdentity;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the cache in {@link DatabaseComponentImpl} stays consistent
+ * with an H2 database when transactions commit or abort.
+ */
+public class H2DatabaseCacheTest extends BrambleMockTestCase {
+
+	private final EventBus eventBus = context.mock(EventBus.class);
+	private final ShutdownManager shutdownManager =
+			context.mock(ShutdownManager.class);
+
+	private final File testDir = getTestDirectory();
+	private final SecretKey key = getSecretKey();
+	private final Identity identity = getIdentity();
+	private final Author author = getAuthor();
+	private final Group group = getGroup(getClientId(), 123);
+	private final GroupId groupId = group.getId();
+
+	@Before
+	public void setUp() {
+		assertTrue(testDir.mkdirs());
+		context.checking(new Expectations() {{
+			allowing(eventBus).broadcast(with(any(Event.class)));
+			allowing(shutdownManager).addShutdownHook(
+					with(any(Runnable.class)));
+		}});
+	}
+
+	@After
+	public void tearDown() {
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testCommittedChangesAreCached() throws Exception {
+		DatabaseComponent db = open();
+		ContactId c = addContactAndSharedGroup(db);
+
+		db.transaction(true, txn -> {
+			assertTrue(db.containsGroup(txn, groupId));
+			assertEquals(group, db.getGroup(txn, groupId));
+			assertEquals(SHARED, db.getGroupVisibility(txn, c, groupId));
+		});
+		db.close();
+	}
+
+	@Test
+	public void testAbortedChangesAreNotCached() throws Exception {
+		DatabaseComponent db = open();
+		ContactId[] c = new ContactId[1];
+		try {
+			db.transaction(false, txn -> {
+				db.addIdentity(txn, identity);
+				c[0] = db.addContact(txn, author,
+						identity.getLocalAuthor().getId(), null, true);
+				db.addGroup(txn, group);
+				db.setGroupVisibility(txn, c[0], groupId, SHARED);
+				throw new DbException();
+			});
+			fail();
+		} catch (DbException expected) {
+			// Expected
+		}
+
+		db.transaction(true, txn -> {
+			assertFalse(db.containsGroup(txn, groupId));
+			try {
+				db.getGroupVisibility(txn, c[0], groupId);
+				fail();
+			} catch (NoSuchContactException expected) {
+				// Expected
+			}
+		});
+		db.close();
+	}
+
+	@Test
+	public void testAbortedRemovalsAreUndone() throws Exception {
+		DatabaseComponent db = open();
+		ContactId c = addContactAndSharedGroup(db);
+
+		try {
+			db.transaction(false, txn -> {
+				db.removeGroup(txn, group);
+				db.removeContact(txn, c);
+				throw new DbException();
+			});
+			fail();
+		} catch (DbException expected) {
+			// Expected
+		}
+
+		db.transaction(true, txn -> {
+			assertTrue(db.containsGroup(txn, groupId));
+			assertEquals(SHARED, db.getGroupVisibility(txn, c, groupId));
+		});
+		db.close();
+	}
+
+	@Test
+	public void testRemovingGroupRemovesVisibility() throws Exception {
+		DatabaseComponent db = open();
+		ContactId c = addContactAndSharedGroup(db);
+
+		db.transaction(false, txn -> db.removeGroup(txn, group));
+
+		db.transaction(true, txn -> {
+			assertFalse(db.containsGroup(txn, groupId));
+			assertEquals(INVISIBLE, db.getGroupVisibility(txn, c, groupId));
+		});
+		db.close();
+	}
+
+	@Test
+	public void testRemovingIdentityRemovesContacts() throws Exception {
+		DatabaseComponent db = open();
+		ContactId c = addContactAndSharedGroup(db);
+
+		db.transaction(false, txn ->
+				db.removeIdentity(txn, identity.getLocalAuthor().getId()));
+
+		db.transaction(true, txn -> {
+			assertTrue(db.containsGroup(txn, groupId));
+			try {
+				db.getGroupVisibility(txn, c, groupId);
+				fail();
+			} catch (NoSuchContactException expected) {
+				// Expected
+			}
+		});
+		db.close();
+	}
+
+	@Test
+	public void testCacheIsLoadedWhenReopened() throws Exception {
+		DatabaseComponent db = open();
+		ContactId c = addContactAndSharedGroup(db);
+		db.close();
+
+		DatabaseComponent db1 = open();
+		db1.transaction(true, txn -> {
+			assertEquals(group, db1.getGroup(txn, groupId));
+			assertEquals(SHARED, db1.getGroupVisibility(txn, c, groupId));
+		});
+		db1.close();
+	}
+
+	private DatabaseComponent open() throws Exception {
+		Database<Connection> database = new H2Database(
+				new TestDatabaseConfig(testDir), new TestMessageFactory(),
+				new SystemClock());
+		DatabaseComponent db = new DatabaseComponentImpl<>(database,
+				Connection.class, eventBus, new ImmediateExecutor(),
+				shutdownManager);
+		db.open(key, null);
+		return db;
+	}
+
+	private ContactId addContactAndSharedGroup(DatabaseComponent db)
+			throws Exception {
+		return db.transactionWithResult(false, txn -> {
+			db.addIdentity(txn, identity);
+			ContactId c = db.addContact(txn, author,
+					identity.getLocalAuthor().getId(), null, true);
+			db.addGroup(txn, group);
+			db.setGroupVisibility(txn, c, groupId, SHARED);
+			return c;
+		});
+	}
+}
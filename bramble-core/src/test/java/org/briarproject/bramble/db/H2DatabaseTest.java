@@ -1,8 +1,27 @@
 package org.briarproject.bramble.db;
 
+import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.briarproject.bramble.test.TestMessageFactory;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
+import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERED;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.junit.Assert.assertTrue;
 
 public class H2DatabaseTest extends JdbcDatabaseTest {
 
@@ -11,4 +30,38 @@ public class H2DatabaseTest extends JdbcDatabaseTest {
 			MessageFactory messageFactory, Clock clock) {
 		return new H2Database(config, messageFactory, clock);
 	}
+
+	@Test
+	public void testDatabaseIsCompactedWhenClosed() throws Exception {
+		File testDir = getTestDirectory();
+		SecretKey key = getSecretKey();
+		Group group = getGroup(getClientId(), 123);
+		H2Database db = new H2Database(new TestDatabaseConfig(testDir),
+				new TestMessageFactory(), new SystemClock());
+		try {
+			db.open(key, null);
+			// Add a group and enough messages to fill some pages
+			Connection txn = db.startTransaction();
+			db.addGroup(txn, group);
+			for (int i = 0; i < 100; i++) {
+				db.addMessage(txn, getMessage(group.getId(),
+						MAX_MESSAGE_BODY_LENGTH), DELIVERED, true, false,
+						null);
+			}
+			db.commitTransaction(txn);
+			// Remove the group, which deletes the messages
+			txn = db.startTransaction();
+			db.removeGroup(txn, group.getId());
+			db.commitTransaction(txn);
+			// H2 can't measure its fill rate, so it should always compact
+			txn = db.startTransaction();
+			assertTrue(db.shouldCompact(txn));
+			db.commitTransaction(txn);
+			long sizeBefore = db.getDatabaseSize();
+			db.close();
+			assertTrue(db.getDatabaseSize() < sizeBefore);
+		} finally {
+			deleteTestDirectory(testDir);
+		}
+	}
 }
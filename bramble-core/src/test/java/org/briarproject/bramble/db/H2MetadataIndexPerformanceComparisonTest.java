@@ -0,0 +1,65 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.MigrationListener;
+import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.nullsafety.NotNullByDefault;
+import org.junit.Ignore;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.annotation.Nullable;
+
+/**
+ * Compares metadata queries answered from the index on (groupId, state,
+ * metaKey) (condition A) with the previous plan, which used an index
+ * on (groupId, state) and filtered the keys and values (condition B).
+ */
+@Ignore
+public class H2MetadataIndexPerformanceComparisonTest
+		extends DatabasePerformanceComparisonTest {
+
+	@Override
+	Database<Connection> createDatabase(boolean conditionA,
+			DatabaseConfig databaseConfig, MessageFactory messageFactory,
+			Clock clock) {
+		if (conditionA) {
+			return new H2Database(databaseConfig, messageFactory, clock);
+		} else {
+			return new H2Database(databaseConfig, messageFactory, clock) {
+				@Override
+				@NotNullByDefault
+				public boolean open(SecretKey key,
+						@Nullable MigrationListener listener)
+						throws DbException {
+					boolean reopened = super.open(key, listener);
+					Connection txn = startTransaction();
+					try {
+						Statement s = txn.createStatement();
+						s.executeUpdate("DROP INDEX IF EXISTS"
+								+ " messageMetadataByGroupIdStateKey");
+						s.executeUpdate("CREATE INDEX IF NOT EXISTS"
+								+ " messageMetadataByGroupIdState"
+								+ " ON messageMetadata (groupId, state)");
+						s.close();
+						commitTransaction(txn);
+					} catch (SQLException e) {
+						abortTransaction(txn);
+						throw new DbException(e);
+					}
+					return reopened;
+				}
+			};
+		}
+	}
+
+	@Override
+	protected String getTestName() {
+		return getClass().getSimpleName();
+	}
+}
@@ -0,0 +1,108 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.briarproject.bramble.test.TestMessageFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.Collection;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.OFF;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERED;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getAuthor;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getIdentity;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how long it takes to drain a large backlog of pending acks for
+ * a single contact, in the way that the duplex outgoing session does.
+ */
+@Ignore
+public class H2PendingAckPerformanceTest extends BrambleTestCase {
+
+	private static final int PENDING_ACKS = 100_000;
+
+	private final File testDir = getTestDirectory();
+	private final SecretKey key = getSecretKey();
+
+	public H2PendingAckPerformanceTest() {
+		// Disable logging
+		Logger.getLogger("").setLevel(OFF);
+	}
+
+	@Before
+	public void setUp() {
+		assertTrue(testDir.mkdirs());
+	}
+
+	@After
+	public void tearDown() {
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testDrainPendingAcks() throws Exception {
+		Database<Connection> db = new H2Database(
+				new TestDatabaseConfig(testDir), new TestMessageFactory(),
+				new SystemClock());
+		db.open(key, null);
+
+		// Add a contact who has sent us a lot of messages we haven't acked
+		Identity identity = getIdentity();
+		Group group = getGroup(getClientId(), 123);
+		Connection txn = db.startTransaction();
+		db.addIdentity(txn, identity);
+		ContactId c = db.addContact(txn, getAuthor(),
+				identity.getLocalAuthor().getId(), null, true);
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, c, group.getId(), true);
+		for (int i = 0; i < PENDING_ACKS; i++) {
+			db.addMessage(txn, getMessage(group.getId()), DELIVERED, true,
+					false, c);
+		}
+		db.commitTransaction(txn);
+
+		// Generate acks until there are none left
+		int acked = 0, records = 0;
+		long start = System.nanoTime();
+		while (true) {
+			txn = db.startTransaction();
+			Collection<MessageId> ids =
+					db.getMessagesToAck(txn, c, MAX_MESSAGE_IDS);
+			if (ids.isEmpty()) {
+				db.commitTransaction(txn);
+				break;
+			}
+			db.lowerAckFlag(txn, c, ids);
+			db.commitTransaction(txn);
+			acked += ids.size();
+			records++;
+		}
+		long duration = System.nanoTime() - start;
+		db.close();
+
+		assertEquals(PENDING_ACKS, acked);
+		System.out.println(String.format("%,d acks in %,d records: %,d ms",
+				acked, records, duration / 1_000_000));
+	}
+}
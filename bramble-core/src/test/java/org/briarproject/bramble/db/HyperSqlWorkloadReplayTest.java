@@ -0,0 +1,23 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.system.Clock;
+import org.junit.Ignore;
+
+import java.sql.Connection;
+
+@Ignore
+public class HyperSqlWorkloadReplayTest extends WorkloadReplayTest {
+
+	@Override
+	protected String getTestName() {
+		return getClass().getSimpleName();
+	}
+
+	@Override
+	Database<Connection> createDatabase(DatabaseConfig config,
+			MessageFactory messageFactory, Clock clock) {
+		return new HyperSqlDatabase(config, messageFactory, clock);
+	}
+}
@@ -1,5 +1,6 @@
 package org.briarproject.bramble.db;
 
+import org.briarproject.bramble.api.UniqueId;
 import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.PendingContact;
@@ -19,6 +20,7 @@ import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageCounts;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
@@ -39,7 +41,9 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
@@ -47,6 +51,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -56,7 +61,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Arrays.asList;
+import static java.util.Arrays.copyOfRange;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -68,6 +75,7 @@ import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
 import static org.briarproject.bramble.api.sync.Group.Visibility.INVISIBLE;
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
 import static org.briarproject.bramble.api.sync.Group.Visibility.VISIBLE;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERED;
 import static org.briarproject.bramble.api.sync.validation.MessageState.INVALID;
 import static org.briarproject.bramble.api.sync.validation.MessageState.PENDING;
@@ -85,6 +93,7 @@ import static org.briarproject.bramble.test.TestUtils.getRandomId;
 import static org.briarproject.bramble.test.TestUtils.getSecretKey;
 import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
 import static org.briarproject.bramble.test.TestUtils.getTransportId;
+import static org.briarproject.bramble.util.IoUtils.copyAndClose;
 import static org.briarproject.bramble.util.StringUtils.getRandomString;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -414,6 +423,113 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testLowerAckFlagForSeveralMessagesWithOneMissing()
+			throws Exception {
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+		MessageId missing = new MessageId(getRandomId());
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a contact, a visible group and two messages to ack
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, contactId, groupId, false);
+		db.addMessage(txn, message, DELIVERED, true, false, contactId);
+		db.addMessage(txn, message1, DELIVERED, true, false, contactId);
+		assertEquals(new HashSet<>(asList(messageId, messageId1)),
+				new HashSet<>(db.getMessagesToAck(txn, contactId, 1234)));
+
+		// Lower the ack flag, including a message that doesn't exist
+		db.lowerAckFlag(txn, contactId,
+				asList(messageId, missing, messageId1));
+
+		// No message IDs should be returned
+		assertFalse(db.containsAcksToSend(txn, contactId));
+		assertEquals(emptyList(), db.getMessagesToAck(txn, contactId, 1234));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testLowerRequestedFlagForSeveralMessagesWithOneMissing()
+			throws Exception {
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+		MessageId missing = new MessageId(getRandomId());
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a contact, a shared group and two shared messages
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, contactId, groupId, true);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+
+		// Both messages should be returned once they're requested
+		db.raiseRequestedFlag(txn, contactId, messageId);
+		db.raiseRequestedFlag(txn, contactId, messageId1);
+		assertEquals(new HashSet<>(asList(messageId, messageId1)),
+				new HashSet<>(db.getRequestedMessagesToSend(txn, contactId,
+						ONE_MEGABYTE, MAX_LATENCY)));
+
+		// Lower the requested flag, including a message that doesn't exist
+		db.lowerRequestedFlag(txn, contactId,
+				asList(messageId, missing, messageId1));
+
+		// No message IDs should be returned
+		assertEquals(emptyList(), db.getRequestedMessagesToSend(txn,
+				contactId, ONE_MEGABYTE, MAX_LATENCY));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testUpdateRetransmissionDataForSeveralMessages()
+			throws Exception {
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a contact, a shared group and two shared messages
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, contactId, groupId, true);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+
+		// Both messages should be sendable via lazy retransmission
+		Collection<MessageId> ids = db.getMessagesToSend(txn, contactId,
+				ONE_MEGABYTE, MAX_LATENCY);
+		assertEquals(2, ids.size());
+
+		// Mark both messages as sent
+		db.updateRetransmissionData(txn, contactId,
+				asList(messageId, messageId1), MAX_LATENCY);
+
+		// Neither message should be sendable via lazy retransmission,
+		// but both should still be sendable via eager retransmission
+		assertNothingToSendLazily(db, txn);
+		assertEquals(2, db.getUnackedMessagesToSend(txn, contactId).size());
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	@Test
 	public void testOutstandingMessageAcked() throws Exception {
 		Database<Connection> db = open(false);
@@ -616,16 +732,20 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		assertEquals(contactId,
 				db.addContact(txn, author, localAuthor.getId(), null, true));
 		db.addGroup(txn, group);
+		assertEquals(singletonList(group), db.getGroups(txn));
 
 		// The group should not be visible to the contact
 		assertEquals(INVISIBLE, db.getGroupVisibility(txn, contactId, groupId));
 		assertTrue(db.getGroupVisibility(txn, groupId).isEmpty());
+		assertTrue(db.getGroupVisibilities(txn).isEmpty());
 
 		// Make the group visible to the contact
 		db.addGroupVisibility(txn, contactId, groupId, false);
 		assertEquals(VISIBLE, db.getGroupVisibility(txn, contactId, groupId));
 		assertEquals(singletonMap(contactId, false),
 				db.getGroupVisibility(txn, groupId));
+		assertEquals(singletonMap(groupId, singletonMap(contactId, false)),
+				db.getGroupVisibilities(txn));
 
 		// Share the group with the contact
 		db.setGroupVisibility(txn, contactId, groupId, true);
@@ -1212,6 +1332,150 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testRemoveSeveralOfferedMessagesWithOneMissing()
+			throws Exception {
+		MessageId messageId1 = new MessageId(getRandomId());
+		MessageId missing = new MessageId(getRandomId());
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a contact who has offered two messages
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		db.addOfferedMessage(txn, contactId, messageId);
+		db.addOfferedMessage(txn, contactId, messageId1);
+		assertEquals(2, db.countOfferedMessages(txn, contactId));
+		db.commitTransaction(txn);
+
+		// Removing the offers, including one that doesn't exist, should
+		// throw an exception
+		txn = db.startTransaction();
+		try {
+			db.removeOfferedMessages(txn, contactId,
+					asList(messageId, missing, messageId1));
+			fail();
+		} catch (DbException expected) {
+			// It should be possible to abort the transaction without error
+			db.abortTransaction(txn);
+		}
+
+		// The offers should be unaffected
+		txn = db.startTransaction();
+		assertEquals(2, db.countOfferedMessages(txn, contactId));
+
+		// Removing the offers that exist should succeed
+		db.removeOfferedMessages(txn, contactId,
+				asList(messageId, messageId1));
+		assertEquals(0, db.countOfferedMessages(txn, contactId));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testAddOfferedMessagesSkipsMessagesAlreadyOffered()
+			throws Exception {
+		MessageId messageId1 = new MessageId(getRandomId());
+		MessageId messageId2 = new MessageId(getRandomId());
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a contact who has offered a message
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		db.addOfferedMessage(txn, contactId, messageId1);
+		assertEquals(1, db.countOfferedMessages(txn, contactId));
+
+		// Offer the same message again, along with a new one
+		db.addOfferedMessages(txn, contactId, asList(messageId1, messageId2));
+		assertEquals(2, db.countOfferedMessages(txn, contactId));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testMessagesAddedBeforeFilterIsBuiltAreFound()
+			throws Exception {
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+		MessageId unknown = new MessageId(getRandomId());
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a contact, a shared group and a shared message
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, contactId, groupId, true);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		db.commitTransaction(txn);
+		db.close();
+
+		// Reopen the database and add another message before the message
+		// ID filter is built
+		db = open(true);
+		txn = db.startTransaction();
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+		db.commitTransaction(txn);
+
+		// Both messages should be found
+		txn = db.startTransaction();
+		assertTrue(db.containsMessage(txn, messageId));
+		assertTrue(db.containsMessage(txn, messageId1));
+		assertFalse(db.containsMessage(txn, unknown));
+		assertTrue(db.containsVisibleMessage(txn, contactId, messageId));
+		assertTrue(db.containsVisibleMessage(txn, contactId, messageId1));
+		assertFalse(db.containsVisibleMessage(txn, contactId, unknown));
+		assertEquals(new HashSet<>(asList(messageId, messageId1)),
+				new HashSet<>(db.getVisibleMessages(txn, contactId,
+						asList(messageId, messageId1, unknown))));
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testGetVisibleMessages() throws Exception {
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+		MessageId unknown = new MessageId(getRandomId());
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a contact, a shared group, a shared message and an unshared
+		// message
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, contactId, groupId, true);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		db.addMessage(txn, message1, DELIVERED, false, false, null);
+
+		// Only the shared message should be visible
+		assertTrue(db.containsMessage(txn, messageId1));
+		assertFalse(db.containsMessage(txn, unknown));
+		assertEquals(singletonList(messageId), db.getVisibleMessages(txn,
+				contactId, asList(messageId, messageId1, unknown)));
+
+		// Mark the visible message as seen and needing to be acked
+		db.raiseSeenAndAckFlags(txn, contactId, singletonList(messageId));
+		assertEquals(singletonList(messageId),
+				db.getMessagesToAck(txn, contactId, 10));
+		assertNothingToSendEagerly(db, txn);
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	@Test
 	public void testGroupMetadata() throws Exception {
 		Database<Connection> db = open(false);
@@ -1483,6 +1747,97 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testCompactIncrementallyAfterRemovingGroup()
+			throws Exception {
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a group and enough messages to fill some pages
+		db.addGroup(txn, group);
+		for (int i = 0; i < 100; i++) {
+			Message m = getMessage(groupId, MAX_MESSAGE_BODY_LENGTH);
+			db.addMessage(txn, m, DELIVERED, true, false, null);
+		}
+		db.commitTransaction(txn);
+
+		// Remove the group, which deletes the messages
+		txn = db.startTransaction();
+		db.removeGroup(txn, groupId);
+		db.commitTransaction(txn);
+
+		// Compaction should finish, and any space it reclaimed should not be
+		// reclaimed again
+		txn = db.startTransaction();
+		long reclaimed = db.compactIncrementally(txn);
+		if (db.supportsOnlineCompaction()) assertTrue(reclaimed > 0);
+		else assertEquals(0, reclaimed);
+		int steps = 1;
+		while (reclaimed > 0) {
+			reclaimed = db.compactIncrementally(txn);
+			assertTrue(reclaimed >= 0);
+			assertTrue(++steps < 1000);
+		}
+		assertEquals(0, db.compactIncrementally(txn));
+		db.commitTransaction(txn);
+
+		// The database should still be usable
+		txn = db.startTransaction();
+		assertFalse(db.containsGroup(txn, groupId));
+		db.addGroup(txn, group);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		assertTrue(db.containsMessage(txn, messageId));
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testMetadataProjection() throws Exception {
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+		Message message2 = getMessage(groupId);
+		MessageId messageId2 = message2.getId();
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a group and three messages
+		db.addGroup(txn, group);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+		db.addMessage(txn, message2, UNKNOWN, true, false, null);
+
+		// Attach some metadata to the messages
+		Metadata metadata = new Metadata();
+		metadata.put("foo", new byte[] {'b', 'a', 'r'});
+		metadata.put("baz", new byte[] {'b', 'a', 'm'});
+		db.mergeMessageMetadata(txn, messageId, metadata);
+		Metadata metadata1 = new Metadata();
+		metadata1.put("baz", new byte[] {'q', 'u', 'x'});
+		db.mergeMessageMetadata(txn, messageId1, metadata1);
+		db.mergeMessageMetadata(txn, messageId2, metadata);
+
+		// Retrieve only foo: the second message has no foo, so it should
+		// be included with empty metadata, and the third message isn't
+		// delivered, so it should not be included
+		Map<MessageId, Metadata> all =
+				db.getMessageMetadata(txn, groupId, singletonList("foo"));
+		assertEquals(2, all.size());
+		Metadata retrieved = all.get(messageId);
+		assertEquals(1, retrieved.size());
+		assertArrayEquals(metadata.get("foo"), retrieved.get("foo"));
+		assertTrue(all.get(messageId1).isEmpty());
+
+		// Retrieve foo and baz
+		all = db.getMessageMetadata(txn, groupId, asList("foo", "baz"));
+		assertEquals(2, all.size());
+		assertMetadataEquals(metadata, all.get(messageId));
+		assertMetadataEquals(metadata1, all.get(messageId1));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	@Test
 	public void testMetadataQueriesOnlyForDeliveredMessages() throws Exception {
 		Message message1 = getMessage(groupId);
@@ -1951,6 +2306,200 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testGetMessageBody() throws Exception {
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a group and a message
+		db.addGroup(txn, group);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+
+		// The whole body should be returned if the offset is zero
+		byte[] body = message.getBody();
+		assertArrayEquals(body, read(db.getMessageBody(txn, messageId, 0)));
+
+		// The start of the body should be skipped if the offset is non-zero
+		int offset = body.length / 2;
+		byte[] tail = copyOfRange(body, offset, body.length);
+		assertArrayEquals(tail,
+				read(db.getMessageBody(txn, messageId, offset)));
+
+		// An empty stream should be returned if the offset is the length
+		assertArrayEquals(new byte[0],
+				read(db.getMessageBody(txn, messageId, body.length)));
+
+		// Requesting an offset outside the body should throw an exception
+		try {
+			db.getMessageBody(txn, messageId, body.length + 1);
+			fail();
+		} catch (DbException expected) {
+			// Expected
+		}
+		try {
+			db.getMessageBody(txn, messageId, -1);
+			fail();
+		} catch (DbException expected) {
+			// Expected
+		}
+
+		// Delete the message
+		db.deleteMessage(txn, messageId);
+
+		// Requesting the body should throw an exception
+		try {
+			db.getMessageBody(txn, messageId, 0);
+			fail();
+		} catch (MessageDeletedException expected) {
+			// Expected
+		}
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testMessageBodyCanBeReadWhileUsingTransaction()
+			throws Exception {
+		Message message1 = getMessage(groupId);
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a group and two messages
+		db.addGroup(txn, group);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+
+		// Open streams over both bodies and read them in turn, using the
+		// transaction in between
+		byte[] body = message.getBody(), body1 = message1.getBody();
+		InputStream in = db.getMessageBody(txn, messageId, 0);
+		InputStream in1 = db.getMessageBody(txn, message1.getId(), 0);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(in.read());
+		assertTrue(db.containsMessage(txn, message1.getId()));
+		assertArrayEquals(body1, read(in1));
+		out.write(read(in));
+		assertArrayEquals(body, out.toByteArray());
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	private byte[] read(InputStream in) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		copyAndClose(in, out);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testSessionStorageIds() throws Exception {
+		UniqueId sessionId = new UniqueId(getRandomId());
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a group and two messages
+		db.addGroup(txn, group);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+
+		// No storage ID should have been recorded for the session
+		assertNull(db.getSessionStorageId(txn, groupId, sessionId));
+
+		// Record the first message as the storage ID
+		db.setSessionStorageId(txn, groupId, sessionId, messageId);
+		assertEquals(messageId,
+				db.getSessionStorageId(txn, groupId, sessionId));
+
+		// Replace the record with the second message
+		db.setSessionStorageId(txn, groupId, sessionId, messageId1);
+		assertEquals(messageId1,
+				db.getSessionStorageId(txn, groupId, sessionId));
+
+		// Removing the first message should not affect the record
+		db.removeMessage(txn, messageId);
+		assertEquals(messageId1,
+				db.getSessionStorageId(txn, groupId, sessionId));
+
+		// Removing the second message should remove the record
+		db.removeMessage(txn, messageId1);
+		assertNull(db.getSessionStorageId(txn, groupId, sessionId));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testMessageCounts() throws Exception {
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a group
+		db.addGroup(txn, group);
+
+		// No counts should have been stored for the group
+		assertEquals(emptyMap(),
+				db.getMessageCounts(txn, singletonList(groupId)));
+		assertFalse(db.updateMessageCounts(txn, groupId, 1, 1, 123));
+
+		// Store some counts
+		db.setMessageCounts(txn, groupId, new MessageCounts(2, 1, 123));
+		MessageCounts counts =
+				db.getMessageCounts(txn, singletonList(groupId)).get(groupId);
+		assertNotNull(counts);
+		assertEquals(2, counts.getMsgCount());
+		assertEquals(1, counts.getUnreadCount());
+		assertEquals(123, counts.getLatestMsgTime());
+
+		// Update the counts with a newer message
+		assertTrue(db.updateMessageCounts(txn, groupId, 1, 1, 456));
+		counts = db.getMessageCounts(txn, singletonList(groupId)).get(groupId);
+		assertNotNull(counts);
+		assertEquals(3, counts.getMsgCount());
+		assertEquals(2, counts.getUnreadCount());
+		assertEquals(456, counts.getLatestMsgTime());
+
+		// Update the counts with an older message
+		assertTrue(db.updateMessageCounts(txn, groupId, 1, -1, 123));
+		counts = db.getMessageCounts(txn, singletonList(groupId)).get(groupId);
+		assertNotNull(counts);
+		assertEquals(4, counts.getMsgCount());
+		assertEquals(1, counts.getUnreadCount());
+		assertEquals(456, counts.getLatestMsgTime());
+
+		// Removing the group should remove the counts
+		db.removeGroup(txn, groupId);
+		assertEquals(emptyMap(),
+				db.getMessageCounts(txn, singletonList(groupId)));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testUnreadCountCannotBecomeNegative() throws Exception {
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a group with no unread messages
+		db.addGroup(txn, group);
+		db.setMessageCounts(txn, groupId, new MessageCounts(1, 0, 123));
+
+		// Marking a message as read should fail
+		try {
+			db.updateMessageCounts(txn, groupId, 0, -1, 0);
+			fail();
+		} catch (DbException expected) {
+			// Expected
+		}
+
+		db.abortTransaction(txn);
+		db.close();
+	}
+
 	@Test
 	public void testSetContactAlias() throws Exception {
 		Database<Connection> db = open(false);
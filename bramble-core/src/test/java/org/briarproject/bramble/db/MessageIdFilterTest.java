@@ -0,0 +1,73 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.briarproject.bramble.db.MessageIdFilter.MIN_CAPACITY;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageIdFilterTest extends BrambleTestCase {
+
+	@Test
+	public void testAddedMessagesAreAlwaysFound() {
+		MessageIdFilter filter = new MessageIdFilter(MIN_CAPACITY);
+		List<MessageId> added = new ArrayList<>();
+		for (int i = 0; i < MIN_CAPACITY; i++) {
+			MessageId m = new MessageId(getRandomId());
+			filter.add(m);
+			added.add(m);
+		}
+		for (MessageId m : added) assertTrue(filter.mightContain(m));
+	}
+
+	@Test
+	public void testFalsePositiveRateIsLow() {
+		MessageIdFilter filter = new MessageIdFilter(MIN_CAPACITY);
+		// Fill the filter to its capacity
+		for (int i = 0; i < MIN_CAPACITY * 2; i++) {
+			filter.add(new MessageId(getRandomId()));
+		}
+		assertFalse(filter.isFull());
+		double expected = filter.getExpectedFalsePositiveRate();
+		assertTrue(expected < 0.01);
+		// Count the false positives among messages that weren't added
+		int lookups = 100_000, falsePositives = 0;
+		for (int i = 0; i < lookups; i++) {
+			if (filter.mightContain(new MessageId(getRandomId()))) {
+				falsePositives++;
+			}
+		}
+		assertTrue((double) falsePositives / lookups < expected * 2);
+	}
+
+	@Test
+	public void testFilterIsFullWhenCapacityIsExceeded() {
+		MessageIdFilter filter = new MessageIdFilter(0);
+		for (int i = 0; i < MIN_CAPACITY; i++) {
+			filter.add(new MessageId(getRandomId()));
+		}
+		assertFalse(filter.isFull());
+		filter.add(new MessageId(getRandomId()));
+		assertTrue(filter.isFull());
+	}
+
+	@Test
+	public void testObservedFalsePositiveRate() {
+		MessageIdFilter filter = new MessageIdFilter(MIN_CAPACITY);
+		MessageId m = new MessageId(getRandomId());
+		filter.add(m);
+		assertEquals(0, filter.getObservedFalsePositiveRate(), 0);
+		// Two positive answers, one of which turns out to be false
+		assertTrue(filter.mightContain(m));
+		assertTrue(filter.mightContain(m));
+		filter.recordFalsePositives(1);
+		assertEquals(0.5, filter.getObservedFalsePositiveRate(), 0);
+	}
+}
@@ -0,0 +1,14 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.system.Clock;
+
+public class SqliteDatabaseTest extends JdbcDatabaseTest {
+
+	@Override
+	protected JdbcDatabase createDatabase(DatabaseConfig config,
+			MessageFactory messageFactory, Clock clock) {
+		return new SqliteDatabase(config, messageFactory, clock, false);
+	}
+}
@@ -0,0 +1,21 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.sql.Connection;
+import java.util.List;
+
+@NotNullByDefault
+public class SqliteMigrationTest extends DatabaseMigrationTest {
+
+	@Override
+	Database<Connection> createDatabase(
+			List<Migration<Connection>> migrations) {
+		return new SqliteDatabase(config, messageFactory, clock, false) {
+			@Override
+			List<Migration<Connection>> getMigrations() {
+				return migrations;
+			}
+		};
+	}
+}
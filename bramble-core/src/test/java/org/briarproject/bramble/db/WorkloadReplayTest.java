@@ -0,0 +1,258 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.lifecycle.ShutdownManager;
+import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.briarproject.bramble.test.TestMessageFactory;
+import org.jmock.Expectations;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.logging.Level.OFF;
+import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.db.WorkloadTracer.createTracingDatabaseComponent;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getAuthor;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getIdentity;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.briarproject.bramble.util.StringUtils.getRandomString;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a database workload trace and reports the latency of each
+ * method. The trace to replay can be given by setting the
+ * {@link #TRACE_FILE_PROPERTY} system property, for example to a trace
+ * recorded by running the headless client with --db-trace. If no trace is
+ * given, a synthetic workload is recorded and replayed.
+ */
+public abstract class WorkloadReplayTest extends BrambleMockTestCase {
+
+	static final String TRACE_FILE_PROPERTY = "briar.workloadTrace";
+
+	private static final int CONTACTS = 20;
+	private static final int GROUPS_PER_CONTACT = 5;
+	private static final int MESSAGES_PER_GROUP = 20;
+	private static final int METADATA_KEYS_PER_MESSAGE = 5;
+	private static final int THREADS = 4;
+	private static final int TRANSACTIONS_PER_THREAD = 500;
+
+	/**
+	 * One in this many transactions is a write transaction.
+	 */
+	private static final int WRITE_RATIO = 10;
+
+	private final EventBus eventBus = context.mock(EventBus.class);
+	private final ShutdownManager shutdownManager =
+			context.mock(ShutdownManager.class);
+
+	private final File testDir = getTestDirectory();
+	private final File resultsFile = new File(getTestName() + ".tsv");
+	private final SecretKey key = getSecretKey();
+	private final Random random = new Random();
+
+	protected abstract String getTestName();
+
+	abstract Database<Connection> createDatabase(DatabaseConfig config,
+			MessageFactory messageFactory, Clock clock);
+
+	WorkloadReplayTest() {
+		// Disable logging
+		Logger.getLogger("").setLevel(OFF);
+	}
+
+	@Before
+	public void setUp() {
+		assertTrue(testDir.mkdirs());
+		context.checking(new Expectations() {{
+			allowing(eventBus).broadcast(with(any(Event.class)));
+			allowing(shutdownManager).addShutdownHook(
+					with(any(Runnable.class)));
+		}});
+	}
+
+	@After
+	public void tearDown() {
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testReplayWorkload() throws Exception {
+		File traceFile;
+		String path = System.getProperty(TRACE_FILE_PROPERTY);
+		if (path == null) {
+			traceFile = new File(testDir, "workload.trace");
+			recordSyntheticWorkload(traceFile);
+		} else {
+			traceFile = new File(path);
+		}
+		WorkloadReplayer replayer = new WorkloadReplayer(traceFile);
+		Database<Connection> database = createDatabase(
+				new TestDatabaseConfig(new File(testDir, "replay")),
+				new TestMessageFactory(), new SystemClock());
+		DatabaseComponent db = open(database);
+		replayer.replay(db);
+		db.close();
+		writeResults(traceFile, replayer);
+	}
+
+	private void recordSyntheticWorkload(File traceFile) throws Exception {
+		DatabaseComponent db = open(new H2Database(
+				new TestDatabaseConfig(new File(testDir, "record")),
+				new TestMessageFactory(), new SystemClock()));
+		List<ContactId> contacts = new ArrayList<>();
+		List<GroupId> groups = new ArrayList<>();
+		db.transaction(false, txn -> {
+			Identity identity = getIdentity();
+			db.addIdentity(txn, identity);
+			ClientId clientId = getClientId();
+			for (int i = 0; i < CONTACTS; i++) {
+				ContactId c = db.addContact(txn, getAuthor(),
+						identity.getLocalAuthor().getId(), null, true);
+				contacts.add(c);
+				for (int j = 0; j < GROUPS_PER_CONTACT; j++) {
+					Group g = getGroup(clientId, 123);
+					db.addGroup(txn, g);
+					db.setGroupVisibility(txn, c, g.getId(), SHARED);
+					groups.add(g.getId());
+					for (int k = 0; k < MESSAGES_PER_GROUP; k++) {
+						db.addLocalMessage(txn, getMessage(g.getId()),
+								getMetadata(), true, false);
+					}
+				}
+			}
+		});
+
+		// Read and write from several threads, as the node's executors do
+		DatabaseComponent traced =
+				createTracingDatabaseComponent(db, new SystemClock(),
+						traceFile);
+		ExecutorService executor = newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < TRANSACTIONS_PER_THREAD; j++) {
+					ContactId c = pickRandom(contacts);
+					GroupId g = pickRandom(groups);
+					if (j % WRITE_RATIO == 0) {
+						Message m = getMessage(g);
+						traced.transaction(false, txn -> {
+							traced.addLocalMessage(txn, m, getMetadata(), true,
+									false);
+							traced.mergeGroupMetadata(txn, g, getMetadata());
+						});
+					} else {
+						traced.transaction(true, txn -> {
+							traced.getContact(txn, c);
+							traced.getGroupMetadata(txn, g);
+							traced.getMessageMetadata(txn, g);
+							traced.getMessagesToSend(txn, c, 1000, 30 * 1000);
+						});
+					}
+				}
+				return null;
+			}));
+		}
+		for (Future<?> f : futures) f.get();
+		executor.shutdown();
+		traced.close();
+	}
+
+	private <T> T pickRandom(List<T> list) {
+		return list.get(random.nextInt(list.size()));
+	}
+
+	private Metadata getMetadata() {
+		Metadata meta = new Metadata();
+		for (int i = 0; i < METADATA_KEYS_PER_MESSAGE; i++)
+			meta.put(getRandomString(10), getRandomBytes(100));
+		return meta;
+	}
+
+	private DatabaseComponent open(Database<Connection> database)
+			throws Exception {
+		DatabaseComponent db = new DatabaseComponentImpl<>(database,
+				Connection.class, eventBus, new ImmediateExecutor(),
+				shutdownManager);
+		db.open(key, null);
+		return db;
+	}
+
+	private void writeResults(File traceFile, WorkloadReplayer replayer)
+			throws IOException {
+		writeResult(traceFile.getName() + "\tcalls\t" + replayer.getCalls()
+				+ "\treplayed\t" + replayer.getReplayedCalls()
+				+ "\tskipped\t" + replayer.getSkippedCalls()
+				+ "\tdiverged\t" + replayer.getDivergedCalls());
+		for (Entry<String, List<Long>> e :
+				replayer.getReplayedLatencies().entrySet()) {
+			String name = e.getKey();
+			List<Long> replayed = new ArrayList<>(e.getValue());
+			List<Long> recorded = new ArrayList<>(
+					replayer.getRecordedLatencies().get(name));
+			Collections.sort(replayed);
+			Collections.sort(recorded);
+			writeResult(name + "\t" + replayed.size()
+					+ "\trecorded p50\t" + getPercentile(recorded, 50)
+					+ "\tp99\t" + getPercentile(recorded, 99)
+					+ "\treplayed p50\t" + getPercentile(replayed, 50)
+					+ "\tp90\t" + getPercentile(replayed, 90)
+					+ "\tp99\t" + getPercentile(replayed, 99)
+					+ "\tmax\t" + replayed.get(replayed.size() - 1));
+		}
+	}
+
+	/**
+	 * Returns the given percentile of the given sorted latencies, using
+	 * the nearest-rank method.
+	 */
+	private long getPercentile(List<Long> sorted, int percentile) {
+		int rank = (sorted.size() * percentile + 99) / 100;
+		return sorted.get(Math.max(0, rank - 1));
+	}
+
+	private void writeResult(String result) throws IOException {
+		System.out.println(result);
+		PrintWriter out =
+				new PrintWriter(new FileOutputStream(resultsFile, true), true);
+		out.println(new Date() + "\t" + result);
+		out.close();
+	}
+}
@@ -0,0 +1,927 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.contact.Contact;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.PendingContact;
+import org.briarproject.bramble.api.contact.PendingContactId;
+import org.briarproject.bramble.api.crypto.PrivateKey;
+import org.briarproject.bramble.api.crypto.PublicKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.identity.Author;
+import org.briarproject.bramble.api.identity.AuthorId;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.identity.LocalAuthor;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.settings.Settings;
+import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageCounts;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.MessageStatus;
+import org.briarproject.bramble.api.sync.Offer;
+import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.transport.KeySetId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.briarproject.bramble.api.identity.Author.FORMAT_VERSION;
+import static org.briarproject.bramble.db.WorkloadTracer.HEADER;
+import static org.briarproject.bramble.db.WorkloadTracer.appendSignature;
+import static org.briarproject.bramble.test.TestUtils.getAgreementPrivateKey;
+import static org.briarproject.bramble.test.TestUtils.getAgreementPublicKey;
+import static org.briarproject.bramble.test.TestUtils.getSignaturePrivateKey;
+import static org.briarproject.bramble.test.TestUtils.getSignaturePublicKey;
+
+/**
+ * Replays a trace recorded by {@link WorkloadTracer} against a
+ * {@link DatabaseComponent} and measures how long each call takes.
+ * <p/>
+ * The trace doesn't record the content of the database, so the replayer
+ * creates stand-ins for any identities, contacts, transports, groups and
+ * messages that the trace refers to without creating them, together with
+ * any group and message metadata the trace saw. Values that were replaced
+ * with pseudonyms are replaced with deterministic values of the same length.
+ * Timestamps are replayed relative to the start of the replay.
+ * <p/>
+ * Each recorded thread gets its own replay thread, and calls are replayed
+ * one at a time in the order they were numbered, without the pauses
+ * between them. Calls with arguments that weren't recorded, such as
+ * transport keys, are skipped. A call whose outcome differs from the
+ * recorded outcome - returning instead of throwing, throwing instead of
+ * returning, or throwing a different exception - is counted as diverged.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class WorkloadReplayer {
+
+	/**
+	 * How long to wait for a replayed call to return, in seconds.
+	 */
+	private static final int CALL_TIMEOUT = 60;
+
+	private static final int MAX_LATENCY = 30 * 1000;
+	private static final int DEFAULT_BODY_LENGTH = 100;
+
+	/**
+	 * The pseudonym of the identity that owns any contacts, pending
+	 * contacts and groups whose owners aren't known.
+	 */
+	private static final int DEFAULT_PSEUDONYM = -1;
+
+	/**
+	 * Methods that create the entity passed as one of their arguments,
+	 * and the index of that argument.
+	 */
+	private static final Map<String, Integer> CREATED_ARGS = new HashMap<>();
+
+	/**
+	 * Methods that take the ID of a local identity as one of their
+	 * arguments, and the index of that argument.
+	 */
+	private static final Map<String, Integer> LOCAL_AUTHOR_ARGS =
+			new HashMap<>();
+
+	static {
+		CREATED_ARGS.put("addGroup", 1);
+		CREATED_ARGS.put("addIdentity", 1);
+		CREATED_ARGS.put("addLocalMessage", 1);
+		CREATED_ARGS.put("addPendingContact", 1);
+		CREATED_ARGS.put("addTransport", 1);
+		CREATED_ARGS.put("receiveMessage", 2);
+		LOCAL_AUTHOR_ARGS.put("addContact", 2);
+		LOCAL_AUTHOR_ARGS.put("addPendingContact", 2);
+		LOCAL_AUTHOR_ARGS.put("containsContact", 2);
+		LOCAL_AUTHOR_ARGS.put("containsIdentity", 1);
+		LOCAL_AUTHOR_ARGS.put("getContacts", 1);
+		LOCAL_AUTHOR_ARGS.put("getIdentity", 1);
+		LOCAL_AUTHOR_ARGS.put("removeIdentity", 1);
+		LOCAL_AUTHOR_ARGS.put("setHandshakeKeyPair", 1);
+	}
+
+	private final List<Call> calls = new ArrayList<>();
+
+	// Entities that exist before the trace starts
+	private final Entities identities = new Entities();
+	private final Entities contacts = new Entities();
+	private final Entities pendingContacts = new Entities();
+	private final Entities transports = new Entities();
+	private final Entities groups = new Entities();
+	private final Entities messages = new Entities();
+
+	// What the trace tells us about those entities
+	private final Map<Integer, Integer> contactAuthors = new HashMap<>();
+	private final Map<Integer, Integer> contactLocalAuthors = new HashMap<>();
+	private final Map<Integer, Value> groupTuples = new HashMap<>();
+	private final Map<Integer, Value> groupMetadata = new HashMap<>();
+	private final Map<Integer, Integer> messageGroups = new HashMap<>();
+	private final Map<Integer, Value> messageTuples = new HashMap<>();
+	private final Map<Integer, Value> messageMetadata = new HashMap<>();
+
+	// Recorded IDs and the replayed IDs they correspond to
+	private final Map<Integer, ContactId> contactIds = new HashMap<>();
+	private final Map<Integer, KeySetId> keySetIds = new HashMap<>();
+	private final Map<Integer, Transaction> transactions = new HashMap<>();
+	private final Map<Integer, Integer> transactionThreads = new HashMap<>();
+
+	private final Map<String, List<Long>> recordedLatencies = new TreeMap<>();
+	private final Map<String, List<Long>> replayedLatencies = new TreeMap<>();
+	private int replayedCalls = 0, skippedCalls = 0, divergedCalls = 0;
+
+	/**
+	 * The wall clock time when the replayer was created, which recorded
+	 * timestamps are replayed relative to.
+	 */
+	private final long startTimeMs = System.currentTimeMillis();
+
+	WorkloadReplayer(File traceFile) throws IOException {
+		Map<String, Method> methods = new HashMap<>();
+		for (Method m : DatabaseComponent.class.getMethods()) {
+			StringBuilder s = new StringBuilder();
+			appendSignature(s, m);
+			methods.put(s.toString(), m);
+		}
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(traceFile), "UTF-8"));
+		try {
+			String header = in.readLine();
+			if (!HEADER.equals(header))
+				throw new IOException("Not a workload trace: " + traceFile);
+			String line;
+			while ((line = in.readLine()) != null) {
+				Call call = parseCall(line, methods);
+				if (call != null) calls.add(call);
+			}
+		} finally {
+			in.close();
+		}
+		Collections.sort(calls, (a, b) -> Long.compare(a.seq, b.seq));
+		for (Call call : calls) scan(call);
+	}
+
+	/**
+	 * Returns the number of calls in the trace.
+	 */
+	int getCalls() {
+		return calls.size();
+	}
+
+	int getReplayedCalls() {
+		return replayedCalls;
+	}
+
+	int getSkippedCalls() {
+		return skippedCalls;
+	}
+
+	int getDivergedCalls() {
+		return divergedCalls;
+	}
+
+	/**
+	 * Returns the recorded latencies of the replayed calls in
+	 * microseconds, keyed by method signature.
+	 */
+	Map<String, List<Long>> getRecordedLatencies() {
+		return recordedLatencies;
+	}
+
+	/**
+	 * Returns the replayed latencies in microseconds, keyed by method
+	 * signature.
+	 */
+	Map<String, List<Long>> getReplayedLatencies() {
+		return replayedLatencies;
+	}
+
+	/**
+	 * Creates the entities the trace refers to without creating them,
+	 * then replays the trace. The database must be open and empty.
+	 */
+	void replay(DatabaseComponent db) throws Exception {
+		db.transaction(false, txn -> seed(db, txn));
+		Map<Integer, ExecutorService> threads = new HashMap<>();
+		try {
+			for (Call call : calls) replay(db, call, threads);
+			// End any transactions that were open when the trace ended
+			for (Entry<Integer, Transaction> e : transactions.entrySet()) {
+				Transaction txn = e.getValue();
+				ExecutorService thread =
+						threads.get(transactionThreads.get(e.getKey()));
+				thread.submit(() -> db.endTransaction(txn))
+						.get(CALL_TIMEOUT, SECONDS);
+			}
+			transactions.clear();
+		} finally {
+			for (ExecutorService thread : threads.values())
+				thread.shutdownNow();
+		}
+	}
+
+	@Nullable
+	private Call parseCall(String line, Map<String, Method> methods)
+			throws IOException {
+		if (line.isEmpty() || line.startsWith("#")) return null;
+		String[] fields = line.split("\t", -1);
+		if (fields.length < 6) throw new IOException("Bad line: " + line);
+		Method method = methods.get(fields[4]);
+		if (method == null) throw new IOException("Unknown call: " + line);
+		int params = method.getParameterTypes().length;
+		if (fields.length != 6 + params)
+			throw new IOException("Bad line: " + line);
+		Call call = new Call(Long.parseLong(fields[0]),
+				Integer.parseInt(fields[1]), Long.parseLong(fields[3]),
+				fields[4], method);
+		for (int i = 0; i < params; i++)
+			call.args.add(new Parser(fields[5 + i]).parse());
+		String outcome = fields[5 + params];
+		if (outcome.startsWith("!")) {
+			call.exception = outcome.substring(1);
+		} else if (outcome.length() > 1) {
+			call.result = new Parser(outcome.substring(1)).parse();
+		}
+		return call;
+	}
+
+	/**
+	 * Works out which entities exist before the trace starts: those that
+	 * a successful call refers to or returns before the trace creates them.
+	 */
+	private void scan(Call call) {
+		if (call.exception != null) return;
+		String name = call.method.getName();
+		if (name.startsWith("contains") && (call.result == null
+				|| !call.result.text.equals("true"))) {
+			return;
+		}
+		Type[] types = call.method.getGenericParameterTypes();
+		Integer created = CREATED_ARGS.get(name);
+		Integer localAuthor = LOCAL_AUTHOR_ARGS.get(name);
+		int groupHint = DEFAULT_PSEUDONYM;
+		for (int i = 0; i < types.length; i++) {
+			Value arg = call.args.get(i);
+			if (types[i] == GroupId.class && arg.kind == Value.PSEUDONYM)
+				groupHint = arg.pseudonym;
+			if (localAuthor != null && localAuthor == i
+					&& types[i] == AuthorId.class) {
+				note(identities, arg, false);
+			}
+			boolean creates = created != null && created == i;
+			scan(arg, types[i], creates, DEFAULT_PSEUDONYM);
+		}
+		if (call.result == null) return;
+		scan(call.result, call.method.getGenericReturnType(),
+				name.equals("addContact"), groupHint);
+		// Remember the first metadata seen for each group and message
+		Value arg = call.args.size() > 1 ? call.args.get(1) : null;
+		if (name.equals("getGroupMetadata") && arg != null
+				&& !groupMetadata.containsKey(arg.pseudonym)) {
+			groupMetadata.put(arg.pseudonym, call.result);
+		} else if (name.equals("getMessageMetadata")) {
+			if (types[1] == MessageId.class && arg != null) {
+				if (!messageMetadata.containsKey(arg.pseudonym))
+					messageMetadata.put(arg.pseudonym, call.result);
+			} else {
+				List<Value> items = call.result.items;
+				for (int i = 0; i + 1 < items.size(); i += 2) {
+					int m = items.get(i).pseudonym;
+					if (!messageMetadata.containsKey(m))
+						messageMetadata.put(m, items.get(i + 1));
+				}
+			}
+		}
+	}
+
+	private void scan(Value v, Type type, boolean creates, int groupHint) {
+		Class<?> c = getRawType(type);
+		if (v.kind == Value.LIST && Collection.class.isAssignableFrom(c)) {
+			Type element = getTypeArgument(type, 0);
+			for (Value item : v.items)
+				scan(item, element, creates, groupHint);
+		} else if (v.kind == Value.MAP && Map.class.isAssignableFrom(c)) {
+			Type key = getTypeArgument(type, 0);
+			Type value = getTypeArgument(type, 1);
+			for (int i = 0; i + 1 < v.items.size(); i += 2) {
+				scan(v.items.get(i), key, creates, groupHint);
+				scan(v.items.get(i + 1), value, creates, groupHint);
+			}
+		} else if (c == ContactId.class && v.kind == Value.LITERAL) {
+			note(contacts, v, creates);
+		} else if (c == PendingContactId.class) {
+			note(pendingContacts, v, creates);
+		} else if (c == TransportId.class) {
+			note(transports, v, creates);
+		} else if (c == GroupId.class) {
+			note(groups, v, creates);
+		} else if (c == MessageId.class) {
+			note(messages, v, creates);
+			if (groupHint != DEFAULT_PSEUDONYM
+					&& !messageGroups.containsKey(v.pseudonym)) {
+				messageGroups.put(v.pseudonym, groupHint);
+			}
+		} else if (v.kind != Value.TUPLE) {
+			// Nothing to learn
+		} else if (c == Message.class) {
+			Value id = v.items.get(0), group = v.items.get(1);
+			scan(id, MessageId.class, creates, group.pseudonym);
+			scan(group, GroupId.class, false, DEFAULT_PSEUDONYM);
+			messageTuples.put(id.pseudonym, v);
+		} else if (c == Group.class) {
+			Value id = v.items.get(0);
+			scan(id, GroupId.class, creates, DEFAULT_PSEUDONYM);
+			groupTuples.put(id.pseudonym, v);
+		} else if (c == Identity.class) {
+			note(identities, v.items.get(0), creates);
+		} else if (c == PendingContact.class) {
+			note(pendingContacts, v.items.get(0), creates);
+		} else if (c == Contact.class) {
+			Value id = v.items.get(0);
+			note(contacts, id, creates);
+			int contact = Integer.parseInt(id.text);
+			contactAuthors.put(contact, v.items.get(1).pseudonym);
+			contactLocalAuthors.put(contact, v.items.get(2).pseudonym);
+			note(identities, v.items.get(2), false);
+		} else if (c == MessageStatus.class) {
+			scan(v.items.get(0), MessageId.class, false, groupHint);
+			scan(v.items.get(1), ContactId.class, false, groupHint);
+		}
+	}
+
+	private void note(Entities e, Value v, boolean creates) {
+		if (v.kind == Value.NULL) return;
+		int key = v.kind == Value.LITERAL ? Integer.parseInt(v.text)
+				: v.pseudonym;
+		if (creates) e.created.add(key);
+		else if (!e.created.contains(key)) e.existing.add(key);
+	}
+
+	private void seed(DatabaseComponent db, Transaction txn)
+			throws Exception {
+		identities.existing.add(DEFAULT_PSEUDONYM);
+		for (int contact : contacts.existing) {
+			Integer local = contactLocalAuthors.get(contact);
+			if (local != null && !identities.created.contains(local))
+				identities.existing.add(local);
+		}
+		for (int i : identities.existing)
+			db.addIdentity(txn, createIdentity(i));
+		for (int t : transports.existing)
+			db.addTransport(txn, createTransportId(t), MAX_LATENCY);
+		// Add the contacts in order, so their IDs are likely to match
+		for (int contact : contacts.existing) {
+			Integer remote = contactAuthors.get(contact);
+			// Use a pseudonym that can't clash with a recorded pseudonym
+			if (remote == null) remote = -2 - contact;
+			Integer local = contactLocalAuthors.get(contact);
+			if (local == null) local = DEFAULT_PSEUDONYM;
+			ContactId c = db.addContact(txn, createAuthor(remote),
+					createId(AuthorId.class, local), null, true);
+			contactIds.put(contact, c);
+		}
+		for (int p : pendingContacts.existing) {
+			db.addPendingContact(txn, createPendingContact(p),
+					createId(AuthorId.class, DEFAULT_PSEUDONYM));
+		}
+		// Every message needs a group
+		Set<Integer> groupsToAdd = new TreeSet<>(groups.existing);
+		for (int m : messages.existing) {
+			Integer g = getMessageGroup(m);
+			if (!groups.created.contains(g)) groupsToAdd.add(g);
+		}
+		for (int g : groupsToAdd) {
+			db.addGroup(txn, createGroup(g));
+			Value meta = groupMetadata.get(g);
+			if (meta != null) {
+				db.mergeGroupMetadata(txn, createId(GroupId.class, g),
+						(Metadata) decode(meta, Metadata.class));
+			}
+		}
+		for (int m : messages.existing) {
+			Value meta = messageMetadata.get(m);
+			Metadata metadata = meta == null ? new Metadata()
+					: (Metadata) decode(meta, Metadata.class);
+			db.addLocalMessage(txn, createMessage(m), metadata, true, false);
+		}
+	}
+
+	private int getMessageGroup(int m) {
+		Value tuple = messageTuples.get(m);
+		if (tuple != null) return tuple.items.get(1).pseudonym;
+		Integer g = messageGroups.get(m);
+		return g == null ? DEFAULT_PSEUDONYM : g;
+	}
+
+	private void replay(DatabaseComponent db, Call call,
+			Map<Integer, ExecutorService> threads) throws Exception {
+		String name = call.method.getName();
+		// The database is opened and closed by the caller
+		if (name.equals("open") || name.equals("close")) return;
+		Type[] types = call.method.getGenericParameterTypes();
+		Object[] args = new Object[types.length];
+		try {
+			for (int i = 0; i < types.length; i++)
+				args[i] = decode(call.args.get(i), types[i]);
+		} catch (UndecodableException e) {
+			skippedCalls++;
+			return;
+		}
+		ExecutorService thread = threads.get(call.thread);
+		if (thread == null) {
+			thread = newSingleThreadExecutor();
+			threads.put(call.thread, thread);
+		}
+		Future<Outcome> future = thread.submit(() -> {
+			long start = System.nanoTime();
+			try {
+				Object result = call.method.invoke(db, args);
+				return new Outcome(System.nanoTime() - start, result, null);
+			} catch (InvocationTargetException e) {
+				return new Outcome(System.nanoTime() - start, null,
+						e.getCause());
+			}
+		});
+		Outcome outcome;
+		try {
+			outcome = future.get(CALL_TIMEOUT, SECONDS);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException("Call " + call.seq + " ("
+					+ call.signature + ") did not return");
+		}
+		replayedCalls++;
+		addLatency(recordedLatencies, call.signature, call.duration);
+		addLatency(replayedLatencies, call.signature,
+				outcome.duration / 1000);
+		String exception = outcome.thrown == null ? null
+				: outcome.thrown.getClass().getSimpleName();
+		if (exception == null ? call.exception != null
+				: !exception.equals(call.exception)) {
+			divergedCalls++;
+		}
+		// Keep track of the IDs that the replay has assigned
+		if (outcome.result == null || call.result == null) {
+			if (name.equals("endTransaction")) {
+				int txn = Integer.parseInt(call.args.get(0).text);
+				transactions.remove(txn);
+				transactionThreads.remove(txn);
+			}
+		} else if (name.equals("startTransaction")) {
+			int txn = Integer.parseInt(call.result.text);
+			transactions.put(txn, (Transaction) outcome.result);
+			transactionThreads.put(txn, call.thread);
+		} else if (name.equals("addContact")) {
+			contactIds.put(Integer.parseInt(call.result.text),
+					(ContactId) outcome.result);
+		} else if (name.equals("addTransportKeys")) {
+			keySetIds.put(Integer.parseInt(call.result.text),
+					(KeySetId) outcome.result);
+		}
+	}
+
+	private void addLatency(Map<String, List<Long>> latencies,
+			String signature, long latency) {
+		List<Long> list = latencies.get(signature);
+		if (list == null) {
+			list = new ArrayList<>();
+			latencies.put(signature, list);
+		}
+		list.add(latency);
+	}
+
+	@Nullable
+	private Object decode(Value v, Type type) throws UndecodableException {
+		if (v.kind == Value.NULL) return null;
+		if (v.kind == Value.UNKNOWN) throw new UndecodableException();
+		Class<?> c = getRawType(type);
+		try {
+			if (v.kind == Value.LITERAL) return decodeLiteral(v.text, c);
+			if (v.kind == Value.TIMESTAMP) {
+				if (c != long.class && c != Long.class)
+					throw new UndecodableException();
+				return decodeTimestamp(v);
+			}
+			if (v.kind == Value.PSEUDONYM || v.kind == Value.LENGTH)
+				return decodePseudonym(v, c);
+			if (v.kind == Value.LIST) return decodeList(v, type, c);
+			if (v.kind == Value.MAP) return decodeMap(v, type, c);
+			return decodeTuple(v, c);
+		} catch (RuntimeException e) {
+			// The trace doesn't match the method's parameter types
+			throw new UndecodableException();
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Object decodeLiteral(String s, Class<?> c)
+			throws UndecodableException {
+		if (c == Transaction.class) {
+			Transaction txn = transactions.get(Integer.parseInt(s));
+			if (txn == null) throw new UndecodableException();
+			return txn;
+		}
+		if (c == boolean.class || c == Boolean.class)
+			return Boolean.parseBoolean(s);
+		if (c == int.class || c == Integer.class) return Integer.parseInt(s);
+		if (c == long.class || c == Long.class) return Long.parseLong(s);
+		if (c == byte.class || c == Byte.class) return Byte.parseByte(s);
+		if (c.isEnum()) return Enum.valueOf((Class<? extends Enum>) c, s);
+		if (c == ContactId.class) {
+			int contact = Integer.parseInt(s);
+			ContactId id = contactIds.get(contact);
+			return id == null ? new ContactId(contact) : id;
+		}
+		if (c == KeySetId.class) {
+			int keySet = Integer.parseInt(s);
+			KeySetId id = keySetIds.get(keySet);
+			return id == null ? new KeySetId(keySet) : id;
+		}
+		throw new UndecodableException();
+	}
+
+	private Object decodePseudonym(Value v, Class<?> c)
+			throws UndecodableException {
+		if (UniqueId.class.isAssignableFrom(c))
+			return createId(c, v.pseudonym);
+		if (c == ClientId.class) return new ClientId("client-" + v.pseudonym);
+		if (c == TransportId.class) return createTransportId(v.pseudonym);
+		if (c == String.class) return createString(v.pseudonym, v.length);
+		if (c == byte[].class) {
+			// The only empty byte arrays are removed metadata values
+			if (v.length == 0) return Metadata.REMOVE;
+			return createBytes(v.pseudonym, v.length);
+		}
+		if (c == PublicKey.class) return getAgreementPublicKey();
+		if (c == PrivateKey.class) return getAgreementPrivateKey();
+		throw new UndecodableException();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object decodeList(Value v, Type type, Class<?> c)
+			throws UndecodableException {
+		if (c == Ack.class || c == Offer.class || c == Request.class) {
+			List<MessageId> ids = new ArrayList<>();
+			for (Value item : v.items)
+				ids.add((MessageId) decode(item, MessageId.class));
+			if (c == Ack.class) return new Ack(ids);
+			if (c == Offer.class) return new Offer(ids);
+			return new Request(ids);
+		}
+		Collection<Object> list;
+		if (Set.class.isAssignableFrom(c)) list = new HashSet<>();
+		else if (c.isAssignableFrom(ArrayList.class)) list = new ArrayList<>();
+		else throw new UndecodableException();
+		Type element = getTypeArgument(type, 0);
+		for (Value item : v.items) list.add(decode(item, element));
+		return list;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object decodeMap(Value v, Type type, Class<?> c)
+			throws UndecodableException {
+		Map<Object, Object> map;
+		Type key, value;
+		if (c == Metadata.class) {
+			map = (Map<Object, Object>) (Map<?, ?>) new Metadata();
+			key = String.class;
+			value = byte[].class;
+		} else if (c == Settings.class) {
+			map = (Map<Object, Object>) (Map<?, ?>) new Settings();
+			key = String.class;
+			value = String.class;
+		} else if (c.isAssignableFrom(HashMap.class)) {
+			map = new HashMap<>();
+			key = getTypeArgument(type, 0);
+			value = getTypeArgument(type, 1);
+		} else {
+			throw new UndecodableException();
+		}
+		for (int i = 0; i + 1 < v.items.size(); i += 2)
+			map.put(decode(v.items.get(i), key),
+					decode(v.items.get(i + 1), value));
+		return map;
+	}
+
+	private Object decodeTuple(Value v, Class<?> c)
+			throws UndecodableException {
+		List<Value> items = v.items;
+		if (c == Message.class) {
+			return new Message((MessageId) decode(items.get(0),
+					MessageId.class),
+					(GroupId) decode(items.get(1), GroupId.class),
+					decodeTimestamp(items.get(2)),
+					createBytes(DEFAULT_PSEUDONYM, items.get(3).length));
+		}
+		if (c == Group.class) {
+			return new Group((GroupId) decode(items.get(0), GroupId.class),
+					(ClientId) decode(items.get(1), ClientId.class),
+					Integer.parseInt(items.get(2).text),
+					createBytes(DEFAULT_PSEUDONYM, items.get(3).length));
+		}
+		if (c == Identity.class) return createIdentity(items.get(0).pseudonym);
+		if (c == Author.class) return createAuthor(items.get(0).pseudonym);
+		if (c == PendingContact.class)
+			return createPendingContact(items.get(0).pseudonym);
+		if (c == MessageCounts.class) {
+			return new MessageCounts(Integer.parseInt(items.get(0).text),
+					Integer.parseInt(items.get(1).text),
+					decodeTimestamp(items.get(2)));
+		}
+		throw new UndecodableException();
+	}
+
+	private long decodeTimestamp(Value v) {
+		long time = Long.parseLong(v.text);
+		return v.kind == Value.TIMESTAMP ? startTimeMs + time : time;
+	}
+
+	private Message createMessage(int m) {
+		Value tuple = messageTuples.get(m);
+		long timestamp = tuple == null ? 0
+				: decodeTimestamp(tuple.items.get(2));
+		int length = tuple == null ? DEFAULT_BODY_LENGTH
+				: tuple.items.get(3).length;
+		return new Message(createId(MessageId.class, m),
+				createId(GroupId.class, getMessageGroup(m)), timestamp,
+				createBytes(DEFAULT_PSEUDONYM, length));
+	}
+
+	private Group createGroup(int g) {
+		Value tuple = groupTuples.get(g);
+		int client = tuple == null ? DEFAULT_PSEUDONYM
+				: tuple.items.get(1).pseudonym;
+		int majorVersion = tuple == null ? 0
+				: Integer.parseInt(tuple.items.get(2).text);
+		int length = tuple == null ? 0 : tuple.items.get(3).length;
+		return new Group(createId(GroupId.class, g),
+				new ClientId("client-" + client), majorVersion,
+				createBytes(DEFAULT_PSEUDONYM, length));
+	}
+
+	private Identity createIdentity(int a) {
+		LocalAuthor localAuthor = new LocalAuthor(createId(AuthorId.class, a),
+				FORMAT_VERSION, "author" + a, getSignaturePublicKey(),
+				getSignaturePrivateKey());
+		return new Identity(localAuthor, null, null, 0);
+	}
+
+	private Author createAuthor(int a) {
+		return new Author(createId(AuthorId.class, a), FORMAT_VERSION,
+				"author" + a, getSignaturePublicKey());
+	}
+
+	private PendingContact createPendingContact(int p) {
+		return new PendingContact(createId(PendingContactId.class, p),
+				getAgreementPublicKey(), "pending" + p, 0);
+	}
+
+	private TransportId createTransportId(int t) {
+		return new TransportId("transport-" + t);
+	}
+
+	/**
+	 * Returns an ID of the given type that is determined by the given
+	 * pseudonym.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T createId(Class<T> c, int pseudonym) {
+		byte[] b = new byte[UniqueId.LENGTH];
+		int type = c.getSimpleName().hashCode();
+		for (int i = 0; i < 4; i++) {
+			b[i] = (byte) (type >> (i * 8));
+			b[i + 4] = (byte) (pseudonym >> (i * 8));
+		}
+		try {
+			return c.getConstructor(byte[].class).newInstance((Object) b);
+		} catch (InstantiationException | IllegalAccessException
+				| InvocationTargetException | NoSuchMethodException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Returns a string of the given length that is determined by the given
+	 * pseudonym.
+	 */
+	private String createString(int pseudonym, int length) {
+		StringBuilder s = new StringBuilder(Integer.toString(pseudonym, 36));
+		while (s.length() < length) s.append('_');
+		s.setLength(length);
+		return s.toString();
+	}
+
+	/**
+	 * Returns a byte array of the given length that is determined by the
+	 * given pseudonym.
+	 */
+	private byte[] createBytes(int pseudonym, int length) {
+		byte[] b = new byte[length];
+		for (int i = 0; i < length && i < 4; i++)
+			b[i] = (byte) (pseudonym >> (i * 8));
+		return b;
+	}
+
+	private static Class<?> getRawType(Type type) {
+		if (type instanceof Class) return (Class<?>) type;
+		if (type instanceof ParameterizedType)
+			return (Class<?>) ((ParameterizedType) type).getRawType();
+		return Object.class;
+	}
+
+	private static Type getTypeArgument(Type type, int index) {
+		if (type instanceof ParameterizedType)
+			return ((ParameterizedType) type).getActualTypeArguments()[index];
+		return Object.class;
+	}
+
+	private static class Call {
+
+		private final long seq, duration;
+		private final int thread;
+		private final String signature;
+		private final Method method;
+		private final List<Value> args = new ArrayList<>();
+		@Nullable
+		private Value result = null;
+		@Nullable
+		private String exception = null;
+
+		private Call(long seq, int thread, long duration, String signature,
+				Method method) {
+			this.seq = seq;
+			this.thread = thread;
+			this.duration = duration;
+			this.signature = signature;
+			this.method = method;
+		}
+	}
+
+	private static class Outcome {
+
+		private final long duration;
+		@Nullable
+		private final Object result;
+		@Nullable
+		private final Throwable thrown;
+
+		private Outcome(long duration, @Nullable Object result,
+				@Nullable Throwable thrown) {
+			this.duration = duration;
+			this.result = result;
+			this.thrown = thrown;
+		}
+	}
+
+	private static class Entities {
+
+		private final Set<Integer> created = new HashSet<>();
+		private final Set<Integer> existing = new TreeSet<>();
+	}
+
+	/**
+	 * A value recorded in a trace.
+	 */
+	private static class Value {
+
+		private static final char NULL = '-', LITERAL = 'L', PSEUDONYM = '#',
+				TIMESTAMP = '@', LENGTH = '/', LIST = '[', MAP = '{',
+				TUPLE = '(', UNKNOWN = '?';
+
+		private final char kind;
+		private final String text;
+		private final int pseudonym, length;
+		private final List<Value> items = new ArrayList<>();
+
+		private Value(char kind, String text, int pseudonym, int length) {
+			this.kind = kind;
+			this.text = text;
+			this.pseudonym = pseudonym;
+			this.length = length;
+		}
+	}
+
+	private static class Parser {
+
+		private final String s;
+		private int pos = 0;
+
+		private Parser(String s) {
+			this.s = s;
+		}
+
+		private Value parse() throws IOException {
+			Value v = parseValue();
+			if (pos != s.length()) throw new IOException("Bad value: " + s);
+			return v;
+		}
+
+		private Value parseValue() throws IOException {
+			if (pos == s.length()) throw new IOException("Bad value: " + s);
+			char c = s.charAt(pos);
+			if (c == '-' && (pos + 1 == s.length()
+					|| isDelimiter(s.charAt(pos + 1)))) {
+				pos++;
+				return new Value(Value.NULL, "-", -1, -1);
+			} else if (c == '?') {
+				pos++;
+				return new Value(Value.UNKNOWN, "?", -1, -1);
+			} else if (c == '#') {
+				pos++;
+				int pseudonym = parseInt();
+				int length = -1;
+				if (pos < s.length() && s.charAt(pos) == '/') {
+					pos++;
+					length = parseInt();
+				}
+				return new Value(Value.PSEUDONYM, "", pseudonym, length);
+			} else if (c == '/') {
+				pos++;
+				return new Value(Value.LENGTH, "", -1, parseInt());
+			} else if (c == '@') {
+				pos++;
+				int start = pos;
+				while (pos < s.length() && !isDelimiter(s.charAt(pos))) pos++;
+				if (pos == start) throw new IOException("Bad value: " + s);
+				return new Value(Value.TIMESTAMP, s.substring(start, pos), -1,
+						-1);
+			} else if (c == '[' || c == '{' || c == '(') {
+				char end = c == '[' ? ']' : c == '{' ? '}' : ')';
+				Value v = new Value(c, "", -1, -1);
+				pos++;
+				if (pos < s.length() && s.charAt(pos) == end) {
+					pos++;
+					return v;
+				}
+				while (true) {
+					v.items.add(parseValue());
+					if (c == '{') {
+						expect('=');
+						v.items.add(parseValue());
+					}
+					if (pos == s.length())
+						throw new IOException("Bad value: " + s);
+					char next = s.charAt(pos++);
+					if (next == end) return v;
+					if (next != ',') throw new IOException("Bad value: " + s);
+				}
+			} else {
+				int start = pos;
+				while (pos < s.length() && !isDelimiter(s.charAt(pos))) pos++;
+				if (pos == start) throw new IOException("Bad value: " + s);
+				return new Value(Value.LITERAL, s.substring(start, pos), -1,
+						-1);
+			}
+		}
+
+		private int parseInt() throws IOException {
+			int start = pos;
+			while (pos < s.length() && Character.isDigit(s.charAt(pos))) pos++;
+			if (pos == start) throw new IOException("Bad value: " + s);
+			return Integer.parseInt(s.substring(start, pos));
+		}
+
+		private void expect(char c) throws IOException {
+			if (pos == s.length() || s.charAt(pos) != c)
+				throw new IOException("Bad value: " + s);
+			pos++;
+		}
+
+		private boolean isDelimiter(char c) {
+			return c == ',' || c == ']' || c == '}' || c == ')' || c == '=';
+		}
+	}
+
+	private static class UndecodableException extends Exception {
+	}
+}
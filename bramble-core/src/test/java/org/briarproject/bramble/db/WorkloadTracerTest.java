@@ -0,0 +1,166 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.db.NoSuchContactException;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.identity.Author;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.lifecycle.ShutdownManager;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.briarproject.bramble.test.TestMessageFactory;
+import org.jmock.Expectations;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+
+import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.db.WorkloadTracer.HEADER;
+import static org.briarproject.bramble.db.WorkloadTracer.createTracingDatabaseComponent;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getAuthor;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getIdentity;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.readBytes;
+import static org.briarproject.bramble.util.StringUtils.fromUtf8;
+import static org.briarproject.bramble.util.StringUtils.getRandomString;
+import static org.briarproject.bramble.util.StringUtils.toHexString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkloadTracerTest extends BrambleMockTestCase {
+
+	private final EventBus eventBus = context.mock(EventBus.class);
+	private final ShutdownManager shutdownManager =
+			context.mock(ShutdownManager.class);
+
+	private final File testDir = getTestDirectory();
+	private final File traceFile = new File(testDir, "workload.trace");
+	private final SecretKey key = getSecretKey();
+	private final Identity identity = getIdentity();
+	private final Author author = getAuthor();
+	private final Group group = getGroup(getClientId(), 123);
+	private final GroupId groupId = group.getId();
+	private final Message message = getMessage(groupId);
+	private final Message message1 = getMessage(groupId);
+	private final String alias = getRandomString(20);
+	private final String metadataKey = getRandomString(20);
+	private final byte[] metadataValue = getRandomBytes(20);
+
+	@Before
+	public void setUp() {
+		assertTrue(testDir.mkdirs());
+		context.checking(new Expectations() {{
+			allowing(eventBus).broadcast(with(any(Event.class)));
+			allowing(shutdownManager).addShutdownHook(
+					with(any(Runnable.class)));
+		}});
+	}
+
+	@After
+	public void tearDown() {
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testTraceDoesNotRecordContent() throws Exception {
+		recordWorkload();
+
+		String trace = fromUtf8(readBytes(traceFile));
+		assertTrue(trace.startsWith(HEADER + "\n"));
+		assertTrue(trace.contains("setContactAlias("));
+		assertTrue(trace.contains("!NoSuchContactException"));
+		assertFalse(trace.contains(alias));
+		assertFalse(trace.contains(metadataKey));
+		assertFalse(trace.toLowerCase().contains(
+				toHexString(metadataValue).toLowerCase()));
+		// Message timestamps are recorded relative to the start of the trace
+		assertFalse(trace.contains(String.valueOf(message1.getTimestamp())));
+		assertTrue(trace.contains(",@"));
+	}
+
+	@Test
+	public void testReplayedTraceDoesNotDiverge() throws Exception {
+		recordWorkload();
+
+		WorkloadReplayer replayer = new WorkloadReplayer(traceFile);
+		DatabaseComponent db = open(new File(testDir, "replay"));
+		replayer.replay(db);
+		db.close();
+
+		// Every call except closing the database is replayed
+		assertEquals(replayer.getCalls() - 1, replayer.getReplayedCalls());
+		assertEquals(0, replayer.getSkippedCalls());
+		assertEquals(0, replayer.getDivergedCalls());
+	}
+
+	private void recordWorkload() throws Exception {
+		DatabaseComponent db = open(new File(testDir, "record"));
+		// The database already contains a contact, a group and a message
+		// when the trace starts
+		Metadata meta = new Metadata();
+		meta.put(metadataKey, metadataValue);
+		ContactId c = db.transactionWithResult(false, txn -> {
+			db.addIdentity(txn, identity);
+			ContactId id = db.addContact(txn, author,
+					identity.getLocalAuthor().getId(), null, true);
+			db.addGroup(txn, group);
+			db.setGroupVisibility(txn, id, groupId, SHARED);
+			db.addLocalMessage(txn, message, meta, true, false);
+			return id;
+		});
+
+		DatabaseComponent traced =
+				createTracingDatabaseComponent(db, new SystemClock(),
+						traceFile);
+		traced.transaction(false, txn -> {
+			traced.setContactAlias(txn, c, alias);
+			traced.addLocalMessage(txn, message1, meta, true, false);
+			traced.mergeMessageMetadata(txn, message.getId(), meta);
+		});
+		traced.transaction(true, txn -> {
+			traced.getContact(txn, c);
+			traced.getGroup(txn, groupId);
+			traced.getMessageIds(txn, groupId);
+			traced.getMessageMetadata(txn, groupId);
+		});
+		try {
+			traced.transaction(true, txn ->
+					traced.getContact(txn, new ContactId(c.getInt() + 1)));
+			fail();
+		} catch (NoSuchContactException expected) {
+			// Expected
+		}
+		traced.close();
+	}
+
+	private DatabaseComponent open(File dir) throws Exception {
+		Database<Connection> database = new H2Database(
+				new TestDatabaseConfig(dir), new TestMessageFactory(),
+				new SystemClock());
+		DatabaseComponent db = new DatabaseComponentImpl<>(database,
+				Connection.class, eventBus, new ImmediateExecutor(),
+				shutdownManager);
+		db.open(key, null);
+		return db;
+	}
+}
@@ -6,23 +6,36 @@ import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
 import org.briarproject.bramble.api.lifecycle.Service;
+import org.briarproject.bramble.api.lifecycle.ServiceException;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.DbExpectations;
 import org.jmock.Expectations;
+import org.jmock.Sequence;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.RUNNING;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STARTING;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STARTING_SERVICES;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STOPPED;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.ALREADY_RUNNING;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.CLOCK_ERROR;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SERVICE_ERROR;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SUCCESS;
 import static org.briarproject.bramble.api.system.Clock.MAX_REASONABLE_TIME_MS;
 import static org.briarproject.bramble.api.system.Clock.MIN_REASONABLE_TIME_MS;
 import static org.briarproject.bramble.test.TestUtils.getSecretKey;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class LifecycleManagerImplTest extends BrambleMockTestCase {
 
@@ -30,7 +43,9 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 	private final EventBus eventBus = context.mock(EventBus.class);
 	private final Clock clock = context.mock(Clock.class);
 	private final OpenDatabaseHook hook = context.mock(OpenDatabaseHook.class);
-	private final Service service = context.mock(Service.class);
+	private final Service service = context.mock(Service.class, "service");
+	private final Service service1 =
+			context.mock(Service.class, "service1");
 
 	private final SecretKey dbKey = getSecretKey();
 
@@ -59,6 +74,34 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
 	}
 
+	@Test
+	public void testOpenDatabaseHooksAreCalledBeforeServicesStart()
+			throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+		Sequence sequence = context.sequence("sequence");
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			oneOf(hook).onDatabaseOpened(txn);
+			inSequence(sequence);
+			oneOf(service).startService();
+			inSequence(sequence);
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+		}});
+
+		lifecycleManager.registerService(service);
+		lifecycleManager.registerOpenDatabaseHook(hook);
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+	}
+
 	@Test
 	public void testServicesAreStartedAndStopped() throws Exception {
 		long now = System.currentTimeMillis();
@@ -91,6 +134,176 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 		assertEquals(STOPPED, lifecycleManager.getLifecycleState());
 	}
 
+	@Test
+	public void testServicesAreStartedConcurrently() throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+		CountDownLatch latch = new CountDownLatch(1);
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+		}});
+
+		// The first service can't finish starting until the second service
+		// has started. Mocked services can't be used here, as the mockery
+		// doesn't allow concurrent invocations
+		lifecycleManager.registerService(new Service() {
+			@Override
+			public void startService() throws ServiceException {
+				try {
+					assertTrue(latch.await(10, SECONDS));
+				} catch (InterruptedException e) {
+					throw new ServiceException(e);
+				}
+			}
+
+			@Override
+			public void stopService() {
+			}
+		});
+		lifecycleManager.registerService(new Service() {
+			@Override
+			public void startService() {
+				latch.countDown();
+			}
+
+			@Override
+			public void stopService() {
+			}
+		});
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+		assertEquals(0, latch.getCount());
+	}
+
+	@Test
+	public void testServicesAreStartedAfterTheirDependencies()
+			throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+		CountDownLatch latch = new CountDownLatch(1);
+		List<String> started = new CopyOnWriteArrayList<>();
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+		}});
+
+		// The dependency can't finish starting until the independent
+		// service has started, so the dependent would start first if it
+		// didn't wait for its dependency
+		Service dependency = new Service() {
+			@Override
+			public void startService() throws ServiceException {
+				try {
+					assertTrue(latch.await(10, SECONDS));
+				} catch (InterruptedException e) {
+					throw new ServiceException(e);
+				}
+				started.add("dependency");
+			}
+
+			@Override
+			public void stopService() {
+			}
+		};
+		Service dependent = new Service() {
+			@Override
+			public void startService() {
+				started.add("dependent");
+			}
+
+			@Override
+			public void stopService() {
+			}
+		};
+		Service independent = new Service() {
+			@Override
+			public void startService() {
+				started.add("independent");
+				latch.countDown();
+			}
+
+			@Override
+			public void stopService() {
+			}
+		};
+		lifecycleManager.registerService(dependency);
+		lifecycleManager.registerService(dependent,
+				singletonList(dependency));
+		lifecycleManager.registerService(independent);
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+		assertEquals(asList("independent", "dependency", "dependent"),
+				started);
+	}
+
+	@Test
+	public void testDependentsAreNotStartedIfServiceFails() throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			oneOf(service).startService();
+			will(throwException(new ServiceException()));
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+		}});
+
+		lifecycleManager.registerService(service);
+		lifecycleManager.registerService(service1, singletonList(service));
+
+		assertEquals(SERVICE_ERROR, lifecycleManager.startServices(dbKey));
+		assertEquals(STARTING_SERVICES, lifecycleManager.getLifecycleState());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDependenciesMustBeRegistered() {
+		lifecycleManager.registerService(service1, singletonList(service));
+	}
+
+	@Test
+	public void testStartupFailsIfServiceFails() throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			oneOf(service).startService();
+			will(throwException(new ServiceException()));
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+		}});
+
+		lifecycleManager.registerService(service);
+
+		assertEquals(SERVICE_ERROR, lifecycleManager.startServices(dbKey));
+		assertEquals(STARTING_SERVICES, lifecycleManager.getLifecycleState());
+		assertEquals(emptyMap(), lifecycleManager.getServiceStartDurations());
+	}
+
 	@Test
 	public void testStartupFailsIfClockIsUnreasonablyBehind() {
 
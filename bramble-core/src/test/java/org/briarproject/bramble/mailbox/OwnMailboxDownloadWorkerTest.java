@@ -120,37 +120,40 @@ public class OwnMailboxDownloadWorkerTest
 
 		// When the second list-files task runs and finds some files to
 		// download, it should create the round-robin queue and start a
-		// download task for the first file
-		AtomicReference<ApiCall> downloadTask = new AtomicReference<>();
+		// download task for each file
+		AtomicReference<ApiCall> downloadTask1 = new AtomicReference<>();
+		AtomicReference<ApiCall> downloadTask2 = new AtomicReference<>();
 		expectCheckForFiles(folderId2, files);
-		expectStartTask(downloadTask);
+		expectStartTask(downloadTask1);
+		expectStartTask(downloadTask2);
 		assertFalse(listFilesTask.get().callApi());
 
 		// When the first download task runs it should download the file to the
 		// location provided by the file manager and start a delete task
-		AtomicReference<ApiCall> deleteTask = new AtomicReference<>();
+		AtomicReference<ApiCall> deleteTask1 = new AtomicReference<>();
 		expectDownloadFile(folderId2, file1);
-		expectStartTask(deleteTask);
-		assertFalse(downloadTask.get().callApi());
-
-		// When the first delete task runs it should delete the file, ignore
-		// the tolerable failure, and start a download task for the next file
-		expectDeleteFile(folderId2, file1, true); // Delete fails tolerably
-		expectStartTask(downloadTask);
-		assertFalse(deleteTask.get().callApi());
+		expectStartTask(deleteTask1);
+		assertFalse(downloadTask1.get().callApi());
 
 		// When the second download task runs it should download the file to
 		// the location provided by the file manager and start a delete task
+		AtomicReference<ApiCall> deleteTask2 = new AtomicReference<>();
 		expectDownloadFile(folderId2, file2);
-		expectStartTask(deleteTask);
-		assertFalse(downloadTask.get().callApi());
+		expectStartTask(deleteTask2);
+		assertFalse(downloadTask2.get().callApi());
+
+		// When the first delete task runs it should delete the file and
+		// ignore the tolerable failure. The queue is empty but the second
+		// download hasn't finished, so no more tasks should be started
+		expectDeleteFile(folderId2, file1, true);
+		assertFalse(deleteTask1.get().callApi());
 
 		// When the second delete task runs it should delete the file and
-		// start a list-inbox task to check for files that may have arrived
+		// start a list-folders task to check for files that may have arrived
 		// since the first download cycle started
-		expectDeleteFile(folderId2, file2, false); // Delete succeeds
+		expectDeleteFile(folderId2, file2, false);
 		expectStartTask(listFoldersTask);
-		assertFalse(deleteTask.get().callApi());
+		assertFalse(deleteTask2.get().callApi());
 
 		// When the list-inbox tasks runs and finds no more files to download,
 		// it should add a Tor reachability observer
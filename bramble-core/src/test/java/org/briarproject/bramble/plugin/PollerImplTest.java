@@ -1,6 +1,7 @@
 package org.briarproject.bramble.plugin;
 
 import org.briarproject.bramble.api.Cancellable;
+import org.briarproject.bramble.api.Pair;
 import org.briarproject.bramble.api.connection.ConnectionManager;
 import org.briarproject.bramble.api.connection.ConnectionRegistry;
 import org.briarproject.bramble.api.contact.ContactId;
@@ -22,25 +23,36 @@ import org.briarproject.bramble.api.properties.TransportPropertyManager;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.api.system.TaskScheduler;
 import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.CaptureArgumentAction;
 import org.briarproject.bramble.test.ImmediateExecutor;
 import org.briarproject.bramble.test.RunAction;
 import org.jmock.Expectations;
 import org.jmock.imposters.ByteBuddyClassImposteriser;
+import org.jmock.lib.action.DoAllAction;
 import org.junit.Test;
 
 import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.plugin.PollerImpl.MAX_ATTEMPTS_PER_POLL;
 import static org.briarproject.bramble.test.CollectionMatcher.collectionOf;
 import static org.briarproject.bramble.test.PairMatcher.pairOf;
 import static org.briarproject.bramble.test.TestUtils.getContactId;
 import static org.briarproject.bramble.test.TestUtils.getTransportId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class PollerImplTest extends BrambleMockTestCase {
 
@@ -175,6 +187,9 @@ public class PollerImplTest extends BrambleMockTestCase {
 		context.checking(new Expectations() {{
 			allowing(plugin).getId();
 			will(returnValue(transportId));
+			// Back off before polling the contact again
+			oneOf(random).nextInt(2);
+			will(returnValue(0));
 		}});
 		expectReschedule(plugin);
 		expectReconnect(plugin, duplexConnection);
@@ -415,6 +430,90 @@ public class PollerImplTest extends BrambleMockTestCase {
 		poller.eventOccurred(new TransportActiveEvent(transportId));
 	}
 
+	@Test
+	public void testBacksOffAfterOutgoingConnectionFailed() throws Exception {
+		DuplexPlugin plugin = context.mock(DuplexPlugin.class);
+		DuplexTransportConnection duplexConnection =
+				context.mock(DuplexTransportConnection.class);
+		AtomicReference<Runnable> task = new AtomicReference<>();
+
+		context.checking(new Expectations() {{
+			allowing(plugin).getId();
+			will(returnValue(transportId));
+			// The connection failed, so back off for one poll
+			oneOf(random).nextInt(2);
+			will(returnValue(1));
+		}});
+		expectReschedule(plugin, task);
+		expectReconnect(plugin, duplexConnection);
+
+		poller.eventOccurred(new ConnectionClosedEvent(contactId, transportId,
+				false, true));
+
+		// The contact is skipped, so don't poll the plugin
+		expectPoll(plugin, task, singletonMap(contactId, properties));
+
+		task.get().run();
+
+		// The contact is polled again after backing off
+		expectPoll(plugin, task, singletonMap(contactId, properties));
+		context.checking(new Expectations() {{
+			oneOf(plugin).poll(with(collectionOf(
+					pairOf(equal(properties), any(ConnectionHandler.class)))));
+		}});
+
+		task.get().run();
+	}
+
+	@Test
+	public void testContactsLeftOutOfPollArePolledNext() throws Exception {
+		DuplexPlugin plugin = context.mock(DuplexPlugin.class);
+		AtomicReference<Runnable> task = new AtomicReference<>();
+		AtomicReference<Collection> polled = new AtomicReference<>();
+
+		// One more contact than can be polled at once
+		Map<ContactId, TransportProperties> remote = new LinkedHashMap<>();
+		for (int i = 0; i <= MAX_ATTEMPTS_PER_POLL; i++) {
+			TransportProperties p = new TransportProperties();
+			p.put("contact", String.valueOf(i));
+			remote.put(new ContactId(i), p);
+		}
+
+		context.checking(new Expectations() {{
+			allowing(plugin).getId();
+			will(returnValue(transportId));
+		}});
+		expectReschedule(plugin, task);
+
+		poller.eventOccurred(new ConnectionClosedEvent(contactId, transportId,
+				true, false));
+
+		expectPoll(plugin, task, remote);
+		context.checking(new Expectations() {{
+			oneOf(plugin).poll(with(any(Collection.class)));
+			will(new CaptureArgumentAction<>(polled, Collection.class, 0));
+		}});
+
+		task.get().run();
+		Set<String> first = getPolledContacts(polled.get());
+		assertEquals(MAX_ATTEMPTS_PER_POLL, first.size());
+
+		expectPoll(plugin, task, remote);
+		context.checking(new Expectations() {{
+			oneOf(plugin).poll(with(any(Collection.class)));
+			will(new CaptureArgumentAction<>(polled, Collection.class, 0));
+		}});
+
+		task.get().run();
+		Set<String> second = getPolledContacts(polled.get());
+		assertEquals(MAX_ATTEMPTS_PER_POLL, second.size());
+		// The contact that was left out of the first poll is polled
+		for (TransportProperties p : remote.values()) {
+			String contact = p.get("contact");
+			assertTrue(first.contains(contact) || second.contains(contact));
+		}
+	}
+
 	@Test
 	public void testCancelsPollingOnTransportDeactivated() {
 		Plugin plugin = context.mock(Plugin.class);
@@ -462,6 +561,63 @@ public class PollerImplTest extends BrambleMockTestCase {
 		}});
 	}
 
+	private void expectReschedule(Plugin plugin,
+			AtomicReference<Runnable> task) {
+		context.checking(new Expectations() {{
+			// Get the plugin
+			oneOf(pluginManager).getPlugin(transportId);
+			will(returnValue(plugin));
+			// The plugin supports polling
+			oneOf(plugin).shouldPoll();
+			will(returnValue(true));
+			// Schedule the next poll
+			oneOf(plugin).getPollingInterval();
+			will(returnValue(pollingInterval));
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(scheduler).schedule(with(any(Runnable.class)),
+					with(ioExecutor), with((long) pollingInterval),
+					with(MILLISECONDS));
+			will(new DoAllAction(
+					new CaptureArgumentAction<>(task, Runnable.class, 0),
+					returnValue(cancellable)
+			));
+		}});
+	}
+
+	private void expectPoll(Plugin plugin, AtomicReference<Runnable> task,
+			Map<ContactId, TransportProperties> remote) throws Exception {
+		context.checking(new Expectations() {{
+			// Running the polling task schedules the next polling task
+			oneOf(plugin).getPollingInterval();
+			will(returnValue(pollingInterval));
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(scheduler).schedule(with(any(Runnable.class)),
+					with(ioExecutor), with((long) pollingInterval),
+					with(MILLISECONDS));
+			will(new DoAllAction(
+					new CaptureArgumentAction<>(task, Runnable.class, 0),
+					returnValue(cancellable)
+			));
+			// Get the transport properties and connected contacts
+			oneOf(transportPropertyManager).getRemoteProperties(transportId);
+			will(returnValue(remote));
+			oneOf(connectionRegistry).getConnectedOrBetterContacts(transportId);
+			will(returnValue(emptyList()));
+		}});
+	}
+
+	private Set<String> getPolledContacts(Collection<?> polled) {
+		Set<String> contacts = new HashSet<>();
+		for (Object o : polled) {
+			Pair<?, ?> pair = (Pair<?, ?>) o;
+			TransportProperties p = (TransportProperties) pair.getFirst();
+			contacts.add(p.get("contact"));
+		}
+		return contacts;
+	}
+
 	private void expectReconnect(DuplexPlugin plugin,
 			DuplexTransportConnection duplexConnection) throws Exception {
 		context.checking(new Expectations() {{
@@ -0,0 +1,246 @@
+package org.briarproject.bramble.plugin.tor;
+
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.socks.SocksSocketFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.SocketFactory;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.briarproject.bramble.api.plugin.TorConstants.CONNECT_TO_PROXY_TIMEOUT;
+import static org.briarproject.bramble.api.plugin.TorConstants.EXTRA_CONNECT_TIMEOUT;
+import static org.briarproject.bramble.api.plugin.TorConstants.EXTRA_SOCKET_TIMEOUT;
+import static org.briarproject.bramble.plugin.tor.TorPluginFactory.MAX_CONCURRENT_CONNECTION_ATTEMPTS;
+import static org.briarproject.bramble.util.IoUtils.read;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TorConnectionSchedulerTest extends BrambleTestCase {
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testAttemptsAreMadeInTheOrderGiven() {
+		// Collect the attempts without running them
+		List<Runnable> queued = new ArrayList<>();
+		TorConnectionScheduler scheduler = createScheduler(queued::add,
+				MAX_CONCURRENT_CONNECTION_ATTEMPTS);
+		List<String> order = new ArrayList<>();
+		Map<String, Runnable> tasks = new LinkedHashMap<>();
+		for (String onion : asList("a", "b", "c")) {
+			tasks.put(onion, () -> order.add(onion));
+		}
+
+		scheduler.schedule(tasks);
+		assertEquals(3, queued.size());
+		for (Runnable r : queued) r.run();
+		assertEquals(asList("a", "b", "c"), order);
+	}
+
+	@Test
+	public void testPendingAttemptsAreDeduplicated() {
+		List<Runnable> queued = new ArrayList<>();
+		TorConnectionScheduler scheduler = createScheduler(queued::add,
+				MAX_CONCURRENT_CONNECTION_ATTEMPTS);
+		Map<String, Runnable> tasks = new LinkedHashMap<>();
+		tasks.put("onion", () -> {
+		});
+
+		scheduler.schedule(tasks);
+		assertEquals(1, queued.size());
+		// The attempt is still pending, so it's not scheduled again
+		scheduler.schedule(tasks);
+		assertEquals(1, queued.size());
+		// Once the attempt has run it can be scheduled again
+		queued.get(0).run();
+		scheduler.schedule(tasks);
+		assertEquals(2, queued.size());
+	}
+
+	@Test
+	public void testConcurrentAttemptsAreLimitedToEight() throws Exception {
+		Set<String> reachable = new HashSet<>(asList("a", "b"));
+		SocksProxy proxy = new SocksProxy(reachable);
+		proxy.start();
+		try {
+			SocketFactory socketFactory = new SocksSocketFactory(
+					proxy.getAddress(), CONNECT_TO_PROXY_TIMEOUT,
+					EXTRA_CONNECT_TIMEOUT, EXTRA_SOCKET_TIMEOUT);
+			// Count the attempts that have finished, including the
+			// scheduler's own bookkeeping
+			Semaphore finished = new Semaphore(0);
+			Executor countingExecutor = r -> executor.execute(() -> {
+				try {
+					r.run();
+				} finally {
+					finished.release();
+				}
+			});
+			TorConnectionScheduler scheduler = createScheduler(
+					countingExecutor, MAX_CONCURRENT_CONNECTION_ATTEMPTS);
+			// Schedule more attempts than can be made at once
+			List<String> onions = new ArrayList<>();
+			for (int i = 0; i < MAX_CONCURRENT_CONNECTION_ATTEMPTS * 2; i++) {
+				onions.add(Character.toString((char) ('a' + i)));
+			}
+			List<String> connected = new CopyOnWriteArrayList<>();
+			Map<String, Runnable> tasks = new LinkedHashMap<>();
+			for (String onion : onions) {
+				tasks.put(onion, () -> {
+					try {
+						Socket s = socketFactory.createSocket(
+								onion + ".onion", 80);
+						s.close();
+						connected.add(onion);
+					} catch (IOException e) {
+						// The service is unreachable
+					}
+				});
+			}
+
+			scheduler.schedule(tasks);
+			assertTrue(finished.tryAcquire(onions.size(), 10, SECONDS));
+			assertEquals(onions.size(), proxy.getRequests());
+			assertEquals(MAX_CONCURRENT_CONNECTION_ATTEMPTS,
+					proxy.getMaxInFlight());
+			assertEquals(reachable, new HashSet<>(connected));
+		} finally {
+			proxy.stop();
+		}
+	}
+
+	private TorConnectionScheduler createScheduler(Executor executor,
+			int maxConcurrentAttempts) {
+		return new TorConnectionScheduler(executor, maxConcurrentAttempts);
+	}
+
+	/**
+	 * A local stand-in for Tor's SOCKS5 port. Connection requests to
+	 * reachable hosts succeed after a short delay, as if a circuit had been
+	 * built, and requests to other hosts fail with "host unreachable".
+	 */
+	private class SocksProxy {
+
+		private static final int CIRCUIT_DELAY_MS = 200;
+
+		private final Set<String> reachable;
+		private final ServerSocket serverSocket;
+		private final AtomicInteger inFlight = new AtomicInteger(0);
+		private final AtomicInteger maxInFlight = new AtomicInteger(0);
+		private final AtomicInteger requests = new AtomicInteger(0);
+
+		private SocksProxy(Set<String> reachable) throws IOException {
+			this.reachable = reachable;
+			serverSocket = new ServerSocket();
+			serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+		}
+
+		private InetSocketAddress getAddress() {
+			return new InetSocketAddress("127.0.0.1",
+					serverSocket.getLocalPort());
+		}
+
+		private int getRequests() {
+			return requests.get();
+		}
+
+		private int getMaxInFlight() {
+			return maxInFlight.get();
+		}
+
+		private void start() {
+			executor.execute(() -> {
+				try {
+					//noinspection InfiniteLoopStatement
+					while (true) {
+						Socket s = serverSocket.accept();
+						executor.execute(() -> handle(s));
+					}
+				} catch (IOException e) {
+					// The server socket has been closed
+				}
+			});
+		}
+
+		private void stop() throws IOException {
+			serverSocket.close();
+		}
+
+		private void handle(Socket s) {
+			try {
+				InputStream in = s.getInputStream();
+				OutputStream out = s.getOutputStream();
+				DataInputStream data = new DataInputStream(in);
+				// Method request: version, number of methods, methods
+				byte[] header = new byte[2];
+				read(in, header);
+				data.skipBytes(header[1]);
+				// Method response: version, no authentication
+				out.write(new byte[] {5, 0});
+				out.flush();
+				// Connect request: version, command, reserved, address type,
+				// hostname length, hostname, port
+				byte[] request = new byte[5];
+				read(in, request);
+				byte[] host = new byte[request[4]];
+				read(in, host);
+				data.skipBytes(2);
+				requests.incrementAndGet();
+				int now = inFlight.incrementAndGet();
+				int max;
+				do {
+					max = maxInFlight.get();
+				} while (now > max && !maxInFlight.compareAndSet(max, now));
+				Thread.sleep(CIRCUIT_DELAY_MS);
+				inFlight.decrementAndGet();
+				String hostname = new String(host, "US-ASCII");
+				String onion = hostname.substring(0, hostname.indexOf('.'));
+				byte reply = (byte) (reachable.contains(onion) ? 0 : 4);
+				// Connect response: version, reply, reserved, IPv4 address
+				// and port
+				out.write(new byte[] {5, reply, 0, 1, 0, 0, 0, 0, 0, 0});
+				out.flush();
+				s.close();
+			} catch (IOException | InterruptedException e) {
+				try {
+					s.close();
+				} catch (IOException ignored) {
+					// Already closing
+				}
+			}
+		}
+	}
+}
@@ -14,13 +14,24 @@ import org.briarproject.bramble.api.sync.Versions;
 import org.briarproject.bramble.api.transport.StreamWriter;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.sync.EagerSimplexOutgoingSession.MAX_MESSAGES_PER_CHUNK;
 import static org.briarproject.bramble.test.TestUtils.getContactId;
 import static org.briarproject.bramble.test.TestUtils.getMessage;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
@@ -31,6 +42,7 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 	private static final int MAX_LATENCY = Integer.MAX_VALUE;
 
 	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final Executor dbExecutor = new ImmediateExecutor();
 	private final EventBus eventBus = context.mock(EventBus.class);
 	private final StreamWriter streamWriter = context.mock(StreamWriter.class);
 	private final SyncRecordWriter recordWriter =
@@ -48,8 +60,9 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 	@Test
 	public void testNothingToSendEagerly() throws Exception {
 		EagerSimplexOutgoingSession session =
-				new EagerSimplexOutgoingSession(db, eventBus, contactId,
-						transportId, MAX_LATENCY, streamWriter, recordWriter);
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter);
 
 		Transaction noAckTxn = new Transaction(null, false);
 		Transaction noIdsTxn = new Transaction(null, true);
@@ -81,14 +94,15 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 	@Test
 	public void testSomethingToSendEagerly() throws Exception {
 		EagerSimplexOutgoingSession session =
-				new EagerSimplexOutgoingSession(db, eventBus, contactId,
-						transportId, MAX_LATENCY, streamWriter, recordWriter);
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter);
 
 		Transaction ackTxn = new Transaction(null, false);
 		Transaction noAckTxn = new Transaction(null, false);
 		Transaction idsTxn = new Transaction(null, true);
-		Transaction msgTxn = new Transaction(null, false);
-		Transaction msgTxn1 = new Transaction(null, false);
+		Transaction msgTxn = new Transaction(null, true);
+		Transaction sentTxn = new Transaction(null, false);
 
 		context.checking(new DbExpectations() {{
 			// Add listener
@@ -110,19 +124,233 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
 			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
 			will(returnValue(asList(message.getId(), message1.getId())));
-			// Try to send the first message - it's no longer shared
+			// Load both messages in one chunk - the first message is no
+			// longer shared
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
+			oneOf(db).generateBatch(msgTxn, contactId,
+					asList(message.getId(), message1.getId()), MAX_LATENCY,
+					false);
+			will(returnValue(singletonList(message1)));
+			// Send the second message
+			oneOf(recordWriter).writeMessage(message1);
+			// Mark the second message as sent
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn));
+			oneOf(db).setMessagesSent(sentTxn, contactId,
+					singletonList(message1.getId()), MAX_LATENCY);
+			// Send the end of stream marker
+			oneOf(streamWriter).sendEndOfStream();
+			// Remove listener
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+	}
+
+	@Test
+	public void testMessagesAreLoadedInChunks() throws Exception {
+		EagerSimplexOutgoingSession session =
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter);
+
+		// One more message than fits in a chunk
+		List<MessageId> ids = new ArrayList<>();
+		for (int i = 0; i < MAX_MESSAGES_PER_CHUNK + 1; i++) {
+			ids.add(new MessageId(getRandomId()));
+		}
+		List<MessageId> firstChunk = ids.subList(0, MAX_MESSAGES_PER_CHUNK);
+		List<MessageId> secondChunk = ids.subList(MAX_MESSAGES_PER_CHUNK,
+				ids.size());
+
+		Transaction noAckTxn = new Transaction(null, false);
+		Transaction idsTxn = new Transaction(null, true);
+		Transaction msgTxn = new Transaction(null, true);
+		Transaction msgTxn1 = new Transaction(null, true);
+		Transaction sentTxn = new Transaction(null, false);
+		Transaction sentTxn1 = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			// No acks to send
 			oneOf(db).transactionWithNullableResult(with(false),
-					withNullableDbCallable(msgTxn));
-			oneOf(db).getMessageToSend(msgTxn, contactId, message.getId(),
-					MAX_LATENCY, true);
+					withNullableDbCallable(noAckTxn));
+			oneOf(db).generateAck(noAckTxn, contactId, MAX_MESSAGE_IDS);
 			will(returnValue(null));
-			// Send the second message
+			// Enough messages to fill two chunks
+			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
+			will(returnValue(ids));
+			// Load the first chunk
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
+			oneOf(db).generateBatch(msgTxn, contactId, firstChunk,
+					MAX_LATENCY, false);
+			will(returnValue(singletonList(message)));
+			// Load the second chunk
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn1));
+			oneOf(db).generateBatch(msgTxn1, contactId, secondChunk,
+					MAX_LATENCY, false);
+			will(returnValue(singletonList(message1)));
+			// Send the messages and mark each chunk as sent
+			oneOf(recordWriter).writeMessage(message);
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn));
+			oneOf(db).setMessagesSent(sentTxn, contactId,
+					singletonList(message.getId()), MAX_LATENCY);
+			oneOf(recordWriter).writeMessage(message1);
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn1));
+			oneOf(db).setMessagesSent(sentTxn1, contactId,
+					singletonList(message1.getId()), MAX_LATENCY);
+			// Send the end of stream marker
+			oneOf(streamWriter).sendEndOfStream();
+			// Remove listener
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testWriterIsWokenIfLoadingThrowsRuntimeException()
+			throws Exception {
+		// Load the messages on another thread, so the writer has to wait
+		ExecutorService dbExecutor = newSingleThreadExecutor();
+		EagerSimplexOutgoingSession session =
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter);
+
+		Transaction noAckTxn = new Transaction(null, false);
+		Transaction idsTxn = new Transaction(null, true);
+		Transaction msgTxn = new Transaction(null, true);
+
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			// No acks to send
+			oneOf(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(noAckTxn));
+			oneOf(db).generateAck(noAckTxn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// One message to send
+			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
+			will(returnValue(singletonList(message.getId())));
+			// Loading the message throws an unchecked exception
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
+			oneOf(db).generateBatch(msgTxn, contactId,
+					singletonList(message.getId()), MAX_LATENCY, false);
+			will(throwException(new IllegalStateException()));
+			// Remove listener
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		try {
+			session.run();
+		} finally {
+			dbExecutor.shutdown();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testMessagesAreNotMarkedAsSentIfWritingFails()
+			throws Exception {
+		EagerSimplexOutgoingSession session =
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter);
+
+		Transaction noAckTxn = new Transaction(null, false);
+		Transaction idsTxn = new Transaction(null, true);
+		Transaction msgTxn = new Transaction(null, true);
+
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			// No acks to send
 			oneOf(db).transactionWithNullableResult(with(false),
-					withNullableDbCallable(msgTxn1));
-			oneOf(db).getMessageToSend(msgTxn1, contactId, message1.getId(),
-					MAX_LATENCY, true);
-			will(returnValue(message1));
+					withNullableDbCallable(noAckTxn));
+			oneOf(db).generateAck(noAckTxn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// Two messages to send
+			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
+			will(returnValue(asList(message.getId(), message1.getId())));
+			// Load both messages in one chunk
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
+			oneOf(db).generateBatch(msgTxn, contactId,
+					asList(message.getId(), message1.getId()), MAX_LATENCY,
+					false);
+			will(returnValue(asList(message, message1)));
+			// Writing the second message fails, so neither message is
+			// marked as sent
+			oneOf(recordWriter).writeMessage(message);
 			oneOf(recordWriter).writeMessage(message1);
+			will(throwException(new IOException()));
+			// Remove listener
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+	}
+
+	@Test
+	public void testOnlyWrittenMessagesAreMarkedAsSentIfInterrupted()
+			throws Exception {
+		EagerSimplexOutgoingSession session =
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter);
+
+		Transaction noAckTxn = new Transaction(null, false);
+		Transaction idsTxn = new Transaction(null, true);
+		Transaction msgTxn = new Transaction(null, true);
+		Transaction sentTxn = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			// No acks to send
+			oneOf(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(noAckTxn));
+			oneOf(db).generateAck(noAckTxn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// Two messages to send
+			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
+			will(returnValue(asList(message.getId(), message1.getId())));
+			// Load both messages in one chunk
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
+			oneOf(db).generateBatch(msgTxn, contactId,
+					asList(message.getId(), message1.getId()), MAX_LATENCY,
+					false);
+			will(returnValue(asList(message, message1)));
+			// The session is interrupted while writing the first message
+			oneOf(recordWriter).writeMessage(message);
+			will(new CustomAction("interrupt the session") {
+				@Override
+				public Object invoke(Invocation invocation) {
+					session.interrupt();
+					return null;
+				}
+			});
+			// Only the first message is marked as sent
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn));
+			oneOf(db).setMessagesSent(sentTxn, contactId,
+					singletonList(message.getId()), MAX_LATENCY);
 			// Send the end of stream marker
 			oneOf(streamWriter).sendEndOfStream();
 			// Remove listener
@@ -1,6 +1,9 @@
 package org.briarproject.bramble.sync.validation;
 
 import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.SignaturePublicKey;
+import org.briarproject.bramble.api.crypto.SignedItem;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.NoSuchGroupException;
@@ -27,6 +30,7 @@ import java.util.Map;
 import java.util.concurrent.Executor;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
@@ -40,11 +44,14 @@ import static org.briarproject.bramble.test.TestUtils.getClientId;
 import static org.briarproject.bramble.test.TestUtils.getContactId;
 import static org.briarproject.bramble.test.TestUtils.getGroup;
 import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.util.StringUtils.getRandomString;
 
 public class ValidationManagerImplTest extends BrambleMockTestCase {
 
 	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final CryptoComponent crypto = context.mock(CryptoComponent.class);
 	private final MessageValidator validator =
 			context.mock(MessageValidator.class);
 	private final IncomingMessageHook hook =
@@ -70,7 +77,8 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			new MessageContext(metadata, singletonList(messageId1));
 
 	private final ValidationManagerImpl vm =
-			new ValidationManagerImpl(db, dbExecutor, validationExecutor);
+			new ValidationManagerImpl(db, crypto, dbExecutor,
+					validationExecutor);
 
 	public ValidationManagerImplTest() {
 		vm.registerMessageValidator(clientId, majorVersion, validator);
@@ -106,6 +114,10 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			// Validate the first message: valid
 			oneOf(validator).validateMessage(message, group);
 			will(returnValue(validResult));
+			// The messages have no signatures to verify
+			exactly(2).of(crypto).startDeferringSignatures();
+			exactly(2).of(crypto).stopDeferringSignatures();
+			will(returnValue(emptyList()));
 			// Store the validation result for the first message
 			oneOf(db).transaction(with(false), withDbRunnable(txn1));
 			oneOf(db).mergeMessageMetadata(txn1, messageId, metadata);
@@ -285,8 +297,11 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getGroup(txn1, groupId);
 			will(returnValue(group));
 			// Validate the second message: invalid
+			oneOf(crypto).startDeferringSignatures();
 			oneOf(validator).validateMessage(message1, group);
 			will(throwException(new InvalidMessageException()));
+			oneOf(crypto).stopDeferringSignatures();
+			will(returnValue(emptyList()));
 			// Invalidate the second message
 			oneOf(db).transaction(with(false), withDbRunnable(txn2));
 			oneOf(db).getMessageState(txn2, messageId1);
@@ -329,8 +344,11 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).getGroup(txn1, groupId);
 			will(returnValue(group));
 			// Validate the second message: invalid
+			oneOf(crypto).startDeferringSignatures();
 			oneOf(validator).validateMessage(message1, group);
 			will(throwException(new InvalidMessageException()));
+			oneOf(crypto).stopDeferringSignatures();
+			will(returnValue(emptyList()));
 			// Store the validation result for the second message
 			oneOf(db).transaction(with(false), withDbRunnable(txn2));
 			oneOf(db).getMessageState(txn2, messageId1);
@@ -349,6 +367,129 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 		vm.startService();
 	}
 
+	@Test
+	public void testSignaturesAreVerifiedInABatchAtStartup()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, true);
+		Transaction txn2 = new Transaction(null, false);
+		Transaction txn3 = new Transaction(null, false);
+		SignedItem signature = getSignedItem();
+		SignedItem signature1 = getSignedItem();
+
+		expectGetMessagesToValidate(messageId, messageId1);
+
+		context.checking(new DbExpectations() {{
+			// Load the raw messages and groups
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getMessage(txn, messageId);
+			will(returnValue(message));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn1));
+			oneOf(db).getMessage(txn1, messageId1);
+			will(returnValue(message1));
+			oneOf(db).getGroup(txn1, groupId);
+			will(returnValue(group));
+			// Validate the messages with their signatures deferred
+			exactly(2).of(crypto).startDeferringSignatures();
+			oneOf(validator).validateMessage(message, group);
+			will(returnValue(validResult));
+			oneOf(validator).validateMessage(message1, group);
+			will(returnValue(validResult));
+			exactly(2).of(crypto).stopDeferringSignatures();
+			will(onConsecutiveCalls(returnValue(singletonList(signature)),
+					returnValue(singletonList(signature1))));
+			// Verify the signatures together: both valid
+			oneOf(crypto).verifySignatures(asList(signature, signature1));
+			will(returnValue(new boolean[] {true, true}));
+			// Store the validation results and deliver the messages
+			oneOf(db).transaction(with(false), withDbRunnable(txn2));
+			oneOf(db).mergeMessageMetadata(txn2, messageId, metadata);
+			oneOf(hook).incomingMessage(txn2, message, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn2, messageId, DELIVERED);
+			oneOf(db).getMessageDependents(txn2, messageId);
+			will(returnValue(emptyMap()));
+			oneOf(db).transaction(with(false), withDbRunnable(txn3));
+			oneOf(db).mergeMessageMetadata(txn3, messageId1, metadata);
+			oneOf(hook).incomingMessage(txn3, message1, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn3, messageId1, DELIVERED);
+			oneOf(db).getMessageDependents(txn3, messageId1);
+			will(returnValue(emptyMap()));
+		}});
+
+		expectGetPendingMessages();
+		expectGetMessagesToShare();
+
+		vm.startService();
+	}
+
+	@Test
+	public void testMessageWithBadSignatureInBatchIsValidatedAgain()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, true);
+		Transaction txn2 = new Transaction(null, false);
+		Transaction txn3 = new Transaction(null, false);
+		SignedItem signature = getSignedItem();
+		SignedItem signature1 = getSignedItem();
+
+		expectGetMessagesToValidate(messageId, messageId1);
+
+		context.checking(new DbExpectations() {{
+			// Load the raw messages and groups
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getMessage(txn, messageId);
+			will(returnValue(message));
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn1));
+			oneOf(db).getMessage(txn1, messageId1);
+			will(returnValue(message1));
+			oneOf(db).getGroup(txn1, groupId);
+			will(returnValue(group));
+			// Validate the messages with their signatures deferred
+			exactly(2).of(crypto).startDeferringSignatures();
+			oneOf(validator).validateMessage(message, group);
+			will(returnValue(validResult));
+			oneOf(validator).validateMessage(message1, group);
+			will(returnValue(validResult));
+			exactly(2).of(crypto).stopDeferringSignatures();
+			will(onConsecutiveCalls(returnValue(singletonList(signature)),
+					returnValue(singletonList(signature1))));
+			// Verify the signatures together: the second is invalid
+			oneOf(crypto).verifySignatures(asList(signature, signature1));
+			will(returnValue(new boolean[] {true, false}));
+			// Store the validation result for the first message
+			oneOf(db).transaction(with(false), withDbRunnable(txn2));
+			oneOf(db).mergeMessageMetadata(txn2, messageId, metadata);
+			oneOf(hook).incomingMessage(txn2, message, metadata);
+			will(returnValue(ACCEPT_DO_NOT_SHARE));
+			oneOf(db).setMessageState(txn2, messageId, DELIVERED);
+			oneOf(db).getMessageDependents(txn2, messageId);
+			will(returnValue(emptyMap()));
+			// Validate the second message again, checking its signature
+			oneOf(validator).validateMessage(message1, group);
+			will(throwException(new InvalidMessageException()));
+			// Invalidate the second message
+			oneOf(db).transaction(with(false), withDbRunnable(txn3));
+			oneOf(db).getMessageState(txn3, messageId1);
+			will(returnValue(UNKNOWN));
+			oneOf(db).setMessageState(txn3, messageId1, INVALID);
+			oneOf(db).deleteMessage(txn3, messageId1);
+			oneOf(db).deleteMessageMetadata(txn3, messageId1);
+			oneOf(db).getMessageDependents(txn3, messageId1);
+			will(returnValue(emptyMap()));
+		}});
+
+		expectGetPendingMessages();
+		expectGetMessagesToShare();
+
+		vm.startService();
+	}
+
 	@Test
 	public void testNonLocalMessagesAreValidatedWhenAdded() throws Exception {
 		Transaction txn = new Transaction(null, true);
@@ -734,6 +875,11 @@ public class ValidationManagerImplTest extends BrambleMockTestCase {
 		vm.eventOccurred(new MessageAddedEvent(message, contactId));
 	}
 
+	private SignedItem getSignedItem() {
+		return new SignedItem(getRandomBytes(64), getRandomString(42),
+				getRandomBytes(123), new SignaturePublicKey(getRandomBytes(32)));
+	}
+
 	private void expectGetMessagesToValidate(MessageId... ids)
 			throws Exception {
 		Transaction txn = new Transaction(null, true);
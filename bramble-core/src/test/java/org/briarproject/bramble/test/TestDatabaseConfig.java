@@ -33,4 +33,10 @@ public class TestDatabaseConfig implements DatabaseConfig {
 	public KeyStrengthener getKeyStrengthener() {
 		return null;
 	}
+
+	@Nullable
+	@Override
+	public File getWorkloadTraceFile() {
+		return null;
+	}
 }
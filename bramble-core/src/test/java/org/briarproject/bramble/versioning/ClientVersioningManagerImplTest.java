@@ -16,18 +16,28 @@ import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.api.system.TaskScheduler;
 import org.briarproject.bramble.api.versioning.ClientVersioningManager.ClientVersioningHook;
 import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.CaptureArgumentAction;
 import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.bramble.test.ImmediateExecutor;
 import org.jmock.Expectations;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.api.data.BdfDictionary.NULL_VALUE;
 import static org.briarproject.bramble.api.sync.Group.Visibility.INVISIBLE;
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
 import static org.briarproject.bramble.api.sync.Group.Visibility.VISIBLE;
@@ -39,17 +49,23 @@ import static org.briarproject.bramble.test.TestUtils.getContact;
 import static org.briarproject.bramble.test.TestUtils.getGroup;
 import static org.briarproject.bramble.test.TestUtils.getMessage;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.versioning.ClientVersioningConstants.GROUP_KEY_LAST_UPDATED_CONTACT;
+import static org.briarproject.bramble.versioning.ClientVersioningConstants.MAX_CONTACTS_PER_BATCH;
 import static org.briarproject.bramble.versioning.ClientVersioningConstants.MSG_KEY_LOCAL;
 import static org.briarproject.bramble.versioning.ClientVersioningConstants.MSG_KEY_UPDATE_VERSION;
+import static org.briarproject.bramble.versioning.ClientVersioningConstants.RETRY_DELAY_MS;
 import static org.junit.Assert.assertEquals;
 
 public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 
 	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final Executor dbExecutor = new ImmediateExecutor();
 	private final ClientHelper clientHelper = context.mock(ClientHelper.class);
 	private final ContactGroupFactory contactGroupFactory =
 			context.mock(ContactGroupFactory.class);
 	private final Clock clock = context.mock(Clock.class);
+	private final TaskScheduler taskScheduler =
+			context.mock(TaskScheduler.class);
 	private final ClientVersioningHook hook =
 			context.mock(ClientVersioningHook.class);
 
@@ -59,6 +75,12 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 	private final ClientId clientId = getClientId();
 	private final long now = System.currentTimeMillis();
 	private final Transaction txn = new Transaction(null, false);
+	private final Transaction txn1 = new Transaction(null, false);
+	private final Transaction txn2 = new Transaction(null, false);
+	private final BdfDictionary updatePending = BdfDictionary.of(
+			new BdfEntry(GROUP_KEY_LAST_UPDATED_CONTACT, 0L));
+	private final BdfDictionary updateFinished = BdfDictionary.of(
+			new BdfEntry(GROUP_KEY_LAST_UPDATED_CONTACT, NULL_VALUE));
 
 	private ClientVersioningManagerImpl createInstance() {
 		context.checking(new Expectations() {{
@@ -66,8 +88,8 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 					MAJOR_VERSION);
 			will(returnValue(localGroup));
 		}});
-		return new ClientVersioningManagerImpl(db, clientHelper,
-				contactGroupFactory, clock);
+		return new ClientVersioningManagerImpl(db, dbExecutor, clientHelper,
+				contactGroupFactory, clock, taskScheduler);
 	}
 
 	@Test
@@ -76,10 +98,10 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).containsGroup(txn, localGroup.getId());
 			will(returnValue(false));
 			oneOf(db).addGroup(txn, localGroup);
-			oneOf(db).getContacts(txn);
-			will(returnValue(singletonList(contact)));
+			// Pre-existing contacts will be set up after startup
+			oneOf(clientHelper).mergeGroupMetadata(txn, localGroup.getId(),
+					updatePending);
 		}});
-		expectAddingContact();
 
 		ClientVersioningManagerImpl c = createInstance();
 		c.onDatabaseOpened(txn);
@@ -99,13 +121,13 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 
 	@Test
 	public void testCreatesContactGroupWhenAddingContact() throws Exception {
-		expectAddingContact();
+		expectAddingContact(txn);
 
 		ClientVersioningManagerImpl c = createInstance();
 		c.addingContact(txn, contact);
 	}
 
-	private void expectAddingContact() throws Exception {
+	private void expectAddingContact(Transaction txn) throws Exception {
 		long now = System.currentTimeMillis();
 		BdfList localUpdateBody = BdfList.of(new BdfList(), 1L);
 		Message localUpdate = getMessage(contactGroup.getId());
@@ -138,6 +160,8 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
 					MAJOR_VERSION, contact);
 			will(returnValue(contactGroup));
+			oneOf(db).containsGroup(txn, contactGroup.getId());
+			will(returnValue(true));
 			oneOf(db).removeGroup(txn, contactGroup);
 		}});
 
@@ -145,6 +169,21 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 		c.removingContact(txn, contact);
 	}
 
+	@Test
+	public void testDoesNotRemoveMissingGroupWhenRemovingContact()
+			throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(db).containsGroup(txn, contactGroup.getId());
+			will(returnValue(false));
+		}});
+
+		ClientVersioningManagerImpl c = createInstance();
+		c.removingContact(txn, contact);
+	}
+
 	@Test
 	public void testStoresClientVersionsAtFirstStartup() throws Exception {
 		BdfList localVersionsBody =
@@ -158,7 +197,8 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 				BdfList.of(clientId.getString(), 123, 234, false)), 1L);
 
 		context.checking(new DbExpectations() {{
-			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
 			// No client versions have been stored yet
 			oneOf(db).getMessageIds(txn, localGroup.getId());
 			will(returnValue(emptyList()));
@@ -170,20 +210,19 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(localVersions));
 			oneOf(db).addLocalMessage(txn, localVersions, new Metadata(),
 					false, false);
-			// Inform contacts that client versions have changed
-			oneOf(db).getContacts(txn);
-			will(returnValue(singletonList(contact)));
-			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
-					MAJOR_VERSION, contact);
-			will(returnValue(contactGroup));
-			// Find the latest local and remote updates (no remote update)
-			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+		}});
+		// Inform contacts that client versions have changed
+		expectStartUpdatingContacts();
+		context.checking(new Expectations() {{
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn1,
 					contactGroup.getId());
 			will(returnValue(singletonMap(localUpdateId, localUpdateMeta)));
 			// Load the latest local update
-			oneOf(clientHelper).getMessageAsList(txn, localUpdateId);
+			oneOf(clientHelper).getMessageAsList(txn1, localUpdateId);
 			will(returnValue(localUpdateBody));
 			// Latest local update is up-to-date, no visibilities have changed
+			oneOf(clientHelper).mergeGroupMetadata(txn1, localGroup.getId(),
+					updateFinished);
 		}});
 
 		ClientVersioningManagerImpl c = createInstance();
@@ -199,13 +238,17 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 				BdfList.of(BdfList.of(clientId.getString(), 123, 234));
 
 		context.checking(new DbExpectations() {{
-			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
 			// Load the old client versions
 			oneOf(db).getMessageIds(txn, localGroup.getId());
 			will(returnValue(singletonList(localVersionsId)));
 			oneOf(clientHelper).getMessageAsList(txn, localVersionsId);
 			will(returnValue(localVersionsBody));
 			// Client versions are up-to-date
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn,
+					localGroup.getId());
+			will(returnValue(new BdfDictionary()));
 		}});
 
 		ClientVersioningManagerImpl c = createInstance();
@@ -241,7 +284,8 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 				new BdfEntry(MSG_KEY_LOCAL, true));
 
 		context.checking(new DbExpectations() {{
-			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
 			// Load the old client versions
 			oneOf(db).getMessageIds(txn, localGroup.getId());
 			will(returnValue(singletonList(oldLocalVersionsId)));
@@ -257,32 +301,32 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(newLocalVersions));
 			oneOf(db).addLocalMessage(txn, newLocalVersions, new Metadata(),
 					false, false);
-			// Inform contacts that client versions have changed
-			oneOf(db).getContacts(txn);
-			will(returnValue(singletonList(contact)));
-			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
-					MAJOR_VERSION, contact);
-			will(returnValue(contactGroup));
+		}});
+		// Inform contacts that client versions have changed
+		expectStartUpdatingContacts();
+		context.checking(new Expectations() {{
 			// Find the latest local and remote updates (no remote update)
-			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn1,
 					contactGroup.getId());
 			will(returnValue(singletonMap(oldLocalUpdateId,
 					oldLocalUpdateMeta)));
 			// Load the latest local update
-			oneOf(clientHelper).getMessageAsList(txn, oldLocalUpdateId);
+			oneOf(clientHelper).getMessageAsList(txn1, oldLocalUpdateId);
 			will(returnValue(oldLocalUpdateBody));
 			// Delete the latest local update
-			oneOf(db).deleteMessage(txn, oldLocalUpdateId);
-			oneOf(db).deleteMessageMetadata(txn, oldLocalUpdateId);
+			oneOf(db).deleteMessage(txn1, oldLocalUpdateId);
+			oneOf(db).deleteMessageMetadata(txn1, oldLocalUpdateId);
 			// Store the new local update
 			oneOf(clock).currentTimeMillis();
 			will(returnValue(now));
 			oneOf(clientHelper).createMessage(contactGroup.getId(), now,
 					newLocalUpdateBody);
 			will(returnValue(newLocalUpdate));
-			oneOf(clientHelper).addLocalMessage(txn, newLocalUpdate,
+			oneOf(clientHelper).addLocalMessage(txn1, newLocalUpdate,
 					newLocalUpdateMeta, true, false);
 			// No visibilities have changed
+			oneOf(clientHelper).mergeGroupMetadata(txn1, localGroup.getId(),
+					updateFinished);
 		}});
 
 		ClientVersioningManagerImpl c = createInstance();
@@ -337,7 +381,8 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 				new BdfEntry(MSG_KEY_LOCAL, true));
 
 		context.checking(new DbExpectations() {{
-			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
 			// Load the old client versions
 			oneOf(db).getMessageIds(txn, localGroup.getId());
 			will(returnValue(singletonList(oldLocalVersionsId)));
@@ -353,35 +398,35 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(newLocalVersions));
 			oneOf(db).addLocalMessage(txn, newLocalVersions, new Metadata(),
 					false, false);
-			// Inform contacts that client versions have changed
-			oneOf(db).getContacts(txn);
-			will(returnValue(singletonList(contact)));
-			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
-					MAJOR_VERSION, contact);
-			will(returnValue(contactGroup));
+		}});
+		// Inform contacts that client versions have changed
+		expectStartUpdatingContacts();
+		context.checking(new Expectations() {{
 			// Find the latest local and remote updates
-			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn1,
 					contactGroup.getId());
 			will(returnValue(messageMetadata));
 			// Load the latest local update
-			oneOf(clientHelper).getMessageAsList(txn, oldLocalUpdateId);
+			oneOf(clientHelper).getMessageAsList(txn1, oldLocalUpdateId);
 			will(returnValue(oldLocalUpdateBody));
 			// Load the latest remote update
-			oneOf(clientHelper).getMessageAsList(txn, oldRemoteUpdateId);
+			oneOf(clientHelper).getMessageAsList(txn1, oldRemoteUpdateId);
 			will(returnValue(oldRemoteUpdateBody));
 			// Delete the latest local update
-			oneOf(db).deleteMessage(txn, oldLocalUpdateId);
-			oneOf(db).deleteMessageMetadata(txn, oldLocalUpdateId);
+			oneOf(db).deleteMessage(txn1, oldLocalUpdateId);
+			oneOf(db).deleteMessageMetadata(txn1, oldLocalUpdateId);
 			// Store the new local update
 			oneOf(clock).currentTimeMillis();
 			will(returnValue(now));
 			oneOf(clientHelper).createMessage(contactGroup.getId(), now,
 					newLocalUpdateBody);
 			will(returnValue(newLocalUpdate));
-			oneOf(clientHelper).addLocalMessage(txn, newLocalUpdate,
+			oneOf(clientHelper).addLocalMessage(txn1, newLocalUpdate,
 					newLocalUpdateMeta, true, false);
 			// The client's visibility has changed
-			oneOf(hook).onClientVisibilityChanging(txn, contact, visibility);
+			oneOf(hook).onClientVisibilityChanging(txn1, contact, visibility);
+			oneOf(clientHelper).mergeGroupMetadata(txn1, localGroup.getId(),
+					updateFinished);
 		}});
 
 		ClientVersioningManagerImpl c = createInstance();
@@ -389,6 +434,250 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 		c.startService();
 	}
 
+	/**
+	 * Expects the contacts to be marked as needing an update in the startup
+	 * transaction, followed by a second transaction that finds the contact
+	 * and its group.
+	 */
+	private void expectStartUpdatingContacts() throws Exception {
+		context.checking(new DbExpectations() {{
+			oneOf(clientHelper).mergeGroupMetadata(txn, localGroup.getId(),
+					updatePending);
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn,
+					localGroup.getId());
+			will(returnValue(updatePending));
+			// The contacts are updated in the background
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn1,
+					localGroup.getId());
+			will(returnValue(updatePending));
+			oneOf(db).getContacts(txn1);
+			will(returnValue(singletonList(contact)));
+			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(db).containsGroup(txn1, contactGroup.getId());
+			will(returnValue(true));
+		}});
+	}
+
+	@Test
+	public void testCreatesContactGroupWhenUpdatingContactWithoutGroup()
+			throws Exception {
+		MessageId localVersionsId = new MessageId(getRandomId());
+		BdfList localVersionsBody = new BdfList();
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			// Client versions are up-to-date
+			oneOf(db).getMessageIds(txn, localGroup.getId());
+			will(returnValue(singletonList(localVersionsId)));
+			oneOf(clientHelper).getMessageAsList(txn, localVersionsId);
+			will(returnValue(localVersionsBody));
+			// The contacts were marked as needing an update when the local
+			// group was created
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn,
+					localGroup.getId());
+			will(returnValue(updatePending));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn1,
+					localGroup.getId());
+			will(returnValue(updatePending));
+			oneOf(db).getContacts(txn1);
+			will(returnValue(singletonList(contact)));
+			// The contact was added before the versioning client
+			oneOf(db).containsGroup(txn1, contactGroup.getId());
+			will(returnValue(false));
+			oneOf(clientHelper).mergeGroupMetadata(txn1, localGroup.getId(),
+					updateFinished);
+		}});
+		expectAddingContact(txn1);
+
+		ClientVersioningManagerImpl c = createInstance();
+		c.startService();
+	}
+
+	@Test
+	public void testResumesUpdatingContactsAtStartup() throws Exception {
+		MessageId localVersionsId = new MessageId(getRandomId());
+		BdfList localVersionsBody = new BdfList();
+		// The first contact was updated before we were restarted
+		Contact notUpdated = getContact();
+		BdfDictionary updateInProgress = BdfDictionary.of(new BdfEntry(
+				GROUP_KEY_LAST_UPDATED_CONTACT,
+				(long) contact.getId().getInt()));
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			// Client versions are up-to-date
+			oneOf(db).getMessageIds(txn, localGroup.getId());
+			will(returnValue(singletonList(localVersionsId)));
+			oneOf(clientHelper).getMessageAsList(txn, localVersionsId);
+			will(returnValue(localVersionsBody));
+			// An earlier update of the contacts didn't finish
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn,
+					localGroup.getId());
+			will(returnValue(updateInProgress));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn1,
+					localGroup.getId());
+			will(returnValue(updateInProgress));
+			oneOf(db).getContacts(txn1);
+			will(returnValue(asList(notUpdated, contact)));
+			// Only the second contact is updated
+			expectContactIsUpToDate(txn1, notUpdated);
+			oneOf(clientHelper).mergeGroupMetadata(txn1, localGroup.getId(),
+					updateFinished);
+		}});
+
+		ClientVersioningManagerImpl c = createInstance();
+		c.startService();
+	}
+
+	@Test
+	public void testUpdatesContactsInBatches() throws Exception {
+		MessageId localVersionsId = new MessageId(getRandomId());
+		List<Contact> contacts = new ArrayList<>();
+		for (int i = 0; i < MAX_CONTACTS_PER_BATCH + 1; i++)
+			contacts.add(getContact());
+		Contact lastInBatch = contacts.get(MAX_CONTACTS_PER_BATCH - 1);
+		BdfDictionary firstBatchDone = BdfDictionary.of(new BdfEntry(
+				GROUP_KEY_LAST_UPDATED_CONTACT,
+				(long) lastInBatch.getId().getInt()));
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			// The client versions have changed
+			oneOf(db).getMessageIds(txn, localGroup.getId());
+			will(returnValue(singletonList(localVersionsId)));
+			oneOf(clientHelper).getMessageAsList(txn, localVersionsId);
+			will(returnValue(BdfList.of(
+					BdfList.of(clientId.getString(), 123, 234))));
+			oneOf(db).removeMessage(txn, localVersionsId);
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(clientHelper).createMessage(localGroup.getId(), now,
+					new BdfList());
+			will(returnValue(getMessage(localGroup.getId())));
+			oneOf(db).addLocalMessage(with(txn), with(any(Message.class)),
+					with(new Metadata()), with(false), with(false));
+			oneOf(clientHelper).mergeGroupMetadata(txn, localGroup.getId(),
+					updatePending);
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn,
+					localGroup.getId());
+			will(returnValue(updatePending));
+			// The first batch of contacts is updated
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn1,
+					localGroup.getId());
+			will(returnValue(updatePending));
+			oneOf(db).getContacts(txn1);
+			will(returnValue(contacts));
+			for (Contact contact : contacts.subList(0, MAX_CONTACTS_PER_BATCH))
+				expectContactIsUpToDate(txn1, contact);
+			oneOf(clientHelper).mergeGroupMetadata(txn1, localGroup.getId(),
+					firstBatchDone);
+			// The remaining contact is updated in another transaction
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn2));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn2,
+					localGroup.getId());
+			will(returnValue(firstBatchDone));
+			oneOf(db).getContacts(txn2);
+			will(returnValue(contacts));
+			expectContactIsUpToDate(txn2,
+					contacts.get(MAX_CONTACTS_PER_BATCH));
+			oneOf(clientHelper).mergeGroupMetadata(txn2, localGroup.getId(),
+					updateFinished);
+		}});
+
+		ClientVersioningManagerImpl c = createInstance();
+		c.startService();
+	}
+
+	@Test
+	public void testRetriesUpdatingContactsAfterFailure() throws Exception {
+		MessageId localVersionsId = new MessageId(getRandomId());
+		AtomicReference<Runnable> retry = new AtomicReference<>();
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			// Client versions are up-to-date
+			oneOf(db).getMessageIds(txn, localGroup.getId());
+			will(returnValue(singletonList(localVersionsId)));
+			oneOf(clientHelper).getMessageAsList(txn, localVersionsId);
+			will(returnValue(new BdfList()));
+			// An earlier update of the contacts didn't finish
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn,
+					localGroup.getId());
+			will(returnValue(updatePending));
+			// Updating the first batch fails, so it's retried after a delay
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn1,
+					localGroup.getId());
+			will(throwException(new DbException()));
+			oneOf(taskScheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(RETRY_DELAY_MS), with(MILLISECONDS));
+			will(new CaptureArgumentAction<>(retry, Runnable.class, 0));
+		}});
+
+		ClientVersioningManagerImpl c = createInstance();
+		c.startService();
+		context.assertIsSatisfied();
+
+		context.checking(new DbExpectations() {{
+			// The retry brings the contact up to date
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn2));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn2,
+					localGroup.getId());
+			will(returnValue(updatePending));
+			oneOf(db).getContacts(txn2);
+			will(returnValue(singletonList(contact)));
+			expectContactIsUpToDate(txn2, contact);
+			oneOf(clientHelper).mergeGroupMetadata(txn2, localGroup.getId(),
+					updateFinished);
+		}});
+
+		retry.get().run();
+	}
+
+	/**
+	 * Expects the given contact, which has a contact group and a local
+	 * update that lists no clients, to be checked but not changed.
+	 */
+	private void expectContactIsUpToDate(Transaction txn, Contact contact)
+			throws Exception {
+		Group contactGroup = getGroup(CLIENT_ID, MAJOR_VERSION);
+		MessageId localUpdateId = new MessageId(getRandomId());
+		BdfDictionary localUpdateMeta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_UPDATE_VERSION, 1L),
+				new BdfEntry(MSG_KEY_LOCAL, true));
+		BdfList localUpdateBody = BdfList.of(new BdfList(), 1L);
+
+		context.checking(new Expectations() {{
+			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(db).containsGroup(txn, contactGroup.getId());
+			will(returnValue(true));
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+					contactGroup.getId());
+			will(returnValue(singletonMap(localUpdateId, localUpdateMeta)));
+			oneOf(clientHelper).getMessageAsList(txn, localUpdateId);
+			will(returnValue(localUpdateBody));
+		}});
+	}
+
 	@Test
 	public void testDeletesObsoleteRemoteUpdate() throws Exception {
 		Message newRemoteUpdate = getMessage(contactGroup.getId());
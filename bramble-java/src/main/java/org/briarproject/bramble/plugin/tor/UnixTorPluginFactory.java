@@ -74,13 +74,14 @@ public class UnixTorPluginFactory extends TorPluginFactory {
 
 	@Override
 	TorPlugin createPluginInstance(Backoff backoff,
+			TorConnectionScheduler connectionScheduler,
 			TorRendezvousCrypto torRendezvousCrypto, PluginCallback callback,
 			String architecture) {
 		TorWrapper tor = new UnixTorWrapper(ioExecutor, eventExecutor,
 				architecture, torDirectory, torSocksPort, torControlPort);
-		return new TorPlugin(ioExecutor, wakefulIoExecutor, networkManager,
-				locationUtils, torSocketFactory, circumventionProvider,
-				batteryManager, backoff, torRendezvousCrypto, tor, callback,
-				MAX_LATENCY, MAX_IDLE_TIME);
+		return new TorPlugin(ioExecutor, networkManager, locationUtils,
+				torSocketFactory, circumventionProvider, batteryManager,
+				backoff, connectionScheduler, torRendezvousCrypto, tor,
+				callback, MAX_LATENCY, MAX_IDLE_TIME);
 	}
 }
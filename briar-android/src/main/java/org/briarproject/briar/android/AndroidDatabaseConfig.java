@@ -37,4 +37,10 @@ class AndroidDatabaseConfig implements DatabaseConfig {
 	public KeyStrengthener getKeyStrengthener() {
 		return keyStrengthener;
 	}
+
+	@Override
+	@Nullable
+	public File getWorkloadTraceFile() {
+		return null;
+	}
 }
@@ -2,7 +2,6 @@ package org.briarproject.briar.android.contact;
 
 import android.app.Application;
 
-import org.briarproject.bramble.api.connection.ConnectionRegistry;
 import org.briarproject.bramble.api.contact.ContactManager;
 import org.briarproject.bramble.api.contact.event.PendingContactAddedEvent;
 import org.briarproject.bramble.api.contact.event.PendingContactRemovedEvent;
@@ -14,8 +13,7 @@ import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.bramble.api.system.AndroidExecutor;
 import org.briarproject.briar.api.android.AndroidNotificationManager;
-import org.briarproject.briar.api.conversation.ConversationManager;
-import org.briarproject.briar.api.identity.AuthorManager;
+import org.briarproject.briar.api.contact.ContactListSummary;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.concurrent.Executor;
@@ -38,13 +36,10 @@ class ContactListViewModel extends ContactsViewModel {
 			@DatabaseExecutor Executor dbExecutor,
 			LifecycleManager lifecycleManager, TransactionManager db,
 			AndroidExecutor androidExecutor, ContactManager contactManager,
-			AuthorManager authorManager,
-			ConversationManager conversationManager,
-			ConnectionRegistry connectionRegistry, EventBus eventBus,
+			ContactListSummary contactListSummary, EventBus eventBus,
 			AndroidNotificationManager notificationManager) {
 		super(application, dbExecutor, lifecycleManager, db, androidExecutor,
-				contactManager, authorManager, conversationManager,
-				connectionRegistry, eventBus);
+				contactManager, contactListSummary, eventBus);
 		this.notificationManager = notificationManager;
 	}
 
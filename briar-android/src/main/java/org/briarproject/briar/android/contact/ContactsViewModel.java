@@ -2,7 +2,6 @@ package org.briarproject.briar.android.contact;
 
 import android.app.Application;
 
-import org.briarproject.bramble.api.connection.ConnectionRegistry;
 import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.ContactManager;
@@ -23,11 +22,9 @@ import org.briarproject.bramble.api.system.AndroidExecutor;
 import org.briarproject.briar.android.viewmodel.DbViewModel;
 import org.briarproject.briar.android.viewmodel.LiveResult;
 import org.briarproject.briar.api.avatar.event.AvatarUpdatedEvent;
-import org.briarproject.briar.api.client.MessageTracker;
-import org.briarproject.briar.api.conversation.ConversationManager;
+import org.briarproject.briar.api.contact.ContactListSummary;
+import org.briarproject.briar.api.contact.ContactSummary;
 import org.briarproject.briar.api.conversation.event.ConversationMessageTrackedEvent;
-import org.briarproject.briar.api.identity.AuthorInfo;
-import org.briarproject.briar.api.identity.AuthorManager;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
@@ -54,9 +51,7 @@ public class ContactsViewModel extends DbViewModel implements EventListener {
 			getLogger(ContactsViewModel.class.getName());
 
 	protected final ContactManager contactManager;
-	private final AuthorManager authorManager;
-	private final ConversationManager conversationManager;
-	private final ConnectionRegistry connectionRegistry;
+	private final ContactListSummary contactListSummary;
 	private final EventBus eventBus;
 
 	private final MutableLiveData<LiveResult<List<ContactListItem>>>
@@ -67,14 +62,10 @@ public class ContactsViewModel extends DbViewModel implements EventListener {
 			@DatabaseExecutor Executor dbExecutor,
 			LifecycleManager lifecycleManager, TransactionManager db,
 			AndroidExecutor androidExecutor, ContactManager contactManager,
-			AuthorManager authorManager,
-			ConversationManager conversationManager,
-			ConnectionRegistry connectionRegistry, EventBus eventBus) {
+			ContactListSummary contactListSummary, EventBus eventBus) {
 		super(application, dbExecutor, lifecycleManager, db, androidExecutor);
 		this.contactManager = contactManager;
-		this.authorManager = authorManager;
-		this.conversationManager = conversationManager;
-		this.connectionRegistry = connectionRegistry;
+		this.contactListSummary = contactListSummary;
 		this.eventBus = eventBus;
 		this.eventBus.addListener(this);
 	}
@@ -92,17 +83,15 @@ public class ContactsViewModel extends DbViewModel implements EventListener {
 	private List<ContactListItem> loadContacts(Transaction txn)
 			throws DbException {
 		long start = now();
-		List<ContactListItem> contacts = new ArrayList<>();
+		List<Contact> displayed = new ArrayList<>();
 		for (Contact c : contactManager.getContacts(txn)) {
-			ContactId id = c.getId();
-			if (!displayContact(id)) {
-				continue;
-			}
-			AuthorInfo authorInfo = authorManager.getAuthorInfo(txn, c);
-			MessageTracker.GroupCount count =
-					conversationManager.getGroupCount(txn, id);
-			boolean connected = connectionRegistry.isConnected(c.getId());
-			contacts.add(new ContactListItem(c, authorInfo, connected, count));
+			if (displayContact(c.getId())) displayed.add(c);
+		}
+		List<ContactListItem> contacts = new ArrayList<>(displayed.size());
+		for (ContactSummary s :
+				contactListSummary.getContactSummaries(txn, displayed)) {
+			contacts.add(new ContactListItem(s.getContact(),
+					s.getAuthorInfo(), s.isConnected(), s.getGroupCount()));
 		}
 		Collections.sort(contacts);
 		logDuration(LOG, "Full load", start);
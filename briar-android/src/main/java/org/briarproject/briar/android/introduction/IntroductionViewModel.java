@@ -3,7 +3,6 @@ package org.briarproject.briar.android.introduction;
 import android.app.Application;
 import android.widget.Toast;
 
-import org.briarproject.bramble.api.connection.ConnectionRegistry;
 import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.ContactManager;
@@ -18,7 +17,7 @@ import org.briarproject.briar.android.contact.ContactItem;
 import org.briarproject.briar.android.contact.ContactsViewModel;
 import org.briarproject.briar.android.viewmodel.LiveEvent;
 import org.briarproject.briar.android.viewmodel.MutableLiveEvent;
-import org.briarproject.briar.api.conversation.ConversationManager;
+import org.briarproject.briar.api.contact.ContactListSummary;
 import org.briarproject.briar.api.identity.AuthorInfo;
 import org.briarproject.briar.api.identity.AuthorManager;
 import org.briarproject.briar.api.introduction.IntroductionManager;
@@ -55,12 +54,10 @@ class IntroductionViewModel extends ContactsViewModel {
 			LifecycleManager lifecycleManager, TransactionManager db,
 			AndroidExecutor androidExecutor, ContactManager contactManager,
 			AuthorManager authorManager,
-			ConversationManager conversationManager,
-			ConnectionRegistry connectionRegistry, EventBus eventBus,
+			ContactListSummary contactListSummary, EventBus eventBus,
 			IntroductionManager introductionManager) {
 		super(application, dbExecutor, lifecycleManager, db, androidExecutor,
-				contactManager, authorManager, conversationManager,
-				connectionRegistry, eventBus);
+				contactManager, contactListSummary, eventBus);
 		this.contactManager = contactManager;
 		this.authorManager = authorManager;
 		this.introductionManager = introductionManager;
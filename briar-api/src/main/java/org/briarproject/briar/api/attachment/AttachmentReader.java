@@ -19,7 +19,9 @@ public interface AttachmentReader {
 	Attachment getAttachment(AttachmentHeader h) throws DbException;
 
 	/**
-	 * Returns the attachment with the given attachment header.
+	 * Returns the attachment with the given attachment header. The
+	 * attachment's stream reads from the database, so it must be read and
+	 * closed before the transaction ends.
 	 *
 	 * @throws NoSuchMessageException If the header refers to a message in
 	 * a different group from the one specified in the header, to a message
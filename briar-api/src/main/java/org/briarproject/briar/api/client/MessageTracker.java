@@ -8,6 +8,9 @@ import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.briar.api.conversation.ConversationManager;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Collection;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
 @NotNullByDefault
@@ -31,6 +34,14 @@ public interface MessageTracker {
 	 **/
 	GroupCount getGroupCount(Transaction txn, GroupId g) throws DbException;
 
+	/**
+	 * Gets the number of visible and unread messages in each of the given
+	 * groups as well as the timestamp of the latest message, loading the
+	 * counts for all the groups at once.
+	 **/
+	Map<GroupId, GroupCount> getGroupCounts(Transaction txn,
+			Collection<GroupId> groups) throws DbException;
+
 	/**
 	 * Updates the group count for the given incoming message.
 	 * <p>
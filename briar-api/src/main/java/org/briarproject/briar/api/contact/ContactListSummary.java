@@ -0,0 +1,37 @@
+package org.briarproject.briar.api.contact;
+
+import org.briarproject.bramble.api.contact.Contact;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Collection;
+import java.util.List;
+
+@NotNullByDefault
+public interface ContactListSummary {
+
+	/**
+	 * Returns a {@link ContactSummary} for every contact.
+	 */
+	List<ContactSummary> getContactSummaries() throws DbException;
+
+	/**
+	 * Returns a {@link ContactSummary} for every contact.
+	 * <p>
+	 * The summaries are assembled within the given transaction, loading the
+	 * message counts of all contacts with a single set of queries.
+	 */
+	List<ContactSummary> getContactSummaries(Transaction txn)
+			throws DbException;
+
+	/**
+	 * Returns a {@link ContactSummary} for each of the given contacts, in
+	 * the same order.
+	 * <p>
+	 * Callers that only show some contacts should filter the contacts
+	 * before calling this method, as each summary requires a lookup.
+	 */
+	List<ContactSummary> getContactSummaries(Transaction txn,
+			Collection<Contact> contacts) throws DbException;
+}
@@ -0,0 +1,49 @@
+package org.briarproject.briar.api.contact;
+
+import org.briarproject.bramble.api.contact.Contact;
+import org.briarproject.briar.api.client.MessageTracker.GroupCount;
+import org.briarproject.briar.api.identity.AuthorInfo;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+@Immutable
+@NotNullByDefault
+public class ContactSummary {
+
+	private final Contact contact;
+	private final AuthorInfo authorInfo;
+	private final boolean connected;
+	private final GroupCount groupCount;
+
+	public ContactSummary(Contact contact, AuthorInfo authorInfo,
+			boolean connected, GroupCount groupCount) {
+		this.contact = contact;
+		this.authorInfo = authorInfo;
+		this.connected = connected;
+		this.groupCount = groupCount;
+	}
+
+	public Contact getContact() {
+		return contact;
+	}
+
+	/**
+	 * Returns the contact's {@link AuthorInfo}, including its avatar.
+	 */
+	public AuthorInfo getAuthorInfo() {
+		return authorInfo;
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * Returns the message counts of the conversation with the contact,
+	 * summed over all conversation clients.
+	 */
+	public GroupCount getGroupCount() {
+		return groupCount;
+	}
+}
@@ -13,6 +13,7 @@ import org.briarproject.briar.api.messaging.MessagingManager;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 @NotNullByDefault
@@ -57,6 +58,13 @@ public interface ConversationManager {
 	 */
 	GroupCount getGroupCount(Transaction txn, ContactId c) throws DbException;
 
+	/**
+	 * Returns the unified group counts for all private conversation messages
+	 * with the given contacts, loading the counts for all contacts at once.
+	 */
+	Map<ContactId, GroupCount> getGroupCounts(Transaction txn,
+			Collection<Contact> contacts) throws DbException;
+
 	/**
 	 * Updates the group count for the given incoming private conversation message
 	 * and broadcasts a corresponding event.
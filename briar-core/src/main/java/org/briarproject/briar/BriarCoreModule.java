@@ -5,6 +5,7 @@ import org.briarproject.briar.autodelete.AutoDeleteModule;
 import org.briarproject.briar.avatar.AvatarModule;
 import org.briarproject.briar.blog.BlogModule;
 import org.briarproject.briar.client.BriarClientModule;
+import org.briarproject.briar.contact.ContactModule;
 import org.briarproject.briar.conversation.ConversationModule;
 import org.briarproject.briar.feed.FeedModule;
 import org.briarproject.briar.forum.ForumModule;
@@ -24,6 +25,7 @@ import dagger.Module;
 		AvatarModule.class,
 		BlogModule.class,
 		BriarClientModule.class,
+		ContactModule.class,
 		ConversationModule.class,
 		FeedModule.class,
 		ForumModule.class,
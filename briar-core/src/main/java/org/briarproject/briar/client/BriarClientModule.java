@@ -1,15 +1,27 @@
 package org.briarproject.briar.client;
 
+import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.briar.api.client.MessageTracker;
 
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
 import dagger.Module;
 import dagger.Provides;
 
 @Module
 public class BriarClientModule {
 
+	public static class EagerSingletons {
+		@Inject
+		MessageTracker messageTracker;
+	}
+
 	@Provides
-	MessageTracker provideMessageTracker(MessageTrackerImpl messageTracker) {
+	@Singleton
+	MessageTracker provideMessageTracker(LifecycleManager lifecycleManager,
+			MessageTrackerImpl messageTracker) {
+		lifecycleManager.registerOpenDatabaseHook(messageTracker);
 		return messageTracker;
 	}
 }
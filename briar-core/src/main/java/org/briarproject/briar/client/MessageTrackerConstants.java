@@ -9,4 +9,7 @@ public interface MessageTrackerConstants {
 
 	String MSG_KEY_READ = "read";
 
+	String SETTINGS_NAMESPACE = "message-tracker";
+	String SETTINGS_KEY_COUNTS_MIGRATED = "countsMigrated";
+
 }
@@ -7,26 +7,38 @@ import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
+import org.briarproject.bramble.api.settings.Settings;
+import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageCounts;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.briar.api.client.MessageTracker;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
+import static java.util.Collections.singletonList;
+import static org.briarproject.bramble.api.data.BdfDictionary.NULL_VALUE;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_LATEST_MSG;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_MSG_COUNT;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_STORED_MESSAGE_ID;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_UNREAD_COUNT;
 import static org.briarproject.briar.client.MessageTrackerConstants.MSG_KEY_READ;
+import static org.briarproject.briar.client.MessageTrackerConstants.SETTINGS_KEY_COUNTS_MIGRATED;
+import static org.briarproject.briar.client.MessageTrackerConstants.SETTINGS_NAMESPACE;
 
 @Immutable
 @NotNullByDefault
-class MessageTrackerImpl implements MessageTracker {
+class MessageTrackerImpl implements MessageTracker, OpenDatabaseHook {
 
 	private final DatabaseComponent db;
 	private final ClientHelper clientHelper;
@@ -40,6 +52,17 @@ class MessageTrackerImpl implements MessageTracker {
 		this.clock = clock;
 	}
 
+	@Override
+	public void onDatabaseOpened(Transaction txn) throws DbException {
+		// Move any counts that earlier versions stored in the group metadata
+		// to the database's message counts. This only needs to be done once
+		Settings s = db.getSettings(txn, SETTINGS_NAMESPACE);
+		if (s.getBoolean(SETTINGS_KEY_COUNTS_MIGRATED, false)) return;
+		for (Group g : db.getGroups(txn)) migrateGroupCount(txn, g.getId());
+		s.putBoolean(SETTINGS_KEY_COUNTS_MIGRATED, true);
+		db.mergeSettings(txn, s, SETTINGS_NAMESPACE);
+	}
+
 	@Override
 	public void initializeGroupCount(Transaction txn, GroupId g)
 			throws DbException {
@@ -63,12 +86,7 @@ class MessageTrackerImpl implements MessageTracker {
 	@Override
 	public void trackMessage(Transaction txn, GroupId g, long time,
 			boolean read) throws DbException {
-		GroupCount c = getGroupCount(txn, g);
-		int msgCount = c.getMsgCount() + 1;
-		int unreadCount = c.getUnreadCount() + (read ? 0 : 1);
-		long latestMsgTime = Math.max(c.getLatestMsgTime(), time);
-		storeGroupCount(txn, g, new GroupCount(msgCount, unreadCount,
-				latestMsgTime));
+		updateGroupCount(txn, g, 1, read ? 0 : 1, time);
 	}
 
 	@Nullable
@@ -111,27 +129,69 @@ class MessageTrackerImpl implements MessageTracker {
 	@Override
 	public GroupCount getGroupCount(Transaction txn, GroupId g)
 			throws DbException {
-		try {
-			BdfDictionary d = clientHelper.getGroupMetadataAsDictionary(txn, g);
-			return new GroupCount(
-					d.getInt(GROUP_KEY_MSG_COUNT, 0),
-					d.getInt(GROUP_KEY_UNREAD_COUNT, 0),
-					d.getLong(GROUP_KEY_LATEST_MSG, 0L)
-			);
-		} catch (FormatException e) {
-			throw new DbException(e);
+		GroupCount count = getGroupCounts(txn, singletonList(g)).get(g);
+		if (count == null) throw new AssertionError();
+		return count;
+	}
+
+	@Override
+	public Map<GroupId, GroupCount> getGroupCounts(Transaction txn,
+			Collection<GroupId> groups) throws DbException {
+		Map<GroupId, MessageCounts> stored = db.getMessageCounts(txn, groups);
+		Map<GroupId, GroupCount> counts = new HashMap<>(groups.size());
+		for (GroupId g : groups) {
+			MessageCounts c = stored.get(g);
+			if (c == null) {
+				// No messages have been tracked in the group
+				counts.put(g, new GroupCount(0, 0, 0));
+			} else {
+				counts.put(g, new GroupCount(c.getMsgCount(),
+						c.getUnreadCount(), c.getLatestMsgTime()));
+			}
 		}
+		return counts;
 	}
 
 	private void storeGroupCount(Transaction txn, GroupId g, GroupCount c)
 			throws DbException {
+		db.setMessageCounts(txn, g, new MessageCounts(c.getMsgCount(),
+				c.getUnreadCount(), c.getLatestMsgTime()));
+	}
+
+	private void updateGroupCount(Transaction txn, GroupId g,
+			int msgCountDelta, int unreadCountDelta, long time)
+			throws DbException {
+		if (db.updateMessageCounts(txn, g, msgCountDelta, unreadCountDelta,
+				time)) {
+			return;
+		}
+		// No counts have been stored for the group yet. The unread count
+		// can't become negative
+		if (unreadCountDelta < 0) throw new DbException();
+		storeGroupCount(txn, g,
+				new GroupCount(msgCountDelta, unreadCountDelta, time));
+	}
+
+	/**
+	 * Moves the group count that earlier versions stored in the group
+	 * metadata, if any, to the database's message counts.
+	 */
+	private void migrateGroupCount(Transaction txn, GroupId g)
+			throws DbException {
 		try {
-			BdfDictionary d = BdfDictionary.of(
-					new BdfEntry(GROUP_KEY_MSG_COUNT, c.getMsgCount()),
-					new BdfEntry(GROUP_KEY_UNREAD_COUNT, c.getUnreadCount()),
-					new BdfEntry(GROUP_KEY_LATEST_MSG, c.getLatestMsgTime())
+			BdfDictionary d = clientHelper.getGroupMetadataAsDictionary(txn, g);
+			if (!d.containsKey(GROUP_KEY_MSG_COUNT)) return;
+			storeGroupCount(txn, g, new GroupCount(
+					d.getInt(GROUP_KEY_MSG_COUNT, 0),
+					d.getInt(GROUP_KEY_UNREAD_COUNT, 0),
+					d.getLong(GROUP_KEY_LATEST_MSG, 0L)
+			));
+			BdfDictionary remove = BdfDictionary.of(
+					new BdfEntry(GROUP_KEY_MSG_COUNT, NULL_VALUE),
+					new BdfEntry(GROUP_KEY_UNREAD_COUNT, NULL_VALUE),
+					new BdfEntry(GROUP_KEY_LATEST_MSG, NULL_VALUE)
 			);
-			clientHelper.mergeGroupMetadata(txn, g, d);
+			clientHelper.mergeGroupMetadata(txn, g, remove);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
@@ -153,12 +213,8 @@ class MessageTrackerImpl implements MessageTracker {
 				meta.put(MSG_KEY_READ, read);
 				clientHelper.mergeMessageMetadata(txn, m, meta);
 
-				// update unread counter in group metadata
-				GroupCount c = getGroupCount(txn, g);
-				int unreadCount = c.getUnreadCount() + (read ? -1 : 1);
-				if (unreadCount < 0) throw new DbException();
-				storeGroupCount(txn, g, new GroupCount(c.getMsgCount(),
-						unreadCount, c.getLatestMsgTime()));
+				// update unread counter, which can't become negative
+				updateGroupCount(txn, g, 0, read ? -1 : 1, 0);
 			}
 			return wasRead;
 		} catch (FormatException e) {
@@ -0,0 +1,70 @@
+package org.briarproject.briar.contact;
+
+import org.briarproject.bramble.api.connection.ConnectionRegistry;
+import org.briarproject.bramble.api.contact.Contact;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.briar.api.client.MessageTracker.GroupCount;
+import org.briarproject.briar.api.contact.ContactListSummary;
+import org.briarproject.briar.api.contact.ContactSummary;
+import org.briarproject.briar.api.conversation.ConversationManager;
+import org.briarproject.briar.api.identity.AuthorInfo;
+import org.briarproject.briar.api.identity.AuthorManager;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+@ThreadSafe
+@NotNullByDefault
+class ContactListSummaryImpl implements ContactListSummary {
+
+	private final DatabaseComponent db;
+	private final AuthorManager authorManager;
+	private final ConversationManager conversationManager;
+	private final ConnectionRegistry connectionRegistry;
+
+	@Inject
+	ContactListSummaryImpl(DatabaseComponent db, AuthorManager authorManager,
+			ConversationManager conversationManager,
+			ConnectionRegistry connectionRegistry) {
+		this.db = db;
+		this.authorManager = authorManager;
+		this.conversationManager = conversationManager;
+		this.connectionRegistry = connectionRegistry;
+	}
+
+	@Override
+	public List<ContactSummary> getContactSummaries() throws DbException {
+		return db.transactionWithResult(true, this::getContactSummaries);
+	}
+
+	@Override
+	public List<ContactSummary> getContactSummaries(Transaction txn)
+			throws DbException {
+		return getContactSummaries(txn, db.getContacts(txn));
+	}
+
+	@Override
+	public List<ContactSummary> getContactSummaries(Transaction txn,
+			Collection<Contact> contacts) throws DbException {
+		Map<ContactId, GroupCount> counts =
+				conversationManager.getGroupCounts(txn, contacts);
+		List<ContactSummary> summaries = new ArrayList<>(contacts.size());
+		for (Contact c : contacts) {
+			GroupCount count = counts.get(c.getId());
+			if (count == null) throw new AssertionError();
+			AuthorInfo authorInfo = authorManager.getAuthorInfo(txn, c);
+			boolean connected = connectionRegistry.isConnected(c.getId());
+			summaries.add(new ContactSummary(c, authorInfo, connected, count));
+		}
+		return summaries;
+	}
+}
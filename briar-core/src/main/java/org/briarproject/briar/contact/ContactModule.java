@@ -0,0 +1,20 @@
+package org.briarproject.briar.contact;
+
+import org.briarproject.briar.api.contact.ContactListSummary;
+
+import javax.inject.Singleton;
+
+import dagger.Module;
+import dagger.Provides;
+
+@Module
+public class ContactModule {
+
+	@Provides
+	@Singleton
+	ContactListSummary provideContactListSummary(
+			ContactListSummaryImpl contactListSummary) {
+		return contactListSummary;
+	}
+
+}
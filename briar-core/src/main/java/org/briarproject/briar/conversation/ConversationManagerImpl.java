@@ -1,6 +1,7 @@
 package org.briarproject.briar.conversation;
 
 import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
@@ -20,7 +21,10 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -93,6 +97,34 @@ class ConversationManagerImpl implements ConversationManager {
 		return new GroupCount(msgCount, unreadCount, latestTime);
 	}
 
+	@Override
+	public Map<ContactId, GroupCount> getGroupCounts(Transaction txn,
+			Collection<Contact> contacts) throws DbException {
+		// Load the counts for every client's contact groups at once
+		Map<GroupId, ContactId> contactIds = new HashMap<>();
+		for (ConversationClient client : clients) {
+			for (Contact c : contacts) {
+				contactIds.put(client.getContactGroup(c).getId(), c.getId());
+			}
+		}
+		Map<GroupId, GroupCount> counts =
+				messageTracker.getGroupCounts(txn, contactIds.keySet());
+		Map<ContactId, GroupCount> sums = new HashMap<>(contacts.size());
+		for (Contact c : contacts) {
+			sums.put(c.getId(), new GroupCount(0, 0, 0));
+		}
+		for (Entry<GroupId, GroupCount> e : counts.entrySet()) {
+			ContactId c = contactIds.get(e.getKey());
+			GroupCount sum = sums.get(c);
+			GroupCount count = e.getValue();
+			sums.put(c, new GroupCount(
+					sum.getMsgCount() + count.getMsgCount(),
+					sum.getUnreadCount() + count.getUnreadCount(),
+					max(sum.getLatestMsgTime(), count.getLatestMsgTime())));
+		}
+		return sums;
+	}
+
 	@Override
 	public void trackIncomingMessage(Transaction txn, Message m)
 			throws DbException {
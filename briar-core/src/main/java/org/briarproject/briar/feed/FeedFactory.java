@@ -23,6 +23,12 @@ interface FeedFactory {
 	 */
 	Feed updateFeed(Feed feed, SyndFeed sf, long lastEntryTime);
 
+	/**
+	 * Creates a new updated feed, based on the given existing feed, for a
+	 * feed that has not changed since it was last fetched.
+	 */
+	Feed updateFeed(Feed feed);
+
 	/**
 	 * De-serializes a {@link BdfDictionary} into a {@link Feed}.
 	 */
@@ -77,6 +77,14 @@ class FeedFactoryImpl implements FeedFactory {
 				feed.getAdded(), updated, lastEntryTime);
 	}
 
+	@Override
+	public Feed updateFeed(Feed feed) {
+		long updated = clock.currentTimeMillis();
+		return new Feed(feed.getBlog(), feed.getLocalAuthor(),
+				feed.getProperties(), feed.getAdded(), updated,
+				feed.getLastEntryTime());
+	}
+
 	@Override
 	public Feed createFeed(BdfDictionary d) throws FormatException {
 
@@ -52,8 +52,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
@@ -65,12 +72,16 @@ import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.sort;
+import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.util.IoUtils.tryToClose;
+import static org.briarproject.bramble.util.LogUtils.logDuration;
 import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
 import static org.briarproject.bramble.util.StringUtils.isNullOrEmpty;
 import static org.briarproject.bramble.util.StringUtils.truncateUtf8;
 import static org.briarproject.briar.api.blog.BlogConstants.MAX_BLOG_POST_TEXT_LENGTH;
@@ -89,6 +100,8 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 	private static final Logger LOG =
 			getLogger(FeedManagerImpl.class.getName());
 
+	private static final int MAX_CONCURRENT_FETCHES = 4;
+
 	private final TaskScheduler scheduler;
 	private final Executor ioExecutor;
 	private final DatabaseComponent db;
@@ -102,6 +115,14 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 	private final WeakSingletonProvider<OkHttpClient> httpClientProvider;
 	private final AtomicBoolean fetcherStarted = new AtomicBoolean(false);
 
+	/**
+	 * Cache validators from the last successful fetch of each feed, indexed
+	 * by URL. These are kept in memory, so the first fetch of each feed
+	 * after startup is unconditional.
+	 */
+	private final Map<String, CacheValidators> cacheValidators =
+			new ConcurrentHashMap<>();
+
 	private volatile boolean torActive = false;
 
 	@Inject
@@ -238,6 +259,9 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 			Feed f = it.next();
 			if (f.getBlogId().equals(b.getId())) {
 				it.remove();
+				// Don't keep the removed feed's cache validators
+				String url = f.getProperties().getUrl();
+				if (url != null) cacheValidators.remove(url);
 				found = true;
 				break;
 			}
@@ -330,21 +354,39 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 			return;
 		}
 
-		// Fetch and update all feeds
-		List<Feed> updatedFeeds = new ArrayList<>(feeds.size());
-		for (Feed feed : feeds) {
-			try {
-				String url = feed.getProperties().getUrl();
-				if (url == null) continue;
-				// fetch and clean feed
-				SyndFeed sf = fetchAndCleanFeed(url);
-				// sort and add new entries
-				long lastEntryTime = postFeedEntries(feed, sf.getEntries());
-				updatedFeeds.add(
-						feedFactory.updateFeed(feed, sf, lastEntryTime));
-			} catch (IOException | DbException e) {
-				logException(LOG, WARNING, e);
-			}
+		// Fetch and update all feeds, a few at a time
+		long start = now();
+		Queue<Feed> toFetch = new ConcurrentLinkedQueue<>(feeds);
+		List<Feed> updatedFeeds = new CopyOnWriteArrayList<>();
+		AtomicInteger notModified = new AtomicInteger(0);
+		AtomicLong bytesSaved = new AtomicLong(0);
+		int fetchers = Math.min(MAX_CONCURRENT_FETCHES, feeds.size());
+		CountDownLatch latch = new CountDownLatch(fetchers);
+		for (int i = 0; i < fetchers; i++) {
+			ioExecutor.execute(() -> {
+				try {
+					Feed feed;
+					while ((feed = toFetch.poll()) != null) {
+						Feed updated =
+								fetchFeed(feed, notModified, bytesSaved);
+						if (updated != null) updatedFeeds.add(updated);
+					}
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			LOG.warning("Interrupted while fetching RSS feeds");
+			Thread.currentThread().interrupt();
+			return;
+		}
+		logDuration(LOG, "Fetching " + feeds.size() + " RSS feeds", start);
+		if (LOG.isLoggable(INFO)) {
+			LOG.info(notModified.get() + " RSS feeds not modified, saved "
+					+ bytesSaved.get() + " bytes");
 		}
 
 		// Store updated feeds
@@ -356,8 +398,48 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 		LOG.info("Done updating RSS feeds");
 	}
 
+	/**
+	 * Fetches the given feed and posts any new entries. If we fetched the
+	 * feed earlier, the request is conditional and an unchanged feed is
+	 * neither downloaded nor parsed again.
+	 *
+	 * @return The updated feed, or null if the feed could not be fetched
+	 */
+	@Nullable
+	private Feed fetchFeed(Feed feed, AtomicInteger notModified,
+			AtomicLong bytesSaved) {
+		String url = feed.getProperties().getUrl();
+		if (url == null) return null;
+		long start = now();
+		try {
+			CacheValidators cached = cacheValidators.get(url);
+			Response response = getFeedResponse(url, cached);
+			if (cached != null && response.code() == HTTP_NOT_MODIFIED) {
+				response.close();
+				logDuration(LOG, "Checking unchanged RSS feed", start);
+				notModified.incrementAndGet();
+				if (cached.contentLength > 0)
+					bytesSaved.addAndGet(cached.contentLength);
+				return feedFactory.updateFeed(feed);
+			}
+			CacheValidators validators = getCacheValidators(response);
+			// fetch and clean feed
+			SyndFeed sf = fetchAndCleanFeed(getBodyStream(response));
+			// sort and add new entries
+			long lastEntryTime = postFeedEntries(feed, sf.getEntries());
+			// Only skip the next download once the entries have been posted
+			if (validators == null) cacheValidators.remove(url);
+			else cacheValidators.put(url, validators);
+			logDuration(LOG, "Fetching RSS feed", start);
+			return feedFactory.updateFeed(feed, sf, lastEntryTime);
+		} catch (IOException | DbException e) {
+			logException(LOG, WARNING, e);
+			return null;
+		}
+	}
+
 	private SyndFeed fetchAndCleanFeed(String url) throws IOException {
-		return fetchAndCleanFeed(getFeedInputStream(url));
+		return fetchAndCleanFeed(getBodyStream(getFeedResponse(url, null)));
 	}
 
 	private SyndFeed fetchAndCleanFeed(InputStream in) throws IOException {
@@ -390,20 +472,39 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 		return sf;
 	}
 
-	private InputStream getFeedInputStream(String url) throws IOException {
+	private Response getFeedResponse(String url,
+			@Nullable CacheValidators cached) throws IOException {
 		// Build Request
-		Request request = new Request.Builder()
-				.url(url)
-				.build();
+		Request.Builder builder = new Request.Builder().url(url);
+		if (cached != null) {
+			if (cached.etag != null)
+				builder.header("If-None-Match", cached.etag);
+			if (cached.lastModified != null)
+				builder.header("If-Modified-Since", cached.lastModified);
+		}
 
 		// Execute Request
 		OkHttpClient client = httpClientProvider.get();
-		Response response = client.newCall(request).execute();
+		return client.newCall(builder.build()).execute();
+	}
+
+	private InputStream getBodyStream(Response response) throws IOException {
 		ResponseBody body = response.body();
 		if (body != null) return body.byteStream();
 		throw new IOException("Empty response body");
 	}
 
+	@Nullable
+	private CacheValidators getCacheValidators(Response response) {
+		if (!response.isSuccessful()) return null;
+		String etag = response.header("ETag");
+		String lastModified = response.header("Last-Modified");
+		if (etag == null && lastModified == null) return null;
+		ResponseBody body = response.body();
+		long contentLength = body == null ? -1 : body.contentLength();
+		return new CacheValidators(etag, lastModified, contentLength);
+	}
+
 	private SyndFeed getSyndFeed(InputStream stream) throws IOException {
 
 		SyndFeedInput input = new SyndFeedInput();
@@ -526,4 +627,17 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 		return contactGroupFactory.createLocalGroup(CLIENT_ID, MAJOR_VERSION);
 	}
 
+	private static class CacheValidators {
+
+		@Nullable
+		private final String etag, lastModified;
+		private final long contentLength;
+
+		private CacheValidators(@Nullable String etag,
+				@Nullable String lastModified, long contentLength) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.contentLength = contentLength;
+		}
+	}
 }
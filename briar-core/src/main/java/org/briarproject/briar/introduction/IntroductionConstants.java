@@ -44,4 +44,7 @@ interface IntroductionConstants {
 
 	String SESSION_KEY_REMOTE_AUTHOR = "remoteAuthor";
 
+	// Settings keys
+	String SETTINGS_KEY_SESSIONS_RECORDED = "sessionsRecorded";
+
 }
@@ -20,6 +20,7 @@ import org.briarproject.bramble.api.identity.AuthorId;
 import org.briarproject.bramble.api.identity.IdentityManager;
 import org.briarproject.bramble.api.identity.LocalAuthor;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
+import org.briarproject.bramble.api.settings.Settings;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
@@ -66,6 +67,7 @@ import static org.briarproject.briar.introduction.IntroduceeState.REMOTE_DECLINE
 import static org.briarproject.briar.introduction.IntroducerState.A_DECLINED;
 import static org.briarproject.briar.introduction.IntroducerState.B_DECLINED;
 import static org.briarproject.briar.introduction.IntroducerState.START;
+import static org.briarproject.briar.introduction.IntroductionConstants.SETTINGS_KEY_SESSIONS_RECORDED;
 import static org.briarproject.briar.introduction.MessageType.ABORT;
 import static org.briarproject.briar.introduction.MessageType.ACCEPT;
 import static org.briarproject.briar.introduction.MessageType.ACTIVATE;
@@ -129,10 +131,36 @@ class IntroductionManagerImpl extends ConversationClientImpl
 	@Override
 	public void onDatabaseOpened(Transaction txn) throws DbException {
 		// Create a local group to store protocol sessions
-		if (db.containsGroup(txn, localGroup.getId())) return;
-		db.addGroup(txn, localGroup);
-		// Set up groups for communication with any pre-existing contacts
-		for (Contact c : db.getContacts(txn)) addingContact(txn, c);
+		if (!db.containsGroup(txn, localGroup.getId())) {
+			db.addGroup(txn, localGroup);
+			// Set up groups for communication with any pre-existing contacts
+			for (Contact c : db.getContacts(txn)) addingContact(txn, c);
+		}
+		recordStoredSessions(txn);
+	}
+
+	/**
+	 * Records the storage IDs of any sessions that were created before
+	 * storage IDs were recorded. This only needs to be done once.
+	 */
+	private void recordStoredSessions(Transaction txn) throws DbException {
+		String namespace = CLIENT_ID.getString();
+		Settings s = db.getSettings(txn, namespace);
+		if (s.getBoolean(SETTINGS_KEY_SESSIONS_RECORDED, false)) return;
+		try {
+			// All messages in the local group store sessions
+			Map<MessageId, BdfDictionary> results = clientHelper
+					.getMessageMetadataAsDictionary(txn, localGroup.getId());
+			for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+				SessionId sessionId = sessionParser.getSessionId(e.getValue());
+				db.setSessionStorageId(txn, localGroup.getId(), sessionId,
+						e.getKey());
+			}
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+		s.putBoolean(SETTINGS_KEY_SESSIONS_RECORDED, true);
+		db.mergeSettings(txn, s, namespace);
 	}
 
 	@Override
@@ -197,7 +225,7 @@ class IntroductionManagerImpl extends ConversationClientImpl
 		if (ss == null) {
 			if (meta.getMessageType() != REQUEST) throw new FormatException();
 			if (newIntroduceeSession == null) throw new AssertionError();
-			storageId = createStorageId(txn);
+			storageId = createStorageId(txn, sessionId);
 			session = handleMessage(txn, m, body, meta.getMessageType(),
 					newIntroduceeSession, introduceeEngine);
 		} else {
@@ -263,19 +291,19 @@ class IntroductionManagerImpl extends ConversationClientImpl
 	private StoredSession getSession(Transaction txn,
 			@Nullable SessionId sessionId) throws DbException, FormatException {
 		if (sessionId == null) return null;
-		BdfDictionary query = sessionParser.getSessionQuery(sessionId);
-		Map<MessageId, BdfDictionary> results = clientHelper
-				.getMessageMetadataAsDictionary(txn, localGroup.getId(), query);
-		if (results.size() > 1) throw new DbException();
-		if (results.isEmpty()) return null;
-		return new StoredSession(results.keySet().iterator().next(),
-				results.values().iterator().next());
+		MessageId storageId =
+				db.getSessionStorageId(txn, localGroup.getId(), sessionId);
+		if (storageId == null) return null;
+		return new StoredSession(storageId,
+				clientHelper.getMessageMetadataAsDictionary(txn, storageId));
 	}
 
-	private MessageId createStorageId(Transaction txn) throws DbException {
+	private MessageId createStorageId(Transaction txn, SessionId sessionId)
+			throws DbException {
 		Message m = clientHelper
 				.createMessageForStoringMetadata(localGroup.getId());
 		db.addLocalMessage(txn, m, new Metadata(), false, false);
+		db.setSessionStorageId(txn, localGroup.getId(), sessionId, m.getId());
 		return m.getId();
 	}
 
@@ -354,7 +382,7 @@ class IntroductionManagerImpl extends ConversationClientImpl
 						alice ? groupId2 : groupId1,
 						alice ? c2.getAuthor() : c1.getAuthor()
 				);
-				storageId = createStorageId(txn);
+				storageId = createStorageId(txn, sessionId);
 			} else {
 				// An earlier request exists, so we already have a session
 				session = sessionParser.parseIntroducerSession(ss.bdfSession);
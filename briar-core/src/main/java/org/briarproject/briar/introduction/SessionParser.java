@@ -10,10 +10,10 @@ import org.briarproject.nullsafety.NotNullByDefault;
 @NotNullByDefault
 interface SessionParser {
 
-	BdfDictionary getSessionQuery(SessionId s);
-
 	Role getRole(BdfDictionary d) throws FormatException;
 
+	SessionId getSessionId(BdfDictionary d) throws FormatException;
+
 	IntroducerSession parseIntroducerSession(BdfDictionary d)
 			throws FormatException;
 
@@ -7,7 +7,6 @@ import org.briarproject.bramble.api.crypto.AgreementPublicKey;
 import org.briarproject.bramble.api.crypto.PrivateKey;
 import org.briarproject.bramble.api.crypto.PublicKey;
 import org.briarproject.bramble.api.data.BdfDictionary;
-import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.identity.Author;
 import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.properties.TransportProperties;
@@ -66,8 +65,9 @@ class SessionParserImpl implements SessionParser {
 	}
 
 	@Override
-	public BdfDictionary getSessionQuery(SessionId s) {
-		return BdfDictionary.of(new BdfEntry(SESSION_KEY_SESSION_ID, s));
+	public SessionId getSessionId(BdfDictionary d) throws FormatException {
+		byte[] b = d.getRaw(SESSION_KEY_SESSION_ID);
+		return new SessionId(b);
 	}
 
 	@Override
@@ -162,11 +162,6 @@ class SessionParserImpl implements SessionParser {
 		return d.getInt(SESSION_KEY_STATE);
 	}
 
-	private SessionId getSessionId(BdfDictionary d) throws FormatException {
-		byte[] b = d.getRaw(SESSION_KEY_SESSION_ID);
-		return new SessionId(b);
-	}
-
 	@Nullable
 	private MessageId getMessageId(BdfDictionary d, String key)
 			throws FormatException {
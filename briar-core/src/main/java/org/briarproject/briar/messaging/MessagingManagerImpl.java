@@ -60,7 +60,9 @@ import java.util.logging.Logger;
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.client.ContactGroupConstants.GROUP_KEY_CONTACT_ID;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
@@ -450,8 +452,10 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		GroupId g = getContactGroup(db.getContact(txn, c)).getId();
 		Set<MessageId> result = new HashSet<>();
 		try {
+			// Only the message type is needed, so don't load anything else
 			Map<MessageId, BdfDictionary> messages =
-					clientHelper.getMessageMetadataAsDictionary(txn, g);
+					clientHelper.getMessageMetadataAsDictionary(txn, g,
+							singletonList(MSG_KEY_MSG_TYPE));
 			for (Entry<MessageId, BdfDictionary> entry : messages.entrySet()) {
 				Integer type =
 						entry.getValue().getOptionalInt(MSG_KEY_MSG_TYPE);
@@ -550,7 +554,8 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 			throws DbException {
 		try {
 			Map<MessageId, BdfDictionary> metadata =
-					clientHelper.getMessageMetadataAsDictionary(txn, g);
+					clientHelper.getMessageMetadataAsDictionary(txn, g,
+							asList(MSG_KEY_MSG_TYPE, MSG_KEY_READ));
 			int msgCount = 0;
 			int unreadCount = 0;
 			for (Entry<MessageId, BdfDictionary> entry : metadata.entrySet()) {
@@ -23,4 +23,7 @@ interface GroupInvitationConstants {
 	String SESSION_KEY_INVITE_TIMESTAMP = "inviteTimestamp";
 	String SESSION_KEY_ROLE = "role";
 	String SESSION_KEY_STATE = "state";
+
+	// Settings keys
+	String SETTINGS_KEY_SESSIONS_RECORDED = "sessionsRecorded";
 }
@@ -16,6 +16,7 @@ import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.identity.Author;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
+import org.briarproject.bramble.api.settings.Settings;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
@@ -63,6 +64,7 @@ import static org.briarproject.briar.privategroup.invitation.CreatorState.ERROR;
 import static org.briarproject.briar.privategroup.invitation.CreatorState.INVITED;
 import static org.briarproject.briar.privategroup.invitation.CreatorState.JOINED;
 import static org.briarproject.briar.privategroup.invitation.CreatorState.START;
+import static org.briarproject.briar.privategroup.invitation.GroupInvitationConstants.SETTINGS_KEY_SESSIONS_RECORDED;
 import static org.briarproject.briar.privategroup.invitation.MessageType.ABORT;
 import static org.briarproject.briar.privategroup.invitation.MessageType.INVITE;
 import static org.briarproject.briar.privategroup.invitation.MessageType.JOIN;
@@ -117,10 +119,42 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 		// Create a local group to indicate that we've set this client up
 		Group localGroup = contactGroupFactory.createLocalGroup(CLIENT_ID,
 				MAJOR_VERSION);
-		if (db.containsGroup(txn, localGroup.getId())) return;
-		db.addGroup(txn, localGroup);
-		// Set things up for any pre-existing contacts
-		for (Contact c : db.getContacts(txn)) addingContact(txn, c);
+		if (!db.containsGroup(txn, localGroup.getId())) {
+			db.addGroup(txn, localGroup);
+			// Set things up for any pre-existing contacts
+			for (Contact c : db.getContacts(txn)) addingContact(txn, c);
+		}
+		recordStoredSessions(txn);
+	}
+
+	/**
+	 * Records the storage IDs of any sessions that were created before
+	 * storage IDs were recorded. This only needs to be done once.
+	 */
+	private void recordStoredSessions(Transaction txn) throws DbException {
+		String namespace = CLIENT_ID.getString();
+		Settings s = db.getSettings(txn, namespace);
+		if (s.getBoolean(SETTINGS_KEY_SESSIONS_RECORDED, false)) return;
+		BdfDictionary query = sessionParser.getAllSessionsQuery();
+		try {
+			for (Contact c : db.getContacts(txn)) {
+				GroupId contactGroupId = getContactGroup(c).getId();
+				Map<MessageId, BdfDictionary> results = clientHelper
+						.getMessageMetadataAsDictionary(txn, contactGroupId,
+								query);
+				for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+					Session<?> session = sessionParser
+							.parseSession(contactGroupId, e.getValue());
+					db.setSessionStorageId(txn, contactGroupId,
+							getSessionId(session.getPrivateGroupId()),
+							e.getKey());
+				}
+			}
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+		s.putBoolean(SETTINGS_KEY_SESSIONS_RECORDED, true);
+		db.mergeSettings(txn, s, namespace);
 	}
 
 	@Override
@@ -153,7 +187,8 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 				c.getAuthor().getId().equals(pg.getCreator().getId());
 		if (isOur || isTheirs) {
 			// we are creator or invitee, create a left session for each role
-			MessageId storageId = createStorageId(txn, contactGroupId);
+			MessageId storageId = createStorageId(txn, contactGroupId,
+					getSessionId(pg.getId()));
 			Session<?> session;
 			if (isOur) {
 				session = new CreatorSession(contactGroupId, pg.getId(), null,
@@ -216,7 +251,7 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 		MessageId storageId;
 		if (ss == null) {
 			session = handleFirstMessage(txn, m, body, meta);
-			storageId = createStorageId(txn, m.getGroupId());
+			storageId = createStorageId(txn, m.getGroupId(), sessionId);
 		} else {
 			session = handleMessage(txn, m, body, meta, ss.bdfSession);
 			storageId = ss.storageId;
@@ -233,13 +268,11 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 	@Nullable
 	private StoredSession getSession(Transaction txn, GroupId contactGroupId,
 			SessionId sessionId) throws DbException, FormatException {
-		BdfDictionary query = sessionParser.getSessionQuery(sessionId);
-		Map<MessageId, BdfDictionary> results = clientHelper
-				.getMessageMetadataAsDictionary(txn, contactGroupId, query);
-		if (results.size() > 1) throw new DbException();
-		if (results.isEmpty()) return null;
-		return new StoredSession(results.keySet().iterator().next(),
-				results.values().iterator().next());
+		MessageId storageId =
+				db.getSessionStorageId(txn, contactGroupId, sessionId);
+		if (storageId == null) return null;
+		return new StoredSession(storageId,
+				clientHelper.getMessageMetadataAsDictionary(txn, storageId));
 	}
 
 	private Session<?> handleFirstMessage(Transaction txn, Message m,
@@ -302,10 +335,11 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 		}
 	}
 
-	private MessageId createStorageId(Transaction txn, GroupId g)
-			throws DbException {
+	private MessageId createStorageId(Transaction txn, GroupId g,
+			SessionId sessionId) throws DbException {
 		Message m = clientHelper.createMessageForStoringMetadata(g);
 		db.addLocalMessage(txn, m, new Metadata(), false, false);
+		db.setSessionStorageId(txn, g, sessionId, m.getId());
 		return m.getId();
 	}
 
@@ -340,7 +374,7 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 			if (ss == null) {
 				// This is the first invite - create a new session
 				session = new CreatorSession(contactGroupId, privateGroupId);
-				storageId = createStorageId(txn, contactGroupId);
+				storageId = createStorageId(txn, contactGroupId, sessionId);
 			} else {
 				// An earlier invite was declined, so we already have a session
 				session = sessionParser
@@ -610,7 +644,7 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 						new PeerSession(contactGroupId, privateGroupId);
 				// Handle the action
 				session = peerEngine.onMemberAddedAction(txn, peerSession);
-				storageId = createStorageId(txn, contactGroupId);
+				storageId = createStorageId(txn, contactGroupId, sessionId);
 			} else {
 				// Handle the action
 				session = handleAction(txn, LocalAction.MEMBER_ADDED,
@@ -26,4 +26,7 @@ interface SharingConstants {
 	String SESSION_KEY_LOCAL_TIMESTAMP = "localTimestamp";
 	String SESSION_KEY_INVITE_TIMESTAMP = "inviteTimestamp";
 
+	// Settings keys
+	String SETTINGS_KEY_SESSIONS_RECORDED = "sessionsRecorded";
+
 }
@@ -15,6 +15,7 @@ import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
+import org.briarproject.bramble.api.settings.Settings;
 import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
@@ -58,6 +59,7 @@ import static org.briarproject.briar.sharing.MessageType.ACCEPT;
 import static org.briarproject.briar.sharing.MessageType.DECLINE;
 import static org.briarproject.briar.sharing.MessageType.INVITE;
 import static org.briarproject.briar.sharing.MessageType.LEAVE;
+import static org.briarproject.briar.sharing.SharingConstants.SETTINGS_KEY_SESSIONS_RECORDED;
 import static org.briarproject.briar.sharing.State.LOCAL_INVITED;
 import static org.briarproject.briar.sharing.State.LOCAL_LEFT;
 import static org.briarproject.briar.sharing.State.REMOTE_HANGING;
@@ -109,10 +111,42 @@ abstract class SharingManagerImpl<S extends Shareable>
 		// Create a local group to indicate that we've set this client up
 		Group localGroup = contactGroupFactory.createLocalGroup(getClientId(),
 				getMajorVersion());
-		if (db.containsGroup(txn, localGroup.getId())) return;
-		db.addGroup(txn, localGroup);
-		// Set things up for any pre-existing contacts
-		for (Contact c : db.getContacts(txn)) addingContact(txn, c);
+		if (!db.containsGroup(txn, localGroup.getId())) {
+			db.addGroup(txn, localGroup);
+			// Set things up for any pre-existing contacts
+			for (Contact c : db.getContacts(txn)) addingContact(txn, c);
+		}
+		recordStoredSessions(txn);
+	}
+
+	/**
+	 * Records the storage IDs of any sessions that were created before
+	 * storage IDs were recorded. This only needs to be done once.
+	 */
+	private void recordStoredSessions(Transaction txn) throws DbException {
+		String namespace = getClientId().getString();
+		Settings s = db.getSettings(txn, namespace);
+		if (s.getBoolean(SETTINGS_KEY_SESSIONS_RECORDED, false)) return;
+		BdfDictionary query = sessionParser.getAllSessionsQuery();
+		try {
+			for (Contact c : db.getContacts(txn)) {
+				GroupId contactGroupId = getContactGroup(c).getId();
+				Map<MessageId, BdfDictionary> results = clientHelper
+						.getMessageMetadataAsDictionary(txn, contactGroupId,
+								query);
+				for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+					Session session = sessionParser
+							.parseSession(contactGroupId, e.getValue());
+					db.setSessionStorageId(txn, contactGroupId,
+							getSessionId(session.getShareableId()),
+							e.getKey());
+				}
+			}
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+		s.putBoolean(SETTINGS_KEY_SESSIONS_RECORDED, true);
+		db.mergeSettings(txn, s, namespace);
 	}
 
 	@Override
@@ -157,7 +191,7 @@ abstract class SharingManagerImpl<S extends Shareable>
 		MessageId storageId;
 		if (ss == null) {
 			session = handleFirstMessage(txn, m, body, meta);
-			storageId = createStorageId(txn, m.getGroupId());
+			storageId = createStorageId(txn, m.getGroupId(), sessionId);
 		} else {
 			session = handleMessage(txn, m, body, meta, ss.bdfSession);
 			storageId = ss.storageId;
@@ -176,8 +210,9 @@ abstract class SharingManagerImpl<S extends Shareable>
 			throws DbException, FormatException {
 		// Return if a session already exists with the contact
 		GroupId contactGroupId = getContactGroup(c).getId();
-		StoredSession existingSession = getSession(txn, contactGroupId,
-				getSessionId(g.getId()));
+		SessionId sessionId = getSessionId(g.getId());
+		StoredSession existingSession =
+				getSession(txn, contactGroupId, sessionId);
 		if (existingSession != null) return;
 
 		// Add the shareable's group
@@ -191,7 +226,8 @@ abstract class SharingManagerImpl<S extends Shareable>
 		// Initialize session in sharing state
 		Session session = new Session(SHARING, contactGroupId, g.getId(),
 				null, null, 0, 0);
-		MessageId storageId = createStorageId(txn, contactGroupId);
+		MessageId storageId =
+				createStorageId(txn, contactGroupId, sessionId);
 		storeSession(txn, storageId, session);
 	}
 
@@ -202,13 +238,11 @@ abstract class SharingManagerImpl<S extends Shareable>
 	@Nullable
 	private StoredSession getSession(Transaction txn, GroupId contactGroupId,
 			SessionId sessionId) throws DbException, FormatException {
-		BdfDictionary query = sessionParser.getSessionQuery(sessionId);
-		Map<MessageId, BdfDictionary> results = clientHelper
-				.getMessageMetadataAsDictionary(txn, contactGroupId, query);
-		if (results.size() > 1) throw new DbException();
-		if (results.isEmpty()) return null;
-		return new StoredSession(results.keySet().iterator().next(),
-				results.values().iterator().next());
+		MessageId storageId =
+				db.getSessionStorageId(txn, contactGroupId, sessionId);
+		if (storageId == null) return null;
+		return new StoredSession(storageId,
+				clientHelper.getMessageMetadataAsDictionary(txn, storageId));
 	}
 
 	private Session handleFirstMessage(Transaction txn, Message m, BdfList body,
@@ -249,10 +283,11 @@ abstract class SharingManagerImpl<S extends Shareable>
 		}
 	}
 
-	private MessageId createStorageId(Transaction txn, GroupId g)
-			throws DbException {
+	private MessageId createStorageId(Transaction txn, GroupId g,
+			SessionId sessionId) throws DbException {
 		Message m = clientHelper.createMessageForStoringMetadata(g);
 		db.addLocalMessage(txn, m, new Metadata(), false, false);
+		db.setSessionStorageId(txn, g, sessionId, m.getId());
 		return m.getId();
 	}
 
@@ -287,7 +322,7 @@ abstract class SharingManagerImpl<S extends Shareable>
 			if (ss == null) {
 				// This is the first invite - create a new session
 				session = new Session(contactGroupId, shareableId);
-				storageId = createStorageId(txn, contactGroupId);
+				storageId = createStorageId(txn, contactGroupId, sessionId);
 			} else {
 				// We already have a session
 				session = sessionParser
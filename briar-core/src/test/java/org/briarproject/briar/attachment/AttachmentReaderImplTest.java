@@ -6,7 +6,6 @@ import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.NoSuchMessageException;
 import org.briarproject.bramble.api.db.Transaction;
-import org.briarproject.bramble.api.db.TransactionManager;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.test.BrambleMockTestCase;
@@ -15,8 +14,10 @@ import org.briarproject.briar.api.attachment.Attachment;
 import org.briarproject.briar.api.attachment.AttachmentHeader;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.lang.System.arraycopy;
 import static org.briarproject.bramble.test.TestUtils.getMessage;
@@ -25,10 +26,11 @@ import static org.briarproject.bramble.util.IoUtils.copyAndClose;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AttachmentReaderImplTest extends BrambleMockTestCase {
 
-	private final TransactionManager db = context.mock(DatabaseComponent.class);
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
 	private final ClientHelper clientHelper = context.mock(ClientHelper.class);
 
 	private final GroupId groupId = new GroupId(getRandomId());
@@ -50,8 +52,8 @@ public class AttachmentReaderImplTest extends BrambleMockTestCase {
 
 		context.checking(new DbExpectations() {{
 			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
-			oneOf(clientHelper).getMessage(txn, message.getId());
-			will(returnValue(message));
+			oneOf(db).getGroupId(txn, message.getId());
+			will(returnValue(groupId));
 		}});
 
 		attachmentReader.getAttachment(wrongGroup);
@@ -85,8 +87,8 @@ public class AttachmentReaderImplTest extends BrambleMockTestCase {
 
 		context.checking(new DbExpectations() {{
 			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
-			oneOf(clientHelper).getMessage(txn, message.getId());
-			will(returnValue(message));
+			oneOf(db).getGroupId(txn, message.getId());
+			will(returnValue(groupId));
 			oneOf(clientHelper)
 					.getMessageMetadataAsDictionary(txn, message.getId());
 			will(returnValue(meta));
@@ -106,18 +108,30 @@ public class AttachmentReaderImplTest extends BrambleMockTestCase {
 		byte[] expectedData = new byte[body.length - descriptorLength];
 		arraycopy(body, descriptorLength, expectedData, 0, expectedData.length);
 
+		// The stream from the database is only valid within the transaction
+		AtomicBoolean closed = new AtomicBoolean(false);
+		InputStream dbStream = new ByteArrayInputStream(expectedData) {
+			@Override
+			public void close() {
+				closed.set(true);
+			}
+		};
+
 		Transaction txn = new Transaction(null, true);
 
 		context.checking(new DbExpectations() {{
 			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
-			oneOf(clientHelper).getMessage(txn, message.getId());
-			will(returnValue(message));
+			oneOf(db).getGroupId(txn, message.getId());
+			will(returnValue(groupId));
 			oneOf(clientHelper)
 					.getMessageMetadataAsDictionary(txn, message.getId());
 			will(returnValue(meta));
+			oneOf(db).getMessageBody(txn, message.getId(), descriptorLength);
+			will(returnValue(dbStream));
 		}});
 
 		Attachment attachment = attachmentReader.getAttachment(header);
+		assertTrue(closed.get());
 		InputStream in = attachment.getStream();
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		copyAndClose(in, out);
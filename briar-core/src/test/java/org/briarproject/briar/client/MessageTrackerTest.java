@@ -5,19 +5,31 @@ import org.briarproject.bramble.api.data.BdfDictionary;
 import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.settings.Settings;
+import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageCounts;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.TestUtils;
-import org.briarproject.briar.api.client.MessageTracker;
+import org.briarproject.briar.api.client.MessageTracker.GroupCount;
 import org.jmock.Expectations;
 import org.junit.Test;
 
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.briarproject.bramble.api.data.BdfDictionary.NULL_VALUE;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_LATEST_MSG;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_MSG_COUNT;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_STORED_MESSAGE_ID;
 import static org.briarproject.briar.client.MessageTrackerConstants.GROUP_KEY_UNREAD_COUNT;
+import static org.briarproject.briar.client.MessageTrackerConstants.SETTINGS_KEY_COUNTS_MIGRATED;
+import static org.briarproject.briar.client.MessageTrackerConstants.SETTINGS_NAMESPACE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
@@ -29,7 +41,7 @@ public class MessageTrackerTest extends BrambleMockTestCase {
 	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
 	private final Clock clock = context.mock(Clock.class);
 	private final MessageId messageId = new MessageId(TestUtils.getRandomId());
-	private final MessageTracker messageTracker =
+	private final MessageTrackerImpl messageTracker =
 			new MessageTrackerImpl(db, clientHelper, clock);
 	private final BdfDictionary dictionary = BdfDictionary.of(
 			new BdfEntry(GROUP_KEY_STORED_MESSAGE_ID, messageId)
@@ -39,19 +51,117 @@ public class MessageTrackerTest extends BrambleMockTestCase {
 	public void testInitializeGroupCount() throws Exception {
 		Transaction txn = new Transaction(null, false);
 		long now = 42L;
-		BdfDictionary dictionary = BdfDictionary.of(
-				new BdfEntry(GROUP_KEY_MSG_COUNT, 0),
-				new BdfEntry(GROUP_KEY_UNREAD_COUNT, 0),
-				new BdfEntry(GROUP_KEY_LATEST_MSG, now)
-		);
 		context.checking(new Expectations() {{
 			oneOf(clock).currentTimeMillis();
 			will(returnValue(now));
-			oneOf(clientHelper).mergeGroupMetadata(txn, groupId, dictionary);
+			oneOf(db).setMessageCounts(with(txn), with(groupId),
+					with(any(MessageCounts.class)));
 		}});
 		messageTracker.initializeGroupCount(txn, groupId);
 	}
 
+	@Test
+	public void testTrackMessageUpdatesCountsInPlace() throws Exception {
+		Transaction txn = new Transaction(null, false);
+		long timestamp = 123L;
+		context.checking(new Expectations() {{
+			oneOf(db).updateMessageCounts(txn, groupId, 1, 1, timestamp);
+			will(returnValue(true));
+		}});
+		messageTracker.trackMessage(txn, groupId, timestamp, false);
+	}
+
+	@Test
+	public void testTrackMessageStoresCountsForNewGroup() throws Exception {
+		Transaction txn = new Transaction(null, false);
+		long timestamp = 123L;
+		context.checking(new Expectations() {{
+			// No counts have been stored for the group
+			oneOf(db).updateMessageCounts(txn, groupId, 1, 0, timestamp);
+			will(returnValue(false));
+			oneOf(db).setMessageCounts(with(txn), with(groupId),
+					with(any(MessageCounts.class)));
+		}});
+		messageTracker.trackMessage(txn, groupId, timestamp, true);
+	}
+
+	@Test
+	public void testOpenDatabaseHookMovesCountsOutOfMetadata()
+			throws Exception {
+		Transaction txn = new Transaction(null, false);
+		Group group = getGroup(getClientId(), 123);
+		Group group1 = getGroup(getClientId(), 123);
+		BdfDictionary legacy = BdfDictionary.of(
+				new BdfEntry(GROUP_KEY_MSG_COUNT, 5),
+				new BdfEntry(GROUP_KEY_UNREAD_COUNT, 2),
+				new BdfEntry(GROUP_KEY_LATEST_MSG, 100L)
+		);
+		BdfDictionary remove = BdfDictionary.of(
+				new BdfEntry(GROUP_KEY_MSG_COUNT, NULL_VALUE),
+				new BdfEntry(GROUP_KEY_UNREAD_COUNT, NULL_VALUE),
+				new BdfEntry(GROUP_KEY_LATEST_MSG, NULL_VALUE)
+		);
+		Settings migrated = new Settings();
+		migrated.putBoolean(SETTINGS_KEY_COUNTS_MIGRATED, true);
+		context.checking(new Expectations() {{
+			oneOf(db).getSettings(txn, SETTINGS_NAMESPACE);
+			will(returnValue(new Settings()));
+			oneOf(db).getGroups(txn);
+			will(returnValue(asList(group, group1)));
+			// The first group's counts are in the metadata
+			oneOf(clientHelper)
+					.getGroupMetadataAsDictionary(txn, group.getId());
+			will(returnValue(legacy));
+			oneOf(db).setMessageCounts(with(txn), with(group.getId()),
+					with(any(MessageCounts.class)));
+			oneOf(clientHelper).mergeGroupMetadata(txn, group.getId(),
+					remove);
+			// The second group has no counts in the metadata
+			oneOf(clientHelper)
+					.getGroupMetadataAsDictionary(txn, group1.getId());
+			will(returnValue(new BdfDictionary()));
+			oneOf(db).mergeSettings(txn, migrated, SETTINGS_NAMESPACE);
+		}});
+		messageTracker.onDatabaseOpened(txn);
+	}
+
+	@Test
+	public void testOpenDatabaseHookSubsequentTime() throws Exception {
+		Transaction txn = new Transaction(null, false);
+		Settings migrated = new Settings();
+		migrated.putBoolean(SETTINGS_KEY_COUNTS_MIGRATED, true);
+		context.checking(new Expectations() {{
+			oneOf(db).getSettings(txn, SETTINGS_NAMESPACE);
+			will(returnValue(migrated));
+		}});
+		messageTracker.onDatabaseOpened(txn);
+	}
+
+	@Test
+	public void testGetGroupCounts() throws Exception {
+		Transaction txn = new Transaction(null, true);
+		GroupId groupId1 = new GroupId(TestUtils.getRandomId());
+		context.checking(new Expectations() {{
+			// Only the first group's counts have been stored
+			oneOf(db).getMessageCounts(txn, asList(groupId, groupId1));
+			will(returnValue(singletonMap(groupId,
+					new MessageCounts(3, 1, 200L))));
+		}});
+		Map<GroupId, GroupCount> counts = messageTracker.getGroupCounts(txn,
+				asList(groupId, groupId1));
+		assertEquals(2, counts.size());
+		GroupCount count = counts.get(groupId);
+		assertNotNull(count);
+		assertEquals(3, count.getMsgCount());
+		assertEquals(1, count.getUnreadCount());
+		assertEquals(200L, count.getLatestMsgTime());
+		GroupCount count1 = counts.get(groupId1);
+		assertNotNull(count1);
+		assertEquals(0, count1.getMsgCount());
+		assertEquals(0, count1.getUnreadCount());
+		assertEquals(0L, count1.getLatestMsgTime());
+	}
+
 	@Test
 	public void testMessageStore() throws Exception {
 		context.checking(new Expectations() {{
@@ -0,0 +1,136 @@
+package org.briarproject.briar.contact;
+
+import org.briarproject.bramble.api.connection.ConnectionRegistry;
+import org.briarproject.bramble.api.contact.Contact;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.briar.api.client.MessageTracker.GroupCount;
+import org.briarproject.briar.api.contact.ContactSummary;
+import org.briarproject.briar.api.conversation.ConversationManager;
+import org.briarproject.briar.api.identity.AuthorInfo;
+import org.briarproject.briar.api.identity.AuthorManager;
+import org.jmock.Expectations;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.briarproject.bramble.test.TestUtils.getContact;
+import static org.briarproject.briar.api.identity.AuthorInfo.Status.UNVERIFIED;
+import static org.briarproject.briar.api.identity.AuthorInfo.Status.VERIFIED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContactListSummaryImplTest extends BrambleMockTestCase {
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final AuthorManager authorManager =
+			context.mock(AuthorManager.class);
+	private final ConversationManager conversationManager =
+			context.mock(ConversationManager.class);
+	private final ConnectionRegistry connectionRegistry =
+			context.mock(ConnectionRegistry.class);
+
+	private final Contact contact1 = getContact();
+	private final Contact contact2 = getContact();
+	private final AuthorInfo authorInfo1 = new AuthorInfo(VERIFIED);
+	private final AuthorInfo authorInfo2 = new AuthorInfo(UNVERIFIED);
+	private final GroupCount count1 = new GroupCount(3, 1, 123);
+	private final GroupCount count2 = new GroupCount(0, 0, 0);
+
+	private final ContactListSummaryImpl contactListSummary =
+			new ContactListSummaryImpl(db, authorManager, conversationManager,
+					connectionRegistry);
+
+	@Test
+	public void testGetContactSummariesWithoutContacts() throws Exception {
+		Transaction txn = new Transaction(null, true);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getContacts(txn);
+			will(returnValue(emptyList()));
+			oneOf(conversationManager).getGroupCounts(txn, emptyList());
+			will(returnValue(emptyMap()));
+		}});
+
+		assertEquals(emptyList(), contactListSummary.getContactSummaries());
+	}
+
+	@Test
+	public void testGetContactSummaries() throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Map<ContactId, GroupCount> counts = new HashMap<>();
+		counts.put(contact1.getId(), count1);
+		counts.put(contact2.getId(), count2);
+
+		context.checking(new Expectations() {{
+			oneOf(db).getContacts(txn);
+			will(returnValue(asList(contact1, contact2)));
+			oneOf(conversationManager)
+					.getGroupCounts(txn, asList(contact1, contact2));
+			will(returnValue(counts));
+			oneOf(authorManager).getAuthorInfo(txn, contact1);
+			will(returnValue(authorInfo1));
+			oneOf(connectionRegistry).isConnected(contact1.getId());
+			will(returnValue(true));
+			oneOf(authorManager).getAuthorInfo(txn, contact2);
+			will(returnValue(authorInfo2));
+			oneOf(connectionRegistry).isConnected(contact2.getId());
+			will(returnValue(false));
+		}});
+
+		List<ContactSummary> summaries =
+				contactListSummary.getContactSummaries(txn);
+		assertEquals(2, summaries.size());
+
+		ContactSummary summary1 = summaries.get(0);
+		assertSame(contact1, summary1.getContact());
+		assertSame(authorInfo1, summary1.getAuthorInfo());
+		assertTrue(summary1.isConnected());
+		assertSame(count1, summary1.getGroupCount());
+
+		ContactSummary summary2 = summaries.get(1);
+		assertSame(contact2, summary2.getContact());
+		assertSame(authorInfo2, summary2.getAuthorInfo());
+		assertFalse(summary2.isConnected());
+		assertSame(count2, summary2.getGroupCount());
+	}
+
+	@Test
+	public void testGetContactSummariesForGivenContacts() throws Exception {
+		Transaction txn = new Transaction(null, true);
+
+		// Only the given contact should be looked up
+		context.checking(new Expectations() {{
+			oneOf(conversationManager)
+					.getGroupCounts(txn, singletonList(contact2));
+			will(returnValue(singletonMap(contact2.getId(), count2)));
+			oneOf(authorManager).getAuthorInfo(txn, contact2);
+			will(returnValue(authorInfo2));
+			oneOf(connectionRegistry).isConnected(contact2.getId());
+			will(returnValue(true));
+		}});
+
+		List<ContactSummary> summaries = contactListSummary
+				.getContactSummaries(txn, singletonList(contact2));
+		assertEquals(1, summaries.size());
+
+		ContactSummary summary = summaries.get(0);
+		assertSame(contact2, summary.getContact());
+		assertSame(authorInfo2, summary.getAuthorInfo());
+		assertTrue(summary.isConnected());
+		assertSame(count2, summary.getGroupCount());
+	}
+}
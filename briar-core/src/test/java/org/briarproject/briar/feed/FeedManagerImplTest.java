@@ -49,6 +49,8 @@ import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEEDS;
 import static org.briarproject.briar.api.feed.FeedManager.CLIENT_ID;
 import static org.briarproject.briar.api.feed.FeedManager.MAJOR_VERSION;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class FeedManagerImplTest extends BrambleMockTestCase {
 
@@ -185,6 +187,84 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 		feedManager.fetchFeeds();
 	}
 
+	@Test
+	public void testFetchFeedsNotModified() throws Exception {
+		// The first fetch returns a feed with an ETag; the second fetch is
+		// conditional and the server says the feed hasn't changed
+		String feedXml = createRssFeedXml();
+
+		MockWebServer server = new MockWebServer();
+		String url = server.url("/").toString();
+		server.enqueue(new MockResponse().setBody(feedXml)
+				.setHeader("ETag", "\"abc\""));
+		server.enqueue(new MockResponse().setResponseCode(304));
+
+		Feed feed = createFeed(url, blog);
+
+		expectGetFeeds(feed);
+		expectUpdateFeedNoEntries(feed);
+		expectGetAndStoreFeeds(feed);
+
+		feedManager.setTorActive(true);
+		feedManager.fetchFeeds();
+		context.assertIsSatisfied();
+
+		expectGetFeeds(feed);
+		context.checking(new Expectations() {{
+			oneOf(feedFactory).updateFeed(feed);
+			will(returnValue(feed));
+		}});
+		expectGetAndStoreFeeds(feed);
+
+		feedManager.fetchFeeds();
+
+		assertNull(server.takeRequest().getHeader("If-None-Match"));
+		assertEquals("\"abc\"",
+				server.takeRequest().getHeader("If-None-Match"));
+	}
+
+	@Test
+	public void testRemovedFeedIsFetchedUnconditionally() throws Exception {
+		// The first fetch returns a feed with an ETag. The feed is then
+		// removed, so the next fetch of the same URL is unconditional
+		String feedXml = createRssFeedXml();
+
+		MockWebServer server = new MockWebServer();
+		String url = server.url("/").toString();
+		server.enqueue(new MockResponse().setBody(feedXml)
+				.setHeader("ETag", "\"abc\""));
+		server.enqueue(new MockResponse().setBody(feedXml)
+				.setHeader("ETag", "\"abc\""));
+
+		Feed feed = createFeed(url, blog);
+
+		expectGetFeeds(feed);
+		expectUpdateFeedNoEntries(feed);
+		expectGetAndStoreFeeds(feed);
+
+		feedManager.setTorActive(true);
+		feedManager.fetchFeeds();
+		context.assertIsSatisfied();
+
+		// Remove the feed
+		Transaction txn = new Transaction(null, false);
+		expectGetFeeds(txn, feed);
+		expectStoreFeeds(txn);
+
+		feedManager.removingBlog(txn, blog);
+		context.assertIsSatisfied();
+
+		// Fetch the feed again, as though it had been added again
+		expectGetFeeds(feed);
+		expectUpdateFeedNoEntries(feed);
+		expectGetAndStoreFeeds(feed);
+
+		feedManager.fetchFeeds();
+
+		assertNull(server.takeRequest().getHeader("If-None-Match"));
+		assertNull(server.takeRequest().getHeader("If-None-Match"));
+	}
+
 	@Test
 	public void testAddNewFeedFromUrl() throws Exception {
 		// Fetching and parsing the feed will succeed; there are no entries
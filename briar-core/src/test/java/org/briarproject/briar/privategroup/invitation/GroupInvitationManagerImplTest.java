@@ -15,6 +15,7 @@ import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.identity.Author;
 import org.briarproject.bramble.api.identity.AuthorId;
+import org.briarproject.bramble.api.settings.Settings;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
@@ -42,6 +43,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import javax.annotation.Nullable;
 
@@ -67,6 +69,7 @@ import static org.briarproject.briar.api.sharing.SharingManager.SharingStatus.ER
 import static org.briarproject.briar.api.sharing.SharingManager.SharingStatus.INVITE_SENT;
 import static org.briarproject.briar.api.sharing.SharingManager.SharingStatus.SHAREABLE;
 import static org.briarproject.briar.api.sharing.SharingManager.SharingStatus.SHARING;
+import static org.briarproject.briar.privategroup.invitation.GroupInvitationConstants.SETTINGS_KEY_SESSIONS_RECORDED;
 import static org.briarproject.briar.privategroup.invitation.MessageType.ABORT;
 import static org.briarproject.briar.privategroup.invitation.MessageType.INVITE;
 import static org.briarproject.briar.privategroup.invitation.MessageType.JOIN;
@@ -171,11 +174,29 @@ public class GroupInvitationManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(singletonList(contact)));
 		}});
 		expectAddingContact(contact, emptyList());
+		expectRecordStoredSessions(noResults);
 		groupInvitationManager.onDatabaseOpened(txn);
 	}
 
 	@Test
 	public void testOpenDatabaseHookSubsequentTime() throws Exception {
+		Settings settings = new Settings();
+		settings.putBoolean(SETTINGS_KEY_SESSIONS_RECORDED, true);
+
+		context.checking(new Expectations() {{
+			oneOf(contactGroupFactory).createLocalGroup(CLIENT_ID,
+					MAJOR_VERSION);
+			will(returnValue(localGroup));
+			oneOf(db).containsGroup(txn, localGroup.getId());
+			will(returnValue(true));
+			oneOf(db).getSettings(txn, CLIENT_ID.getString());
+			will(returnValue(settings));
+		}});
+		groupInvitationManager.onDatabaseOpened(txn);
+	}
+
+	@Test
+	public void testOpenDatabaseHookRecordsStoredSessions() throws Exception {
 		context.checking(new Expectations() {{
 			oneOf(contactGroupFactory).createLocalGroup(CLIENT_ID,
 					MAJOR_VERSION);
@@ -183,9 +204,42 @@ public class GroupInvitationManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).containsGroup(txn, localGroup.getId());
 			will(returnValue(true));
 		}});
+		expectRecordStoredSessions(oneResult);
 		groupInvitationManager.onDatabaseOpened(txn);
 	}
 
+	private void expectRecordStoredSessions(
+			Map<MessageId, BdfDictionary> results) throws Exception {
+		BdfDictionary query = BdfDictionary.of(new BdfEntry("q", "u"));
+		Settings recorded = new Settings();
+		recorded.putBoolean(SETTINGS_KEY_SESSIONS_RECORDED, true);
+
+		context.checking(new Expectations() {{
+			oneOf(db).getSettings(txn, CLIENT_ID.getString());
+			will(returnValue(new Settings()));
+			oneOf(sessionParser).getAllSessionsQuery();
+			will(returnValue(query));
+			oneOf(db).getContacts(txn);
+			will(returnValue(singletonList(contact)));
+			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+					contactGroup.getId(), query);
+			will(returnValue(results));
+			for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+				oneOf(sessionParser)
+						.parseSession(contactGroup.getId(), e.getValue());
+				will(returnValue(creatorSession));
+				oneOf(creatorSession).getPrivateGroupId();
+				will(returnValue(privateGroup.getId()));
+				oneOf(db).setSessionStorageId(txn, contactGroup.getId(),
+						sessionId, e.getKey());
+			}
+			oneOf(db).mergeSettings(txn, recorded, CLIENT_ID.getString());
+		}});
+	}
+
 	private void expectAddingContact(Contact c, Collection<Group> groups)
 			throws Exception {
 		context.checking(new Expectations() {{
@@ -221,16 +275,19 @@ public class GroupInvitationManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(peerSession));
 		}});
 		expectStoreSession(peerSession, storageMessage.getId());
-		expectCreateStorageId();
+		expectCreateStorageId(new SessionId(g.getBytes()));
 	}
 
-	private void expectCreateStorageId() throws DbException {
+	private void expectCreateStorageId(SessionId sessionId)
+			throws DbException {
 		context.checking(new Expectations() {{
 			oneOf(clientHelper)
 					.createMessageForStoringMetadata(contactGroup.getId());
 			will(returnValue(storageMessage));
 			oneOf(db).addLocalMessage(txn, storageMessage, new Metadata(),
 					false, false);
+			oneOf(db).setSessionStorageId(txn, contactGroup.getId(),
+					sessionId, storageMessage.getId());
 		}});
 	}
 
@@ -245,13 +302,17 @@ public class GroupInvitationManagerImplTest extends BrambleMockTestCase {
 
 	private void expectGetSession(Map<MessageId, BdfDictionary> results,
 			SessionId sessionId, GroupId contactGroupId) throws Exception {
-		BdfDictionary query = BdfDictionary.of(new BdfEntry("q", "u"));
 		context.checking(new Expectations() {{
-			oneOf(sessionParser).getSessionQuery(sessionId);
-			will(returnValue(query));
-			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
-					contactGroupId, query);
-			will(returnValue(results));
+			oneOf(db).getSessionStorageId(txn, contactGroupId, sessionId);
+			if (results.isEmpty()) {
+				will(returnValue(null));
+			} else {
+				MessageId storageId = results.keySet().iterator().next();
+				will(returnValue(storageId));
+				oneOf(clientHelper)
+						.getMessageMetadataAsDictionary(txn, storageId);
+				will(returnValue(results.get(storageId)));
+			}
 		}});
 	}
 
@@ -292,7 +353,7 @@ public class GroupInvitationManagerImplTest extends BrambleMockTestCase {
 			oneOf(privateGroupManager).isOurPrivateGroup(txn, privateGroup);
 			will(returnValue(false));
 		}});
-		expectCreateStorageId();
+		expectCreateStorageId(new SessionId(privateGroup.getId().getBytes()));
 		context.checking(new Expectations() {{
 			oneOf(sessionEncoder)
 					.encodeSession(with(any(InviteeSession.class)));
@@ -420,7 +481,7 @@ public class GroupInvitationManagerImplTest extends BrambleMockTestCase {
 		Session<?> session =
 				expectHandleFirstMessage(role, messageMetadata, type);
 		if (session != null) {
-			expectCreateStorageId();
+			expectCreateStorageId(sessionId);
 			expectStoreSession(session, storageMessage.getId());
 		}
 	}
@@ -578,7 +639,7 @@ public class GroupInvitationManagerImplTest extends BrambleMockTestCase {
 					MAJOR_VERSION, contact);
 			will(returnValue(contactGroup));
 		}});
-		expectCreateStorageId();
+		expectCreateStorageId(sessionId);
 		context.checking(new Expectations() {{
 			oneOf(creatorEngine).onInviteAction(with(txn),
 					with(any(CreatorSession.class)), with(text), with(time),
@@ -7,12 +7,12 @@ import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.data.BdfDictionary;
 import org.briarproject.bramble.api.data.MetadataParser;
 import org.briarproject.bramble.api.db.DatabaseComponent;
-import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.identity.Author;
 import org.briarproject.bramble.api.identity.IdentityManager;
 import org.briarproject.bramble.api.identity.LocalAuthor;
+import org.briarproject.bramble.api.settings.Settings;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageId;
@@ -30,6 +30,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
 import static org.briarproject.bramble.test.TestUtils.getAuthor;
@@ -40,6 +41,7 @@ import static org.briarproject.bramble.test.TestUtils.getMessage;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
 import static org.briarproject.briar.api.blog.BlogSharingManager.CLIENT_ID;
 import static org.briarproject.briar.api.blog.BlogSharingManager.MAJOR_VERSION;
+import static org.briarproject.briar.sharing.SharingConstants.SETTINGS_KEY_SESSIONS_RECORDED;
 
 public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 
@@ -110,6 +112,8 @@ public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 		}});
 		// Set things up for the contact
 		expectAddingContact(txn);
+		// There are no sessions to record
+		expectRecordStoredSessions(txn, Collections.emptyMap());
 
 		blogSharingManager.onDatabaseOpened(txn);
 	}
@@ -147,6 +151,8 @@ public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 	@Test
 	public void testOpenDatabaseHookSubsequentTime() throws Exception {
 		Transaction txn = new Transaction(null, false);
+		Settings settings = new Settings();
+		settings.putBoolean(SETTINGS_KEY_SESSIONS_RECORDED, true);
 
 		context.checking(new Expectations() {{
 			// The local group exists - everything has been set up
@@ -155,11 +161,66 @@ public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(localGroup));
 			oneOf(db).containsGroup(txn, localGroup.getId());
 			will(returnValue(true));
+			// The sessions have been recorded
+			oneOf(db).getSettings(txn, CLIENT_ID.getString());
+			will(returnValue(settings));
 		}});
 
 		blogSharingManager.onDatabaseOpened(txn);
 	}
 
+	@Test
+	public void testOpenDatabaseHookRecordsStoredSessions() throws Exception {
+		Transaction txn = new Transaction(null, false);
+		Map<MessageId, BdfDictionary> sessions = new HashMap<>(1);
+		sessions.put(new MessageId(getRandomId()), new BdfDictionary());
+
+		context.checking(new Expectations() {{
+			// The local group exists - everything has been set up
+			oneOf(contactGroupFactory).createLocalGroup(CLIENT_ID,
+					MAJOR_VERSION);
+			will(returnValue(localGroup));
+			oneOf(db).containsGroup(txn, localGroup.getId());
+			will(returnValue(true));
+		}});
+		// The sessions haven't been recorded yet
+		expectRecordStoredSessions(txn, sessions);
+
+		blogSharingManager.onDatabaseOpened(txn);
+	}
+
+	private void expectRecordStoredSessions(Transaction txn,
+			Map<MessageId, BdfDictionary> sessions) throws Exception {
+		BdfDictionary query = new BdfDictionary();
+		Session session = new Session(contactGroup.getId(), blog.getId());
+		SessionId sessionId = new SessionId(blog.getId().getBytes());
+		Settings recorded = new Settings();
+		recorded.putBoolean(SETTINGS_KEY_SESSIONS_RECORDED, true);
+
+		context.checking(new Expectations() {{
+			oneOf(db).getSettings(txn, CLIENT_ID.getString());
+			will(returnValue(new Settings()));
+			oneOf(sessionParser).getAllSessionsQuery();
+			will(returnValue(query));
+			oneOf(db).getContacts(txn);
+			will(returnValue(contacts));
+			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+					contactGroup.getId(), query);
+			will(returnValue(sessions));
+			for (Entry<MessageId, BdfDictionary> e : sessions.entrySet()) {
+				oneOf(sessionParser)
+						.parseSession(contactGroup.getId(), e.getValue());
+				will(returnValue(session));
+				oneOf(db).setSessionStorageId(txn, contactGroup.getId(),
+						sessionId, e.getKey());
+			}
+			oneOf(db).mergeSettings(txn, recorded, CLIENT_ID.getString());
+		}});
+	}
+
 	@Test
 	public void testAddingContact() throws Exception {
 		Transaction txn = new Transaction(null, false);
@@ -182,31 +243,29 @@ public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 		testRemovingBlog(sessions);
 	}
 
-	@Test(expected = DbException.class)
-	public void testRemovingBlogMultipleSessions() throws Exception {
-		Map<MessageId, BdfDictionary> sessions = new HashMap<>(2);
-		sessions.put(new MessageId(getRandomId()), new BdfDictionary());
-		sessions.put(new MessageId(getRandomId()), new BdfDictionary());
-		testRemovingBlog(sessions);
-	}
-
 	private void expectPreShareShareable(Transaction txn, Contact contact,
 			Blog blog, Map<MessageId, BdfDictionary> sessions)
 			throws Exception {
 		Group contactGroup = getGroup(CLIENT_ID, MAJOR_VERSION);
 		BdfDictionary sessionDict = new BdfDictionary();
 		Message message = getMessage(contactGroup.getId());
+		SessionId sessionId = new SessionId(blog.getId().getBytes());
 		context.checking(new Expectations() {{
 			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
 					MAJOR_VERSION, contact);
 			will(returnValue(contactGroup));
-			oneOf(sessionParser)
-					.getSessionQuery(new SessionId(blog.getId().getBytes()));
-			will(returnValue(sessionDict));
-			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
-					contactGroup.getId(), sessionDict);
-			will(returnValue(sessions));
-			if (sessions.size() == 0) {
+			oneOf(db).getSessionStorageId(txn, contactGroup.getId(),
+					sessionId);
+			if (sessions.isEmpty()) {
+				will(returnValue(null));
+			} else {
+				MessageId storageId = sessions.keySet().iterator().next();
+				will(returnValue(storageId));
+				oneOf(clientHelper)
+						.getMessageMetadataAsDictionary(txn, storageId);
+				will(returnValue(sessions.get(storageId)));
+			}
+			if (sessions.isEmpty()) {
 				oneOf(db).addGroup(txn, blog.getGroup());
 				oneOf(clientVersioningManager).getClientVisibility(txn,
 						contactId, BlogManager.CLIENT_ID,
@@ -219,6 +278,8 @@ public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 				will(returnValue(message));
 				oneOf(db).addLocalMessage(txn, message, new Metadata(), false,
 						false);
+				oneOf(db).setSessionStorageId(txn, contactGroup.getId(),
+						sessionId, message.getId());
 				oneOf(sessionEncoder).encodeSession(with(any(Session.class)));
 				will(returnValue(sessionDict));
 				oneOf(clientHelper).mergeMessageMetadata(txn, message.getId(),
@@ -232,6 +293,7 @@ public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 		Transaction txn = new Transaction(null, false);
 		BdfDictionary sessionDict = new BdfDictionary();
 		Session session = new Session(contactGroup.getId(), blog.getId());
+		SessionId sessionId = new SessionId(blog.getId().getBytes());
 
 		context.checking(new Expectations() {{
 			oneOf(db).getContacts(txn);
@@ -239,13 +301,16 @@ public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
 					MAJOR_VERSION, contact);
 			will(returnValue(contactGroup));
-			oneOf(sessionParser)
-					.getSessionQuery(new SessionId(blog.getId().getBytes()));
-			will(returnValue(sessionDict));
-			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
-					contactGroup.getId(), sessionDict);
-			will(returnValue(sessions));
-			if (sessions.size() == 1) {
+			oneOf(db).getSessionStorageId(txn, contactGroup.getId(),
+					sessionId);
+			if (sessions.isEmpty()) {
+				will(returnValue(null));
+			} else {
+				MessageId storageId = sessions.keySet().iterator().next();
+				will(returnValue(storageId));
+				oneOf(clientHelper)
+						.getMessageMetadataAsDictionary(txn, storageId);
+				will(returnValue(sessionDict));
 				oneOf(sessionParser)
 						.parseSession(contactGroup.getId(), sessionDict);
 				will(returnValue(session));
@@ -253,8 +318,8 @@ public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 				will(returnValue(session));
 				oneOf(sessionEncoder).encodeSession(session);
 				will(returnValue(sessionDict));
-				oneOf(clientHelper).mergeMessageMetadata(txn,
-						sessions.keySet().iterator().next(), sessionDict);
+				oneOf(clientHelper).mergeMessageMetadata(txn, storageId,
+						sessionDict);
 			}
 		}});
 		blogSharingManager.removingBlog(txn, blog);
@@ -82,6 +82,8 @@ public interface BriarIntegrationTestComponent
 
 	void inject(BlogModule.EagerSingletons init);
 
+	void inject(BriarClientModule.EagerSingletons init);
+
 	void inject(ConversationModule.EagerSingletons init);
 
 	void inject(ForumModule.EagerSingletons init);
@@ -153,6 +155,7 @@ public interface BriarIntegrationTestComponent
 			c.inject(new AutoDeleteModule.EagerSingletons());
 			c.inject(new AvatarModule.EagerSingletons());
 			c.inject(new BlogModule.EagerSingletons());
+			c.inject(new BriarClientModule.EagerSingletons());
 			c.inject(new ConversationModule.EagerSingletons());
 			c.inject(new ForumModule.EagerSingletons());
 			c.inject(new GroupInvitationModule.EagerSingletons());
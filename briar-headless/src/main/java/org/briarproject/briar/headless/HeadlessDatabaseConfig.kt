@@ -4,12 +4,17 @@ import org.briarproject.bramble.api.crypto.KeyStrengthener
 import org.briarproject.bramble.api.db.DatabaseConfig
 import java.io.File
 
-internal class HeadlessDatabaseConfig(private val dbDir: File, private val keyDir: File) :
-    DatabaseConfig {
+internal class HeadlessDatabaseConfig(
+    private val dbDir: File,
+    private val keyDir: File,
+    private val workloadTraceFile: File? = null
+) : DatabaseConfig {
 
     override fun getDatabaseDirectory() = dbDir
 
     override fun getDatabaseKeyDirectory() = keyDir
 
     override fun getKeyStrengthener(): KeyStrengthener? = null
+
+    override fun getWorkloadTraceFile() = workloadTraceFile
 }
@@ -55,7 +55,10 @@ import javax.inject.Singleton
         HeadlessMessagingModule::class
     ]
 )
-internal class HeadlessModule(private val appDir: File) {
+internal class HeadlessModule(
+    private val appDir: File,
+    private val dbTraceFile: File? = null
+) {
 
     @Provides
     @Singleton
@@ -66,7 +69,7 @@ internal class HeadlessModule(private val appDir: File) {
     internal fun provideDatabaseConfig(): DatabaseConfig {
         val dbDir = File(appDir, "db")
         val keyDir = File(appDir, "key")
-        return HeadlessDatabaseConfig(dbDir, keyDir)
+        return HeadlessDatabaseConfig(dbDir, keyDir, dbTraceFile)
     }
 
     @Provides
@@ -57,6 +57,12 @@ private class Main : CliktCommand(
         metavar = "PATH",
         envvar = "BRIAR_DATA_DIR"
     ).default(DEFAULT_DATA_DIR)
+    private val dbTrace by option(
+        "--db-trace",
+        help = "Record the database calls made by Briar in this file, without their content, " +
+            "so they can be replayed for benchmarking",
+        metavar = "PATH"
+    )
 
     override fun run() {
         // logging
@@ -74,8 +80,9 @@ private class Main : CliktCommand(
         LogManager.getLogManager().getLogger("").level = level
 
         val dataDir = getDataDir()
-        val app =
-            DaggerBriarHeadlessApp.builder().headlessModule(HeadlessModule(dataDir)).build()
+        val dbTraceFile = dbTrace?.let { File(it) }
+        val app = DaggerBriarHeadlessApp.builder()
+            .headlessModule(HeadlessModule(dataDir, dbTraceFile)).build()
         // We need to load the eager singletons directly after making the
         // dependency graphs
         BrambleCoreEagerSingletons.Helper.injectEagerSingletons(app)
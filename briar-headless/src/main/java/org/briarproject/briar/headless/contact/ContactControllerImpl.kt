@@ -6,7 +6,6 @@ import io.javalin.http.Context
 import io.javalin.http.NotFoundResponse
 import org.bouncycastle.util.encoders.Base64
 import org.bouncycastle.util.encoders.DecoderException
-import org.briarproject.bramble.api.connection.ConnectionRegistry
 import org.briarproject.bramble.api.contact.ContactManager
 import org.briarproject.bramble.api.contact.HandshakeLinkConstants.LINK_REGEX
 import org.briarproject.bramble.api.contact.PendingContactId
@@ -24,7 +23,7 @@ import org.briarproject.bramble.api.identity.AuthorConstants.MAX_AUTHOR_NAME_LEN
 import org.briarproject.bramble.api.plugin.event.ContactConnectedEvent
 import org.briarproject.bramble.api.plugin.event.ContactDisconnectedEvent
 import org.briarproject.bramble.util.StringUtils.toUtf8
-import org.briarproject.briar.api.conversation.ConversationManager
+import org.briarproject.briar.api.contact.ContactListSummary
 import org.briarproject.briar.headless.event.WebSocketController
 import org.briarproject.briar.headless.getContactIdFromPathParam
 import org.briarproject.briar.headless.getFromJson
@@ -49,10 +48,9 @@ internal class ContactControllerImpl
 @Inject
 constructor(
     private val contactManager: ContactManager,
-    private val conversationManager: ConversationManager,
+    private val contactListSummary: ContactListSummary,
     private val objectMapper: ObjectMapper,
-    private val webSocket: WebSocketController,
-    private val connectionRegistry: ConnectionRegistry
+    private val webSocket: WebSocketController
 ) : ContactController, EventListener {
 
     override fun eventOccurred(e: Event) = when (e) {
@@ -79,11 +77,8 @@ constructor(
     }
 
     override fun list(ctx: Context): Context {
-        val contacts = contactManager.contacts.map { contact ->
-            val latestMsgTime = conversationManager.getGroupCount(contact.id).latestMsgTime
-            val connected = connectionRegistry.isConnected(contact.id)
-            val unreadCount = conversationManager.getGroupCount(contact.id).unreadCount
-            contact.output(latestMsgTime, connected, unreadCount)
+        val contacts = contactListSummary.contactSummaries.map { summary ->
+            summary.output()
         }
         return ctx.json(contacts)
     }
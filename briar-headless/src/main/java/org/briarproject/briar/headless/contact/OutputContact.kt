@@ -5,6 +5,8 @@ import org.briarproject.bramble.api.contact.event.ContactAddedEvent
 import org.briarproject.bramble.api.plugin.event.ContactConnectedEvent
 import org.briarproject.bramble.api.plugin.event.ContactDisconnectedEvent
 import org.briarproject.bramble.identity.output
+import org.briarproject.briar.api.attachment.AttachmentHeader
+import org.briarproject.briar.api.contact.ContactSummary
 import org.briarproject.briar.headless.json.JsonDict
 
 internal fun Contact.output(latestMsgTime: Long, connected: Boolean, unreadCount: Int) = JsonDict(
@@ -19,6 +21,20 @@ internal fun Contact.output(latestMsgTime: Long, connected: Boolean, unreadCount
     handshakePublicKey?.let { put("handshakePublicKey", it.encoded) }
 }
 
+internal fun ContactSummary.output() = contact.output(
+    groupCount.latestMsgTime,
+    isConnected,
+    groupCount.unreadCount
+).apply {
+    authorInfo.avatarHeader?.let { put("avatar", it.output()) }
+}
+
+internal fun AttachmentHeader.output() = JsonDict(
+    "groupId" to groupId.bytes,
+    "messageId" to messageId.bytes,
+    "contentType" to contentType
+)
+
 internal fun ContactAddedEvent.output() = JsonDict(
     "contactId" to contactId.int,
     "verified" to isVerified
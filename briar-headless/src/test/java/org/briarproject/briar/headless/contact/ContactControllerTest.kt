@@ -6,11 +6,11 @@ import io.javalin.plugin.json.JavalinJson.toJson
 import io.mockk.Runs
 import io.mockk.every
 import io.mockk.just
+import io.mockk.mockk
 import io.mockk.mockkStatic
 import io.mockk.runs
 import io.mockk.verify
 import org.briarproject.bramble.api.Pair
-import org.briarproject.bramble.api.contact.Contact
 import org.briarproject.bramble.api.contact.ContactId
 import org.briarproject.bramble.api.contact.PendingContactId
 import org.briarproject.bramble.api.contact.PendingContactState.FAILED
@@ -30,6 +30,12 @@ import org.briarproject.bramble.identity.output
 import org.briarproject.bramble.test.TestUtils.getPendingContact
 import org.briarproject.bramble.test.TestUtils.getRandomBytes
 import org.briarproject.bramble.util.StringUtils.getRandomString
+import org.briarproject.briar.api.attachment.AttachmentHeader
+import org.briarproject.briar.api.client.MessageTracker.GroupCount
+import org.briarproject.briar.api.contact.ContactListSummary
+import org.briarproject.briar.api.contact.ContactSummary
+import org.briarproject.briar.api.identity.AuthorInfo
+import org.briarproject.briar.api.identity.AuthorInfo.Status.VERIFIED
 import org.briarproject.briar.headless.ControllerTest
 import org.briarproject.briar.headless.getFromJson
 import org.briarproject.briar.headless.json.JsonDict
@@ -41,19 +47,19 @@ import kotlin.random.Random
 
 internal class ContactControllerTest : ControllerTest() {
 
+    private val contactListSummary = mockk<ContactListSummary>()
     private val pendingContact = getPendingContact()
 
     private val controller = ContactControllerImpl(
         contactManager,
-        conversationManager,
+        contactListSummary,
         objectMapper,
-        webSocketController,
-        connectionRegistry
+        webSocketController
     )
 
     @Test
     fun testEmptyContactList() {
-        every { contactManager.contacts } returns emptyList<Contact>()
+        every { contactListSummary.contactSummaries } returns emptyList()
         every { ctx.json(emptyList<Any>()) } returns ctx
         controller.list(ctx)
     }
@@ -61,14 +67,26 @@ internal class ContactControllerTest : ControllerTest() {
     @Test
     fun testList() {
         val connected = Random.nextBoolean()
-        every { contactManager.contacts } returns listOf(contact)
-        every { conversationManager.getGroupCount(contact.id).latestMsgTime } returns timestamp
-        every { connectionRegistry.isConnected(contact.id) } returns connected
-        every { conversationManager.getGroupCount(contact.id).unreadCount } returns unreadCount
+        val count = GroupCount(unreadCount + 1, unreadCount, timestamp)
+        val authorInfo = AuthorInfo(VERIFIED)
+        val summary = ContactSummary(contact, authorInfo, connected, count)
+        every { contactListSummary.contactSummaries } returns listOf(summary)
         every { ctx.json(listOf(contact.output(timestamp, connected, unreadCount))) } returns ctx
         controller.list(ctx)
     }
 
+    @Test
+    fun testListWithAvatar() {
+        val connected = Random.nextBoolean()
+        val count = GroupCount(unreadCount + 1, unreadCount, timestamp)
+        val avatarHeader = AttachmentHeader(group.id, message.id, "image/jpeg")
+        val authorInfo = AuthorInfo(VERIFIED, null, avatarHeader)
+        val summary = ContactSummary(contact, authorInfo, connected, count)
+        every { contactListSummary.contactSummaries } returns listOf(summary)
+        every { ctx.json(listOf(summary.output())) } returns ctx
+        controller.list(ctx)
+    }
+
     @Test
     fun testLink() {
         val link = "briar://link"